@@ -0,0 +1,210 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct;
+import net.finmath.initialmargin.isdasimm.products.SIMMSimpleSwap;
+import net.finmath.initialmargin.regression.InitialMarginRegressionTest;
+import net.finmath.initialmargin.regression.products.AbstractLIBORMonteCarloRegressionProduct;
+import net.finmath.marketdata.model.AnalyticModelFromCurvesAndVols;
+import net.finmath.marketdata.model.curves.Curve;
+import net.finmath.marketdata.model.curves.DiscountCurveFromForwardCurve;
+import net.finmath.marketdata.model.curves.DiscountCurveInterpolation;
+import net.finmath.marketdata.model.curves.ForwardCurveInterpolation;
+import net.finmath.montecarlo.BrownianMotion;
+import net.finmath.montecarlo.BrownianMotionLazyInit;
+import net.finmath.montecarlo.RandomVariableFactory;
+import net.finmath.montecarlo.RandomVariableFromArrayFactory;
+import net.finmath.montecarlo.automaticdifferentiation.backward.RandomVariableDifferentiableAADFactory;
+import net.finmath.montecarlo.interestrate.CalibrationProduct;
+import net.finmath.montecarlo.interestrate.LIBORMarketModel;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.montecarlo.interestrate.LIBORMonteCarloSimulationFromLIBORModel;
+import net.finmath.montecarlo.interestrate.models.LIBORMarketModelFromCovarianceModel;
+import net.finmath.montecarlo.interestrate.models.covariance.AbstractLIBORCovarianceModelParametric;
+import net.finmath.montecarlo.interestrate.models.covariance.BlendedLocalVolatilityModel;
+import net.finmath.montecarlo.interestrate.models.covariance.LIBORCorrelationModel;
+import net.finmath.montecarlo.interestrate.models.covariance.LIBORCorrelationModelExponentialDecay;
+import net.finmath.montecarlo.interestrate.models.covariance.LIBORCovarianceModelFromVolatilityAndCorrelation;
+import net.finmath.montecarlo.interestrate.models.covariance.LIBORVolatilityModel;
+import net.finmath.montecarlo.interestrate.models.covariance.LIBORVolatilityModelPiecewiseConstant;
+import net.finmath.montecarlo.process.EulerSchemeFromProcessModel;
+import net.finmath.sensitivities.GradientProduct;
+import net.finmath.sensitivities.GradientProductComposite;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.sensitivities.simm2.products.ApproximateAnnuity;
+import net.finmath.time.TimeDiscretizationFromArray;
+import net.finmath.xva.tradespecifications.Indices;
+import net.finmath.xva.tradespecifications.SIMMTradeSpecification;
+
+/**
+ * Synthetic, deterministic fixtures for the benchmarks. The LIBOR market model follows
+ * <code>SIMMTest.createLIBORMarketModel</code>, but the curves are given by closed-form term structures and the
+ * number of LIBORs is a parameter, such that the size of the problem can be scaled. All random numbers are
+ * generated from fixed seeds, hence two runs with the same parameters value the same paths.
+ */
+public final class BenchmarkModels {
+
+	public static final String CURRENCY = "EUR";
+
+	public static final double LIBOR_PERIOD_LENGTH = 0.5;
+
+	private static final double SIMULATION_TIME_STEP = 0.1;
+
+	private static final int SEED = 31415;
+
+	private BenchmarkModels() {
+	}
+
+	/**
+	 * Create a LIBOR market model with AAD random variables, as required by the SIMM sensitivity calculation.
+	 *
+	 * @param numberOfPaths  The number of Monte-Carlo paths
+	 * @param numberOfLibors The number of LIBORs, each of period length 0.5
+	 * @return The simulation of the LIBOR market model.
+	 * @throws CalculationException Thrown if the model cannot be created.
+	 */
+	public static LIBORModelMonteCarloSimulationModel createLIBORMarketModelAAD(int numberOfPaths, int numberOfLibors) throws CalculationException {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("isGradientRetainsLeafNodesOnly", Boolean.FALSE);
+		return createLIBORMarketModel(new RandomVariableDifferentiableAADFactory(new RandomVariableFromArrayFactory(false), properties), numberOfPaths, numberOfLibors);
+	}
+
+	/**
+	 * Create a LIBOR market model with plain (non-differentiable) random variables.
+	 *
+	 * @param numberOfPaths  The number of Monte-Carlo paths
+	 * @param numberOfLibors The number of LIBORs, each of period length 0.5
+	 * @return The simulation of the LIBOR market model.
+	 * @throws CalculationException Thrown if the model cannot be created.
+	 */
+	public static LIBORModelMonteCarloSimulationModel createLIBORMarketModel(int numberOfPaths, int numberOfLibors) throws CalculationException {
+		return createLIBORMarketModel(new RandomVariableFromArrayFactory(false), numberOfPaths, numberOfLibors);
+	}
+
+	private static LIBORModelMonteCarloSimulationModel createLIBORMarketModel(RandomVariableFactory randomVariableFactory, int numberOfPaths, int numberOfLibors) throws CalculationException {
+		double lastTime = numberOfLibors * LIBOR_PERIOD_LENGTH;
+
+		DiscountCurveInterpolation discountCurve = createDiscountCurve(lastTime);
+		ForwardCurveInterpolation forwardCurve = createForwardCurve(lastTime);
+
+		TimeDiscretizationFromArray timeDiscretization = new TimeDiscretizationFromArray(0.0, (int) Math.round(lastTime / SIMULATION_TIME_STEP), SIMULATION_TIME_STEP);
+		TimeDiscretizationFromArray liborPeriodDiscretization = new TimeDiscretizationFromArray(0.0, numberOfLibors, LIBOR_PERIOD_LENGTH);
+
+		BrownianMotion brownianMotion = new BrownianMotionLazyInit(timeDiscretization, 1 /* numberOfFactors */, numberOfPaths, SEED, new RandomVariableFromArrayFactory(false));
+
+		// Constant volatility on a volatility grid scaled to the time horizon
+		TimeDiscretizationFromArray volatilityDiscretization = new TimeDiscretizationFromArray(0.0, lastTime / 10.0, lastTime / 5.0, lastTime / 2.0, lastTime);
+		double[] volatility = new double[]{0.008};
+		LIBORVolatilityModel volatilityModel = new LIBORVolatilityModelPiecewiseConstant(randomVariableFactory, timeDiscretization, liborPeriodDiscretization, volatilityDiscretization, volatilityDiscretization, volatility, false);
+
+		LIBORCorrelationModel correlationModel = new LIBORCorrelationModelExponentialDecay(timeDiscretization, liborPeriodDiscretization, 1 /* numberOfFactors */, 0.04 /* correlationDecayParameter */, false);
+
+		AbstractLIBORCovarianceModelParametric covarianceModel = new LIBORCovarianceModelFromVolatilityAndCorrelation(timeDiscretization, liborPeriodDiscretization, volatilityModel, correlationModel);
+		AbstractLIBORCovarianceModelParametric covarianceModelBlended = new BlendedLocalVolatilityModel(randomVariableFactory, covarianceModel, 0.5 /* displacementParameter */, false);
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("measure", LIBORMarketModelFromCovarianceModel.Measure.SPOT.name());
+		properties.put("stateSpace", LIBORMarketModelFromCovarianceModel.StateSpace.NORMAL.name());
+
+		LIBORMarketModel liborMarketModel = new LIBORMarketModelFromCovarianceModel(liborPeriodDiscretization,
+				new AnalyticModelFromCurvesAndVols(new Curve[]{new DiscountCurveFromForwardCurve(forwardCurve), discountCurve}),
+				forwardCurve, discountCurve, randomVariableFactory, covarianceModelBlended, new CalibrationProduct[0], properties);
+
+		EulerSchemeFromProcessModel process = new EulerSchemeFromProcessModel(liborMarketModel, brownianMotion, EulerSchemeFromProcessModel.Scheme.EULER_FUNCTIONAL);
+
+		return new LIBORMonteCarloSimulationFromLIBORModel(liborMarketModel, process);
+	}
+
+	/**
+	 * Create a portfolio of SIMM swaps. The swaps start at zero, their maturities cycle through the LIBOR
+	 * tenor structure and they alternate between payer and receiver.
+	 *
+	 * @param numberOfSwaps  The number of swaps
+	 * @param numberOfLibors The number of LIBORs of the model, bounding the maturities of the swaps
+	 * @return The swaps.
+	 */
+	public static AbstractSIMMProduct[] createSIMMSwaps(int numberOfSwaps, int numberOfLibors) {
+		AbstractSIMMProduct[] swaps = new AbstractSIMMProduct[numberOfSwaps];
+		for (int swapIndex = 0; swapIndex < numberOfSwaps; swapIndex++) {
+			int numberOfPeriods = getNumberOfPeriods(swapIndex, numberOfLibors);
+			double[] fixingDates = IntStream.range(0, numberOfPeriods).mapToDouble(i -> i * LIBOR_PERIOD_LENGTH).toArray();
+			double[] paymentDates = IntStream.range(0, numberOfPeriods).mapToDouble(i -> (i + 1) * LIBOR_PERIOD_LENGTH).toArray();
+			double[] swapRates = new double[numberOfPeriods];
+			Arrays.fill(swapRates, 0.01 + 0.001 * (swapIndex % 5));
+
+			swaps[swapIndex] = new SIMMSimpleSwap(fixingDates, paymentDates, swapRates, swapIndex % 2 == 0 /* isPayFix */, 100.0 /* notional */, new String[]{"OIS", "Libor6m"}, CURRENCY);
+		}
+		return swaps;
+	}
+
+	/**
+	 * Create a portfolio of regression swaps (<code>InitialMarginRegressionTest.createSwaps</code>) with maturities
+	 * cycling through the LIBOR tenor structure.
+	 *
+	 * @param numberOfSwaps  The number of swaps
+	 * @param numberOfLibors The number of LIBORs of the model, bounding the maturities of the swaps
+	 * @return The swaps.
+	 */
+	public static AbstractLIBORMonteCarloRegressionProduct[] createRegressionSwaps(int numberOfSwaps, int numberOfLibors) {
+		String[] maturities = new String[numberOfSwaps];
+		for (int swapIndex = 0; swapIndex < numberOfSwaps; swapIndex++) {
+			maturities[swapIndex] = getNumberOfPeriods(swapIndex, numberOfLibors) * 6 + "M";
+		}
+		return InitialMarginRegressionTest.createSwaps(maturities);
+	}
+
+	/**
+	 * Create the SIMM 2 gradient of a portfolio of approximate annuities on the 6M EUR Libor.
+	 *
+	 * @param numberOfTrades The number of trades
+	 * @param numberOfLibors The number of LIBORs of the model, bounding the maturities of the trades
+	 * @return The gradient product of the portfolio.
+	 */
+	public static GradientProduct<SimmCoordinate> createSimmGradientProduct(int numberOfTrades, int numberOfLibors) {
+		Set<GradientProduct<SimmCoordinate>> trades = new HashSet<>();
+		for (int tradeIndex = 0; tradeIndex < numberOfTrades; tradeIndex++) {
+			double maturity = getNumberOfPeriods(tradeIndex, numberOfLibors) * LIBOR_PERIOD_LENGTH;
+			double notional = (tradeIndex % 2 == 0 ? 1.0 : -1.0) * 1.0E6 * (1 + tradeIndex % 3);
+			trades.add(new ApproximateAnnuity(new SIMMTradeSpecification(notional, maturity, Indices.getLibor(CURRENCY, "6M"))));
+		}
+		return new GradientProductComposite<>(trades);
+	}
+
+	/**
+	 * The number of periods of the trade with the given index, cycling from two years up to the last LIBOR.
+	 */
+	private static int getNumberOfPeriods(int tradeIndex, int numberOfLibors) {
+		int minimumNumberOfPeriods = Math.min(4, numberOfLibors);
+		return minimumNumberOfPeriods + (3 * tradeIndex) % (numberOfLibors - minimumNumberOfPeriods + 1);
+	}
+
+	private static DiscountCurveInterpolation createDiscountCurve(double lastTime) {
+		double[] times = getCurveTimes(lastTime);
+		double[] discountFactors = Arrays.stream(times).map(t -> Math.exp(-getZeroRate(t) * t)).toArray();
+		return DiscountCurveInterpolation.createDiscountCurveFromDiscountFactors("OIS", times, discountFactors);
+	}
+
+	private static ForwardCurveInterpolation createForwardCurve(double lastTime) {
+		double[] fixingTimes = Arrays.stream(getCurveTimes(lastTime)).map(t -> t + LIBOR_PERIOD_LENGTH).toArray();
+		double[] forwards = Arrays.stream(fixingTimes).map(t -> getZeroRate(t) + 0.002).toArray();
+		return ForwardCurveInterpolation.createForwardCurveFromForwards("Libor6m", fixingTimes, forwards, LIBOR_PERIOD_LENGTH);
+	}
+
+	private static double[] getCurveTimes(double lastTime) {
+		return IntStream.rangeClosed(0, (int) Math.ceil(lastTime) + 1).mapToDouble(i -> i).toArray();
+	}
+
+	/**
+	 * An upward sloping zero rate curve, starting slightly negative.
+	 */
+	private static double getZeroRate(double time) {
+		return -0.003 + 0.02 * (1.0 - Math.exp(-time / 10.0));
+	}
+}
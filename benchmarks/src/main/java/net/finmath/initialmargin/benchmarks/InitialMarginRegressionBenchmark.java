@@ -0,0 +1,68 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.regression.InitialMarginForwardRegression;
+import net.finmath.initialmargin.regression.products.Portfolio;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+
+/**
+ * Benchmark of the regression based forward initial margin <code>InitialMarginForwardRegression.getInitialMargin</code>
+ * with the methods SIMPLE and LSQREGRESSION.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InitialMarginRegressionBenchmark {
+
+	@Param({"1000", "5000"})
+	public int numberOfPaths;
+
+	@Param({"40", "60"})
+	public int numberOfLibors;
+
+	@Param({"1", "10", "50"})
+	public int portfolioSize;
+
+	@Param({"SIMPLE", "LSQREGRESSION"})
+	public String method;
+
+	@Param({"2.0"})
+	public double evaluationTime;
+
+	private InitialMarginForwardRegression initialMarginModel;
+
+	@Setup(Level.Trial)
+	public void setUpPortfolio() throws CalculationException {
+		LIBORModelMonteCarloSimulationModel model = BenchmarkModels.createLIBORMarketModel(numberOfPaths, numberOfLibors);
+
+		double[] weights = new double[portfolioSize];
+		Arrays.fill(weights, 1.0);
+		Portfolio portfolio = new Portfolio(BenchmarkModels.createRegressionSwaps(portfolioSize, numberOfLibors), weights);
+
+		initialMarginModel = new InitialMarginForwardRegression(portfolio, model, 2 /* polynomialOrder */, method);
+	}
+
+	@Benchmark
+	public double getInitialMargin() throws CalculationException {
+		return initialMarginModel.getInitialMargin(evaluationTime);
+	}
+}
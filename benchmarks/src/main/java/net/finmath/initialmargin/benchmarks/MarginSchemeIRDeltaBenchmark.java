@@ -0,0 +1,69 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.aggregationscheme.CalculationSchemeInitialMarginISDA;
+import net.finmath.initialmargin.isdasimm.aggregationscheme.MarginSchemeIRDelta;
+import net.finmath.initialmargin.isdasimm.products.SIMMPortfolio;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Benchmark of the interest rate delta aggregation <code>MarginSchemeIRDelta.getValue</code> for a portfolio of swaps.
+ * The sensitivities of the products are calculated once during the set up (and kept in the caches of the products),
+ * hence the benchmark measures the netting and the aggregation of the sensitivities only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MarginSchemeIRDeltaBenchmark {
+
+	@Param({"1000", "5000"})
+	public int numberOfPaths;
+
+	@Param({"40", "60"})
+	public int numberOfLibors;
+
+	@Param({"1", "10", "50"})
+	public int portfolioSize;
+
+	@Param({"2.0"})
+	public double evaluationTime;
+
+	private MarginSchemeIRDelta marginScheme;
+
+	@Setup(Level.Trial)
+	public void setUpPortfolio() throws CalculationException {
+		LIBORModelMonteCarloSimulationModel model = BenchmarkModels.createLIBORMarketModelAAD(numberOfPaths, numberOfLibors);
+		SIMMPortfolio portfolio = new SIMMPortfolio(BenchmarkModels.createSIMMSwaps(portfolioSize, numberOfLibors), BenchmarkModels.CURRENCY);
+
+		// Calculates and caches the sensitivities of all products at the evaluation time
+		portfolio.getInitialMargin(evaluationTime, model, BenchmarkModels.CURRENCY, SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0 /* interpolationStep */, false /* isUseAnalyticSwapSensis */, true /* isConsiderOISSensis */);
+
+		marginScheme = new MarginSchemeIRDelta(new CalculationSchemeInitialMarginISDA(portfolio, BenchmarkModels.CURRENCY), "RATES_FX");
+	}
+
+	@Benchmark
+	public RandomVariable getValue() {
+		return marginScheme.getValue(evaluationTime);
+	}
+}
@@ -0,0 +1,71 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.sensitivities.transformation.TransformationAlgorithms;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Benchmark of the path-wise pseudo-inverse of a stochastic Jacobian, as used in the conversion of model sensitivities
+ * to market rate sensitivities. The matrix has one row per LIBOR and one column per SIMM maturity bucket, its
+ * realizations are drawn from a fixed seed and are diagonally dominant (i.e. of full rank).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PseudoInverseBenchmark {
+
+	private static final int NUMBER_OF_BUCKETS = 12;
+
+	@Param({"1000", "5000"})
+	public int numberOfPaths;
+
+	@Param({"40", "60"})
+	public int numberOfLibors;
+
+	private RandomVariable[][] matrix;
+
+	@Setup(Level.Trial)
+	public void setUpMatrix() {
+		Random random = new Random(3141);
+		matrix = new RandomVariable[numberOfLibors][NUMBER_OF_BUCKETS];
+		for (int row = 0; row < numberOfLibors; row++) {
+			for (int column = 0; column < NUMBER_OF_BUCKETS; column++) {
+				double diagonal = row * NUMBER_OF_BUCKETS / numberOfLibors == column ? 1.0 : 0.0;
+				double[] realizations = new double[numberOfPaths];
+				for (int path = 0; path < numberOfPaths; path++) {
+					realizations[path] = diagonal + 0.1 * random.nextGaussian();
+				}
+				matrix[row][column] = new RandomVariableFromDoubleArray(0.0, realizations);
+			}
+		}
+	}
+
+	@Benchmark
+	public RandomVariable[][] getPseudoInverseByParallelAcmSvd() {
+		return TransformationAlgorithms.getPseudoInverseByParallelAcmSvd(matrix);
+	}
+
+	@Benchmark
+	public RandomVariable[][] getPseudoInverseBatched() {
+		return TransformationAlgorithms.getPseudoInverseBatched(matrix);
+	}
+}
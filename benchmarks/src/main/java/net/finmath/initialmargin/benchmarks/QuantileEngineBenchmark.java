@@ -0,0 +1,71 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.finmath.initialmargin.regression.QuantileEngine;
+import net.finmath.initialmargin.regression.SelectionQuantileEngine;
+import net.finmath.initialmargin.regression.SketchQuantileEngine;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Benchmark of the 99% quantile of the clean portfolio value change, as used by the SIMPLE method of
+ * <code> InitialMarginForwardRegression </code>. The values are log-normal, drawn from a fixed seed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QuantileEngineBenchmark {
+
+	private static final double QUANTILE_LEVEL = 0.99;
+
+	@Param({"10000", "1000000"})
+	public int numberOfPaths;
+
+	private RandomVariable values;
+
+	private final QuantileEngine selectionQuantileEngine = new SelectionQuantileEngine();
+	private final QuantileEngine sketchQuantileEngine = new SketchQuantileEngine(1024);
+
+	@Setup(Level.Trial)
+	public void setUpValues() {
+		Random random = new Random(42);
+		double[] realizations = new double[numberOfPaths];
+		for (int path = 0; path < numberOfPaths; path++) {
+			realizations[path] = Math.exp(random.nextGaussian()) - 1.0;
+		}
+		values = new RandomVariableFromDoubleArray(0.0, realizations);
+	}
+
+	@Benchmark
+	public double getQuantileBySorting() {
+		return QuantileEngine.SORTING.getQuantile(values, QUANTILE_LEVEL);
+	}
+
+	@Benchmark
+	public double getQuantileBySelection() {
+		return selectionQuantileEngine.getQuantile(values, QUANTILE_LEVEL);
+	}
+
+	@Benchmark
+	public double getQuantileBySketch() {
+		return sketchQuantileEngine.getQuantile(values, QUANTILE_LEVEL);
+	}
+}
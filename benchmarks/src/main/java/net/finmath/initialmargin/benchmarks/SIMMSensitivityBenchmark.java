@@ -0,0 +1,77 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.SIMMSensitivityCalculation;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.optimizer.SolverException;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Benchmark of <code>SIMMSensitivityCalculation.getDeltaSensitivities</code> for every <code>SensitivityMode</code>.
+ * The sensitivity caches of the product and the shared Jacobian cache are cleared before every invocation,
+ * such that each invocation measures a cold calculation of the Libor6m delta of a swap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SIMMSensitivityBenchmark {
+
+	@Param({"1000", "5000"})
+	public int numberOfPaths;
+
+	@Param({"40", "60"})
+	public int numberOfLibors;
+
+	@Param({"MELTINGSIMMBUCKETS", "MELTINGSWAPRATEBUCKETS", "MELTINGLIBORBUCKETS", "INTERPOLATION", "EXACT", "EXACTCONSIDERINGDEPENDENCIES"})
+	public SensitivityMode sensitivityMode;
+
+	@Param({"2.0"})
+	public double evaluationTime;
+
+	private LIBORModelMonteCarloSimulationModel model;
+	private AbstractSIMMProduct product;
+	private SIMMSensitivityCalculation sensitivityCalculation;
+
+	@Setup(Level.Trial)
+	public void setUpModel() throws CalculationException {
+		model = BenchmarkModels.createLIBORMarketModelAAD(numberOfPaths, numberOfLibors);
+		product = BenchmarkModels.createSIMMSwaps(1, numberOfLibors)[0];
+
+		// Sets the gradient and the sensitivity calculation scheme of the product
+		product.getInitialMargin(0.0, model, BenchmarkModels.CURRENCY, sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0 /* interpolationStep */, false /* isUseAnalyticSwapSensis */, true /* isConsiderOISSensitivities */);
+		sensitivityCalculation = new SIMMSensitivityCalculation(sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0 /* interpolationStep */, model, false /* isUseAnalyticSwapSensitivities */, true /* isConsiderOISSensitivities */);
+	}
+
+	@Setup(Level.Invocation)
+	public void clearCaches() {
+		product.clearDeltaCache();
+		product.clearMaps();
+		sensitivityCalculation.clearRiskWeights(model);
+	}
+
+	@Benchmark
+	public RandomVariable[] getDeltaSensitivities() throws SolverException, CloneNotSupportedException, CalculationException {
+		return sensitivityCalculation.getDeltaSensitivities(product, "INTEREST_RATE", "Libor6m", evaluationTime, model);
+	}
+}
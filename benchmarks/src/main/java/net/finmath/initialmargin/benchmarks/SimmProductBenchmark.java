@@ -0,0 +1,61 @@
+package net.finmath.initialmargin.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.xva.initialmargin.simm2.SimmModality;
+import net.finmath.xva.initialmargin.simm2.SimmProduct;
+
+/**
+ * Benchmark of the SIMM 2 valuation <code>SimmProduct.getValue</code> of a portfolio of approximate annuities,
+ * i.e. the calculation of the gradient and its aggregation over all risk classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SimmProductBenchmark {
+
+	@Param({"1000", "5000"})
+	public int numberOfPaths;
+
+	@Param({"40", "60"})
+	public int numberOfLibors;
+
+	@Param({"1", "10", "50"})
+	public int portfolioSize;
+
+	@Param({"2.0"})
+	public double evaluationTime;
+
+	private LIBORModelMonteCarloSimulationModel model;
+	private SimmProduct product;
+
+	@Setup(Level.Trial)
+	public void setUpProduct() throws CalculationException {
+		model = BenchmarkModels.createLIBORMarketModelAAD(numberOfPaths, numberOfLibors);
+		product = new SimmProduct(evaluationTime, BenchmarkModels.createSimmGradientProduct(portfolioSize, numberOfLibors), new SimmModality(BenchmarkModels.CURRENCY, 0.0));
+	}
+
+	@Benchmark
+	public RandomVariable getValue() throws CalculationException {
+		return product.getValue(evaluationTime, model);
+	}
+}
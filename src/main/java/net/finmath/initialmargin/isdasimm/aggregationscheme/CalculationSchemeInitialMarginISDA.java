@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -19,6 +20,8 @@ import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct;
 import net.finmath.initialmargin.isdasimm.products.SIMMPortfolio;
 import net.finmath.initialmargin.isdasimm.products.SIMMSimpleSwap;
+import net.finmath.initialmargin.metrics.InitialMarginEvent;
+import net.finmath.initialmargin.metrics.Metrics;
 import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.optimizer.Optimizer;
@@ -159,20 +162,27 @@ public class CalculationSchemeInitialMarginISDA {
 	public Map<String, Double> resultMap;
 
 	private AbstractSIMMProduct[] products;
+	private Map<String, AbstractSIMMProduct[]> deltaSensitivityIndex;  // Inverted index: (product class, risk class, curve, currency) -> products with a delta sensitivity
+
+	private static final RandomVariable ZERO = new Scalar(0.0);
+
+	// Below this number of contributions the rows of a variance covariance aggregation are cheaper to calculate than to submit
+	private static final int MINIMUM_NUMBER_OF_CONCURRENT_ROWS = 16;
 
 	private ParameterCollection parameterCollection;
 	private String[] productClassKeys;
 	private String[] riskClassKeys;
 	private String[] IRCurveIndexNames;
 	private String calculationCCY;
+	private ExecutorService bucketExecutor;
 
 	// SIMM constructor
 	public CalculationSchemeInitialMarginISDA(SIMMPortfolio portfolio,
 			//ParameterCollection parameterCollection, /* Uncomment this line if parameter collection constructor does not contain hard values */
 			String calculationCCY) {
-		this.resultMap = new HashMap<>();
+		this.resultMap = new ConcurrentHashMap<>();
 		this.calculationCCY = calculationCCY;
-		this.products = portfolio.getProducts();
+		setProducts(portfolio.getSensitivityProducts());
 		this.parameterCollection = new ParameterCollection();
 
 		// Inserted by Mario Viehmann: Screen portfolio products for relevant product classes, risk classes and curveIndexNames
@@ -205,42 +215,103 @@ public class CalculationSchemeInitialMarginISDA {
 
 	// SIMM constructor
 	public CalculationSchemeInitialMarginISDA(AbstractSIMMProduct product, String calculationCCY) {
-		this.resultMap = new HashMap<>();
+		this.resultMap = new ConcurrentHashMap<>();
 		this.calculationCCY = calculationCCY;
 		this.parameterCollection = new ParameterCollection();
-		this.products = new AbstractSIMMProduct[]{product};
+		setProducts(new AbstractSIMMProduct[]{product});
 		this.productClassKeys = new String[]{product.getProductClass()};
 		this.riskClassKeys = product.getRiskClasses();
 		this.IRCurveIndexNames = product.getCurveIndexNames();
 	}
 
 	public RandomVariable getValue(double evaluationTime) throws CalculationException {
+		InitialMarginEvent event = new InitialMarginEvent();
+		event.begin();
+
 		RandomVariable SIMMValue = null;
 		for (String productClass : productClassKeys) { // RATES_FX, CREDIT etc.
 			RandomVariable SIMMProductValue = this.getSIMMProduct(productClass, evaluationTime);
 			SIMMValue = SIMMValue == null ? SIMMProductValue : SIMMValue.add(SIMMProductValue);
 		}
+
+		if (event.shouldCommit()) {
+			event.product = products.length == 1 ? Metrics.getProductName(products[0]) : "Portfolio(" + products.length + ")";
+			event.productClass = String.join(",", productClassKeys);
+			event.evaluationTime = evaluationTime;
+			event.sensitivityMode = String.valueOf(products[0].getSensitivityMode());
+			event.numberOfPaths = SIMMValue != null ? SIMMValue.size() : 0;
+			event.commit();
+		}
 		return SIMMValue;
 	}
 
+	/**
+	 * Calculates the SIMM at several evaluation times. The evaluation times are independent and are calculated concurrently
+	 * on the given executor. The time dependent state of the products is confined to the evaluating thread, hence the result
+	 * is identical to calling <code> getValue </code> for each time.
+	 *
+	 * @param evaluationTimes The evaluation times
+	 * @param executor        The executor (may be null, then the times are evaluated in the calling thread)
+	 * @return The SIMM value for each evaluation time
+	 * @throws CalculationException
+	 */
+	public RandomVariable[] getValues(double[] evaluationTimes, ExecutorService executor) throws CalculationException {
+
+		ArrayList<Future<RandomVariable>> valueFutures = new ArrayList<Future<RandomVariable>>(evaluationTimes.length);
+		for (int timeIndex = 0; timeIndex < evaluationTimes.length; timeIndex++) {
+			final double evaluationTime = evaluationTimes[timeIndex];
+			Callable<RandomVariable> worker = new Callable<RandomVariable>() {
+				@Override
+				public RandomVariable call() throws CalculationException {
+					try {
+						return getValue(evaluationTime);
+					} finally {
+						// The sensitivities of this time are not needed by the thread anymore
+						removeEvaluationState();
+					}
+				}
+			};
+			if (executor != null) {
+				valueFutures.add(executor.submit(worker));
+			} else {
+				FutureTask<RandomVariable> valueFutureTask = new FutureTask<RandomVariable>(worker);
+				valueFutureTask.run();
+				valueFutures.add(valueFutureTask);
+			}
+		}
+
+		RandomVariable[] values = new RandomVariable[evaluationTimes.length];
+		for (int timeIndex = 0; timeIndex < evaluationTimes.length; timeIndex++) {
+			try {
+				values[timeIndex] = valueFutures.get(timeIndex).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CalculationException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof CalculationException) {
+					throw (CalculationException) e.getCause();
+				}
+				throw new CalculationException(e.getCause());
+			}
+		}
+		return values;
+	}
+
 	// SIMM constructor (for calibration only)
 	public CalculationSchemeInitialMarginISDA(String calculationCCY) {
-		this.resultMap = new HashMap<>();
+		this.resultMap = new ConcurrentHashMap<>();
 		this.calculationCCY = calculationCCY;
 		this.parameterCollection = new ParameterCollection();
 	}
 
 	public RandomVariable getValue(AbstractSIMMProduct product, double evaluationTime) throws CalculationException {
-		RandomVariable SIMMValue = null;
-		this.products = new AbstractSIMMProduct[]{product};
+		setProducts(new AbstractSIMMProduct[]{product});
 		this.productClassKeys = new String[]{product.getProductClass()};
 		this.riskClassKeys = product.getRiskClasses();
 		this.IRCurveIndexNames = product.getCurveIndexNames();
-		for (String productClass : productClassKeys) { // RATES_FX, CREDIT etc.
-			RandomVariable SIMMProductValue = this.getSIMMProduct(productClass, evaluationTime);
-			SIMMValue = SIMMValue == null ? SIMMProductValue : SIMMValue.add(SIMMProductValue);
-		}
-		return SIMMValue;
+
+		// The calculation of the product is that of the scheme, including its InitialMarginEvent
+		return getValue(evaluationTime);
 	}
 
 	public void setRiskWeightsRegular(double[] weights) {
@@ -398,6 +469,96 @@ public class CalculationSchemeInitialMarginISDA {
 		return value;
 	}
 
+	/**
+	 * Calculates the variance covariance aggregation of the contributions, i.e. the square root of
+	 * &sum;<sub>i</sub> c<sub>i</sub> (c<sub>i</sub> + &sum;<sub>j &ne; i</sub> &rho;<sub>i,j</sub> c<sub>j</sub>). The rows of the sum are
+	 * calculated concurrently on the given executor and added by pairwise summation in the order of the contributions, hence the
+	 * result does not depend on the executor or its number of threads. Contributions which are null are skipped, if all
+	 * contributions are null (or there are none) the aggregation is zero.
+	 *
+	 * @param contributions The contributions
+	 * @param correlation   The correlation matrix (the diagonal is not used)
+	 * @param executor      The executor used to calculate the rows (may be null, then the rows are calculated in the calling thread).
+	 *                      The executor is only used for at least <code> MINIMUM_NUMBER_OF_CONCURRENT_ROWS </code> contributions.
+	 * @return The aggregated contributions
+	 */
+	public static RandomVariable getVarianceCovarianceAggregation(final RandomVariable[] contributions, final Double[][] correlation, ExecutorService executor) {
+		if (contributions.length < MINIMUM_NUMBER_OF_CONCURRENT_ROWS) {
+			executor = null;
+		}
+
+		ArrayList<Future<RandomVariable>> rowFutures = new ArrayList<Future<RandomVariable>>(contributions.length);
+		for (int i = 0; i < contributions.length; i++) {
+			final int rowIndex = i;
+			Callable<RandomVariable> worker = new Callable<RandomVariable>() {
+				@Override
+				public RandomVariable call() {
+					return getVarianceCovarianceRow(contributions, correlation, rowIndex);
+				}
+			};
+			if (executor != null) {
+				rowFutures.add(executor.submit(worker));
+			} else {
+				FutureTask<RandomVariable> rowFutureTask = new FutureTask<RandomVariable>(worker);
+				rowFutureTask.run();
+				rowFutures.add(rowFutureTask);
+			}
+		}
+
+		RandomVariable[] rows = new RandomVariable[contributions.length];
+		for (int i = 0; i < contributions.length; i++) {
+			rows[i] = getResult(rowFutures.get(i));
+		}
+		return getPairwiseSum(rows, 0, rows.length).sqrt();
+	}
+
+	private static RandomVariable getVarianceCovarianceRow(RandomVariable[] contributions, Double[][] correlation, int i) {
+		if (contributions[i] == null) {
+			return null;
+		}
+		RandomVariable correlatedSum = contributions[i];
+		for (int j = 0; j < contributions.length; j++) {
+			if (j != i && contributions[j] != null) {
+				correlatedSum = correlatedSum.addProduct(contributions[j], correlation[i][j]);
+			}
+		}
+		return contributions[i].mult(correlatedSum);
+	}
+
+	/**
+	 * Adds the summands in [from, to) by pairwise summation, skipping null summands. The rounding error grows with the logarithm
+	 * of the number of summands instead of linearly. The sum of an empty range or of null summands only is <code> ZERO </code>.
+	 */
+	private static RandomVariable getPairwiseSum(RandomVariable[] summands, int from, int to) {
+		if (to - from <= 1) {
+			return to > from && summands[from] != null ? summands[from] : ZERO;
+		}
+		int middle = (from + to) >>> 1;
+		RandomVariable left = getPairwiseSum(summands, from, middle);
+		RandomVariable right = getPairwiseSum(summands, middle, to);
+		return left == ZERO ? right : right == ZERO ? left : left.add(right);
+	}
+
+	/**
+	 * Returns the result of a future of the aggregation. Runtime exceptions of the calculation are rethrown.
+	 *
+	 * @param future The future
+	 * @return The result of the future
+	 */
+	static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
 	public static RandomVariable getVarianceCovarianceAggregation(RandomVariable[] contributions, Double correlation) {
 		int i = 0;
 		RandomVariable value = null;
@@ -419,9 +580,66 @@ public class CalculationSchemeInitialMarginISDA {
 		return value;
 	}
 
+	/**
+	 * Sets the products of this scheme and builds the inverted index from product class, risk class, curve and currency
+	 * to the products having an interest rate delta sensitivity on this curve in this currency.
+	 *
+	 * @param products The products
+	 */
+	private void setProducts(AbstractSIMMProduct[] products) {
+		Map<String, ArrayList<AbstractSIMMProduct>> index = new HashMap<String, ArrayList<AbstractSIMMProduct>>();
+		for (AbstractSIMMProduct product : products) {
+			for (String riskClass : product.getRiskClasses()) {
+				for (String curveIndexName : product.getCurveIndexNames()) {
+					String key = getDeltaSensitivityKey(product.getProductClass(), riskClass, curveIndexName, product.getCurrency());
+					index.computeIfAbsent(key, k -> new ArrayList<AbstractSIMMProduct>()).add(product);
+				}
+			}
+		}
+		this.deltaSensitivityIndex = index.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().toArray(new AbstractSIMMProduct[0])));
+		this.products = products;
+	}
+
+	private static String getDeltaSensitivityKey(String productClassKey, String riskClassKey, String riskFactor, String bucketKey) {
+		return productClassKey + "|" + riskClassKey + "|" + riskFactor + "|" + bucketKey;
+	}
+
+	/**
+	 * Returns true if at least one product has an interest rate delta sensitivity for the given keys. Otherwise the net
+	 * sensitivity is a structural zero on all maturity buckets.
+	 *
+	 * @param productClassKey The product class
+	 * @param riskClassKey    The risk class
+	 * @param riskFactor      The curve index name
+	 * @param bucketKey       The currency
+	 * @return True if the net delta sensitivity may be non-zero
+	 */
+	public boolean hasNetDeltaSensitivity(String productClassKey, String riskClassKey, String riskFactor, String bucketKey) {
+		return deltaSensitivityIndex.containsKey(getDeltaSensitivityKey(productClassKey, riskClassKey, riskFactor, bucketKey));
+	}
+
 	// BUCKET IS CURRENCY FOR IR   risk Factor = index Name (e.g. Libor6m)
 	public RandomVariable getNetSensitivity(String productClassKey, String riskClassKey, String maturityBucket, String riskFactor, String bucketKey, String riskType, double atTime) {
 
+		if (riskType.equals("delta") && riskClassKey.equals("INTEREST_RATE")) {
+			// Only the products of the index contribute, all others have a zero sensitivity
+			AbstractSIMMProduct[] contributingProducts = deltaSensitivityIndex.get(getDeltaSensitivityKey(productClassKey, riskClassKey, riskFactor, bucketKey));
+			if (contributingProducts == null) {
+				return ZERO;
+			}
+
+			RandomVariable netSensitivity = null;
+			for (AbstractSIMMProduct product : contributingProducts) {
+				try {
+					RandomVariable sensitivity = product.getSensitivity(productClassKey, riskClassKey, maturityBucket, riskFactor, bucketKey, riskType, atTime);
+					netSensitivity = netSensitivity == null ? sensitivity : netSensitivity.add(sensitivity);
+				} catch (SolverException | CloneNotSupportedException | CalculationException e) {
+					throw new IllegalArgumentException(e);
+				}
+			}
+			return netSensitivity;
+		}
+
 		RandomVariable isdasimmsensiofAllProducts = Stream.of(products).map(
 				product -> {
 					try {
@@ -439,6 +657,34 @@ public class CalculationSchemeInitialMarginISDA {
 		return isdasimmsensiofAllProducts;
 	}
 
+	/**
+	 * Removes the time dependent evaluation state of the products in the calling thread.
+	 */
+	public void removeEvaluationState() {
+		for (AbstractSIMMProduct product : products) {
+			product.removeEvaluationState();
+		}
+	}
+
+	/**
+	 * Returns the executor on which the currency buckets of the interest rate delta margin are evaluated.
+	 *
+	 * @return The bucket executor (null if the buckets are evaluated in the calling thread)
+	 */
+	public ExecutorService getBucketExecutor() {
+		return bucketExecutor;
+	}
+
+	/**
+	 * Sets the executor on which the currency buckets of the interest rate delta margin are evaluated. Since the evaluating thread
+	 * waits for the buckets, this executor must not be the executor passed to <code> getValues </code> if that one is bounded.
+	 *
+	 * @param bucketExecutor The bucket executor (may be null, then the buckets are evaluated in the calling thread)
+	 */
+	public void setBucketExecutor(ExecutorService bucketExecutor) {
+		this.bucketExecutor = bucketExecutor;
+	}
+
 	public String[] getIRCurveIndexNames() {
 		return this.IRCurveIndexNames;
 	}
@@ -1,8 +1,15 @@
 package net.finmath.initialmargin.isdasimm.aggregationscheme;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import net.finmath.initialmargin.metrics.Metrics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
 import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.stochastic.RandomVariable;
 import net.finmath.stochastic.Scalar;
@@ -42,19 +49,42 @@ public class MarginSchemeIRDelta {
 			return new RandomVariableFromDoubleArray(atTime, 0.0);
 		}
 
+		// The currency buckets are independent until the cross currency aggregation
+		final ExecutorService executor = calculationSchemeInitialMarginISDA.getBucketExecutor();
+		final boolean isConcurrent = executor != null && this.bucketKeys.length > 1;
+		ArrayList<Future<RandomVariable[]>> bucketFutures = new ArrayList<Future<RandomVariable[]>>(this.bucketKeys.length);
+		for (final String bucketKey : this.bucketKeys) {
+			Callable<RandomVariable[]> worker = new Callable<RandomVariable[]>() {
+				@Override
+				public RandomVariable[] call() {
+					try {
+						return getBucketContributions(bucketKey, atTime);
+					} finally {
+						if (isConcurrent) {
+							// The sensitivities of this time are not needed by the executor thread anymore
+							calculationSchemeInitialMarginISDA.removeEvaluationState();
+						}
+					}
+				}
+			};
+			if (isConcurrent) {
+				bucketFutures.add(executor.submit(worker));
+			} else {
+				FutureTask<RandomVariable[]> bucketFutureTask = new FutureTask<RandomVariable[]>(worker);
+				bucketFutureTask.run();
+				bucketFutures.add(bucketFutureTask);
+			}
+		}
+
 		RandomVariable[] S1Contributions = new RandomVariable[this.bucketKeys.length];
 		RandomVariable[] KContributions = new RandomVariable[this.bucketKeys.length];
-		int i = 0;
-
 		RandomVariable[] concentrationFactors = new RandomVariable[this.bucketKeys.length];
-		for (String bucketKey : this.bucketKeys) {
-			RandomVariable[][] netSensitivities = this.getNetSensitivities(bucketKey, atTime);
-			concentrationFactors[i] = getConcentrationRiskFactor(bucketKey, netSensitivities, atTime);
-			RandomVariable K1 = this.getAggregatedSensitivityForBucket(bucketKey, netSensitivities, concentrationFactors[i], atTime);
-			RandomVariable S1 = this.getFactorS(bucketKey, K1, netSensitivities, concentrationFactors[i], atTime);
-			S1Contributions[i] = S1;
-			KContributions[i] = K1;
-			i++;
+		int i;
+		for (i = 0; i < this.bucketKeys.length; i++) {
+			RandomVariable[] bucketContributions = CalculationSchemeInitialMarginISDA.getResult(bucketFutures.get(i));
+			concentrationFactors[i] = bucketContributions[0];
+			KContributions[i] = bucketContributions[1];
+			S1Contributions[i] = bucketContributions[2];
 		}
 
 		RandomVariable deltaMargin = null;
@@ -70,7 +100,7 @@ public class MarginSchemeIRDelta {
 				}
 			}
 		}
-		VarCovar = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(S1Contributions, correlationMatrix);
+		VarCovar = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(S1Contributions, correlationMatrix, executor);
 
 
 		/*Adjustment on Diagonal*/
@@ -87,6 +117,23 @@ public class MarginSchemeIRDelta {
 		return deltaMargin;
 	}
 
+	/**
+	 * Calculates the contributions of a currency bucket to the delta margin.
+	 *
+	 * @param bucketKey The currency
+	 * @param atTime    The evaluation time
+	 * @return The concentration risk factor, the aggregated sensitivity K and the factor S of the bucket
+	 */
+	private RandomVariable[] getBucketContributions(String bucketKey, double atTime) {
+		Metrics.Timer timer = Metrics.startTimer();
+		RandomVariable[][] netSensitivities = this.getNetSensitivities(bucketKey, atTime);
+		RandomVariable concentrationFactor = getConcentrationRiskFactor(bucketKey, netSensitivities, atTime);
+		RandomVariable K1 = this.getAggregatedSensitivityForBucket(bucketKey, netSensitivities, concentrationFactor, atTime);
+		RandomVariable S1 = this.getFactorS(bucketKey, K1, netSensitivities, concentrationFactor, atTime);
+		Metrics.stopTimer(timer, Stage.BUCKET_AGGREGATION, bucketKey, atTime);
+		return new RandomVariable[]{concentrationFactor, K1, S1};
+	}
+
 	private RandomVariable[][] getNetSensitivities(String bucketKey, double atTime) {
 		int nTenors = calculationSchemeInitialMarginISDA.getParameterCollection().IRMaturityBuckets.length;
 		int nCurves = calculationSchemeInitialMarginISDA.getParameterCollection().IRCurveIndexNames.length; //calculationSchemeInitialMarginISDA.getIRCurveIndexNames().length;
@@ -94,6 +141,9 @@ public class MarginSchemeIRDelta {
 
 		for (int iCurve = 0; iCurve < nCurves; iCurve++) {
 			String curveKey = calculationSchemeInitialMarginISDA.getParameterCollection().IRCurveIndexNames[iCurve];
+			if (!calculationSchemeInitialMarginISDA.hasNetDeltaSensitivity(this.productClassKey, this.riskClassKey, curveKey, bucketKey)) {
+				continue; // Structural zero: no product has a sensitivity on this curve, the net sensitivities are left null and skipped in the aggregation
+			}
 
 			for (int iTenor = 0; iTenor < nTenors; iTenor++) {
 				String maturityBucketKey = calculationSchemeInitialMarginISDA.getParameterCollection().IRMaturityBuckets[iTenor];
@@ -136,6 +186,10 @@ public class MarginSchemeIRDelta {
 		double riskWeight = 0;
 
 		if (!indexName.equals("inflation") && !indexName.equals("ccybasis")) {
+			RandomVariable netSensi = netSensitivities[iIndex][iRateTenor];
+			if (netSensi == null) {
+				return null; // Structural zero, skipped in the aggregation
+			}
 			Optional<Map.Entry<String, String>> optional = calculationSchemeInitialMarginISDA.getParameterCollection().IRCurrencyMap.entrySet().stream().filter(entry -> entry.getKey().contains(bucketKey)).findAny();
 			String currencyMapKey;
 			if (!optional.isPresent()) {
@@ -146,13 +200,7 @@ public class MarginSchemeIRDelta {
 			currencyMapKey = currencyMapKey.replace("_Traded", "").replace("_Well", "").replace("_Less", "");
 			Double[] riskWeights = calculationSchemeInitialMarginISDA.getParameterCollection().MapRiskClassRiskweightMap.get(riskTypeKey).get("INTEREST_RATE").get(currencyMapKey)[0];
 			riskWeight = riskWeights[iRateTenor];
-			RandomVariable netSensi = netSensitivities[iIndex][iRateTenor];
-			if (netSensi != null) {
-				return netSensi.mult(riskWeight).mult(concentrationRiskFactor);
-			} else {
-				// @TODO: Should use factory here
-				return new RandomVariableFromDoubleArray(atTime, 0.0);
-			}
+			return netSensi.mult(riskWeight).mult(concentrationRiskFactor);
 		} else { /* Inflation or CCYBasis*/
 			riskWeight = calculationSchemeInitialMarginISDA.getParameterCollection().MapRiskClassRiskweightMap.get(riskTypeKey).get("INTEREST_RATE").get(indexName)[0][0];
 			String maturityBucket = calculationSchemeInitialMarginISDA.getParameterCollection().IRMaturityBuckets[iRateTenor];
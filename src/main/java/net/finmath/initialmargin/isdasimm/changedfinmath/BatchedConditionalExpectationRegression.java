@@ -0,0 +1,201 @@
+package net.finmath.initialmargin.isdasimm.changedfinmath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.ConditionalExpectationEstimator;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Conditional expectation estimator by regression on a set of basis functions, projecting many random variables at once.
+ * <p>
+ * The normal equations <i>X<sup>T</sup>X &beta; = X<sup>T</sup>y</i> share the matrix <i>X<sup>T</sup>X</i> for all dependents <i>y</i>.
+ * It is factorised (by a singular value decomposition, as in finmath-lib's <code>MonteCarloConditionalExpectationRegression</code>)
+ * once upon first use. A batch of dependents is then projected in one pass over the paths, followed by a multiplication with the
+ * pseudo-inverse of <i>X<sup>T</sup>X</i> per dependent, i.e. the cost of an additional dependent is that of a back-substitution.
+ * <p>
+ * As in <code>MonteCarloConditionalExpectationRegression</code> the normal equations are formed from averages over the paths and
+ * deterministic basis functions and dependents are broadcast to the paths of the other, hence the conditional expectation of a
+ * stochastic random variable on deterministic basis functions (e.g. at time 0) is its expectation.
+ * <p>
+ * Basis functions which are zero on all paths are ignored. The conditional expectations are plain random variables, i.e. they are not
+ * recorded by automatic differentiation.
+ */
+public class BatchedConditionalExpectationRegression implements ConditionalExpectationEstimator {
+
+	private final double[][] basisFunctions; // basisFunctions[i][path]
+	private final int numberOfPaths;
+	private final double filtrationTime;
+
+	private double[][] normalMatrixInverse;
+
+	/**
+	 * Creates a conditional expectation estimator for the given basis functions.
+	 *
+	 * @param basisFunctions The basis functions (predictor variables), measurable w.r.t. the filtration the expectation is conditioned on.
+	 */
+	public BatchedConditionalExpectationRegression(RandomVariable[] basisFunctions) {
+		int numberOfPaths = 1;
+		double filtrationTime = Double.NEGATIVE_INFINITY;
+		final List<RandomVariable> nonZeroBasisFunctions = new ArrayList<>();
+		for (RandomVariable basisFunction : basisFunctions) {
+			if (basisFunction.getMin() == 0.0 && basisFunction.getMax() == 0.0) {
+				continue;
+			}
+			nonZeroBasisFunctions.add(basisFunction);
+			numberOfPaths = Math.max(numberOfPaths, basisFunction.size());
+			filtrationTime = Math.max(filtrationTime, basisFunction.getFiltrationTime());
+		}
+
+		this.numberOfPaths = numberOfPaths;
+		this.filtrationTime = filtrationTime;
+		this.basisFunctions = new double[nonZeroBasisFunctions.size()][];
+		for (int i = 0; i < this.basisFunctions.length; i++) {
+			this.basisFunctions[i] = getRealizations(nonZeroBasisFunctions.get(i), numberOfPaths);
+		}
+	}
+
+	@Override
+	public RandomVariable getConditionalExpectation(RandomVariable randomVariable) {
+		return getConditionalExpectations(new RandomVariable[] { randomVariable })[0];
+	}
+
+	/**
+	 * Calculates the conditional expectations of a batch of random variables.
+	 *
+	 * @param randomVariables The random variables (dependents). Null entries are treated as zero.
+	 * @return The conditional expectations, in the order of the given random variables.
+	 */
+	public RandomVariable[] getConditionalExpectations(RandomVariable[] randomVariables) {
+		final double[][] regressionParameters = getLinearRegressionParameters(randomVariables);
+
+		final RandomVariable[] conditionalExpectations = new RandomVariable[randomVariables.length];
+		for (int j = 0; j < randomVariables.length; j++) {
+			final double[] parameters = regressionParameters[j];
+			final double[] values = new double[numberOfPaths];
+			for (int i = 0; i < basisFunctions.length; i++) {
+				final double[] basisFunction = basisFunctions[i];
+				final double parameter = parameters[i];
+				for (int path = 0; path < numberOfPaths; path++) {
+					values[path] += parameter * basisFunction[path];
+				}
+			}
+			conditionalExpectations[j] = numberOfPaths == 1 ? new RandomVariableFromDoubleArray(filtrationTime, values[0]) : new RandomVariableFromDoubleArray(filtrationTime, values);
+		}
+		return conditionalExpectations;
+	}
+
+	/**
+	 * Calculates the regression parameters <i>&beta;</i> of a batch of random variables, i.e. the solutions of the normal equations.
+	 *
+	 * @param randomVariables The random variables (dependents). Null entries are treated as zero.
+	 * @return The array <code>parameters[j][i]</code> of the parameter of basis function <code>i</code> for the random variable <code>j</code>.
+	 */
+	public double[][] getLinearRegressionParameters(RandomVariable[] randomVariables) {
+		final double[][] inverse = getNormalMatrixInverse();
+		final int numberOfBasisFunctions = basisFunctions.length;
+
+		// X^T y / n for all dependents, one pass over the realizations of each dependent
+		final double[][] projections = new double[randomVariables.length][numberOfBasisFunctions];
+		for (int j = 0; j < randomVariables.length; j++) {
+			final RandomVariable randomVariable = randomVariables[j];
+			if (randomVariable == null) {
+				continue;
+			}
+			final double[] projection = projections[j];
+			if (randomVariable.isDeterministic()) {
+				final double value = randomVariable.get(0);
+				for (int i = 0; i < numberOfBasisFunctions; i++) {
+					double sum = 0.0;
+					for (double basisFunctionValue : basisFunctions[i]) {
+						sum += basisFunctionValue;
+					}
+					projection[i] = sum / numberOfPaths * value;
+				}
+			} else if (numberOfPaths == 1) {
+				// Deterministic basis functions: the projection is the basis function times the average of the dependent
+				final double average = randomVariable.getAverage();
+				for (int i = 0; i < numberOfBasisFunctions; i++) {
+					projection[i] = basisFunctions[i][0] * average;
+				}
+			} else {
+				final double[] dependents = randomVariable.getRealizations();
+				if (dependents.length != numberOfPaths) {
+					throw new IllegalArgumentException("The random variable has " + dependents.length + " paths, the basis functions have " + numberOfPaths + ".");
+				}
+				for (int i = 0; i < numberOfBasisFunctions; i++) {
+					final double[] basisFunction = basisFunctions[i];
+					double sum = 0.0;
+					for (int path = 0; path < numberOfPaths; path++) {
+						sum += basisFunction[path] * dependents[path];
+					}
+					projection[i] = sum / numberOfPaths;
+				}
+			}
+		}
+
+		final double[][] parameters = new double[randomVariables.length][numberOfBasisFunctions];
+		for (int j = 0; j < randomVariables.length; j++) {
+			for (int i = 0; i < numberOfBasisFunctions; i++) {
+				double sum = 0.0;
+				for (int k = 0; k < numberOfBasisFunctions; k++) {
+					sum += inverse[i][k] * projections[j][k];
+				}
+				parameters[j][i] = sum;
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * @return The pseudo-inverse of <i>X<sup>T</sup>X / n</i>, calculated upon first use.
+	 */
+	private synchronized double[][] getNormalMatrixInverse() {
+		if (normalMatrixInverse == null) {
+			final int numberOfBasisFunctions = basisFunctions.length;
+			if (numberOfBasisFunctions == 0) {
+				normalMatrixInverse = new double[0][0];
+				return normalMatrixInverse;
+			}
+
+			final double[][] normalMatrix = new double[numberOfBasisFunctions][numberOfBasisFunctions];
+			for (int i = 0; i < numberOfBasisFunctions; i++) {
+				for (int k = 0; k <= i; k++) {
+					double sum = 0.0;
+					for (int path = 0; path < numberOfPaths; path++) {
+						sum += basisFunctions[i][path] * basisFunctions[k][path];
+					}
+					normalMatrix[i][k] = sum / numberOfPaths;
+					normalMatrix[k][i] = sum / numberOfPaths;
+				}
+			}
+			normalMatrixInverse = new SingularValueDecomposition(MatrixUtils.createRealMatrix(normalMatrix)).getSolver().getInverse().getData();
+		}
+		return normalMatrixInverse;
+	}
+
+	public int getNumberOfBasisFunctions() {
+		return basisFunctions.length;
+	}
+
+	/**
+	 * @return The memory of the realizations of the basis functions, 8 bytes per path of every basis function.
+	 */
+	public long getSizeInBytes() {
+		return 8L * basisFunctions.length * numberOfPaths;
+	}
+
+	private static double[] getRealizations(RandomVariable randomVariable, int numberOfPaths) {
+		if (randomVariable.isDeterministic()) {
+			final double[] realizations = new double[numberOfPaths];
+			Arrays.fill(realizations, randomVariable.get(0));
+			return realizations;
+		}
+		return randomVariable.getRealizations();
+	}
+}
@@ -0,0 +1,188 @@
+package net.finmath.initialmargin.isdasimm.changedfinmath;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.metrics.Metrics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * A cache of conditional expectation estimators shared by all products valued under one model.
+ * <p>
+ * Products regressing on the same basis functions at the same time (e.g. the short and the long LIBOR at the evaluation time)
+ * obtain the same <code> BatchedConditionalExpectationRegression </code>, i.e. the regression matrix is set up and factorised
+ * once per time step and not once per product. An estimator is identified by the evaluation time, a specification of the basis
+ * functions (compared by <code> equals </code>) and an indicator restricting the regression to a set of paths (compared by identity).
+ * <p>
+ * The caches are held weakly by their model and are released together with the model. While the model is alive, the estimators of
+ * all times are retained (a profile or an MVA evaluates the same times for every product), together with the indicators they are keyed by.
+ * The memory of the retained basis functions is bounded by <code> getMaximumSizeInBytes() </code>, the least recently used estimators
+ * are evicted first.
+ */
+public final class RegressionBasisCache {
+
+	/**
+	 * Provides the basis functions of an estimator which is not yet cached.
+	 */
+	@FunctionalInterface
+	public interface BasisFunctionsProvider {
+		RandomVariable[] getBasisFunctions() throws CalculationException;
+	}
+
+	public static final long DEFAULT_MAXIMUM_SIZE_IN_BYTES = 1L << 28;
+
+	private static final Map<LIBORModelMonteCarloSimulationModel, RegressionBasisCache> caches = new WeakHashMap<>();
+
+	private final LinkedHashMap<Key, BatchedConditionalExpectationRegression> estimators = new LinkedHashMap<>(16, 0.75f, true /* access order */);
+	private long maximumSizeInBytes = DEFAULT_MAXIMUM_SIZE_IN_BYTES;
+	private long sizeInBytes;
+
+	private RegressionBasisCache() {
+	}
+
+	/**
+	 * Get the cache of the given model.
+	 *
+	 * @param model The LIBOR market model
+	 * @return The cache of conditional expectation estimators of the model
+	 */
+	public static RegressionBasisCache getInstance(LIBORModelMonteCarloSimulationModel model) {
+		synchronized (caches) {
+			return caches.computeIfAbsent(model, m -> new RegressionBasisCache());
+		}
+	}
+
+	/**
+	 * Get the conditional expectation estimator for the given time and basis functions. If the estimator is not cached,
+	 * it is created from the basis functions of the provider.
+	 *
+	 * @param evaluationTime      The time of the conditional expectation
+	 * @param basisSpecification  The specification of the basis functions, identifying the basis functions at a given time
+	 * @param indicator           (may be null) The indicator the basis functions are restricted with, compared by identity
+	 * @param basisFunctions      The provider of the basis functions
+	 * @return The conditional expectation estimator
+	 * @throws CalculationException
+	 */
+	public BatchedConditionalExpectationRegression getConditionalExpectationEstimator(double evaluationTime, Object basisSpecification,
+			RandomVariable indicator, BasisFunctionsProvider basisFunctions) throws CalculationException {
+		Key key = new Key(evaluationTime, basisSpecification, indicator);
+		BatchedConditionalExpectationRegression estimator;
+		synchronized (estimators) {
+			estimator = estimators.get(key);
+		}
+		// The estimator is shared by the products, hence it is reported for the time only.
+		Metrics.recordCacheAccess(Stage.CONDITIONAL_EXPECTATION, null, evaluationTime, estimator != null);
+		if (estimator != null) {
+			return estimator;
+		}
+
+		// Concurrent callers may both create the estimator, the first one is kept.
+		Metrics.Timer timer = Metrics.startTimer();
+		estimator = new BatchedConditionalExpectationRegression(basisFunctions.getBasisFunctions());
+		Metrics.stopTimer(timer, Stage.CONDITIONAL_EXPECTATION, null, evaluationTime);
+		synchronized (estimators) {
+			BatchedConditionalExpectationRegression cachedEstimator = estimators.putIfAbsent(key, estimator);
+			if (cachedEstimator != null) {
+				return cachedEstimator;
+			}
+			sizeInBytes += estimator.getSizeInBytes();
+			evict(estimator);
+		}
+		return estimator;
+	}
+
+	public int size() {
+		synchronized (estimators) {
+			return estimators.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (estimators) {
+			estimators.clear();
+			sizeInBytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the memory of the basis functions of the cached estimators, 8 bytes per path of every basis function.
+	 *
+	 * @return The size of the cached estimators in bytes.
+	 */
+	public long getSizeInBytes() {
+		synchronized (estimators) {
+			return sizeInBytes;
+		}
+	}
+
+	public long getMaximumSizeInBytes() {
+		synchronized (estimators) {
+			return maximumSizeInBytes;
+		}
+	}
+
+	/**
+	 * Sets the maximum memory of the cached estimators. The most recently created estimator is always kept, also if it alone exceeds
+	 * the maximum size.
+	 *
+	 * @param maximumSizeInBytes The maximum size of the cached estimators in bytes.
+	 */
+	public void setMaximumSizeInBytes(long maximumSizeInBytes) {
+		if (maximumSizeInBytes < 1) {
+			throw new IllegalArgumentException("The maximum size must be positive.");
+		}
+		synchronized (estimators) {
+			this.maximumSizeInBytes = maximumSizeInBytes;
+			evict(null);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used estimators other than the given one until the cache fits. Called while holding the lock.
+	 */
+	private void evict(BatchedConditionalExpectationRegression estimatorToKeep) {
+		Iterator<BatchedConditionalExpectationRegression> cachedEstimators = estimators.values().iterator();
+		while (sizeInBytes > maximumSizeInBytes && cachedEstimators.hasNext()) {
+			BatchedConditionalExpectationRegression eldest = cachedEstimators.next();
+			if (eldest != estimatorToKeep) {
+				sizeInBytes -= eldest.getSizeInBytes();
+				cachedEstimators.remove();
+			}
+		}
+	}
+
+	private static final class Key {
+		private final double evaluationTime;
+		private final Object basisSpecification;
+		private final RandomVariable indicator;
+
+		private Key(double evaluationTime, Object basisSpecification, RandomVariable indicator) {
+			this.evaluationTime = evaluationTime;
+			this.basisSpecification = basisSpecification;
+			this.indicator = indicator;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return Double.compare(evaluationTime, key.evaluationTime) == 0 && indicator == key.indicator && Objects.equals(basisSpecification, key.basisSpecification);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * Double.hashCode(evaluationTime) + Objects.hashCode(basisSpecification)) + System.identityHashCode(indicator);
+		}
+	}
+}
@@ -3,21 +3,26 @@ package net.finmath.initialmargin.isdasimm.products;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.lang3.ArrayUtils;
 
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.aggregationscheme.CalculationSchemeInitialMarginISDA;
+import net.finmath.initialmargin.isdasimm.changedfinmath.BatchedConditionalExpectationRegression;
 import net.finmath.initialmargin.isdasimm.changedfinmath.LIBORMarketModelFromCovarianceModelUtilities;
+import net.finmath.initialmargin.isdasimm.changedfinmath.RegressionBasisCache;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.SIMMJacobianCache;
 import net.finmath.initialmargin.isdasimm.sensitivity.SIMMSensitivityCalculation;
+import net.finmath.initialmargin.metrics.ExactDeltaCacheEvent;
+import net.finmath.initialmargin.metrics.Metrics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
 import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.montecarlo.automaticdifferentiation.RandomVariableDifferentiable;
 import net.finmath.montecarlo.interestrate.LIBORMarketModel;
@@ -63,7 +68,7 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	private String bucketKey;         // can be null (e.g. in risk class INTEREST_RATE it is null because the bucket is given by the currency
 
 	// Further variables
-	protected Map<Long, RandomVariable> gradient = null;// Same for all evaluationTimes; Is reset for different products
+	protected SIMMGradient gradient = null;// Same for all evaluationTimes; Is reset for different products
 	protected boolean isGradientOfDeliveryProduct = false;
 	protected RandomVariable exerciseIndicator;
 	/*
@@ -71,29 +76,29 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	 * Thus, we can check if the model has changed. If it has changed, we have to re-calculate the gradient and clear the sensitivity maps.
 	 */
 	protected LIBORModelMonteCarloSimulationModel modelCache;
-	protected double lastEvaluationTime = -1;
-	protected ConditionalExpectationEstimator conditionalExpectationOperator;
 	protected AbstractSIMMSensitivityCalculation sensitivityCalculationScheme;
 	private CalculationSchemeInitialMarginISDA simmScheme;
+	private SIMMJacobianCache jacobianCache; // If not null, the model-to-market Jacobians are shared with the other products using this cache
 
 	public static final String[] IRMaturityBuckets = {"2w", "1m", "3m", "6m", "1y", "2y", "3y", "5y", "10y", "15y", "20y", "30y"};
 
+	private static final String LIBOR_REGRESSION_BASIS = "ShortAndLongLibor(order=2)"; // The basis of getLiborRegressionEstimator in the RegressionBasisCache
+
 	// Define the sensitivity maps.
 	/**
-	 * The map of delta sensitivities at a specific time. This map is filled once per evaluation time step and the
-	 * function <code> getSensitivity </code> defined in class <code> AbstractSIMMProduct </code> which is called in
-	 * <code> MarginSchemeIRDelta </code> picks the sensitivies for a specified riskClass, curveIndexName and maturityBucket
-	 * from this map. This map may - in contrast to the second map "exactDeltaCache" - contain interpolated sensitivities.
+	 * The state of the evaluation at a specific time, see <code> EvaluationState </code>. The state is confined to the
+	 * evaluating thread, hence different evaluation times may be calculated concurrently (see <code> getInitialMarginProfile </code>).
 	 */
-	private HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/,
-	HashMap<String/*maturityBucket*/, RandomVariable>>>> deltaAtTime = new HashMap<String, List<HashMap<String, HashMap<String, RandomVariable>>>>(); // currently only for INTEREST_RATE riskClass
+	private final ThreadLocal<EvaluationState> evaluationState;
+	private volatile int evaluationStateGeneration = 0; // Incremented if the time dependent maps are cleared. Outdated states of other threads are reset upon their next use.
 
 	/**
 	 * The cache for the exact delta sensitivities as given by AAD (or analytic). Unlike the map
-	 * "deltaAtTime", this map is not cleared if evaluationTime differs from lastEvaluationTime
+	 * "deltaAtTime", this map is not cleared if evaluationTime differs from lastEvaluationTime.
+	 * This cache is shared by all threads, access is synchronized on the cache.
 	 */
-	private HashMap<Double /*time*/, List<HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/,
-	RandomVariable[]>>>>> exactDeltaCache = new HashMap<Double /*time*/, List<HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>>>>();
+	private final SIMMSensitivityStore exactDeltaCache;
+	private final Map<Double, Object> exactDeltaLocks = new ConcurrentHashMap<>(); // Ensures that the exact deltas of a time are calculated only once
 
 	//private RandomVariable vegaSensitivity=null;
 
@@ -102,7 +107,6 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	 * This data is the basis of the OIS curve sensitivities, which we calculate by applying AAD to the numeraire adjustments
 	 */
 	protected Map<Double, RandomVariable> numeraireAdjustmentMap = new HashMap<>();
-	public static boolean isPrintSensis = false;
 
 	/**
 	 * Wraps an <code> AbstractLIBORMonteCarloProduct </code> into a product classified according to the SIMM methodology requirement.
@@ -127,6 +131,8 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 		this.currency = currency;
 		this.hasOptionality = hasOptionality;
 		this.bucketKey = bucketKey;
+		this.evaluationState = ThreadLocal.withInitial(() -> new EvaluationState(new SIMMSensitivityStore(riskClass, curveIndexNames), evaluationStateGeneration));
+		this.exactDeltaCache = new SIMMSensitivityStore(riskClass, curveIndexNames);
 	}
 
 	@Override
@@ -147,18 +153,80 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 			return new RandomVariableFromDoubleArray(0.0);
 		}
 
+		setInitialMarginCalculation(model, calculationCCY, sensitivityMode, liborWeightMode, interpolationStep, isUseAnalyticSwapSensis, isConsiderOISSensitivities);
+
+		return simmScheme.getValue(evaluationTime);
+	}
+
+	/**
+	 * Calculate the forward initial margin at all times of a time discretization. The evaluation times are independent
+	 * and are calculated concurrently on the given executor. The result is identical to calling <code> getInitialMargin </code>
+	 * for each time.
+	 *
+	 * @param evaluationTimes            The forward initial margin times
+	 * @param model                      The LIBOR market model
+	 * @param calculationCCY             The currency in which the IM is calculated
+	 * @param sensitivityMode            The method to be used for sensitivity calculation (Exact, Melting or Interpolation)
+	 * @param liborWeightMode            The method to be used for converting the libor sensitivities to swap sensitivities
+	 * @param interpolationStep          The interpolation step (only used for SensitivityMode.INTERPOLATION)
+	 * @param isUseAnalyticSwapSensis    true if for swaps we use analytic sensitivities
+	 * @param isConsiderOISSensitivities true if we consider OIS sensitivities for the SIMM calculation
+	 * @param executor                   The executor used to evaluate the times (may be null, then the times are evaluated in the calling thread)
+	 * @return The forward initial margin for each time of <code> evaluationTimes </code>
+	 * @throws CalculationException
+	 */
+	public RandomVariable[] getInitialMarginProfile(TimeDiscretization evaluationTimes,
+			LIBORModelMonteCarloSimulationModel model,
+			String calculationCCY,
+			SensitivityMode sensitivityMode,
+			WeightMode liborWeightMode,
+			double interpolationStep,
+			boolean isUseAnalyticSwapSensis,
+			boolean isConsiderOISSensitivities,
+			ExecutorService executor) throws CalculationException {
+
+		RandomVariable[] initialMargin = new RandomVariable[evaluationTimes.getNumberOfTimes()];
+
+		// Times after the final maturity do not require a SIMM calculation
+		double[] timesBeforeMaturity = Arrays.stream(evaluationTimes.getAsDoubleArray()).filter(time -> time < getFinalMaturity()).toArray();
+		for (int timeIndex = timesBeforeMaturity.length; timeIndex < initialMargin.length; timeIndex++) {
+			initialMargin[timeIndex] = new RandomVariableFromDoubleArray(0.0);
+		}
+		if (timesBeforeMaturity.length == 0) {
+			return initialMargin;
+		}
+
+		// The model dependent state (gradient, sensitivity calculation) is set once, before the times are evaluated concurrently
+		setInitialMarginCalculation(model, calculationCCY, sensitivityMode, liborWeightMode, interpolationStep, isUseAnalyticSwapSensis, isConsiderOISSensitivities);
+
+		RandomVariable[] initialMarginBeforeMaturity = simmScheme.getValues(timesBeforeMaturity, executor);
+		System.arraycopy(initialMarginBeforeMaturity, 0, initialMargin, 0, initialMarginBeforeMaturity.length);
+
+		return initialMargin;
+	}
+
+	private void setInitialMarginCalculation(LIBORModelMonteCarloSimulationModel model,
+			String calculationCCY,
+			SensitivityMode sensitivityMode,
+			WeightMode liborWeightMode,
+			double interpolationStep,
+			boolean isUseAnalyticSwapSensis,
+			boolean isConsiderOISSensitivities) throws CalculationException {
+
 		if (this.modelCache == null || !model.equals(this.modelCache) || (sensitivityCalculationScheme != null && (sensitivityMode != sensitivityCalculationScheme.getSensitivityMode() || liborWeightMode != sensitivityCalculationScheme.getWeightMode()))) { // At inception (t=0) or if the model is reset
 			setGradient(model); // Set the (new) gradient. The method setModel also clears the sensitivity maps and sets the model as modelCache.
 			this.exerciseIndicator = null;
-			this.exactDeltaCache.clear();
+			clearDeltaCache();
 			if (this instanceof SIMMBermudanSwaption) {
 				((SIMMBermudanSwaption) this).clearSwapSensitivityMap();
+				((SIMMBermudanSwaption) this).clearExerciseSurface();
 			}
 			this.sensitivityCalculationScheme = new SIMMSensitivityCalculation(sensitivityMode, liborWeightMode, interpolationStep, model, isUseAnalyticSwapSensis, isConsiderOISSensitivities);
+			if (jacobianCache != null) {
+				this.sensitivityCalculationScheme.setJacobianCache(jacobianCache);
+			}
 			this.simmScheme = new CalculationSchemeInitialMarginISDA(this, calculationCCY);
 		}
-
-		return simmScheme.getValue(evaluationTime);
 	}
 
 	// for risk weight calibration only. Not used in the thesis.
@@ -171,10 +239,18 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 		}
 
 		if (this.modelCache == null || !model.equals(this.modelCache) || sensitivityCalculationScheme != null) { // At inception (t=0) or if the model is reset
+			// Without a shared cache, the Jacobians of the previous calculation with the same model are kept
+			SIMMJacobianCache calibrationJacobianCache = jacobianCache;
+			if (calibrationJacobianCache == null && sensitivityCalculationScheme != null && model.equals(this.modelCache)) {
+				calibrationJacobianCache = sensitivityCalculationScheme.getJacobianCache();
+			}
 			setGradient(model); // Set the (new) gradient. The method setModel also clears the sensitivity maps and sets the model as modelCache.
 			this.exerciseIndicator = null;
-			this.exactDeltaCache.clear();
+			clearDeltaCache();
 			this.sensitivityCalculationScheme = new SIMMSensitivityCalculation(SensitivityMode.MELTINGSIMMBUCKETS, WeightMode.TIMEDEPENDENT, 1.0, model, true /*isUseAnalyticSwapSensis*/, true /*isConsiderOISSensitivities*/);
+			if (calibrationJacobianCache != null) {
+				this.sensitivityCalculationScheme.setJacobianCache(calibrationJacobianCache);
+			}
 		}
 
 		return simmScheme.getValue(this, evaluationTime);
@@ -195,9 +271,11 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 			return new RandomVariableFromDoubleArray(0.0);
 		}
 
-		if (evaluationTime != lastEvaluationTime) {
-			clearMaps();  // Clear the deltaSensitivity Map. It needs to be reset at each time step.
+		EvaluationState state = getEvaluationState();
+		if (evaluationTime != state.lastEvaluationTime) {
+			state.deltaAtTime.clear();  // Clear the deltaSensitivity Map. It needs to be reset at each time step.
 		}
+		SIMMSensitivityStore deltaAtTime = state.deltaAtTime;
 
 		if (productClass == this.productClass && Arrays.asList(this.riskClass).contains(riskClass)) {
 
@@ -206,36 +284,24 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 				switch (riskClass) {
 				case ("INTEREST_RATE"):
 
-					if (Arrays.asList(curveIndexNames).contains(curveIndexName) && bucketKey == this.currency) {
+					int curveIndex = deltaAtTime.getCurveIndex(curveIndexName);
+					if (curveIndex >= 0 && bucketKey == this.currency) {
 						// There exists a sensitivity. Check if the sensitivities (on all maturityBuckets) have already been calculated for given riskClass and riskType)
+						int riskClassIndex = deltaAtTime.getRiskClassIndex(riskClass);
 
-						if (!deltaAtTime.containsKey(riskClass) || !deltaAtTime.get(riskClass).stream().filter(n -> n.containsKey(curveIndexName)).findAny().isPresent()) {
+						boolean isCached = deltaAtTime.contains(evaluationTime, riskClassIndex, curveIndex);
+						Metrics.recordCacheAccess(Stage.DELTA_SENSITIVITIES, this, evaluationTime, isCached);
+						if (!isCached) {
 
 							// The sensitivities need to be calculated for the given riskClass and riskType
+							Metrics.Timer timer = Metrics.startTimer();
 							maturityBucketSensis = sensitivityCalculationScheme.getDeltaSensitivities(this, riskClass, curveIndexName, evaluationTime, modelCache);
+							Metrics.stopTimer(timer, Stage.DELTA_SENSITIVITIES, this, evaluationTime);
+							Metrics.traceSensitivities(Stage.DELTA_SENSITIVITIES, this, evaluationTime, curveIndexName, maturityBucketSensis);
 
-							if (isPrintSensis && curveIndexName == "Libor6m") {
-								System.out.println(evaluationTime + "\t" + maturityBucketSensis[3].getAverage() + "\t" + maturityBucketSensis[4].getAverage() + "\t" + maturityBucketSensis[5].getAverage() + "\t" + maturityBucketSensis[6].getAverage() + "\t" + maturityBucketSensis[7].getAverage() + "\t" + maturityBucketSensis[8].getAverage() + "\t" + maturityBucketSensis[9].getAverage() + "\t" + maturityBucketSensis[10].getAverage() + "\t" + maturityBucketSensis[11].getAverage());
-							}
-							// Create a new element of the curveIndex List for given risk class
-							HashMap<String, HashMap<String, RandomVariable>> curveIndexNameexactDeltaCache = new HashMap<String, HashMap<String, RandomVariable>>();
-							HashMap<String, RandomVariable> bucketSensitivities = new HashMap<String, RandomVariable>();
-
-							for (int i = 0; i < IRMaturityBuckets.length; i++) {
-								bucketSensitivities.put(IRMaturityBuckets[i], maturityBucketSensis[i]);
-							}
-							curveIndexNameexactDeltaCache.put(curveIndexName, bucketSensitivities);
-
-							// Check if list already exist
-							if (deltaAtTime.containsKey(riskClass)) {
-								deltaAtTime.get(riskClass).add(curveIndexNameexactDeltaCache);
-							} else {
-								List<HashMap<String/*curveIndexName*/, HashMap<String/*maturityBucket*/, RandomVariable>>> list = new ArrayList<HashMap<String/*curveIndexName*/, HashMap<String/*maturityBucket*/, RandomVariable>>>();
-								list.add(curveIndexNameexactDeltaCache);
-								deltaAtTime.put(riskClass, list);
-							}
+							deltaAtTime.put(evaluationTime, riskClassIndex, curveIndex, maturityBucketSensis);
 						}
-						result = deltaAtTime.get(riskClass).stream().filter(n -> n.containsKey(curveIndexName)).findFirst().get().get(curveIndexName).get(maturityBucket);
+						result = deltaAtTime.get(evaluationTime, riskClassIndex, curveIndex, SIMMSensitivityStore.getMaturityBucketIndex(maturityBucket));
 					} else {
 						result = new RandomVariableFromDoubleArray(0.0); // There exists no delta Sensi for risk Class INTEREST_RATE
 					}
@@ -264,7 +330,7 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 			}
 		}
 
-		this.lastEvaluationTime = evaluationTime;
+		state.lastEvaluationTime = evaluationTime;
 		return result;
 	} // end getSensitivity()
 
@@ -284,16 +350,22 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	}
 
 	@Override
-	public Map<Long, RandomVariable> getGradient(LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+	public SIMMGradient getGradient(LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
+		Metrics.recordCacheAccess(Stage.GRADIENT, this, 0.0, gradient != null);
 		if (gradient == null) {
+			Metrics.Timer timer = Metrics.startTimer();
 			// Calculate the product value as of time 0.
 			RandomVariableDifferentiable productValue = (RandomVariableDifferentiable) getLIBORMonteCarloProduct(0.0).getValue(0.0, model);
 			// Get the map of numeraire adjustments used specifically for this product
-			this.numeraireAdjustmentMap.putAll(((LIBORMarketModelFromCovarianceModel)model.getModel()).getNumeraireAdjustments());
-			// Calculate the gradient
-			Map<Long, RandomVariable> gradientOfProduct = productValue.getGradient();
-			this.gradient = gradientOfProduct;
+			List<RandomVariable> numeraireAdjustments;
+			synchronized (this.numeraireAdjustmentMap) {
+				this.numeraireAdjustmentMap.putAll(((LIBORMarketModelFromCovarianceModel)model.getModel()).getNumeraireAdjustments());
+				numeraireAdjustments = new ArrayList<>(this.numeraireAdjustmentMap.values());
+			}
+			// Calculate the gradient, restricted to the LIBORs, numeraires and numeraire adjustments
+			this.gradient = SIMMGradient.of(productValue, model, numeraireAdjustments);
+			Metrics.stopTimer(timer, Stage.GRADIENT, this, 0.0);
 		}
 		return this.gradient;
 	}
@@ -325,29 +397,8 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 				deltaSensis = getOISModelSensitivities(riskClass, time, model);
 			}
 		}
-		// Create a new element of the curveIndex List for given risk class
-		HashMap<String, RandomVariable[]> curveIndexNameDeltaCache = new HashMap<String, RandomVariable[]>();
-		curveIndexNameDeltaCache.put(curveIndexName, deltaSensis);
-
-		// Check if the list of riskClasses in the HashMap already exist
-		if (exactDeltaCache.containsKey(new Double(time))) {
-			if (exactDeltaCache.get(new Double(time)).stream().filter(n -> n.containsKey(riskClass)).findAny().isPresent()) {
-				exactDeltaCache.get(new Double(time)).stream().filter(n -> n.containsKey(riskClass)).findAny().get().get(riskClass).add(curveIndexNameDeltaCache);
-			} else { // there is no of risk classes. Set it.
-				List<HashMap<String/*curveIndexName*/, RandomVariable[]>> curveList = new ArrayList<HashMap<String/*curveIndexName*/, RandomVariable[]>>();
-				curveList.add(curveIndexNameDeltaCache);
-				HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>> riskClassMap = new HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>>();
-				riskClassMap.put(riskClass, curveList);
-				exactDeltaCache.get(time).add(riskClassMap);
-			}
-		} else { // no entry at time
-			List<HashMap<String/*curveIndexName*/, RandomVariable[]>> curveList = new ArrayList<HashMap<String/*curveIndexName*/, RandomVariable[]>>();
-			curveList.add(curveIndexNameDeltaCache);
-			HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>> riskClassMap = new HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>>();
-			riskClassMap.put(riskClass, curveList);
-			List<HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>>> riskClassList = new ArrayList<HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/, RandomVariable[]>>>>();
-			riskClassList.add(riskClassMap);
-			exactDeltaCache.put(time, riskClassList);
+		synchronized (exactDeltaCache) {
+			exactDeltaCache.put(time, exactDeltaCache.getRiskClassIndex(riskClass), exactDeltaCache.getCurveIndex(curveIndexName), deltaSensis);
 		}
 	}
 
@@ -364,7 +415,7 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	 */
 	@Override
 	public RandomVariable[] getLiborModelSensitivities(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		setConditionalExpectationOperator(evaluationTime, model);
+		updateConditionalExpectationOperator(evaluationTime, model);
 		RandomVariableDifferentiable numeraire = (RandomVariableDifferentiable) model.getNumeraire(evaluationTime);
 
 		// Calculate forward sensitivities
@@ -381,16 +432,18 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 		if (numberOfSensis != numberOfRemainingLibors) {
 			timeGridIndicator = 1;
 			double lastLiborTime = model.getLiborPeriodDiscretization().getTime(lastLiborIndex);
-			RandomVariable lastLibor = model.getLIBOR(model.getTimeDiscretization().getTimeIndex(lastLiborTime), lastLiborIndex);
-			RandomVariable dVdL = getDerivative(lastLibor, model);
+			RandomVariable dVdL = getLiborDerivative(model.getTimeDiscretization().getTimeIndex(lastLiborTime), lastLiborIndex, evaluationTime, model);
 			valueLiborSensitivities[0] = dVdL.mult(numeraire);
 		}
 
-		for (int liborIndex = lastLiborIndex + timeGridIndicator; liborIndex < model.getNumberOfLibors(); liborIndex++) {
-			RandomVariable liborAtTimeIndex = model.getLIBOR(timeIndexAtEval, liborIndex);
-			RandomVariable dVdL = getDerivative(liborAtTimeIndex, model);
-			valueLiborSensitivities[liborIndex - lastLiborIndex] = dVdL.mult(numeraire).getConditionalExpectation(conditionalExpectationOperator);
+		// The conditional expectations of all forward sensitivities are projected in one batch
+		int firstLiborIndex = lastLiborIndex + timeGridIndicator;
+		RandomVariable[] valueLiborSensitivitiesAtPaths = new RandomVariable[model.getNumberOfLibors() - firstLiborIndex];
+		for (int liborIndex = firstLiborIndex; liborIndex < model.getNumberOfLibors(); liborIndex++) {
+			RandomVariable dVdL = getLiborDerivative(timeIndexAtEval, liborIndex, evaluationTime, model);
+			valueLiborSensitivitiesAtPaths[liborIndex - firstLiborIndex] = dVdL.mult(numeraire);
 		}
+		System.arraycopy(getConditionalExpectations(valueLiborSensitivitiesAtPaths), 0, valueLiborSensitivities, firstLiborIndex - lastLiborIndex, valueLiborSensitivitiesAtPaths.length);
 
 		return valueLiborSensitivities;
 	}
@@ -422,23 +475,36 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 			Map<Double, RandomVariable> adjustmentMap = getNumeraireAdjustmentMap();
 
 			// Filter for adjustments after evaluationTime, since derivatives w.r.t. adjustments in the past may be non-zero.
-			Set<Double> adjustmentSetAfterEval = new HashSet<Double>();
-			adjustmentSetAfterEval = adjustmentMap.keySet().stream().filter(entry -> entry > evaluationTime).collect(Collectors.toCollection(HashSet::new));
-			adjustmentMap.keySet().retainAll(adjustmentSetAfterEval);
-			double[] adjustmentTimesAfterEval = ArrayUtils.toPrimitive(Arrays.stream(adjustmentMap.keySet().toArray()).sorted().toArray(Double[]::new));
+			// The filtered adjustments are copied, since the map is shared by all evaluation times.
+			Map<Double, RandomVariable> adjustmentMapAfterEval = new HashMap<>();
+			synchronized (adjustmentMap) {
+				for (Map.Entry<Double, RandomVariable> adjustment : adjustmentMap.entrySet()) {
+					if (adjustment.getKey() > evaluationTime) {
+						adjustmentMapAfterEval.put(adjustment.getKey(), adjustment.getValue());
+					}
+				}
+			}
+			double[] adjustmentTimesAfterEval = ArrayUtils.toPrimitive(Arrays.stream(adjustmentMapAfterEval.keySet().toArray()).sorted().toArray(Double[]::new));
 
 			//Calculate derivative w.r.t. adjustment
 			ArrayList<RandomVariable> dVdPList = new ArrayList<RandomVariable>();
 			ArrayList<Double> relevantDiscountTimes = new ArrayList<Double>();
-			setConditionalExpectationOperator(evaluationTime, model);
+			updateConditionalExpectationOperator(evaluationTime, model);
 			RandomVariable numeraireAtEval = model.getNumeraire(evaluationTime);
 			RandomVariable adjustmentAtEval = LIBORMarketModelFromCovarianceModelUtilities.getNumeraireOISAdjustmentFactor(model, evaluationTime);
 
+			// The conditional expectations of the derivatives w.r.t. all adjustments are projected in one batch
+			RandomVariable[] dVdAAtPaths = new RandomVariable[adjustmentTimesAfterEval.length];
+			for (int i = 0; i < adjustmentTimesAfterEval.length; i++) {
+				dVdAAtPaths[i] = getDerivative(adjustmentMapAfterEval.get(adjustmentTimesAfterEval[i]), evaluationTime, model);
+			}
+			RandomVariable[] dVdAConditional = getConditionalExpectations(dVdAAtPaths);
+
 			for (int i = 0; i < adjustmentTimesAfterEval.length; i++) {
 
 				// Calculate dVdA
-				RandomVariable adjustment = adjustmentMap.get(adjustmentTimesAfterEval[i]);
-				RandomVariable dVdA = getDerivative(adjustment, model).getConditionalExpectation(conditionalExpectationOperator).mult(numeraireAtEval);
+				RandomVariable adjustment = adjustmentMapAfterEval.get(adjustmentTimesAfterEval[i]);
+				RandomVariable dVdA = dVdAConditional[i].mult(numeraireAtEval);
 
 				if (!(dVdA.getMin() == 0 && dVdA.getMax() == 0)) { // If dVdA is zero the adjustment is assumed to belong to a different product.
 					// Calculate dV(t)/dP(t_cf;t) where t_cf are the cash flow times of this product
@@ -480,25 +546,72 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	/**
 	 * Clear the time dependent delta cache and the vega sensitivity.
 	 * This is performed always upon change of the evaluation time of initial margin.
+	 * The maps of other threads are cleared upon their next use.
 	 */
 	public void clearMaps() {
-		if (this.deltaAtTime != null) {
-			this.deltaAtTime.clear();
-			//this.vegaSensitivity = null;
-		}
+		this.evaluationStateGeneration++;
+		this.evaluationState.remove();
+		//this.vegaSensitivity = null;
+	}
+
+	/**
+	 * Removes the time dependent state (delta cache, conditional expectation operator) of the calling thread.
+	 * This is called by threads of an executor after the evaluation of a time such that the state is not retained by the thread.
+	 */
+	public void removeEvaluationState() {
+		this.evaluationState.remove();
 	}
 
 	@Override
 	public RandomVariable[] getExactDeltaFromCache(double time, String riskClass, String curveIndexName, boolean isMarketRateSensi) throws SolverException, CloneNotSupportedException, CalculationException {
 
-		if (!exactDeltaCache.containsKey(time) || !exactDeltaCache.get(time).stream().filter(n -> n.containsKey(riskClass)).findAny().isPresent()) {
+		int riskClassIndex = exactDeltaCache.getRiskClassIndex(riskClass);
+		int curveIndex = exactDeltaCache.getCurveIndex(curveIndexName);
+		if (riskClassIndex < 0 || curveIndex < 0) {
+			throw new IllegalArgumentException("Product has no delta sensitivity for risk class " + riskClass + " and curve " + curveIndexName + ".");
+		}
+
+		ExactDeltaCacheEvent event = new ExactDeltaCacheEvent();
+		event.begin();
+
+		synchronized (exactDeltaCache) {
+			RandomVariable[] exactDelta = exactDeltaCache.get(time, riskClassIndex, curveIndex);
+			if (exactDelta != null) {
+				commitExactDeltaCacheEvent(event, time, curveIndexName, true);
+				return exactDelta;
+			}
+		}
 
-			for (String curveName : curveIndexNames) {
-				setExactDeltaCache(riskClass, curveName, time, modelCache, isMarketRateSensi);
+		// Concurrent requests for the same time wait for the calculation, requests for other times are not blocked
+		synchronized (exactDeltaLocks.computeIfAbsent(time, key -> new Object())) {
+			for (int i = 0; i < curveIndexNames.length; i++) {
+				boolean isCalculated;
+				synchronized (exactDeltaCache) {
+					isCalculated = exactDeltaCache.contains(time, riskClassIndex, i);
+				}
+				if (!isCalculated) {
+					setExactDeltaCache(riskClass, curveIndexNames[i], time, modelCache, isMarketRateSensi);
+				}
 			}
 		}
 
-		return exactDeltaCache.get(time).stream().filter(n -> n.containsKey(riskClass)).findAny().get().get(riskClass).stream().filter(n -> n.containsKey(curveIndexName)).findAny().get().get(curveIndexName);
+		commitExactDeltaCacheEvent(event, time, curveIndexName, false);
+		synchronized (exactDeltaCache) {
+			return exactDeltaCache.get(time, riskClassIndex, curveIndex);
+		}
+	}
+
+	private void commitExactDeltaCacheEvent(ExactDeltaCacheEvent event, double time, String curveIndexName, boolean isCacheHit) {
+		if (event.shouldCommit()) {
+			event.product = Metrics.getProductName(this);
+			event.productClass = productClass;
+			event.curveIndexName = curveIndexName;
+			event.evaluationTime = time;
+			event.sensitivityMode = String.valueOf(getSensitivityMode());
+			event.numberOfPaths = modelCache != null ? modelCache.getNumberOfPaths() : 0;
+			event.isCacheHit = isCacheHit;
+			event.commit();
+		}
 	}
 
 
@@ -539,6 +652,15 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 		return this.currency;
 	}
 
+	/**
+	 * Returns the sensitivity mode of the current initial margin calculation of this product.
+	 *
+	 * @return The sensitivity mode (null if no initial margin has been calculated yet)
+	 */
+	public SensitivityMode getSensitivityMode() {
+		return sensitivityCalculationScheme != null ? sensitivityCalculationScheme.getSensitivityMode() : null;
+	}
+
 	public boolean getHasOptionality() {
 		return this.hasOptionality;
 	}
@@ -547,29 +669,182 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 		return this.bucketKey;
 	}
 
-	public HashMap<Double /*time*/, List<HashMap<String/*RiskClass*/, List<HashMap<String/*curveIndexName*/,
-	RandomVariable[]>>>>> getExactDeltaCache() {
+	public SIMMSensitivityStore getExactDeltaCache() {
 		return this.exactDeltaCache;
 	}
 
+	/**
+	 * Returns the (approximate) memory held by the sensitivity caches of this product.
+	 *
+	 * @return The memory footprint of the delta sensitivity caches in bytes.
+	 */
+	public long getSensitivityMemoryFootprint() {
+		synchronized (exactDeltaCache) {
+			return getEvaluationState().deltaAtTime.getMemoryFootprint() + exactDeltaCache.getMemoryFootprint();
+		}
+	}
+
 	public void clearDeltaCache() {
-		this.exactDeltaCache.clear();
+		synchronized (exactDeltaCache) {
+			this.exactDeltaCache.clear();
+		}
+		this.exactDeltaLocks.clear();
 	}
 
 	public void setSIMMSensitivityCalculation(AbstractSIMMSensitivityCalculation sensitivityCalculation) {
 		this.sensitivityCalculationScheme = sensitivityCalculation;
 	}
 
+	/**
+	 * Sets the cache of the model-to-market Jacobians used by the sensitivity calculations of this product. Products
+	 * valued with the same model may be given the same cache, such that the Jacobians are calculated once for all of them.
+	 * If no cache is set, every sensitivity calculation of this product uses its own cache.
+	 *
+	 * @param jacobianCache The Jacobian cache (may be null)
+	 */
+	public void setJacobianCache(SIMMJacobianCache jacobianCache) {
+		this.jacobianCache = jacobianCache;
+		if (sensitivityCalculationScheme != null && jacobianCache != null) {
+			sensitivityCalculationScheme.setJacobianCache(jacobianCache);
+		}
+	}
+
 	public void setNullExerciseIndicator() {
 		this.exerciseIndicator = null;
 	}
 
-	protected RandomVariable getDerivative(RandomVariable parameter, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		Map<Long, RandomVariable> gradient = getGradient(model);
-		RandomVariable derivative = gradient.get(((RandomVariableDifferentiable) parameter).getID());
+	/**
+	 * Returns the gradient used for the sensitivities at the given evaluation time. This is the gradient of the product,
+	 * products which deliver a different product after exercise may return the gradient of the delivery product.
+	 *
+	 * @param evaluationTime The time for which the forward sensitivities are calculated
+	 * @param model          The LIBOR market model
+	 * @return The gradient to be used at the evaluation time
+	 * @throws CalculationException
+	 */
+	protected SIMMGradient getGradient(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return getGradient(model);
+	}
+
+	protected RandomVariable getDerivative(RandomVariable parameter, double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		SIMMGradient gradient = getGradient(evaluationTime, model);
+		RandomVariable derivative = gradient.getDerivative(((RandomVariableDifferentiable) parameter).getID());
 		return derivative == null ? new RandomVariableFromDoubleArray(0.0) : derivative;
 	}
 
+	/**
+	 * Returns the derivative w.r.t. the LIBOR <code> model.getLIBOR(timeIndex, liborIndex) </code>, read from the dense LIBOR derivatives of the gradient.
+	 *
+	 * @param timeIndex      The time index of the LIBOR on the simulation time discretization
+	 * @param liborIndex     The index of the LIBOR on the LIBOR period discretization
+	 * @param evaluationTime The evaluation time, determining the gradient to be used
+	 * @param model          The LIBOR market model
+	 * @return The derivative w.r.t. the LIBOR
+	 * @throws CalculationException
+	 */
+	protected RandomVariable getLiborDerivative(int timeIndex, int liborIndex, double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		RandomVariable derivative = getGradient(evaluationTime, model).getLiborDerivative(timeIndex, liborIndex);
+		return derivative == null ? new RandomVariableFromDoubleArray(0.0) : derivative;
+	}
+
+	/**
+	 * Returns the conditional expectation operator set by <code> setConditionalExpectationOperator </code> in the calling thread.
+	 *
+	 * @return The conditional expectation operator of the current evaluation time
+	 */
+	protected ConditionalExpectationEstimator getConditionalExpectationEstimator() {
+		return getEvaluationState().conditionalExpectationOperator;
+	}
+
+	protected void setConditionalExpectationEstimator(ConditionalExpectationEstimator conditionalExpectationOperator) {
+		EvaluationState state = getEvaluationState();
+		state.conditionalExpectationOperator = conditionalExpectationOperator;
+		state.conditionalExpectationTime = Double.NaN;
+		state.conditionalExpectationModel = null;
+	}
+
+	/**
+	 * Sets the conditional expectation operator of the calling thread for the given evaluation time, unless it has already been set
+	 * for this evaluation time and model. The regression matrix of the operator is thus factorised once and shared by the
+	 * LIBOR, OIS and numeraire sensitivities of an evaluation time.
+	 *
+	 * @param evaluationTime The time of the conditional expectation
+	 * @param model          The LIBOR market model
+	 * @throws CalculationException
+	 */
+	private void updateConditionalExpectationOperator(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		EvaluationState state = getEvaluationState();
+		if (state.conditionalExpectationOperator != null && state.conditionalExpectationTime == evaluationTime && state.conditionalExpectationModel == model) {
+			return;
+		}
+		setConditionalExpectationOperator(evaluationTime, model);
+		state.conditionalExpectationTime = evaluationTime;
+		state.conditionalExpectationModel = model;
+	}
+
+	/**
+	 * Returns the conditional expectation estimator regressing on the powers (up to order 2) of the short and the long LIBOR at
+	 * the evaluation time. The estimator is taken from the <code> RegressionBasisCache </code> of the model, i.e. it is shared by all
+	 * products using the same indicator at the same time.
+	 *
+	 * @param evaluationTime The time of the conditional expectation
+	 * @param model          The LIBOR market model
+	 * @param indicator      (may be null) The indicator the basis functions are multiplied with, e.g. to set paths on which a product has been exercised to zero
+	 * @return The conditional expectation estimator
+	 * @throws CalculationException
+	 */
+	protected static ConditionalExpectationEstimator getLiborRegressionEstimator(double evaluationTime, LIBORModelMonteCarloSimulationModel model, RandomVariable indicator) throws CalculationException {
+		return RegressionBasisCache.getInstance(model).getConditionalExpectationEstimator(evaluationTime, LIBOR_REGRESSION_BASIS, indicator, () -> {
+			RandomVariable[] regressor = new RandomVariable[2];
+			regressor[0] = model.getLIBOR(evaluationTime, evaluationTime, evaluationTime + model.getLiborPeriodDiscretization().getTimeStep(0));
+			regressor[1] = model.getLIBOR(evaluationTime, evaluationTime, model.getLiborPeriodDiscretization().getTime(model.getNumberOfLibors() - 1));
+
+			// Create basis functions - here: 1, S, S^2
+			ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
+			for (int liborIndex = 0; liborIndex < regressor.length; liborIndex++) {
+				for (int powerOfRegressionMonomial = 0; powerOfRegressionMonomial <= 2; powerOfRegressionMonomial++) {
+					RandomVariable basisFunction = regressor[liborIndex].pow(powerOfRegressionMonomial);
+					basisFunctions.add(indicator == null ? basisFunction : basisFunction.mult(indicator));
+				}
+			}
+			return basisFunctions.toArray(new RandomVariable[0]);
+		});
+	}
+
+	/**
+	 * Returns the conditional expectations of the given random variables w.r.t. the conditional expectation operator of the calling thread.
+	 * If the operator is a <code> BatchedConditionalExpectationRegression </code> all random variables are projected in one pass.
+	 *
+	 * @param randomVariables The random variables
+	 * @return The conditional expectations of the random variables
+	 */
+	protected RandomVariable[] getConditionalExpectations(RandomVariable[] randomVariables) {
+		ConditionalExpectationEstimator conditionalExpectationOperator = getConditionalExpectationEstimator();
+		if (conditionalExpectationOperator instanceof BatchedConditionalExpectationRegression) {
+			return ((BatchedConditionalExpectationRegression) conditionalExpectationOperator).getConditionalExpectations(randomVariables);
+		}
+
+		RandomVariable[] conditionalExpectations = new RandomVariable[randomVariables.length];
+		for (int i = 0; i < randomVariables.length; i++) {
+			conditionalExpectations[i] = randomVariables[i].getConditionalExpectation(conditionalExpectationOperator);
+		}
+		return conditionalExpectations;
+	}
+
+	private EvaluationState getEvaluationState() {
+		EvaluationState state = evaluationState.get();
+		if (state.generation != evaluationStateGeneration) {
+			// The maps have been cleared (e.g. the model has changed) since this thread used its state
+			state.deltaAtTime.clear();
+			state.lastEvaluationTime = -1;
+			state.conditionalExpectationOperator = null;
+			state.conditionalExpectationTime = Double.NaN;
+			state.conditionalExpectationModel = null;
+			state.generation = evaluationStateGeneration;
+		}
+		return state;
+	}
+
 	protected double getNextLiborTime(double evaluationTime, LIBORModelMonteCarloSimulationModel model) {
 		int nextLiborIndex = model.getLiborPeriodDiscretization().getTimeIndexNearestGreaterOrEqual(evaluationTime);
 		return model.getLiborPeriodDiscretization().getTime(nextLiborIndex);
@@ -589,20 +864,76 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 	}
 
 	public double getMVA(LIBORModelMonteCarloSimulationModel model, SensitivityMode sensitivityMode, WeightMode weightMode, double timeStep, double fundingSpread, MVAMode mvaMode) throws CalculationException {
-		double finalMaturity = this.getFinalMaturity();
+		return getMVA(model, sensitivityMode, weightMode, timeStep, fundingSpread, mvaMode, null);
+	}
+
+	/**
+	 * Calculate the MVA of this product. The initial margin at the time steps is calculated concurrently on the given executor.
+	 *
+	 * @param model           The LIBOR market model
+	 * @param sensitivityMode The method to be used for sensitivity calculation (Exact, Melting or Interpolation)
+	 * @param weightMode      The method to be used for converting the libor sensitivities to swap sensitivities
+	 * @param timeStep        The time step of the initial margin profile
+	 * @param fundingSpread   The funding spread
+	 * @param mvaMode         The MVA calculation method
+	 * @param executor        The executor used to evaluate the initial margin (may be null, then the calculation is performed in the calling thread)
+	 * @return The MVA
+	 * @throws CalculationException
+	 */
+	public double getMVA(LIBORModelMonteCarloSimulationModel model, SensitivityMode sensitivityMode, WeightMode weightMode, double timeStep, double fundingSpread, MVAMode mvaMode, ExecutorService executor) throws CalculationException {
+		return getMVAOnPaths(model, sensitivityMode, weightMode, timeStep, fundingSpread, mvaMode, executor).getAverage();
+	}
+
+	/**
+	 * Calculate the MVA of this product on each path, i.e. the discounted funding cost of the initial margin before taking the expectation.
+	 * The MVA is the average of this random variable, see <code> getMVA </code>.
+	 *
+	 * @param model           The LIBOR market model
+	 * @param sensitivityMode The method to be used for sensitivity calculation (Exact, Melting or Interpolation)
+	 * @param weightMode      The method to be used for converting the libor sensitivities to swap sensitivities
+	 * @param timeStep        The time step of the initial margin profile
+	 * @param fundingSpread   The funding spread
+	 * @param mvaMode         The MVA calculation method
+	 * @param executor        The executor used to evaluate the initial margin (may be null, then the calculation is performed in the calling thread)
+	 * @return The MVA on each path
+	 * @throws CalculationException
+	 */
+	public RandomVariable getMVAOnPaths(LIBORModelMonteCarloSimulationModel model, SensitivityMode sensitivityMode, WeightMode weightMode, double timeStep, double fundingSpread, MVAMode mvaMode, ExecutorService executor) throws CalculationException {
+		int numberOfTimeSteps = getNumberOfMVATimeSteps(this.getFinalMaturity(), timeStep);
+		if (numberOfTimeSteps == 0) {
+			return new RandomVariableFromDoubleArray(0.0);
+		}
+		TimeDiscretization initialMarginTimes = new TimeDiscretizationFromArray(0.0, numberOfTimeSteps, timeStep);
+		RandomVariable[] initialMarginProfile = getInitialMarginProfile(initialMarginTimes, model, "EUR", sensitivityMode, weightMode, 1.0, false, true, executor);
+
 		RandomVariable forwardBond;
 		RandomVariable initialMargin;
 		RandomVariable MVA = new RandomVariableFromDoubleArray(0.0);
-		for (int i = 0; i < ((int) finalMaturity / timeStep); i++) {
+		for (int i = 0; i < numberOfTimeSteps; i++) {
+			Metrics.Timer timer = Metrics.startTimer();
 			forwardBond = model.getNumeraire((i + 1) * timeStep).mult(Math.exp((i + 1) * timeStep * fundingSpread)).invert();
 			forwardBond = forwardBond.sub(model.getNumeraire(i * timeStep).mult(Math.exp(i * timeStep * fundingSpread)).invert());
-			initialMargin = getInitialMargin(i * timeStep, model, "EUR", sensitivityMode, weightMode, 1.0, false, true);
+			initialMargin = initialMarginProfile[i];
 			if (mvaMode == MVAMode.APPROXIMATION) {
 				initialMargin = initialMargin.average();
 			}
 			MVA = MVA.add(forwardBond.mult(initialMargin));
+			Metrics.stopTimer(timer, Stage.MVA, this, i * timeStep);
 		}
-		return -MVA.getAverage();
+		return MVA.mult(-1.0);
+	}
+
+	/**
+	 * Returns the number of initial margin times <code> i * timeStep </code> summed into the MVA. These are the times before the
+	 * maturity truncated to whole years, i.e. <code> i &lt; (int) finalMaturity / timeStep </code>, as in the original time loop of the MVA.
+	 *
+	 * @param finalMaturity The final maturity of the product (or portfolio)
+	 * @param timeStep      The time step of the initial margin profile
+	 * @return The number of initial margin times
+	 */
+	static int getNumberOfMVATimeSteps(double finalMaturity, double timeStep) {
+		double bound = (int) finalMaturity / timeStep;
+		return bound > 0 ? (int) Math.ceil(bound) : 0;
 	}
 
 	//----------------------------------------------------------------------------------------------------------------------------------
@@ -625,8 +956,8 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 
 		RandomVariable numeraireAtEval = model.getNumeraire(evaluationTime);
 		Map<Long, RandomVariable> gradientOfNumeraireAtEval = ((RandomVariableDifferentiable) numeraireAtEval).getGradient();
-		setConditionalExpectationOperator(evaluationTime, model);
-		RandomVariable productValueAtEval = getLIBORMonteCarloProduct(evaluationTime).getValue(evaluationTime, model).getConditionalExpectation(conditionalExpectationOperator);
+		updateConditionalExpectationOperator(evaluationTime, model);
+		RandomVariable productValueAtEval = getLIBORMonteCarloProduct(evaluationTime).getValue(evaluationTime, model).getConditionalExpectation(getConditionalExpectationEstimator());
 		// Calculate forward sensitivities
 		int numberOfRemainingLibors = getNumberOfRemainingLibors(evaluationTime, model);
 		int numberOfSensis = evaluationTime == getNextLiborTime(evaluationTime, model) ? numberOfRemainingLibors : numberOfRemainingLibors + 1;
@@ -639,20 +970,48 @@ public abstract class AbstractSIMMProduct implements SIMMProductInterface {
 		if (numberOfSensis != numberOfRemainingLibors) {
 			double lastLiborTime = model.getLiborPeriodDiscretization().getTime(lastLiborIndex);
 			RandomVariable lastNumeraire = model.getNumeraire(lastLiborTime);
-			RandomVariable dVdN = getDerivative(lastNumeraire, model);
+			RandomVariable dVdN = getDerivative(lastNumeraire, evaluationTime, model);
 			RandomVariable numeraireDerivative = gradientOfNumeraireAtEval.get(((RandomVariableDifferentiable) lastNumeraire).getID());
 			RandomVariable dVdNSummand = numeraireDerivative == null ? new RandomVariableFromDoubleArray(0.0) : numeraireDerivative.mult(productValueAtEval);
 			valueNumeraireSensitivities[0] = dVdN.mult(numeraireAtEval).add(dVdNSummand);
 		}
 
-		for (int liborIndex = lastLiborIndex + timeGridIndicator; liborIndex < model.getNumberOfLibors(); liborIndex++) {
+		int firstLiborIndex = lastLiborIndex + timeGridIndicator;
+		RandomVariable[] dVdNAtPaths = new RandomVariable[model.getNumberOfLibors() - firstLiborIndex];
+		RandomVariable[] dVdNSummands = new RandomVariable[dVdNAtPaths.length];
+		for (int liborIndex = firstLiborIndex; liborIndex < model.getNumberOfLibors(); liborIndex++) {
 			RandomVariable numeraire = model.getNumeraire(model.getLiborPeriod(liborIndex));
-			RandomVariable dVdN = getDerivative(numeraire, model);
+			RandomVariable dVdN = getDerivative(numeraire, evaluationTime, model);
 			RandomVariable numeraireDerivative = gradientOfNumeraireAtEval.get(((RandomVariableDifferentiable) numeraire).getID());
-			RandomVariable dVdNSummand = numeraireDerivative == null ? new RandomVariableFromDoubleArray(0.0) : numeraireDerivative.mult(productValueAtEval);
-			valueNumeraireSensitivities[liborIndex - lastLiborIndex] = dVdN.mult(numeraireAtEval).getConditionalExpectation(conditionalExpectationOperator).add(dVdNSummand);
+			dVdNSummands[liborIndex - firstLiborIndex] = numeraireDerivative == null ? new RandomVariableFromDoubleArray(0.0) : numeraireDerivative.mult(productValueAtEval);
+			dVdNAtPaths[liborIndex - firstLiborIndex] = dVdN.mult(numeraireAtEval);
+		}
+		RandomVariable[] dVdNConditional = getConditionalExpectations(dVdNAtPaths);
+		for (int i = 0; i < dVdNConditional.length; i++) {
+			valueNumeraireSensitivities[firstLiborIndex - lastLiborIndex + i] = dVdNConditional[i].add(dVdNSummands[i]);
 		}
 
 		return valueNumeraireSensitivities;
 	}
+
+	/**
+	 * The time dependent state of an initial margin evaluation: the delta sensitivities at the evaluation time and the
+	 * conditional expectation operator. The map of delta sensitivities is filled once per evaluation time step and the
+	 * function <code> getSensitivity </code> which is called in <code> MarginSchemeIRDelta </code> picks the sensitivities
+	 * for a specified riskClass, curveIndexName and maturityBucket from this map. This map may - in contrast to the map
+	 * "exactDeltaCache" - contain interpolated sensitivities.
+	 */
+	private static final class EvaluationState {
+		private final SIMMSensitivityStore deltaAtTime; // currently only for INTEREST_RATE riskClass
+		private double lastEvaluationTime = -1;
+		private ConditionalExpectationEstimator conditionalExpectationOperator;
+		private double conditionalExpectationTime = Double.NaN;
+		private LIBORModelMonteCarloSimulationModel conditionalExpectationModel;
+		private int generation;
+
+		private EvaluationState(SIMMSensitivityStore deltaAtTime, int generation) {
+			this.deltaAtTime = deltaAtTime;
+			this.generation = generation;
+		}
+	}
 }
@@ -1,16 +1,15 @@
 package net.finmath.initialmargin.isdasimm.products;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
 import net.finmath.montecarlo.RandomVariableFromDoubleArray;
-import net.finmath.montecarlo.conditionalexpectation.MonteCarloConditionalExpectationRegression;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.montecarlo.interestrate.products.BermudanSwaption;
 import net.finmath.montecarlo.interestrate.products.SimpleSwap;
@@ -40,6 +39,7 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 
 	private ExerciseType exerciseType;
 	private Map<String, RandomVariable[]> swapSensitivityMap = new HashMap<>(); // Cache for sensitivities of underlying swap
+	private ExerciseSurface exerciseSurface = null; // Cache for the exercise time and exercise indicators under the model of the last valuation
 
 	/**
 	 * Construct a bermudan swaption as a product for the SIMM. Initial margin and MVA can be calculated for this product.
@@ -101,11 +101,8 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 		RandomVariable[] indicator = indicatorOrig.clone();
 		indicator[0] = indicator[0].sub(0.5); // i.e. -0.5: not exercised, 0.5: exercised
 
-		// @TODO: Perfomance improvement possible, since this triggerst an unneccesary valuation.
-		RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(evaluationTime, model).get("exerciseTime");
-
 		// Set sensitivities on exercised paths
-		if (evaluationTime >= exerciseTime.getMin()) {
+		if (evaluationTime >= getExerciseSurface(model).getFirstExerciseTime()) {
 
 			switch (exerciseType) {
 
@@ -162,11 +159,8 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 		RandomVariable[] indicator = indicatorOrig.clone();
 		indicator[0] = indicator[0].sub(0.5); // i.e. -0.5: not exercised, 0.5: exercised
 
-		// @TODO: Perfomance improvement possible, since this triggerst an unneccesary valuation.
-		RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(evaluationTime, model).get("exerciseTime");
-
 		// Set sensitivities on exercised paths
-		if (evaluationTime >= exerciseTime.getMin()) {
+		if (evaluationTime >= getExerciseSurface(model).getFirstExerciseTime()) {
 
 			switch (exerciseType) {
 
@@ -231,10 +225,7 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 	 */
 	public RandomVariable[] changeMeltedSensitivitiesOnExercisedPaths(double evaluationTime, LIBORModelMonteCarloSimulationModel model, String curveIndexName, RandomVariable[] meltedBermudanSensis) throws CalculationException, SolverException, CloneNotSupportedException {
 
-		// @TODO: Perfomance improvement possible, since this triggerst an unneccesary valuation.
-		RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(evaluationTime, model).get("exerciseTime");
-
-		if (evaluationTime >= exerciseTime.getMin()) {
+		if (evaluationTime >= getExerciseSurface(model).getFirstExerciseTime()) {
 
 			RandomVariable indicator = getExerciseIndicator(evaluationTime, model).sub(0.5);
 
@@ -288,7 +279,7 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 	 * @return The sensitivities of the underlying swap from the cache "swapSensitivityMap".
 	 * @throws CalculationException
 	 */
-	private RandomVariable[] getSwapSensitivitiesFromCache(String curveIndexName) throws CalculationException {
+	private synchronized RandomVariable[] getSwapSensitivitiesFromCache(String curveIndexName) throws CalculationException {
 
 		SensitivityMode meltingMode = sensitivityCalculationScheme.getSensitivityMode();
 		if (!swapSensitivityMap.containsKey(curveIndexName)) {
@@ -321,10 +312,24 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 
 	@Override
 	public RandomVariable getExerciseIndicator(double time, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		// @TODO: Perfomance improvement possible, since this triggerst an unneccesary valuation.
-		RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(time, model).get("exerciseTime");
-		RandomVariable indicator = exerciseTime.sub(time + 0.00001).choose(new RandomVariableFromDoubleArray(0.0), new RandomVariableFromDoubleArray(1.0));
-		return indicator;
+		return getExerciseSurface(model).getExerciseIndicator(time);
+	}
+
+	/**
+	 * Get the exercise surface of the bermudan under the given model. The exercise time is calculated by a single valuation
+	 * (backward induction) per model and kept until the product is evaluated under a different model.
+	 *
+	 * @param model The LIBOR market model
+	 * @return The exercise surface under the model
+	 * @throws CalculationException
+	 */
+	private synchronized ExerciseSurface getExerciseSurface(LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		if (exerciseSurface == null || exerciseSurface.model != model) {
+			// The backward induction runs over all exercise dates, hence the exercise time does not depend on the evaluation time.
+			RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(0.0, model).get("exerciseTime");
+			exerciseSurface = new ExerciseSurface(model, exerciseTime);
+		}
+		return exerciseSurface;
 	}
 
 	@Override
@@ -334,45 +339,69 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 
 	@Override
 	public double getMeltingResetTime(LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		// @TODO: Perfomance improvement possible, since this triggerst an unneccesary valuation.
-		RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(0, model).get("exerciseTime");
-		return exerciseTime.getMin();
+		return getExerciseSurface(model).getFirstExerciseTime();
 	}
 
 	@Override
 	public void setConditionalExpectationOperator(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
 		// Bermudan Swaption: Set paths on which we have already exercised to zero.
-		RandomVariable indicator = getExerciseIndicator(evaluationTime, model).sub(0.5).choose(new RandomVariableFromDoubleArray(0.0), new RandomVariableFromDoubleArray(1.0));
-
-		// Create a conditional expectation estimator with some basis functions (predictor variables) for conditional expectation estimation.
-		RandomVariable[] regressor = new RandomVariable[2];
-		regressor[0] = model.getLIBOR(evaluationTime, evaluationTime, evaluationTime + model.getLiborPeriodDiscretization().getTimeStep(0));
-		regressor[1] = model.getLIBOR(evaluationTime, evaluationTime, model.getLiborPeriodDiscretization().getTime(model.getNumberOfLibors() - 1));
-		ArrayList<RandomVariable> basisFunctions = getRegressionBasisFunctions(regressor, 2, indicator);
-		this.conditionalExpectationOperator = new MonteCarloConditionalExpectationRegression(basisFunctions.toArray(new RandomVariable[0]));
-	}
+		RandomVariable indicator = getExerciseSurface(model).getContinuationIndicator(evaluationTime);
 
-	private static ArrayList<RandomVariable> getRegressionBasisFunctions(RandomVariable[] libors, int order, RandomVariable indicator) {
-		ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
-		// Create basis functions - here: 1, S, S^2, S^3, S^4
-
-		for (int liborIndex = 0; liborIndex < libors.length; liborIndex++) {
-			for (int powerOfRegressionMonomial = 0; powerOfRegressionMonomial <= order; powerOfRegressionMonomial++) {
-				basisFunctions.add(libors[liborIndex].pow(powerOfRegressionMonomial).mult(indicator));
-			}
-		}
-		return basisFunctions;
+		// The conditional expectation estimator with the short and long LIBOR as predictor variables is shared by all products of the model.
+		setConditionalExpectationEstimator(getLiborRegressionEstimator(evaluationTime, model, indicator));
 	}
 
 	public ExerciseType getExerciseType() {
 		return this.exerciseType;
 	}
 
-	public void clearSwapSensitivityMap() {
+	public synchronized void clearSwapSensitivityMap() {
 		swapSensitivityMap.clear();
 	}
 
+	public synchronized void clearExerciseSurface() {
+		exerciseSurface = null;
+	}
+
+	/**
+	 * The exercise time of the bermudan under one model together with the exercise indicators derived from it.
+	 * The indicators are calculated once per time and shared by all threads evaluating the initial margin.
+	 */
+	private static final class ExerciseSurface {
+		private final LIBORModelMonteCarloSimulationModel model;
+		private final RandomVariable exerciseTime;
+		private final double firstExerciseTime;
+		private final Map<Double, RandomVariable> exerciseIndicators = new ConcurrentHashMap<>();
+		private final Map<Double, RandomVariable> continuationIndicators = new ConcurrentHashMap<>();
+
+		private ExerciseSurface(LIBORModelMonteCarloSimulationModel model, RandomVariable exerciseTime) {
+			this.model = model;
+			this.exerciseTime = exerciseTime;
+			this.firstExerciseTime = exerciseTime.getMin();
+		}
+
+		/**
+		 * @param time The time
+		 * @return The indicator: 1 on paths on which the bermudan has been exercised at or before the time, 0 otherwise.
+		 */
+		private RandomVariable getExerciseIndicator(double time) {
+			return exerciseIndicators.computeIfAbsent(time, t -> exerciseTime.sub(t + 0.00001).choose(new RandomVariableFromDoubleArray(0.0), new RandomVariableFromDoubleArray(1.0)));
+		}
+
+		/**
+		 * @param time The time
+		 * @return The indicator: 1 on paths on which the bermudan has not been exercised at or before the time, 0 otherwise.
+		 */
+		private RandomVariable getContinuationIndicator(double time) {
+			return continuationIndicators.computeIfAbsent(time, t -> getExerciseIndicator(t).sub(0.5).choose(new RandomVariableFromDoubleArray(0.0), new RandomVariableFromDoubleArray(1.0)));
+		}
+
+		private double getFirstExerciseTime() {
+			return firstExerciseTime;
+		}
+	}
+
 	//----------------------------------------------------------------------------------------------------------------------------------
 	// Additional method for the case SensitivityMode.ExactConsideringDependencies, i.e. correct OIS-Libor dependence
 	// NOT USED IN THE THESIS! PRELIMINARY TRIAL
@@ -388,11 +417,8 @@ public class SIMMBermudanSwaption extends AbstractSIMMProduct {
 		RandomVariable[] indicator = new RandomVariable[]{getExerciseIndicator(evaluationTime, model)}.clone();
 		indicator[0] = indicator[0].sub(0.5); // i.e. -0.5: not exercised, 0.5: exercised
 
-		// @TODO: Perfomance improvement possible, since this triggerst an unneccesary valuation.
-		RandomVariable exerciseTime = (RandomVariable) bermudan.getValues(0, model).get("exerciseTime");
-
 		// Set sensitivities on exercised paths
-		if (evaluationTime >= exerciseTime.getMin()) {
+		if (evaluationTime >= getExerciseSurface(model).getFirstExerciseTime()) {
 
 			switch (exerciseType) {
 
@@ -0,0 +1,146 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.automaticdifferentiation.RandomVariableDifferentiable;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * A compact store for the AAD gradient of a product. The gradient is requested only w.r.t. the parameters which are read
+ * by the sensitivity calculation, i.e. the LIBORs on the simulation time grid, the numeraires at the LIBOR period times
+ * and the numeraire adjustments. The derivatives w.r.t. the LIBORs are kept in a dense <code> RandomVariable[] </code>,
+ * indexed by (time index, LIBOR index), all derivatives are additionally kept in arrays sorted by the ID of the parameter.
+ * Hence, the derivatives w.r.t. all other nodes of the operator tree are not retained.
+ */
+public class SIMMGradient {
+
+	/*
+	 * Approximate sizes used for the memory footprint, assuming a 64 bit JVM.
+	 */
+	private static final int REFERENCE_BYTES = 8;
+	private static final int ARRAY_HEADER_BYTES = 16;
+	private static final int RANDOM_VARIABLE_BYTES = 40;
+
+	private final int numberOfLibors;
+	private final RandomVariable[] liborDerivatives; // derivative w.r.t. LIBOR(timeIndex, liborIndex) at timeIndex * numberOfLibors + liborIndex
+
+	private final long[] ids;                        // sorted
+	private final RandomVariable[] derivatives;      // derivative w.r.t. the parameter with ID ids[i]
+
+	private SIMMGradient(int numberOfLibors, RandomVariable[] liborDerivatives, long[] ids, RandomVariable[] derivatives) {
+		this.numberOfLibors = numberOfLibors;
+		this.liborDerivatives = liborDerivatives;
+		this.ids = ids;
+		this.derivatives = derivatives;
+	}
+
+	/**
+	 * Calculates the gradient of a value w.r.t. the LIBORs and numeraires of the model and the given numeraire adjustments.
+	 *
+	 * @param value                The value (e.g. of a product as of time 0)
+	 * @param model                The LIBOR market model the value has been calculated with
+	 * @param numeraireAdjustments The numeraire adjustments used in the valuation
+	 * @return The gradient of the value
+	 * @throws CalculationException
+	 */
+	public static SIMMGradient of(RandomVariableDifferentiable value, LIBORModelMonteCarloSimulationModel model, Collection<RandomVariable> numeraireAdjustments) throws CalculationException {
+		int numberOfTimes = model.getTimeDiscretization().getNumberOfTimes();
+		int numberOfLibors = model.getNumberOfLibors();
+
+		// The IDs of the LIBORs on the simulation time grid (LIBORs which are not differentiable have no derivative)
+		Set<Long> independentIDs = new HashSet<>();
+		long[] liborIDs = new long[numberOfTimes * numberOfLibors];
+		Arrays.fill(liborIDs, -1);
+		for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+			for (int liborIndex = 0; liborIndex < numberOfLibors; liborIndex++) {
+				RandomVariable libor = model.getLIBOR(timeIndex, liborIndex);
+				if (libor instanceof RandomVariableDifferentiable) {
+					liborIDs[timeIndex * numberOfLibors + liborIndex] = ((RandomVariableDifferentiable) libor).getID();
+					independentIDs.add(liborIDs[timeIndex * numberOfLibors + liborIndex]);
+				}
+			}
+		}
+
+		// The IDs of the numeraires at the LIBOR period times and of the numeraire adjustments
+		for (int liborIndex = 0; liborIndex < numberOfLibors; liborIndex++) {
+			RandomVariable numeraire = model.getNumeraire(model.getLiborPeriod(liborIndex));
+			if (numeraire instanceof RandomVariableDifferentiable) {
+				independentIDs.add(((RandomVariableDifferentiable) numeraire).getID());
+			}
+		}
+		for (RandomVariable adjustment : numeraireAdjustments) {
+			if (adjustment instanceof RandomVariableDifferentiable) {
+				independentIDs.add(((RandomVariableDifferentiable) adjustment).getID());
+			}
+		}
+
+		Map<Long, RandomVariable> gradient = value.getGradient(independentIDs);
+
+		RandomVariable[] liborDerivatives = new RandomVariable[liborIDs.length];
+		for (int i = 0; i < liborIDs.length; i++) {
+			liborDerivatives[i] = liborIDs[i] < 0 ? null : gradient.get(liborIDs[i]);
+		}
+
+		long[] ids = gradient.keySet().stream().filter(independentIDs::contains).mapToLong(Long::longValue).sorted().toArray();
+		RandomVariable[] derivatives = new RandomVariable[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			derivatives[i] = gradient.get(ids[i]);
+		}
+
+		return new SIMMGradient(numberOfLibors, liborDerivatives, ids, derivatives);
+	}
+
+	/**
+	 * Returns the derivative w.r.t. the LIBOR <code> model.getLIBOR(timeIndex, liborIndex) </code>.
+	 *
+	 * @param timeIndex  The time index of the LIBOR on the simulation time discretization
+	 * @param liborIndex The index of the LIBOR on the LIBOR period discretization
+	 * @return The derivative or null if the value does not depend on the LIBOR.
+	 */
+	public RandomVariable getLiborDerivative(int timeIndex, int liborIndex) {
+		return liborDerivatives[timeIndex * numberOfLibors + liborIndex];
+	}
+
+	/**
+	 * Returns the derivative w.r.t. the parameter with the given ID.
+	 *
+	 * @param id The ID of a LIBOR, numeraire or numeraire adjustment
+	 * @return The derivative or null if the value does not depend on the parameter or the parameter is not part of this gradient.
+	 */
+	public RandomVariable getDerivative(long id) {
+		int index = Arrays.binarySearch(ids, id);
+		return index < 0 ? null : derivatives[index];
+	}
+
+	public int getNumberOfDerivatives() {
+		return ids.length;
+	}
+
+	/**
+	 * Returns an approximation of the memory footprint of this gradient. Derivatives which are referenced more than once
+	 * (e.g. w.r.t. a LIBOR after its fixing) are counted once.
+	 *
+	 * @return The memory footprint in bytes.
+	 */
+	public long getMemoryFootprint() {
+		long bytes = ARRAY_HEADER_BYTES + (long) liborDerivatives.length * REFERENCE_BYTES;
+		bytes += ARRAY_HEADER_BYTES + (long) ids.length * Long.BYTES;
+		bytes += ARRAY_HEADER_BYTES + (long) derivatives.length * REFERENCE_BYTES;
+
+		Set<RandomVariable> randomVariables = Collections.newSetFromMap(new IdentityHashMap<RandomVariable, Boolean>());
+		for (RandomVariable derivative : derivatives) {
+			if (derivative != null && randomVariables.add(derivative)) {
+				bytes += derivative.isDeterministic() ? RANDOM_VARIABLE_BYTES : RANDOM_VARIABLE_BYTES + ARRAY_HEADER_BYTES + (long) derivative.size() * Double.BYTES;
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,148 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.montecarlo.interestrate.products.AbstractLIBORMonteCarloProduct;
+import net.finmath.montecarlo.interestrate.products.TermStructureMonteCarloProduct;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * This class describes a netting set of linear (delta only) products for SIMM initial margin calculation.
+ * The products of the netting set are valued as one sum, hence the gradient of the netting set, i.e. the forward
+ * delta sensitivities of all its products, is obtained by one single AAD sweep instead of one sweep per product.
+ * Since the sensitivities are linear in the gradient, the net sensitivity of the netting set equals the sum of the
+ * sensitivities of its products.
+ * <p>
+ * Only products without optionality which share the product class, the risk classes, the curves and the currency
+ * can be netted. Use <code> of </code> to group the products of a portfolio into netting sets.
+ */
+public class SIMMNettingSet extends AbstractSIMMProduct {
+
+	private final AbstractSIMMProduct[] products;
+	private final double finalMaturity;
+
+	/**
+	 * Construct a netting set of linear products. All products must be linear and share the SIMM classification.
+	 *
+	 * @param products The products of the netting set
+	 */
+	public SIMMNettingSet(AbstractSIMMProduct[] products) {
+		super(products[0].getProductClass(), products[0].getRiskClasses(), products[0].getCurveIndexNames(), products[0].getCurrency(), products[0].getBucketKey(), false /*hasOptionality*/);
+
+		for (AbstractSIMMProduct product : products) {
+			if (!isNettable(product) || !getKey(product).equals(getKey(products[0]))) {
+				throw new IllegalArgumentException("Netting sets only support linear products with the same product class, risk classes, curves and currency.");
+			}
+		}
+		this.products = products.clone();
+		this.finalMaturity = Arrays.stream(products).mapToDouble(AbstractSIMMProduct::getFinalMaturity).max().getAsDouble();
+	}
+
+	/**
+	 * Groups the given products into the products used for the sensitivity calculation: Linear products sharing the
+	 * SIMM classification are collected in one <code> SIMMNettingSet </code>, products with optionality (and linear
+	 * products which are the only one of their classification) are returned as they are.
+	 *
+	 * @param products The products of a portfolio
+	 * @return The netting sets and the products which are not netted
+	 */
+	public static AbstractSIMMProduct[] of(AbstractSIMMProduct[] products) {
+		Map<String, List<AbstractSIMMProduct>> nettableProducts = new LinkedHashMap<>();
+		List<AbstractSIMMProduct> sensitivityProducts = new ArrayList<>();
+		for (AbstractSIMMProduct product : products) {
+			if (isNettable(product)) {
+				nettableProducts.computeIfAbsent(getKey(product), key -> new ArrayList<>()).add(product);
+			} else {
+				sensitivityProducts.add(product);
+			}
+		}
+		for (List<AbstractSIMMProduct> nettingSet : nettableProducts.values()) {
+			sensitivityProducts.add(nettingSet.size() == 1 ? nettingSet.get(0) : new SIMMNettingSet(nettingSet.toArray(new AbstractSIMMProduct[0])));
+		}
+		return sensitivityProducts.toArray(new AbstractSIMMProduct[0]);
+	}
+
+	private static boolean isNettable(AbstractSIMMProduct product) {
+		return !product.getHasOptionality() && !(product instanceof SIMMNettingSet);
+	}
+
+	private static String getKey(AbstractSIMMProduct product) {
+		return product.getProductClass() + "|" + Arrays.toString(product.getRiskClasses()) + "|" + Arrays.toString(product.getCurveIndexNames()) + "|" + product.getCurrency() + "|" + product.getBucketKey();
+	}
+
+	public AbstractSIMMProduct[] getProducts() {
+		return products.clone();
+	}
+
+	@Override
+	public TermStructureMonteCarloProduct getLIBORMonteCarloProduct(double time) {
+		TermStructureMonteCarloProduct[] liborProducts = new TermStructureMonteCarloProduct[products.length];
+		for (int i = 0; i < products.length; i++) {
+			liborProducts[i] = products[i].getLIBORMonteCarloProduct(time);
+		}
+		return new NettingSetProduct(liborProducts);
+	}
+
+	@Override
+	public RandomVariable[] getOISModelSensitivities(String riskClass,
+			double evaluationTime,
+			LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return super.getOISModelSensitivities(evaluationTime, null, null /* null => use AAD*/, riskClass, model);
+	}
+
+	@Override
+	public RandomVariable getExerciseIndicator(double time, LIBORModelMonteCarloSimulationModel model) {
+		return new RandomVariableFromDoubleArray(1.0);
+	}
+
+	@Override
+	public double getFinalMaturity() {
+		return finalMaturity;
+	}
+
+	@Override
+	public double getMeltingResetTime(LIBORModelMonteCarloSimulationModel model) {
+		return 0; // No Reset
+	}
+
+	@Override
+	public void setConditionalExpectationOperator(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+
+		// The conditional expectation estimator with the short and long LIBOR as predictor variables is shared by all products of the model.
+		setConditionalExpectationEstimator(getLiborRegressionEstimator(evaluationTime, model, null));
+	}
+
+	@Override
+	public RandomVariable[] getValueNumeraireSensitivities(double evaluationTime,
+			LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return getValueNumeraireSensitivitiesAAD(evaluationTime, model);
+	}
+
+	/**
+	 * The sum of the <code> TermStructureMonteCarloProduct </code> s of the netting set.
+	 */
+	private static class NettingSetProduct extends AbstractLIBORMonteCarloProduct {
+
+		private final TermStructureMonteCarloProduct[] products;
+
+		NettingSetProduct(TermStructureMonteCarloProduct[] products) {
+			this.products = products;
+		}
+
+		@Override
+		public RandomVariable getValue(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+			RandomVariable value = products[0].getValue(evaluationTime, model);
+			for (int i = 1; i < products.length; i++) {
+				value = value.add(products[i].getValue(evaluationTime, model));
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct.MVAMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
+
+/**
+ * Calculation of the MVA and the expected initial margin on independent blocks of paths. The simulation is split into
+ * blocks, each block is a model with its own seed. The blocks are simulated, differentiated and reduced to the sums of the
+ * estimator one after another, hence only the paths, the AAD tape and the sensitivity caches of one block are held at a time
+ * and the peak memory is bounded by the block size and not by the total number of paths.
+ * <p>
+ * The estimates of the blocks are combined to the estimate on all paths. The standard error is calculated from the variance
+ * of all paths. For <code> MVAMode.APPROXIMATION </code>, where the initial margin is averaged within a block, the standard
+ * error of the MVA is calculated from the variance of the block estimates (batch means).
+ */
+public class SIMMPathBlockCalculation {
+
+	/**
+	 * Provides the model of a block of paths.
+	 */
+	@FunctionalInterface
+	public interface BlockModelFactory {
+		LIBORModelMonteCarloSimulationModel getModel(int blockIndex) throws CalculationException;
+	}
+
+	/**
+	 * A Monte-Carlo estimate together with its standard error.
+	 */
+	public static final class Estimate {
+		private final double value;
+		private final double standardError;
+		private final long numberOfPaths;
+		private final int numberOfBlocks;
+
+		private Estimate(double value, double standardError, long numberOfPaths, int numberOfBlocks) {
+			this.value = value;
+			this.standardError = standardError;
+			this.numberOfPaths = numberOfPaths;
+			this.numberOfBlocks = numberOfBlocks;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		/**
+		 * @return The standard error of the estimate, NaN if it cannot be estimated (e.g. a batch mean of a single block).
+		 */
+		public double getStandardError() {
+			return standardError;
+		}
+
+		public long getNumberOfPaths() {
+			return numberOfPaths;
+		}
+
+		public int getNumberOfBlocks() {
+			return numberOfBlocks;
+		}
+
+		@Override
+		public String toString() {
+			return "Estimate [value=" + value + ", standardError=" + standardError + ", numberOfPaths=" + numberOfPaths + ", numberOfBlocks=" + numberOfBlocks + "]";
+		}
+	}
+
+	private final BlockModelFactory modelFactory;
+	private final int numberOfBlocks;
+
+	/**
+	 * Construct a path block calculation.
+	 *
+	 * @param modelFactory   The factory of the models of the blocks. The models have to be independent (e.g. differ by their seed).
+	 * @param numberOfBlocks The number of blocks
+	 */
+	public SIMMPathBlockCalculation(BlockModelFactory modelFactory, int numberOfBlocks) {
+		if (numberOfBlocks < 1) {
+			throw new IllegalArgumentException("The number of blocks must be positive.");
+		}
+		this.modelFactory = modelFactory;
+		this.numberOfBlocks = numberOfBlocks;
+	}
+
+	/**
+	 * Construct a path block calculation whose blocks are clones of the given model with the seeds
+	 * <code> seed, seed + 1, ..., seed + numberOfBlocks - 1 </code>. The block size is the number of paths of the model.
+	 *
+	 * @param model          The model of the first block, determining the block size
+	 * @param seed           The seed of the first block
+	 * @param numberOfBlocks The number of blocks
+	 * @return The path block calculation
+	 */
+	public static SIMMPathBlockCalculation withModifiedSeeds(LIBORModelMonteCarloSimulationModel model, int seed, int numberOfBlocks) {
+		return new SIMMPathBlockCalculation(blockIndex -> (LIBORModelMonteCarloSimulationModel) model.getCloneWithModifiedSeed(seed + blockIndex), numberOfBlocks);
+	}
+
+	/**
+	 * Calculate the MVA of a product on all blocks of paths, see <code> AbstractSIMMProduct.getMVA </code>.
+	 *
+	 * @param product         The product
+	 * @param sensitivityMode The method to be used for sensitivity calculation (Exact, Melting or Interpolation)
+	 * @param weightMode      The method to be used for converting the libor sensitivities to swap sensitivities
+	 * @param timeStep        The time step of the initial margin profile
+	 * @param fundingSpread   The funding spread
+	 * @param mvaMode         The MVA calculation method
+	 * @param executor        The executor used to evaluate the initial margin of a block (may be null, then the calculation is performed in the calling thread)
+	 * @return The estimate of the MVA
+	 * @throws CalculationException
+	 */
+	public Estimate getMVA(AbstractSIMMProduct product, SensitivityMode sensitivityMode, WeightMode weightMode, double timeStep, double fundingSpread, MVAMode mvaMode, ExecutorService executor) throws CalculationException {
+		SIMMPathStatistics mva = SIMMPathStatistics.EMPTY;
+		double[] mvaOfBlocks = new double[numberOfBlocks];
+		for (int blockIndex = 0; blockIndex < numberOfBlocks; blockIndex++) {
+			LIBORModelMonteCarloSimulationModel model = modelFactory.getModel(blockIndex);
+
+			RandomVariable mvaOnPaths = product.getMVAOnPaths(model, sensitivityMode, weightMode, timeStep, fundingSpread, mvaMode, executor);
+			mva = mva.merge(SIMMPathStatistics.of(mvaOnPaths, model.getNumberOfPaths()));
+			mvaOfBlocks[blockIndex] = mvaOnPaths.getAverage();
+
+			// The sensitivities of the block are not used by the following blocks
+			product.clearDeltaCache();
+			if (product.sensitivityCalculationScheme != null) {
+				product.sensitivityCalculationScheme.clearRiskWeights(model);
+			}
+		}
+
+		double standardError = mvaMode == MVAMode.APPROXIMATION ? getStandardErrorOfBatchMeans(mvaOfBlocks) : mva.getStandardError();
+		return new Estimate(mva.getMean(), standardError, mva.getNumberOfPaths(), numberOfBlocks);
+	}
+
+	/**
+	 * Calculate the expected initial margin of a portfolio on all blocks of paths, see <code> SIMMPortfolio.getInitialMarginProfile </code>.
+	 *
+	 * @param portfolio               The portfolio
+	 * @param evaluationTimes         The forward initial margin times
+	 * @param calculationCCY          The currency in which the IM is calculated
+	 * @param sensitivityMode         The method to be used for sensitivity calculation (Exact, LinearMelting or Interpolation)
+	 * @param liborWeightMode         The method to be used for converting the libor sensitivities to swap sensitivities (Constant or Stochastic)
+	 * @param interpolationStep       The interpolation step (only used for SensitivityMode.INTERPOLATION)
+	 * @param isUseAnalyticSwapSensis true if for swaps we use analytic sensitivities
+	 * @param isConsiderOISSensis     true if we consider OIS sensitivities for the SIMM calculation
+	 * @param executor                The executor used to evaluate the times of a block (may be null, then the times are evaluated in the calling thread)
+	 * @return The estimate of the expected initial margin for each time of <code> evaluationTimes </code>
+	 * @throws CalculationException
+	 */
+	public Estimate[] getExpectedInitialMarginProfile(SIMMPortfolio portfolio,
+			TimeDiscretization evaluationTimes,
+			String calculationCCY,
+			SensitivityMode sensitivityMode,
+			WeightMode liborWeightMode,
+			double interpolationStep,
+			boolean isUseAnalyticSwapSensis,
+			boolean isConsiderOISSensis,
+			ExecutorService executor) throws CalculationException {
+
+		SIMMPathStatistics[] initialMargin = new SIMMPathStatistics[evaluationTimes.getNumberOfTimes()];
+		Arrays.fill(initialMargin, SIMMPathStatistics.EMPTY);
+
+		for (int blockIndex = 0; blockIndex < numberOfBlocks; blockIndex++) {
+			LIBORModelMonteCarloSimulationModel model = modelFactory.getModel(blockIndex);
+
+			// The portfolio resets its products and the risk weights of the previous block when the model changes
+			RandomVariable[] initialMarginOfBlock = portfolio.getInitialMarginProfile(evaluationTimes, model, calculationCCY, sensitivityMode, liborWeightMode,
+					interpolationStep, isUseAnalyticSwapSensis, isConsiderOISSensis, executor);
+			for (int timeIndex = 0; timeIndex < initialMargin.length; timeIndex++) {
+				initialMargin[timeIndex] = initialMargin[timeIndex].merge(SIMMPathStatistics.of(initialMarginOfBlock[timeIndex], model.getNumberOfPaths()));
+			}
+		}
+
+		Estimate[] expectedInitialMargin = new Estimate[initialMargin.length];
+		for (int timeIndex = 0; timeIndex < initialMargin.length; timeIndex++) {
+			SIMMPathStatistics statistics = initialMargin[timeIndex];
+			expectedInitialMargin[timeIndex] = new Estimate(statistics.getMean(), statistics.getStandardError(), statistics.getNumberOfPaths(), numberOfBlocks);
+		}
+		return expectedInitialMargin;
+	}
+
+	public int getNumberOfBlocks() {
+		return numberOfBlocks;
+	}
+
+	private static double getStandardErrorOfBatchMeans(double[] batchMeans) {
+		if (batchMeans.length < 2) {
+			return Double.NaN;
+		}
+		double mean = 0.0;
+		for (double batchMean : batchMeans) {
+			mean += batchMean;
+		}
+		mean /= batchMeans.length;
+
+		double sumOfSquares = 0.0;
+		for (double batchMean : batchMeans) {
+			sumOfSquares += (batchMean - mean) * (batchMean - mean);
+		}
+		return Math.sqrt(sumOfSquares / (batchMeans.length - 1) / batchMeans.length);
+	}
+}
@@ -0,0 +1,80 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.io.Serializable;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * The number of paths, the mean and the sum of squared deviations of a random variable on a set of paths. Statistics of
+ * disjoint sets of paths are combined by <code> merge </code> (pairwise update of the sums of squared deviations), hence the
+ * statistics of the merged sets equal those calculated on all paths at once.
+ */
+final class SIMMPathStatistics implements Serializable {
+
+	private static final long serialVersionUID = 4211609813523604472L;
+
+	/**
+	 * The statistics of an empty set of paths, the neutral element of <code> merge </code>.
+	 */
+	static final SIMMPathStatistics EMPTY = new SIMMPathStatistics(0, 0.0, 0.0);
+
+	private final long numberOfPaths;
+	private final double mean;
+	private final double sumOfSquaredDeviations;
+
+	private SIMMPathStatistics(long numberOfPaths, double mean, double sumOfSquaredDeviations) {
+		this.numberOfPaths = numberOfPaths;
+		this.mean = mean;
+		this.sumOfSquaredDeviations = sumOfSquaredDeviations;
+	}
+
+	/**
+	 * Calculates the statistics of the values on a set of paths.
+	 *
+	 * @param values        The values on the paths (may be deterministic)
+	 * @param numberOfPaths The number of paths
+	 * @return The statistics of the values
+	 */
+	static SIMMPathStatistics of(RandomVariable values, long numberOfPaths) {
+		double mean = values.getAverage();
+		double sumOfSquaredDeviations = 0.0;
+		if (!values.isDeterministic()) {
+			for (double value : values.getRealizations()) {
+				sumOfSquaredDeviations += (value - mean) * (value - mean);
+			}
+		}
+		return new SIMMPathStatistics(numberOfPaths, mean, sumOfSquaredDeviations);
+	}
+
+	/**
+	 * Combines these statistics with those of a disjoint set of paths.
+	 *
+	 * @param other The statistics of the other paths
+	 * @return The statistics of the paths of both
+	 */
+	SIMMPathStatistics merge(SIMMPathStatistics other) {
+		long totalNumberOfPaths = numberOfPaths + other.numberOfPaths;
+		if (totalNumberOfPaths == 0) {
+			return EMPTY;
+		}
+		double delta = other.mean - mean;
+		return new SIMMPathStatistics(totalNumberOfPaths,
+				mean + delta * other.numberOfPaths / totalNumberOfPaths,
+				sumOfSquaredDeviations + other.sumOfSquaredDeviations + delta * delta * numberOfPaths * other.numberOfPaths / totalNumberOfPaths);
+	}
+
+	long getNumberOfPaths() {
+		return numberOfPaths;
+	}
+
+	double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return The standard error of the mean, NaN for less than two paths.
+	 */
+	double getStandardError() {
+		return numberOfPaths < 2 ? Double.NaN : Math.sqrt(sumOfSquaredDeviations / (numberOfPaths - 1) / numberOfPaths);
+	}
+}
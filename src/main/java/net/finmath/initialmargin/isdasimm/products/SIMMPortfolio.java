@@ -1,29 +1,38 @@
 package net.finmath.initialmargin.isdasimm.products;
 
+import java.util.concurrent.ExecutorService;
+
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.aggregationscheme.CalculationSchemeInitialMarginISDA;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.SIMMJacobianCache;
 import net.finmath.initialmargin.isdasimm.sensitivity.SIMMSensitivityCalculation;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
 
 /**
  * This class is a wrapper of single <code> AbstractSIMMProduct </code> s into one portfolio.
  * Within the portfolio all products share the same <code> LIBORModelMonteCarloSimulationModel </code>,
  * have the same sensitivity mapping <code> SIMMSensitivityMapping </code> (i.e. the weights used for converting
  * LIBOR sensitivities into Swap-rate sensitivities are the same for all products. Moreover, the WeightMode and
- * SensitivityMode (Exact, Melting, Interpolation) are the same for all products.
+ * SensitivityMode (Exact, Melting, Interpolation) are the same for all products. The conversion weights are kept in the
+ * <code> SIMMJacobianCache </code> of the portfolio and are hence calculated only once per model and time for all products.
  *
  * @author Mario Viehmann
  */
 public class SIMMPortfolio {
 
 	private AbstractSIMMProduct[] products;
+	private AbstractSIMMProduct[] sensitivityProducts;  // The products or netting sets of which the sensitivities are calculated
+	private final boolean isNettingSetSweep;
 	private AbstractSIMMSensitivityCalculation sensitivityCalculationScheme;  // WeightMode and SensitivityMode are set in the class SIMMSensitivityMapping
 	private CalculationSchemeInitialMarginISDA SIMMScheme;
 	private LIBORModelMonteCarloSimulationModel model;
+	private ExecutorService bucketExecutor;
+	private final SIMMJacobianCache jacobianCache = new SIMMJacobianCache(); // The model-to-market Jacobians of the products of this portfolio
 
 	/**
 	 * Construct a <code> SIMMPortfolio </code>.
@@ -35,7 +44,25 @@ public class SIMMPortfolio {
 	 * @throws CalculationException
 	 */
 	public SIMMPortfolio(AbstractSIMMProduct[] products, String currency) throws CalculationException {
+		this(products, currency, false);
+	}
+
+	/**
+	 * Construct a <code> SIMMPortfolio </code>.
+	 * If <code> isNettingSetSweep </code> is true, the linear products sharing the SIMM classification are grouped into a
+	 * <code> SIMMNettingSet </code> whose sensitivities are obtained by one AAD sweep on the sum of the products, instead of one
+	 * sweep per product. Netting sets are only used for the sensitivity modes EXACT and INTERPOLATION and if swap sensitivities are
+	 * calculated by AAD. Products with optionality are always treated separately.
+	 *
+	 * @param products          The products of which the portfolio consists
+	 * @param currency          The calculation currency
+	 * @param isNettingSetSweep True if the sensitivities of linear products are calculated by one AAD sweep per netting set
+	 * @throws CalculationException
+	 */
+	public SIMMPortfolio(AbstractSIMMProduct[] products, String currency, boolean isNettingSetSweep) throws CalculationException {
 		this.products = products;
+		this.sensitivityProducts = products;
+		this.isNettingSetSweep = isNettingSetSweep;
 		this.SIMMScheme = new CalculationSchemeInitialMarginISDA(this, currency);
 	}
 
@@ -43,6 +70,16 @@ public class SIMMPortfolio {
 		return this.products;
 	}
 
+	/**
+	 * Returns the products of which the sensitivities are calculated, i.e. the netting sets and the products which are not netted.
+	 * Without netting set sweep these are the products of the portfolio.
+	 *
+	 * @return The products of which the sensitivities are calculated
+	 */
+	public AbstractSIMMProduct[] getSensitivityProducts() {
+		return this.sensitivityProducts;
+	}
+
 	/**
 	 * Calculate the forward initial margin of the portfolio.
 	 *
@@ -86,14 +123,79 @@ public class SIMMPortfolio {
 			boolean isUseAnalyticSwapSensis,
 			boolean isConsiderOISSensis) throws CalculationException {
 
+		setInitialMarginCalculation(model, calculationCCY, sensitivityMode, liborWeightMode, interpolationStep, isUseAnalyticSwapSensis, isConsiderOISSensis);
+
+		return SIMMScheme.getValue(evaluationTime);
+	}
+
+	/**
+	 * Calculate the forward initial margin of the portfolio at all times of a time discretization. The evaluation times are
+	 * independent and are calculated concurrently on the given executor. The result is identical to calling
+	 * <code> getInitialMargin </code> for each time.
+	 *
+	 * @param evaluationTimes         The forward initial margin times
+	 * @param model                   The Libor market model
+	 * @param calculationCCY          The currency in which the IM is calculated
+	 * @param sensitivityMode         The method to be used for sensitivity calculation (Exact, LinearMelting or Interpolation)
+	 * @param liborWeightMode         The method to be used for converting the libor sensitivities to swap sensitivities (Constant or Stochastic)
+	 * @param interpolationStep       The interpolation step (only used for SensitivityMode.INTERPOLATION)
+	 * @param isUseAnalyticSwapSensis true if for swaps we use analytic sensitivities
+	 * @param isConsiderOISSensis     true if we consider OIS sensitivities for the SIMM calculation
+	 * @param executor                The executor used to evaluate the times (may be null, then the times are evaluated in the calling thread)
+	 * @return The forward initial margin for each time of <code> evaluationTimes </code>
+	 * @throws CalculationException
+	 */
+	public RandomVariable[] getInitialMarginProfile(TimeDiscretization evaluationTimes,
+			LIBORModelMonteCarloSimulationModel model,
+			String calculationCCY,
+			SensitivityMode sensitivityMode,
+			WeightMode liborWeightMode,
+			double interpolationStep,
+			boolean isUseAnalyticSwapSensis,
+			boolean isConsiderOISSensis,
+			ExecutorService executor) throws CalculationException {
+
+		// The model dependent state (gradients, sensitivity calculation) is set once, before the times are evaluated concurrently
+		setInitialMarginCalculation(model, calculationCCY, sensitivityMode, liborWeightMode, interpolationStep, isUseAnalyticSwapSensis, isConsiderOISSensis);
+
+		return SIMMScheme.getValues(evaluationTimes.getAsDoubleArray(), executor);
+	}
+
+	private void setInitialMarginCalculation(LIBORModelMonteCarloSimulationModel model,
+			String calculationCCY,
+			SensitivityMode sensitivityMode,
+			WeightMode liborWeightMode,
+			double interpolationStep,
+			boolean isUseAnalyticSwapSensis,
+			boolean isConsiderOISSensis) throws CalculationException {
+
 		if (this.model == null || !model.equals(this.model) || (sensitivityCalculationScheme != null && (sensitivityMode != sensitivityCalculationScheme.getSensitivityMode() || liborWeightMode != sensitivityCalculationScheme.getWeightMode()))) { // At inception (t=0) or if the model is reset
 
+			if (this.model != null && model != this.model) {
+				// The risk weights of the previous model are no longer needed by this portfolio
+				jacobianCache.invalidate(this.model);
+			}
 			this.sensitivityCalculationScheme = new SIMMSensitivityCalculation(sensitivityMode, liborWeightMode, interpolationStep, model, isUseAnalyticSwapSensis, isConsiderOISSensis);
+			this.sensitivityCalculationScheme.setJacobianCache(jacobianCache);
+			// The net sensitivity of a netting set is the sum of the product sensitivities only if these are linear in the gradient
+			boolean isNetting = isNettingSetSweep && !isUseAnalyticSwapSensis && (sensitivityMode == SensitivityMode.EXACT || sensitivityMode == SensitivityMode.INTERPOLATION);
+			this.sensitivityProducts = isNetting ? SIMMNettingSet.of(products) : products;
 			setModel(model); // Set the (new) model. The method setModel also clears the sensitivity maps and the gradient.
 			this.SIMMScheme = new CalculationSchemeInitialMarginISDA(this, calculationCCY);
+			this.SIMMScheme.setBucketExecutor(bucketExecutor);
 		}
+	}
 
-		return SIMMScheme.getValue(evaluationTime);
+	/**
+	 * Sets the executor on which the currency buckets of the interest rate delta margin are evaluated concurrently.
+	 * It must not be the (bounded) executor passed to <code> getInitialMarginProfile </code>, since the threads evaluating
+	 * the times wait for the buckets.
+	 *
+	 * @param bucketExecutor The bucket executor (may be null, then the buckets are evaluated in the calling thread)
+	 */
+	public void setBucketExecutor(ExecutorService bucketExecutor) {
+		this.bucketExecutor = bucketExecutor;
+		this.SIMMScheme.setBucketExecutor(bucketExecutor);
 	}
 
 	/**
@@ -105,7 +207,7 @@ public class SIMMPortfolio {
 	private void setModel(LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
 		this.model = model;
-		for (AbstractSIMMProduct product : products) {
+		for (AbstractSIMMProduct product : sensitivityProducts) {
 			// Within the method setModel sensitivity maps are cleared and the gradient of each product is set to null.
 			product.setGradient(model);
 			product.clearDeltaCache();
@@ -1,7 +1,5 @@
 package net.finmath.initialmargin.isdasimm.products;
 
-import java.util.Map;
-
 import net.finmath.exception.CalculationException;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.optimizer.SolverException;
@@ -103,13 +101,13 @@ public interface SIMMProductInterface {
 	void setConditionalExpectationOperator(double time, LIBORModelMonteCarloSimulationModel model) throws CalculationException;
 
 	/**
-	 * Returns the AAD gradient of the product.
+	 * Returns the AAD gradient of the product w.r.t. the LIBORs, numeraires and numeraire adjustments of the model.
 	 *
 	 * @param model The Model
 	 * @return The gradient of the product
 	 * @throws CalculationException
 	 */
-	Map<Long, RandomVariable> getGradient(LIBORModelMonteCarloSimulationModel model) throws CalculationException;
+	SIMMGradient getGradient(LIBORModelMonteCarloSimulationModel model) throws CalculationException;
 
 	/**
 	 * Returns the final time of the product (maturity). This is important for sensitivity interpolation
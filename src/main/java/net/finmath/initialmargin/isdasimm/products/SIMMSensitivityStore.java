@@ -0,0 +1,219 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * A dense store for the delta sensitivities of a product. The sensitivity vectors (e.g. on the SIMM maturity buckets)
+ * are kept in a single slab of <code> RandomVariable[] </code>, indexed by (time index, risk class index, curve index).
+ * The risk class and curve indices are the positions in the risk classes and curve index names of the product, the
+ * evaluation times are kept in a sorted primitive array. Hence, look-ups require neither boxing nor map traversal.
+ */
+public class SIMMSensitivityStore {
+
+	/*
+	 * Approximate sizes used for the memory footprint, assuming a 64 bit JVM.
+	 */
+	private static final int REFERENCE_BYTES = 8;
+	private static final int ARRAY_HEADER_BYTES = 16;
+	private static final int RANDOM_VARIABLE_BYTES = 40;
+
+	private static final int INITIAL_NUMBER_OF_TIMES = 8;
+
+	private final String[] riskClasses;
+	private final String[] curveIndexNames;
+	private final int slotsPerTime;
+
+	private double[] times;
+	private RandomVariable[][] slab;
+	private int numberOfTimes = 0;
+
+	/**
+	 * Construct an empty sensitivity store.
+	 *
+	 * @param riskClasses     The risk classes of the product (INTEREST_RATE etc.)
+	 * @param curveIndexNames The curve index names of the product (OIS, Libor6m etc.)
+	 */
+	public SIMMSensitivityStore(String[] riskClasses, String[] curveIndexNames) {
+		this.riskClasses = riskClasses.clone();
+		this.curveIndexNames = curveIndexNames.clone();
+		this.slotsPerTime = riskClasses.length * curveIndexNames.length;
+		this.times = new double[INITIAL_NUMBER_OF_TIMES];
+		this.slab = new RandomVariable[INITIAL_NUMBER_OF_TIMES * slotsPerTime][];
+	}
+
+	/**
+	 * Returns the index of a risk class in this store.
+	 *
+	 * @param riskClass The risk class
+	 * @return The index of the risk class or -1 if the product has no sensitivity to this risk class.
+	 */
+	public int getRiskClassIndex(String riskClass) {
+		return indexOf(riskClasses, riskClass);
+	}
+
+	/**
+	 * Returns the index of a curve in this store.
+	 *
+	 * @param curveIndexName The name of the curve (OIS, Libor6m etc.)
+	 * @return The index of the curve or -1 if the product has no sensitivity to this curve.
+	 */
+	public int getCurveIndex(String curveIndexName) {
+		return indexOf(curveIndexNames, curveIndexName);
+	}
+
+	/**
+	 * Returns the index of the maturity bucket within the sensitivity vectors on the SIMM maturity buckets.
+	 *
+	 * @param maturityBucket The maturity bucket (2w, 1m, ...)
+	 * @return The index of the bucket or -1 if the bucket is unknown.
+	 */
+	public static int getMaturityBucketIndex(String maturityBucket) {
+		return indexOf(AbstractSIMMProduct.IRMaturityBuckets, maturityBucket);
+	}
+
+	/**
+	 * Returns the sensitivity vector stored for the given time, risk class and curve.
+	 *
+	 * @param time           The evaluation time
+	 * @param riskClassIndex The index of the risk class, see {@link #getRiskClassIndex(String)}
+	 * @param curveIndex     The index of the curve, see {@link #getCurveIndex(String)}
+	 * @return The sensitivity vector or null if it has not been stored.
+	 */
+	public RandomVariable[] get(double time, int riskClassIndex, int curveIndex) {
+		int timeIndex = Arrays.binarySearch(times, 0, numberOfTimes, time);
+		if (timeIndex < 0) {
+			return null;
+		}
+		return slab[getSlot(timeIndex, riskClassIndex, curveIndex)];
+	}
+
+	/**
+	 * Returns a single sensitivity stored for the given time, risk class, curve and bucket.
+	 *
+	 * @param time           The evaluation time
+	 * @param riskClassIndex The index of the risk class
+	 * @param curveIndex     The index of the curve
+	 * @param bucketIndex    The index of the bucket within the sensitivity vector
+	 * @return The sensitivity or null if it has not been stored.
+	 */
+	public RandomVariable get(double time, int riskClassIndex, int curveIndex, int bucketIndex) {
+		RandomVariable[] sensitivities = get(time, riskClassIndex, curveIndex);
+		return sensitivities == null ? null : sensitivities[bucketIndex];
+	}
+
+	/**
+	 * Store a sensitivity vector for the given time, risk class and curve.
+	 *
+	 * @param time           The evaluation time
+	 * @param riskClassIndex The index of the risk class
+	 * @param curveIndex     The index of the curve
+	 * @param sensitivities  The sensitivity vector
+	 */
+	public void put(double time, int riskClassIndex, int curveIndex, RandomVariable[] sensitivities) {
+		int timeIndex = Arrays.binarySearch(times, 0, numberOfTimes, time);
+		if (timeIndex < 0) {
+			timeIndex = insertTime(-timeIndex - 1, time);
+		}
+		slab[getSlot(timeIndex, riskClassIndex, curveIndex)] = sensitivities;
+	}
+
+	public boolean contains(double time, int riskClassIndex, int curveIndex) {
+		return get(time, riskClassIndex, curveIndex) != null;
+	}
+
+	public void clear() {
+		Arrays.fill(slab, 0, numberOfTimes * slotsPerTime, null);
+		numberOfTimes = 0;
+	}
+
+	public int getNumberOfTimes() {
+		return numberOfTimes;
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes held by this store, i.e. the slab, the time array and all
+	 * distinct random variables referenced by the stored sensitivity vectors.
+	 *
+	 * @return The memory footprint in bytes.
+	 */
+	public long getMemoryFootprint() {
+		long bytes = ARRAY_HEADER_BYTES + (long) times.length * Double.BYTES;
+		bytes += ARRAY_HEADER_BYTES + (long) slab.length * REFERENCE_BYTES;
+
+		Set<RandomVariable> randomVariables = Collections.newSetFromMap(new IdentityHashMap<RandomVariable, Boolean>());
+		for (int slot = 0; slot < numberOfTimes * slotsPerTime; slot++) {
+			RandomVariable[] sensitivities = slab[slot];
+			if (sensitivities == null) {
+				continue;
+			}
+			bytes += ARRAY_HEADER_BYTES + (long) sensitivities.length * REFERENCE_BYTES;
+			for (RandomVariable sensitivity : sensitivities) {
+				if (sensitivity != null && randomVariables.add(sensitivity)) {
+					bytes += getMemoryFootprint(sensitivity);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the memory footprint of a fully populated store with stochastic sensitivities.
+	 *
+	 * @param numberOfPaths   The number of Monte-Carlo paths
+	 * @param numberOfTimes   The number of evaluation times
+	 * @param numberOfVectors The number of sensitivity vectors per time (number of risk classes times number of curves)
+	 * @param numberOfBuckets The length of each sensitivity vector (e.g. 12 SIMM maturity buckets)
+	 * @return The estimated memory footprint in bytes.
+	 */
+	public static long estimateMemoryFootprint(int numberOfPaths, int numberOfTimes, int numberOfVectors, int numberOfBuckets) {
+		long numberOfRandomVariables = (long) numberOfTimes * numberOfVectors * numberOfBuckets;
+		long bytesPerRandomVariable = RANDOM_VARIABLE_BYTES + ARRAY_HEADER_BYTES + (long) numberOfPaths * Double.BYTES;
+		long bytesOfVectors = (long) numberOfTimes * numberOfVectors * (ARRAY_HEADER_BYTES + (long) numberOfBuckets * REFERENCE_BYTES);
+		long bytesOfSlab = ARRAY_HEADER_BYTES + (long) numberOfTimes * numberOfVectors * REFERENCE_BYTES;
+		return numberOfRandomVariables * bytesPerRandomVariable + bytesOfVectors + bytesOfSlab;
+	}
+
+	private static long getMemoryFootprint(RandomVariable randomVariable) {
+		if (randomVariable.isDeterministic()) {
+			return RANDOM_VARIABLE_BYTES;
+		}
+		return RANDOM_VARIABLE_BYTES + ARRAY_HEADER_BYTES + (long) randomVariable.size() * Double.BYTES;
+	}
+
+	private int getSlot(int timeIndex, int riskClassIndex, int curveIndex) {
+		if (riskClassIndex < 0 || riskClassIndex >= riskClasses.length || curveIndex < 0 || curveIndex >= curveIndexNames.length) {
+			throw new IllegalArgumentException("Risk class index " + riskClassIndex + " or curve index " + curveIndex + " out of range.");
+		}
+		return (timeIndex * riskClasses.length + riskClassIndex) * curveIndexNames.length + curveIndex;
+	}
+
+	private int insertTime(int timeIndex, double time) {
+		if (numberOfTimes == times.length) {
+			int capacity = 2 * times.length;
+			times = Arrays.copyOf(times, capacity);
+			slab = Arrays.copyOf(slab, capacity * slotsPerTime);
+		}
+		// Shift later times (and their slots) by one
+		System.arraycopy(times, timeIndex, times, timeIndex + 1, numberOfTimes - timeIndex);
+		System.arraycopy(slab, timeIndex * slotsPerTime, slab, (timeIndex + 1) * slotsPerTime, (numberOfTimes - timeIndex) * slotsPerTime);
+		Arrays.fill(slab, timeIndex * slotsPerTime, (timeIndex + 1) * slotsPerTime, null);
+
+		times[timeIndex] = time;
+		numberOfTimes++;
+		return timeIndex;
+	}
+
+	private static int indexOf(String[] keys, String key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == key || keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,141 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.finmath.exception.CalculationException;
+
+/**
+ * Calculation of the forward initial margin and the MVA in separate worker processes. The paths are split into shards, each
+ * shard is a model with its own seed (<code> seed + shardIndex </code>) calculated by a <code> SIMMShardWorker </code> process
+ * on the local machine. The coordinator sends the task to the worker through its standard input and reads the partial sums
+ * from its standard output. The partial sums of the shards are merged in the order of the shards, hence the result does not
+ * depend on the order in which the workers finish.
+ */
+public class SIMMShardCoordinator {
+
+	private final int numberOfWorkers;
+	private final List<String> jvmArguments;
+
+	/**
+	 * Construct a coordinator starting the workers with the class path of this JVM.
+	 *
+	 * @param numberOfWorkers The maximal number of worker processes running at the same time
+	 */
+	public SIMMShardCoordinator(int numberOfWorkers) {
+		this(numberOfWorkers, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Construct a coordinator starting the workers with the class path of this JVM and the given JVM arguments.
+	 *
+	 * @param numberOfWorkers The maximal number of worker processes running at the same time
+	 * @param jvmArguments    The arguments of the worker JVMs (e.g. -Xmx4g)
+	 */
+	public SIMMShardCoordinator(int numberOfWorkers, List<String> jvmArguments) {
+		if (numberOfWorkers < 1) {
+			throw new IllegalArgumentException("The number of workers must be positive.");
+		}
+		this.numberOfWorkers = numberOfWorkers;
+		this.jvmArguments = new ArrayList<>(jvmArguments);
+	}
+
+	/**
+	 * Calculate the partial sums of all shards in worker processes and merge them.
+	 *
+	 * @param task           The model and products. The task is serialized and has to be on the class path of the workers.
+	 * @param specification  The settings of the calculation
+	 * @param seed           The seed of the first shard
+	 * @param numberOfShards The number of shards
+	 * @return The partial sums on the paths of all shards
+	 * @throws CalculationException
+	 */
+	public SIMMShardResult calculate(SIMMShardTask task, SIMMShardSpecification specification, int seed, int numberOfShards) throws CalculationException {
+		if (numberOfShards < 1) {
+			throw new IllegalArgumentException("The number of shards must be positive.");
+		}
+
+		List<Process> workers = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfWorkers, numberOfShards));
+		try {
+			List<Future<SIMMShardResult>> shards = new ArrayList<>();
+			for (int shardIndex = 0; shardIndex < numberOfShards; shardIndex++) {
+				SIMMShardWorker.Request request = new SIMMShardWorker.Request(task, specification, seed + shardIndex);
+				shards.add(executor.submit(new Callable<SIMMShardResult>() {
+					@Override
+					public SIMMShardResult call() throws Exception {
+						return calculateInWorker(request, workers);
+					}
+				}));
+			}
+
+			SIMMShardResult result = null;
+			for (Future<SIMMShardResult> shard : shards) {
+				result = result == null ? shard.get() : result.merge(shard.get());
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CalculationException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CalculationException) {
+				throw (CalculationException) e.getCause();
+			}
+			throw new CalculationException(e.getCause());
+		} finally {
+			// The workers still running after a failure or an interruption are not needed anymore
+			executor.shutdownNow();
+			synchronized (workers) {
+				for (Process worker : workers) {
+					worker.destroyForcibly();
+				}
+			}
+		}
+	}
+
+	private SIMMShardResult calculateInWorker(SIMMShardWorker.Request request, List<Process> workers) throws IOException, ClassNotFoundException, CalculationException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.addAll(jvmArguments);
+		command.add(SIMMShardWorker.class.getName());
+
+		Process worker = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		workers.add(worker);
+		try {
+			try (ObjectOutputStream out = new ObjectOutputStream(worker.getOutputStream())) {
+				out.writeObject(request);
+			}
+
+			Object result;
+			try (ObjectInputStream in = new ObjectInputStream(worker.getInputStream())) {
+				result = in.readObject();
+			}
+			worker.waitFor();
+
+			if (result instanceof CalculationException) {
+				throw (CalculationException) result;
+			}
+			if (result instanceof RuntimeException) {
+				throw (RuntimeException) result;
+			}
+			return (SIMMShardResult) result;
+		} finally {
+			if (worker.isAlive()) {
+				worker.destroyForcibly();
+			}
+			workers.remove(worker);
+		}
+	}
+}
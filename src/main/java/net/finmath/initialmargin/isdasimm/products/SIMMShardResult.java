@@ -0,0 +1,123 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct.MVAMode;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+
+/**
+ * The partial sums of a forward initial margin and MVA calculation on a set of paths (a shard). For each time of the initial
+ * margin profile the shard holds the mean and the sum of squared deviations of the initial margin and the mean of the discounted
+ * funding increment, for the MVA the mean and the sum of squared deviations of the MVA on the paths. Shards calculated on
+ * disjoint paths are combined by <code> merge </code>, hence the result of the merged shards is the result on all paths.
+ */
+public class SIMMShardResult implements Serializable {
+
+	private static final long serialVersionUID = 6150385712209487733L;
+
+	private final double[] times;
+
+	private final SIMMPathStatistics[] initialMargin;
+	private final SIMMPathStatistics[] fundingIncrements;
+	private final SIMMPathStatistics mva;
+
+	private SIMMShardResult(double[] times, SIMMPathStatistics[] initialMargin, SIMMPathStatistics[] fundingIncrements, SIMMPathStatistics mva) {
+		this.times = times;
+		this.initialMargin = initialMargin;
+		this.fundingIncrements = fundingIncrements;
+		this.mva = mva;
+	}
+
+	/**
+	 * Reduce the initial margin profile and the funding increments of one shard to its partial sums.
+	 *
+	 * @param times             The times of the initial margin profile
+	 * @param initialMargin     The initial margin at the times
+	 * @param fundingIncrements The discounted funding increments, i.e. the difference of the funding bonds at the time and the following time
+	 * @param numberOfPaths     The number of paths of the shard
+	 * @return The partial sums of the shard
+	 */
+	public static SIMMShardResult of(double[] times, RandomVariable[] initialMargin, RandomVariable[] fundingIncrements, int numberOfPaths) {
+		if (initialMargin.length != times.length || fundingIncrements.length != times.length) {
+			throw new IllegalArgumentException("The initial margin and the funding increments must be given for every time.");
+		}
+
+		SIMMPathStatistics[] initialMarginStatistics = new SIMMPathStatistics[times.length];
+		SIMMPathStatistics[] fundingIncrementStatistics = new SIMMPathStatistics[times.length];
+		RandomVariable mva = null;
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			initialMarginStatistics[timeIndex] = SIMMPathStatistics.of(initialMargin[timeIndex], numberOfPaths);
+			fundingIncrementStatistics[timeIndex] = SIMMPathStatistics.of(fundingIncrements[timeIndex], numberOfPaths);
+
+			RandomVariable mvaIncrement = fundingIncrements[timeIndex].mult(initialMargin[timeIndex]);
+			mva = mva == null ? mvaIncrement.mult(-1.0) : mva.sub(mvaIncrement);
+		}
+		SIMMPathStatistics mvaStatistics = mva == null ? SIMMPathStatistics.of(new Scalar(0.0), numberOfPaths) : SIMMPathStatistics.of(mva, numberOfPaths);
+
+		return new SIMMShardResult(times.clone(), initialMarginStatistics, fundingIncrementStatistics, mvaStatistics);
+	}
+
+	/**
+	 * Combine the partial sums of this shard with those of a shard calculated on different paths.
+	 *
+	 * @param other The partial sums of the other shard (with the same times)
+	 * @return The partial sums of both shards
+	 */
+	public SIMMShardResult merge(SIMMShardResult other) {
+		if (!Arrays.equals(times, other.times)) {
+			throw new IllegalArgumentException("Shards with different times cannot be merged.");
+		}
+
+		SIMMPathStatistics[] mergedInitialMargin = new SIMMPathStatistics[times.length];
+		SIMMPathStatistics[] mergedFundingIncrements = new SIMMPathStatistics[times.length];
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			mergedInitialMargin[timeIndex] = initialMargin[timeIndex].merge(other.initialMargin[timeIndex]);
+			mergedFundingIncrements[timeIndex] = fundingIncrements[timeIndex].merge(other.fundingIncrements[timeIndex]);
+		}
+
+		return new SIMMShardResult(times, mergedInitialMargin, mergedFundingIncrements, mva.merge(other.mva));
+	}
+
+	public double[] getTimes() {
+		return times.clone();
+	}
+
+	public long getNumberOfPaths() {
+		return mva.getNumberOfPaths();
+	}
+
+	public double getExpectedInitialMargin(int timeIndex) {
+		return initialMargin[timeIndex].getMean();
+	}
+
+	public double getStandardErrorOfExpectedInitialMargin(int timeIndex) {
+		return initialMargin[timeIndex].getStandardError();
+	}
+
+	/**
+	 * Returns the MVA, see <code> AbstractSIMMProduct.getMVA </code>.
+	 *
+	 * @param mvaMode The MVA calculation method
+	 * @return The MVA
+	 */
+	public double getMVA(MVAMode mvaMode) {
+		if (mvaMode == MVAMode.APPROXIMATION) {
+			// The expected initial margin on all paths is multiplied with the expected funding increments
+			double mva = 0.0;
+			for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+				mva -= fundingIncrements[timeIndex].getMean() * initialMargin[timeIndex].getMean();
+			}
+			return mva;
+		}
+		return this.mva.getMean();
+	}
+
+	/**
+	 * @return The standard error of the exact MVA (<code> MVAMode.EXACT </code>).
+	 */
+	public double getStandardErrorOfMVA() {
+		return mva.getStandardError();
+	}
+}
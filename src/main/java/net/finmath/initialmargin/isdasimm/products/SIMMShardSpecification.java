@@ -0,0 +1,80 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.io.Serializable;
+
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+
+/**
+ * The settings of a sharded initial margin and MVA calculation, see <code> SIMMShardCoordinator </code>. The initial margin
+ * profile is calculated at the times <code> 0, timeStep, 2 timeStep, ... </code> before the final maturity of the products.
+ */
+public class SIMMShardSpecification implements Serializable {
+
+	private static final long serialVersionUID = 6086233719716377408L;
+
+	private final String calculationCCY;
+	private final SensitivityMode sensitivityMode;
+	private final WeightMode weightMode;
+	private final double interpolationStep;
+	private final boolean isUseAnalyticSwapSensis;
+	private final boolean isConsiderOISSensis;
+	private final double timeStep;
+	private final double fundingSpread;
+
+	/**
+	 * Construct the settings of a sharded calculation.
+	 *
+	 * @param calculationCCY          The currency in which the IM is calculated
+	 * @param sensitivityMode         The method to be used for sensitivity calculation (Exact, Melting or Interpolation)
+	 * @param weightMode              The method to be used for converting the libor sensitivities to swap sensitivities
+	 * @param interpolationStep       The interpolation step (only used for SensitivityMode.INTERPOLATION)
+	 * @param isUseAnalyticSwapSensis true if for swaps we use analytic sensitivities
+	 * @param isConsiderOISSensis     true if we consider OIS sensitivities for the SIMM calculation
+	 * @param timeStep                The time step of the initial margin profile
+	 * @param fundingSpread           The funding spread of the MVA
+	 */
+	public SIMMShardSpecification(String calculationCCY, SensitivityMode sensitivityMode, WeightMode weightMode, double interpolationStep,
+			boolean isUseAnalyticSwapSensis, boolean isConsiderOISSensis, double timeStep, double fundingSpread) {
+		this.calculationCCY = calculationCCY;
+		this.sensitivityMode = sensitivityMode;
+		this.weightMode = weightMode;
+		this.interpolationStep = interpolationStep;
+		this.isUseAnalyticSwapSensis = isUseAnalyticSwapSensis;
+		this.isConsiderOISSensis = isConsiderOISSensis;
+		this.timeStep = timeStep;
+		this.fundingSpread = fundingSpread;
+	}
+
+	public String getCalculationCCY() {
+		return calculationCCY;
+	}
+
+	public SensitivityMode getSensitivityMode() {
+		return sensitivityMode;
+	}
+
+	public WeightMode getWeightMode() {
+		return weightMode;
+	}
+
+	public double getInterpolationStep() {
+		return interpolationStep;
+	}
+
+	public boolean isUseAnalyticSwapSensis() {
+		return isUseAnalyticSwapSensis;
+	}
+
+	public boolean isConsiderOISSensis() {
+		return isConsiderOISSensis;
+	}
+
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	public double getFundingSpread() {
+		return fundingSpread;
+	}
+}
@@ -0,0 +1,32 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.io.Serializable;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+
+/**
+ * The specification of the model and the products of a sharded initial margin calculation. The task is sent to the worker
+ * processes, which create the model and the products themselves, hence the task has to be serializable and should only
+ * hold the data required to construct them (curves, volatilities, product parameters).
+ */
+public interface SIMMShardTask extends Serializable {
+
+	/**
+	 * Create the LIBOR market model of a shard. Shards are created with different seeds, hence the
+	 * models have to differ only by the seed of their Brownian motion.
+	 *
+	 * @param seed The seed of the Brownian motion of the shard
+	 * @return The LIBOR market model
+	 * @throws CalculationException
+	 */
+	LIBORModelMonteCarloSimulationModel createModel(int seed) throws CalculationException;
+
+	/**
+	 * Create the products whose initial margin is calculated as one portfolio.
+	 *
+	 * @return The products
+	 * @throws CalculationException
+	 */
+	AbstractSIMMProduct[] createProducts() throws CalculationException;
+}
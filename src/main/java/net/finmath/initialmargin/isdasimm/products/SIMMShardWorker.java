@@ -0,0 +1,103 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+/**
+ * The worker process of a sharded initial margin calculation. The worker reads a request (task, specification and seed of
+ * its shard) from the standard input, calculates the partial sums of its shard and writes them (or the exception of the
+ * calculation) to the standard output. Output of the calculation itself is redirected to the standard error.
+ */
+public class SIMMShardWorker {
+
+	/**
+	 * The request sent by the coordinator to a worker.
+	 */
+	static final class Request implements Serializable {
+		private static final long serialVersionUID = 3316048127556018391L;
+
+		private final SIMMShardTask task;
+		private final SIMMShardSpecification specification;
+		private final int seed;
+
+		Request(SIMMShardTask task, SIMMShardSpecification specification, int seed) {
+			this.task = task;
+			this.specification = specification;
+			this.seed = seed;
+		}
+	}
+
+	private SIMMShardWorker() {
+	}
+
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		// The standard output carries the result, hence anything printed by the calculation goes to the standard error
+		PrintStream resultStream = System.out;
+		System.setOut(System.err);
+
+		Request request = (Request) new ObjectInputStream(System.in).readObject();
+
+		Object result;
+		try {
+			result = calculate(request.task, request.specification, request.seed);
+		} catch (CalculationException | RuntimeException e) {
+			result = e;
+		}
+
+		ObjectOutputStream out = new ObjectOutputStream(resultStream);
+		out.writeObject(result);
+		out.flush();
+	}
+
+	/**
+	 * Calculate the partial sums of one shard in the calling thread.
+	 *
+	 * @param task          The model and products
+	 * @param specification The settings of the calculation
+	 * @param seed          The seed of the shard
+	 * @return The partial sums of the shard
+	 * @throws CalculationException
+	 */
+	public static SIMMShardResult calculate(SIMMShardTask task, SIMMShardSpecification specification, int seed) throws CalculationException {
+		LIBORModelMonteCarloSimulationModel model = task.createModel(seed);
+		AbstractSIMMProduct[] products = task.createProducts();
+
+		double finalMaturity = 0.0;
+		for (AbstractSIMMProduct product : products) {
+			finalMaturity = Math.max(finalMaturity, product.getFinalMaturity());
+		}
+		double timeStep = specification.getTimeStep();
+		int numberOfTimeSteps = AbstractSIMMProduct.getNumberOfMVATimeSteps(finalMaturity, timeStep);
+		if (numberOfTimeSteps == 0) {
+			return SIMMShardResult.of(new double[0], new RandomVariable[0], new RandomVariable[0], model.getNumberOfPaths());
+		}
+
+		double[] times = new double[numberOfTimeSteps];
+		for (int i = 0; i < numberOfTimeSteps; i++) {
+			times[i] = i * timeStep;
+		}
+
+		SIMMPortfolio portfolio = new SIMMPortfolio(products, specification.getCalculationCCY());
+		RandomVariable[] initialMargin = portfolio.getInitialMarginProfile(new TimeDiscretizationFromArray(times), model, specification.getCalculationCCY(),
+				specification.getSensitivityMode(), specification.getWeightMode(), specification.getInterpolationStep(),
+				specification.isUseAnalyticSwapSensis(), specification.isConsiderOISSensis(), null);
+
+		// The funding increments as in AbstractSIMMProduct.getMVA
+		double fundingSpread = specification.getFundingSpread();
+		RandomVariable[] fundingIncrements = new RandomVariable[numberOfTimeSteps];
+		for (int i = 0; i < numberOfTimeSteps; i++) {
+			RandomVariable forwardBond = model.getNumeraire((i + 1) * timeStep).mult(Math.exp((i + 1) * timeStep * fundingSpread)).invert();
+			fundingIncrements[i] = forwardBond.sub(model.getNumeraire(i * timeStep).mult(Math.exp(i * timeStep * fundingSpread)).invert());
+		}
+
+		return SIMMShardResult.of(times, initialMargin, fundingIncrements, model.getNumberOfPaths());
+	}
+}
@@ -1,13 +1,11 @@
 package net.finmath.initialmargin.isdasimm.products;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.changedfinmath.LIBORMarketModelFromCovarianceModelUtilities;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation;
 import net.finmath.montecarlo.RandomVariableFromDoubleArray;
-import net.finmath.montecarlo.conditionalexpectation.MonteCarloConditionalExpectationRegression;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.montecarlo.interestrate.products.SimpleSwap;
 import net.finmath.montecarlo.interestrate.products.TermStructureMonteCarloProduct;
@@ -215,24 +213,8 @@ public class SIMMSimpleSwap extends AbstractSIMMProduct {
 	@Override
 	public void setConditionalExpectationOperator(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
-		// Create a conditional expectation estimator with some basis functions (predictor variables) for conditional expectation estimation.
-		RandomVariable[] regressor = new RandomVariable[2];
-		regressor[0] = model.getLIBOR(evaluationTime, evaluationTime, evaluationTime + model.getLiborPeriodDiscretization().getTimeStep(0));
-		regressor[1] = model.getLIBOR(evaluationTime, evaluationTime, model.getLiborPeriodDiscretization().getTime(model.getNumberOfLibors() - 1));
-		ArrayList<RandomVariable> basisFunctions = getRegressionBasisFunctions(regressor, 2);
-		this.conditionalExpectationOperator = new MonteCarloConditionalExpectationRegression(basisFunctions.toArray(new RandomVariable[0]));
-	}
-
-	private static ArrayList<RandomVariable> getRegressionBasisFunctions(RandomVariable[] libors, int order) {
-		ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
-		// Create basis functions - here: 1, S, S^2, S^3, S^4
-
-		for (int liborIndex = 0; liborIndex < libors.length; liborIndex++) {
-			for (int powerOfRegressionMonomial = 0; powerOfRegressionMonomial <= order; powerOfRegressionMonomial++) {
-				basisFunctions.add(libors[liborIndex].pow(powerOfRegressionMonomial));
-			}
-		}
-		return basisFunctions;
+		// The conditional expectation estimator with the short and long LIBOR as predictor variables is shared by all products of the model.
+		setConditionalExpectationEstimator(getLiborRegressionEstimator(evaluationTime, model, null));
 	}
 
 	//----------------------------------------------------------------------------------------------------------------------------------
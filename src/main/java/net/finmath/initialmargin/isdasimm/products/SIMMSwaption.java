@@ -2,13 +2,11 @@ package net.finmath.initialmargin.isdasimm.products;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.List;
 
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation;
-import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.montecarlo.automaticdifferentiation.RandomVariableDifferentiable;
-import net.finmath.montecarlo.conditionalexpectation.MonteCarloConditionalExpectationRegression;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.montecarlo.interestrate.models.LIBORMarketModelFromCovarianceModel;
 import net.finmath.montecarlo.interestrate.products.SimpleSwap;
@@ -37,6 +35,9 @@ public class SIMMSwaption extends AbstractSIMMProduct {
 
 	private DeliveryType deliveryType;
 
+	// Gradient of the swap after exercise (physical delivery only). Used for the sensitivities at times after the exercise date.
+	private SIMMGradient gradientOfDeliveryProduct = null;
+
 	/**
 	 * Construct a swaption as a product for the SIMM. Initial margin and MVA can be calculated for this product.
 	 *
@@ -160,53 +161,51 @@ public class SIMMSwaption extends AbstractSIMMProduct {
 	@Override
 	public void setConditionalExpectationOperator(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
-		// Swaption: Set paths on which we have not exercised to zero
-		RandomVariable indicator = new RandomVariableFromDoubleArray(1.0);
+		// Swaption: Set paths on which we have not exercised to zero (no indicator before the exercise date)
+		RandomVariable indicator = null;
 		if (evaluationTime >= swaption.getExerciseDate()) {
 			indicator = getExerciseIndicator(evaluationTime, model); // 1 if exercised on this path
 		}
 
-		// Create a conditional expectation estimator with some basis functions (predictor variables) for conditional expectation estimation.
-		RandomVariable[] regressor = new RandomVariable[2];
-		regressor[0] = model.getLIBOR(evaluationTime, evaluationTime, evaluationTime + model.getLiborPeriodDiscretization().getTimeStep(0));
-		regressor[1] = model.getLIBOR(evaluationTime, evaluationTime, model.getLiborPeriodDiscretization().getTime(model.getNumberOfLibors() - 1));
-		ArrayList<RandomVariable> basisFunctions = getRegressionBasisFunctions(regressor, 2, indicator);
-		this.conditionalExpectationOperator = new MonteCarloConditionalExpectationRegression(basisFunctions.toArray(new RandomVariable[0]));
-	}
-
-	private static ArrayList<RandomVariable> getRegressionBasisFunctions(RandomVariable[] libors, int order, RandomVariable indicator) {
-		ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
-		// Create basis functions - here: 1, S, S^2, S^3, S^4
-
-		for (int liborIndex = 0; liborIndex < libors.length; liborIndex++) {
-			for (int powerOfRegressionMonomial = 0; powerOfRegressionMonomial <= order; powerOfRegressionMonomial++) {
-				basisFunctions.add(libors[liborIndex].pow(powerOfRegressionMonomial).mult(indicator));
-			}
-		}
-		return basisFunctions;
+		// The conditional expectation estimator with the short and long LIBOR as predictor variables is shared by all products of the model.
+		setConditionalExpectationEstimator(getLiborRegressionEstimator(evaluationTime, model, indicator));
 	}
 
 	/**
-	 * Set the gradient of the swap in case of physical exercise.
+	 * Set the gradient of the swap in case of physical exercise. The gradient of the swaption is kept, such that
+	 * sensitivities at times before and after the exercise date may be calculated in any order.
 	 *
 	 * @throws CalculationException
 	 */
-	private void setSwapGradient() throws CalculationException {
+	private synchronized void setSwapGradient() throws CalculationException {
 		if (!super.isGradientOfDeliveryProduct) {
 			// Calculate the product value as of time 0.
 			RandomVariable indicator = getExerciseIndicator(swaption.getExerciseDate() + 0.0001, null);
 			RandomVariableDifferentiable productValue =
 					(RandomVariableDifferentiable) swap.getValue(0.0, modelCache).mult(indicator);
 			// Get the map of numeraire adjustments used specifically for this product
-			super.numeraireAdjustmentMap.putAll(((LIBORMarketModelFromCovarianceModel)modelCache.getModel()).getNumeraireAdjustments());
-			// Calculate the gradient
-			Map<Long, RandomVariable> gradientOfProduct = productValue.getGradient();
+			List<RandomVariable> numeraireAdjustments;
+			synchronized (super.numeraireAdjustmentMap) {
+				super.numeraireAdjustmentMap.putAll(((LIBORMarketModelFromCovarianceModel)modelCache.getModel()).getNumeraireAdjustments());
+				numeraireAdjustments = new ArrayList<>(super.numeraireAdjustmentMap.values());
+			}
+			// Calculate the gradient, restricted to the LIBORs, numeraires and numeraire adjustments
+			SIMMGradient gradientOfProduct = SIMMGradient.of(productValue, modelCache, numeraireAdjustments);
 			// Set the gradient
-			super.gradient = gradientOfProduct;
+			this.gradientOfDeliveryProduct = gradientOfProduct;
 			super.isGradientOfDeliveryProduct = true;
 		}
 	}
 
+	@Override
+	protected SIMMGradient getGradient(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		if (deliveryType == DeliveryType.Physical && evaluationTime >= swaption.getExerciseDate()) {
+			setSwapGradient();
+			return this.gradientOfDeliveryProduct;
+		}
+		return super.getGradient(evaluationTime, model);
+	}
+
 	public DeliveryType getDeliveryType() {
 		return this.deliveryType;
 	}
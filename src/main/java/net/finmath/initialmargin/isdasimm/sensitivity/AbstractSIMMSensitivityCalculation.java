@@ -8,18 +8,18 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.SingularValueDecomposition;
 
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.changedfinmath.LIBORMarketModelFromCovarianceModelUtilities;
 import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct;
+import net.finmath.initialmargin.metrics.Metrics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
 import net.finmath.marketdata.model.curves.DiscountCurve;
 import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.montecarlo.automaticdifferentiation.RandomVariableDifferentiable;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.optimizer.SolverException;
+import net.finmath.sensitivities.transformation.TransformationAlgorithms;
 import net.finmath.stochastic.RandomVariable;
 
 /**
@@ -32,7 +32,6 @@ public abstract class AbstractSIMMSensitivityCalculation {
 
 	public boolean isUseAnalyticSwapSensitivities;
 	public boolean isConsiderOISSensitivities;
-	public static double secondsPseudoInverse = 0;
 
 	/**
 	 * Method to propagate the sensitivity vector through time.
@@ -89,8 +88,11 @@ public abstract class AbstractSIMMSensitivityCalculation {
 	public static final RandomVariable[] zeroBucketsIR = IntStream.range(0, 12 /*IRMaturityBuckets.length*/).mapToObj(i -> new RandomVariableFromDoubleArray(0.0)).toArray(RandomVariable[]::new);
 
 	private WeightMode weightTransformationMethod;
-	private HashMap<Double /*time*/, RandomVariable[][]> riskWeightMapLibor = new HashMap<>(); // Contains the weights for conversion from model sensitivities to market sensitivities for the Forward CurveFromInterpolationPoints.
-	private HashMap<Double /*time*/, RandomVariable[][]> riskWeightMapOIS = new HashMap<>(); // Contains the weights for conversion from model sensitivities to market sensitivities for the OIS CurveFromInterpolationPoints.
+	/*
+	 * Contains the weights for conversion from model sensitivities to market sensitivities for the forward and the OIS curve.
+	 * The cache is owned by this sensitivity calculation unless a cache shared with other calculations is set explicitly.
+	 */
+	private SIMMJacobianCache jacobianCache = new SIMMJacobianCache();
 
 	/*
 	 * Reference for sensitivity cache in case OIS - LIBOR dependencies are considered. Not used in the thesis! In this case we must calculate
@@ -319,10 +321,10 @@ public abstract class AbstractSIMMSensitivityCalculation {
 	 * @throws CalculationException
 	 */
 	private RandomVariable[][] getSensitivityWeightLIBOR(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return jacobianCache.getJacobian(model, evaluationTime, SIMMJacobianCache.Curve.LIBOR, () -> calculateSensitivityWeightLIBOR(evaluationTime, model));
+	}
 
-		if (riskWeightMapLibor.containsKey(evaluationTime)) {
-			return riskWeightMapLibor.get(evaluationTime);
-		}
+	private static RandomVariable[][] calculateSensitivityWeightLIBOR(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
 		RandomVariable[][] dLdS = null;
 		double liborPeriodLength = model.getLiborPeriodDiscretization().getTimeStep(0);
@@ -348,7 +350,6 @@ public abstract class AbstractSIMMSensitivityCalculation {
 		RandomVariable[][] dLdL = getLiborTimeGridAdjustment(evaluationTime, model);
 		dLdS = multiply(dLdL, dLdS);
 
-		riskWeightMapLibor.put(evaluationTime, dLdS);
 		return dLdS;
 	}
 
@@ -362,10 +363,11 @@ public abstract class AbstractSIMMSensitivityCalculation {
 	 */
 	private RandomVariable[][] getSensitivityWeightOIS(double evaluationTime,
 			LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return jacobianCache.getJacobian(model, evaluationTime, SIMMJacobianCache.Curve.OIS, () -> calculateSensitivityWeightOIS(evaluationTime, model));
+	}
 
-		if (riskWeightMapOIS.containsKey(evaluationTime)) {
-			return riskWeightMapOIS.get(evaluationTime);
-		}
+	private static RandomVariable[][] calculateSensitivityWeightOIS(double evaluationTime,
+			LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
 		int numberOfBonds = getNumberOfRemainingLibors(evaluationTime, model);
 		double timeStep = model.getLiborPeriodDiscretization().getTimeStep(0);
@@ -388,8 +390,7 @@ public abstract class AbstractSIMMSensitivityCalculation {
 			}
 		}
 
-		RandomVariable[][] dPdS = getPseudoInverse(dSdP, model.getNumberOfPaths()); // PseudoInverse == Inverse for n x n matrix.
-		riskWeightMapOIS.put(evaluationTime, dPdS);
+		RandomVariable[][] dPdS = getPseudoInverse(dSdP, model.getNumberOfPaths(), evaluationTime); // PseudoInverse == Inverse for n x n matrix.
 		return dPdS;
 	}
 
@@ -441,7 +442,7 @@ public abstract class AbstractSIMMSensitivityCalculation {
 		}
 
 		// dLdL is (n-1) x n matrix. Get PseudoInverse for all paths and then put it back together as RV
-		return getPseudoInverse(dLdL, model.getNumberOfPaths());
+		return getPseudoInverse(dLdL, model.getNumberOfPaths(), evaluationTime);
 	}
 
 	/**
@@ -553,13 +554,32 @@ public abstract class AbstractSIMMSensitivityCalculation {
 		return this.weightTransformationMethod;
 	}
 
+	/**
+	 * Removes the risk weights calculated with the given model from the cache. Other models of a cache shared
+	 * with other sensitivity calculations are not affected.
+	 *
+	 * @param model The LIBOR market model
+	 */
+	public void clearRiskWeights(LIBORModelMonteCarloSimulationModel model) {
+		jacobianCache.invalidate(model);
+	}
+
+	/**
+	 * Removes all risk weights from the cache, including those of other sensitivity calculations sharing the cache.
+	 *
+	 * @deprecated Use <code> clearRiskWeights(model) </code>, which leaves the risk weights of other models untouched.
+	 */
+	@Deprecated
 	public void clearRiskWeights() {
-		if (riskWeightMapLibor != null) {
-			riskWeightMapLibor.clear();
-		}
-		if (riskWeightMapOIS != null) {
-			riskWeightMapOIS.clear();
-		}
+		jacobianCache.clear();
+	}
+
+	public SIMMJacobianCache getJacobianCache() {
+		return jacobianCache;
+	}
+
+	public void setJacobianCache(SIMMJacobianCache jacobianCache) {
+		this.jacobianCache = jacobianCache;
 	}
 
 	public void setWeightMode(WeightMode mode) {
@@ -579,38 +599,28 @@ public abstract class AbstractSIMMSensitivityCalculation {
 	 *
 	 * @param matrix The matrix for which the pseudo inverse is calculated
 	 * @return The pseudo inverse of the matrix
+	 * @deprecated Use <code> getPseudoInverse(matrix, numberOfPaths, evaluationTime) </code>, this method assumes the evaluation time 0.
 	 */
+	@Deprecated
 	public static RandomVariable[][] getPseudoInverse(RandomVariable[][] matrix, int numberOfPaths) {
+		return getPseudoInverse(matrix, numberOfPaths, 0.0);
+	}
 
-		double[][][] inv = new double[matrix[0].length][matrix.length][numberOfPaths];
-		long start = System.currentTimeMillis();
-		IntStream.range(0, numberOfPaths).parallel().forEach(pathIndex -> {
-			double[][] matrixOnPath = new double[matrix.length][matrix[0].length];
-			for (int i = 0; i < matrixOnPath.length; i++) {
-				for (int j = 0; j < matrixOnPath[0].length; j++) {
-					matrixOnPath[i][j] = matrix[i][j] == null ? 0 : matrix[i][j].get(pathIndex);
-				}
-			}
-			// Get Pseudo Inverse
-			RealMatrix pseudoInverse = new SingularValueDecomposition(MatrixUtils.createRealMatrix(matrixOnPath)).getSolver().getInverse();
-			for (int j = 0; j < pseudoInverse.getColumnDimension(); j++) {
-				double[] columnValues = pseudoInverse.getColumn(j);
-				for (int i = 0; i < pseudoInverse.getRowDimension(); i++) {
-					inv[i][j][pathIndex] = columnValues[i];
-				}
-			}
-		});
+	/**
+	 * Calculate Pseudo Inverse of matrix of type RandomVariable[][]. The Jacobians only depend on the model and the time,
+	 * hence the pseudo inverse is reported to the metrics for the time only and not for a product.
+	 *
+	 * @param matrix The matrix for which the pseudo inverse is calculated
+	 * @param numberOfPaths The number of paths of the model
+	 * @param evaluationTime The time at which the matrix is evaluated (filtration time of the result)
+	 * @return The pseudo inverse of the matrix
+	 */
+	public static RandomVariable[][] getPseudoInverse(RandomVariable[][] matrix, int numberOfPaths, double evaluationTime) {
 
-		// Wrap to RandomVariable[][]
-		RandomVariable[][] pseudoInverse = new RandomVariable[matrix[0].length][matrix.length];
-		for (int i = 0; i < pseudoInverse.length; i++) {
-			for (int j = 0; j < pseudoInverse[0].length; j++) {
-				pseudoInverse[i][j] = new RandomVariableFromDoubleArray(0.0 /*should be evaluationTime*/, inv[i][j]);
-			}
-		}
-		long end = System.currentTimeMillis();
-		secondsPseudoInverse = secondsPseudoInverse + ((end - start) / 1000.0);
-		//			System.out.println("Total time of pseudo inverse: " + secondsPseudoInverse);
+		Metrics.Timer timer = Metrics.startTimer();
+		// Cholesky of the normal equations on well-conditioned paths, SVD on the remaining ones
+		RandomVariable[][] pseudoInverse = TransformationAlgorithms.getPseudoInverseBatched(matrix, numberOfPaths, evaluationTime);
+		Metrics.stopTimer(timer, Stage.PSEUDO_INVERSE, null, evaluationTime);
 		return pseudoInverse;
 	}
 
@@ -655,11 +665,6 @@ public abstract class AbstractSIMMSensitivityCalculation {
 	// NOT USED IN THE THESIS!
 	//----------------------------------------------------------------------------------------------------------------------------------
 
-	/**
-	 * This is a cache for the risk weight transformation matrix in the (new) SensitivityMode.ExactConsideringDependencies
-	 */
-	private HashMap<Double /*time*/, RandomVariable[][]> riskWeightMapJacobi = new HashMap<>();
-
 	/**
 	 * Calculate the sensitivities dV/dS with respect to all swap rates for given product and curve
 	 * considering exact OIS-Libor dependencies (SensitivityMode.ExactConsideringDependencies).
@@ -797,10 +802,10 @@ public abstract class AbstractSIMMSensitivityCalculation {
 	 * @throws CalculationException
 	 */
 	private RandomVariable[][] getModelToMarketRateJacobianMatrix(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return jacobianCache.getJacobian(model, evaluationTime, SIMMJacobianCache.Curve.OISLIBOR, () -> calculateModelToMarketRateJacobianMatrix(evaluationTime, model));
+	}
 
-		if (riskWeightMapJacobi.containsKey(evaluationTime)) {
-			return riskWeightMapJacobi.get(evaluationTime);
-		}
+	private static RandomVariable[][] calculateModelToMarketRateJacobianMatrix(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
 		double periodLength = model.getLiborPeriodDiscretization().getTimeStep(0);
 		int numberOfPeriods = getNumberOfRemainingLibors(evaluationTime, model); // The number of full periodLengths until the time horizon of the model as of time "evaluationTime"
@@ -897,8 +902,7 @@ public abstract class AbstractSIMMSensitivityCalculation {
 				}
 			}
 		}
-		jacobian = getPseudoInverse(jacobian, model.getNumberOfPaths());
-		riskWeightMapJacobi.put(evaluationTime, jacobian);
+		jacobian = getPseudoInverse(jacobian, model.getNumberOfPaths(), evaluationTime);
 		return jacobian;
 	}
 
@@ -957,6 +961,6 @@ public abstract class AbstractSIMMSensitivityCalculation {
 				}
 			}
 		}
-		return getPseudoInverse(jacobian, model.getNumberOfPaths());
+		return getPseudoInverse(jacobian, model.getNumberOfPaths(), time);
 	}
 }
@@ -0,0 +1,310 @@
+package net.finmath.initialmargin.isdasimm.sensitivity;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.metrics.Metrics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * A cache for the model-to-market Jacobians (dL/dS, dP/dS) used in the conversion from model sensitivities
+ * to market rate sensitivities. The matrices only depend on the model and the evaluation time, hence all
+ * products valued with the same <code> LIBORModelMonteCarloSimulationModel </code> may share them.
+ * <p>
+ * There is no global instance: every sensitivity calculation owns a cache unless it is given one explicitly, a
+ * <code> SIMMPortfolio </code> uses one cache for all its products and standalone products may be given a common cache
+ * by <code> AbstractSIMMProduct.setJacobianCache </code>.
+ * <p>
+ * Entries are keyed by (model identity, evaluation time, curve). Every matrix is calculated at most once, also if several
+ * threads request it concurrently. The model is referenced weakly, the entries of a model which has been garbage collected
+ * are removed on the next access. The memory of the cached matrices (8 bytes per path of every element) is bounded, the least
+ * recently used entries are evicted first. Entries of a model which is no longer used can be removed by
+ * <code> invalidate(model) </code>.
+ */
+public class SIMMJacobianCache {
+
+	/**
+	 * The Jacobian stored in the cache.
+	 */
+	public enum Curve {
+		/**
+		 * dL/dS: LIBORs with respect to the swap rates of the forward curve.
+		 */
+		LIBOR,
+
+		/**
+		 * dP/dS: OIS bonds with respect to the swap rates of the discount curve.
+		 */
+		OIS,
+
+		/**
+		 * Joint Jacobian of LIBORs and numeraires with respect to LIBOR and OIS swap rates (SensitivityMode.EXACTCONSIDERINGDEPENDENCIES).
+		 */
+		OISLIBOR
+	}
+
+	/**
+	 * Calculation of a Jacobian in case it is not found in the cache.
+	 */
+	@FunctionalInterface
+	public interface JacobianCalculation {
+		RandomVariable[][] calculate() throws CalculationException;
+	}
+
+	public static final long DEFAULT_MAXIMUM_SIZE_IN_BYTES = 1L << 30;
+
+	private final long maximumSizeInBytes;
+	private final LinkedHashMap<Key, Entry> jacobians = new LinkedHashMap<>(16, 0.75f, true /* access order */);
+	private final ReferenceQueue<LIBORModelMonteCarloSimulationModel> collectedModels = new ReferenceQueue<>();
+	private long sizeInBytes;
+
+	/**
+	 * Construct a cache holding Jacobians of at most <code> DEFAULT_MAXIMUM_SIZE_IN_BYTES </code>.
+	 */
+	public SIMMJacobianCache() {
+		this(DEFAULT_MAXIMUM_SIZE_IN_BYTES);
+	}
+
+	/**
+	 * Construct a cache holding Jacobians of at most <code> maximumSizeInBytes </code>. The most recently calculated
+	 * Jacobian is always kept, also if it alone exceeds the maximum size.
+	 *
+	 * @param maximumSizeInBytes The maximum size of the cached matrices in bytes.
+	 */
+	public SIMMJacobianCache(long maximumSizeInBytes) {
+		if (maximumSizeInBytes < 1) {
+			throw new IllegalArgumentException("The maximum size must be positive.");
+		}
+		this.maximumSizeInBytes = maximumSizeInBytes;
+	}
+
+	/**
+	 * Returns the Jacobian for the given key, calculating it if it is not in the cache.
+	 *
+	 * @param model          The LIBOR market model
+	 * @param evaluationTime The time at which the Jacobian is evaluated
+	 * @param curve          The Jacobian to be returned
+	 * @param calculation    The calculation of the Jacobian in case it is not cached
+	 * @return The Jacobian
+	 * @throws CalculationException Thrown if the calculation of the Jacobian fails.
+	 */
+	public RandomVariable[][] getJacobian(LIBORModelMonteCarloSimulationModel model, double evaluationTime, Curve curve, JacobianCalculation calculation) throws CalculationException {
+		Key key = new Key(model, evaluationTime, curve, null);
+
+		Entry entry;
+		boolean isNewTask = false;
+		synchronized (jacobians) {
+			removeCollectedModels();
+			entry = jacobians.get(key);
+			if (entry == null) {
+				entry = new Entry(new FutureTask<>(new Callable<RandomVariable[][]>() {
+					@Override
+					public RandomVariable[][] call() throws CalculationException {
+						return calculation.calculate();
+					}
+				}));
+				jacobians.put(new Key(model, evaluationTime, curve, collectedModels), entry);
+				isNewTask = true;
+			}
+		}
+		// The Jacobian is shared by the products, hence it is reported for the time only.
+		Metrics.recordCacheAccess(Stage.JACOBIAN, null, evaluationTime, !isNewTask);
+
+		// The calculation is performed outside the lock, concurrent requests for the same key wait for its result.
+		if (isNewTask) {
+			Metrics.Timer timer = Metrics.startTimer();
+			entry.task.run();
+			Metrics.stopTimer(timer, Stage.JACOBIAN, null, evaluationTime);
+		}
+
+		try {
+			RandomVariable[][] jacobian = entry.task.get();
+			if (isNewTask) {
+				addSize(key, entry, getSizeInBytes(jacobian));
+			}
+			return jacobian;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CalculationException(e);
+		} catch (ExecutionException e) {
+			synchronized (jacobians) {
+				jacobians.remove(key, entry);
+			}
+			if (e.getCause() instanceof CalculationException) {
+				throw (CalculationException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CalculationException(e.getCause());
+		}
+	}
+
+	/**
+	 * Removes all Jacobians calculated with the given model.
+	 *
+	 * @param model The LIBOR market model
+	 */
+	public void invalidate(LIBORModelMonteCarloSimulationModel model) {
+		synchronized (jacobians) {
+			Iterator<Map.Entry<Key, Entry>> entries = jacobians.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<Key, Entry> entry = entries.next();
+				LIBORModelMonteCarloSimulationModel entryModel = entry.getKey().model.get();
+				if (entryModel == model || entryModel == null) {
+					sizeInBytes -= entry.getValue().sizeInBytes;
+					entries.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all Jacobians from the cache.
+	 */
+	public void clear() {
+		synchronized (jacobians) {
+			jacobians.clear();
+			sizeInBytes = 0;
+		}
+	}
+
+	public int size() {
+		synchronized (jacobians) {
+			removeCollectedModels();
+			return jacobians.size();
+		}
+	}
+
+	/**
+	 * Returns the estimated memory of the cached matrices, 8 bytes per path of every element.
+	 *
+	 * @return The size of the cached matrices in bytes.
+	 */
+	public long getSizeInBytes() {
+		synchronized (jacobians) {
+			removeCollectedModels();
+			return sizeInBytes;
+		}
+	}
+
+	public long getMaximumSizeInBytes() {
+		return maximumSizeInBytes;
+	}
+
+	/**
+	 * Accounts for the size of a calculated Jacobian and evicts the least recently used other Jacobians until the cache fits.
+	 */
+	private void addSize(Key key, Entry entry, long entrySizeInBytes) {
+		synchronized (jacobians) {
+			// The entry may have been removed by invalidate or clear during the calculation
+			if (jacobians.get(key) != entry) {
+				return;
+			}
+			entry.sizeInBytes = entrySizeInBytes;
+			sizeInBytes += entrySizeInBytes;
+
+			Iterator<Map.Entry<Key, Entry>> entries = jacobians.entrySet().iterator();
+			while (sizeInBytes > maximumSizeInBytes && entries.hasNext()) {
+				Map.Entry<Key, Entry> eldest = entries.next();
+				if (eldest.getValue() != entry) {
+					sizeInBytes -= eldest.getValue().sizeInBytes;
+					entries.remove();
+				}
+			}
+		}
+	}
+
+	private void removeCollectedModels() {
+		Reference<? extends LIBORModelMonteCarloSimulationModel> collectedModel = collectedModels.poll();
+		if (collectedModel == null) {
+			return;
+		}
+		while (collectedModels.poll() != null) {
+			// All entries of collected models are removed at once
+		}
+		Iterator<Map.Entry<Key, Entry>> entries = jacobians.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Key, Entry> entry = entries.next();
+			if (entry.getKey().model.get() == null) {
+				sizeInBytes -= entry.getValue().sizeInBytes;
+				entries.remove();
+			}
+		}
+	}
+
+	private static long getSizeInBytes(RandomVariable[][] jacobian) {
+		long size = 0;
+		for (RandomVariable[] row : jacobian) {
+			if (row == null) {
+				continue;
+			}
+			for (RandomVariable element : row) {
+				if (element != null) {
+					size += 8L * element.size();
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * A cached Jacobian, which may still be calculated.
+	 */
+	private static final class Entry {
+		private final FutureTask<RandomVariable[][]> task;
+		private long sizeInBytes;
+
+		private Entry(FutureTask<RandomVariable[][]> task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Cache key. The model is referenced weakly and compared by identity.
+	 */
+	private static final class Key {
+		private final WeakReference<LIBORModelMonteCarloSimulationModel> model;
+		private final int modelHashCode;
+		private final double evaluationTime;
+		private final Curve curve;
+
+		private Key(LIBORModelMonteCarloSimulationModel model, double evaluationTime, Curve curve, ReferenceQueue<LIBORModelMonteCarloSimulationModel> queue) {
+			this.model = new WeakReference<>(model, queue);
+			this.modelHashCode = System.identityHashCode(model);
+			this.evaluationTime = evaluationTime;
+			this.curve = curve;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			Key key = (Key) o;
+			LIBORModelMonteCarloSimulationModel keyModel = model.get();
+			return keyModel != null && keyModel == key.model.get()
+					&& Double.compare(key.evaluationTime, evaluationTime) == 0
+					&& curve == key.curve;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(modelHashCode, evaluationTime, curve);
+		}
+	}
+}
@@ -8,6 +8,9 @@ import org.apache.commons.lang3.ArrayUtils;
 import net.finmath.exception.CalculationException;
 import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct;
 import net.finmath.initialmargin.isdasimm.products.SIMMBermudanSwaption;
+import net.finmath.initialmargin.metrics.DeltaSensitivityEvent;
+import net.finmath.initialmargin.metrics.Metrics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.optimizer.SolverException;
 import net.finmath.stochastic.RandomVariable;
@@ -74,6 +77,9 @@ public class SIMMSensitivityCalculation extends AbstractSIMMSensitivityCalculati
 			double evaluationTime,
 			LIBORModelMonteCarloSimulationModel model) throws SolverException, CloneNotSupportedException, CalculationException {
 
+		DeltaSensitivityEvent event = new DeltaSensitivityEvent();
+		event.begin();
+
 		RandomVariable[] maturityBucketSensis = null;
 
 		switch (sensitivityMode) {
@@ -82,15 +88,6 @@ public class SIMMSensitivityCalculation extends AbstractSIMMSensitivityCalculati
 
 			maturityBucketSensis = getSensitivitiesIRMarketRates(product, curveIndexName, evaluationTime, model);
 
-			boolean isPrintDebugSensiVector = false;
-			if (isPrintDebugSensiVector) {
-				System.out.print("E " + evaluationTime + "\t");
-				for (int i = 0; i < maturityBucketSensis.length; i++) {
-					System.out.print(maturityBucketSensis[i].getAverage() + "\t");
-				}
-				System.out.print("\n");
-			}
-
 			// Map sensitivities on SIMM buckets
 			maturityBucketSensis = mapSensitivitiesOnBuckets(maturityBucketSensis, "INTEREST_RATE" /*riskClass*/, null, model);
 
@@ -103,7 +100,9 @@ public class SIMMSensitivityCalculation extends AbstractSIMMSensitivityCalculati
 			break;
 
 		case INTERPOLATION:
+			Metrics.Timer interpolationTimer = Metrics.startTimer();
 			maturityBucketSensis = getInterpolatedSensitivities(product, riskClass, curveIndexName, evaluationTime, model);
+			Metrics.stopTimer(interpolationTimer, Stage.INTERPOLATION, product, evaluationTime);
 
 			break;
 
@@ -114,7 +113,9 @@ public class SIMMSensitivityCalculation extends AbstractSIMMSensitivityCalculati
 			double initialMeltingTime = evaluationTime < product.getMeltingResetTime(model) ? 0 : product.getMeltingResetTime(model);
 
 			// The sensitivities obtained from getMeltedSensitivities are always on SIMM buckets
+			Metrics.Timer meltingTimer = Metrics.startTimer();
 			maturityBucketSensis = getMeltedSensitivities(product, null /*given sensitivities*/, initialMeltingTime, evaluationTime, curveIndexName, riskClass);
+			Metrics.stopTimer(meltingTimer, Stage.MELTING, product, evaluationTime);
 
 			if (product instanceof SIMMBermudanSwaption) {
 
@@ -127,6 +128,16 @@ public class SIMMSensitivityCalculation extends AbstractSIMMSensitivityCalculati
 			break;
 		}
 
+		if (event.shouldCommit()) {
+			event.product = Metrics.getProductName(product);
+			event.productClass = product.getProductClass();
+			event.curveIndexName = curveIndexName;
+			event.evaluationTime = evaluationTime;
+			event.sensitivityMode = sensitivityMode.name();
+			event.numberOfPaths = model.getNumberOfPaths();
+			event.commit();
+		}
+
 		return maturityBucketSensis;
 	}
 
@@ -213,14 +224,7 @@ public class SIMMSensitivityCalculation extends AbstractSIMMSensitivityCalculati
 				meltedSensis[i] = sensitivities[i + firstIndex].mult(1.0 - (double) Math.round(365 * (evaluationTime - meltingZeroTime)) / (double) riskFactorDaysLIBOR[i + firstIndex]);
 			}
 
-			boolean isPrintDebugSensiVector = false;
-			if (isPrintDebugSensiVector) {
-				System.out.print("M " + evaluationTime + "\t");
-				for (int i = 0; i < meltedSensis.length; i++) {
-					System.out.print(meltedSensis[i].get(0) + "\t");
-				}
-				System.out.print("\n");
-			}
+			Metrics.traceSensitivities(Stage.MELTING, product, evaluationTime, curveIndexName, meltedSensis);
 		}
 		break;
 
@@ -0,0 +1,37 @@
+package net.finmath.initialmargin.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of the calculation of the delta sensitivities of a product on the SIMM buckets of one curve
+ * at one evaluation time (exact, melted or interpolated, depending on the sensitivity mode).
+ */
+@Name("net.finmath.initialmargin.DeltaSensitivity")
+@Label("Delta Sensitivity")
+@Description("Delta sensitivities of a product on the SIMM buckets of a curve at an evaluation time")
+@Category({"finmath", "Initial Margin"})
+@StackTrace(false)
+public final class DeltaSensitivityEvent extends jdk.jfr.Event {
+
+	@Label("Product")
+	public String product;
+
+	@Label("Product Class")
+	public String productClass;
+
+	@Label("Curve")
+	public String curveIndexName;
+
+	@Label("Evaluation Time")
+	public double evaluationTime;
+
+	@Label("Sensitivity Mode")
+	public String sensitivityMode;
+
+	@Label("Number of Paths")
+	public int numberOfPaths;
+}
@@ -0,0 +1,40 @@
+package net.finmath.initialmargin.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a request of the exact (AAD or analytic) delta sensitivities of a product from its cache.
+ * On a cache miss the duration includes the calculation of the sensitivities of all curves of the product.
+ */
+@Name("net.finmath.initialmargin.ExactDeltaCache")
+@Label("Exact Delta Cache")
+@Description("Request of the exact delta sensitivities of a product from its cache")
+@Category({"finmath", "Initial Margin"})
+@StackTrace(false)
+public final class ExactDeltaCacheEvent extends jdk.jfr.Event {
+
+	@Label("Product")
+	public String product;
+
+	@Label("Product Class")
+	public String productClass;
+
+	@Label("Curve")
+	public String curveIndexName;
+
+	@Label("Evaluation Time")
+	public double evaluationTime;
+
+	@Label("Sensitivity Mode")
+	public String sensitivityMode;
+
+	@Label("Number of Paths")
+	public int numberOfPaths;
+
+	@Label("Cache Hit")
+	public boolean isCacheHit;
+}
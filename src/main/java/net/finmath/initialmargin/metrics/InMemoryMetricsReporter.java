@@ -0,0 +1,237 @@
+package net.finmath.initialmargin.metrics;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <code> MetricsReporter </code> accumulating the metrics in memory, per stage, product and evaluation time. The statistics
+ * can be queried aggregated over products and times, e.g. to find the stage and the product a slow calculation spends its time in.
+ */
+public class InMemoryMetricsReporter implements MetricsReporter {
+
+	private final Map<Key, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+	/**
+	 * The statistics of a stage, a snapshot of the accumulated metrics.
+	 */
+	public static class Statistics {
+		private final long count;
+		private final long nanos;
+		private final long allocatedBytes;
+		private final long cacheHits;
+		private final long cacheMisses;
+
+		private Statistics(long count, long nanos, long allocatedBytes, long cacheHits, long cacheMisses) {
+			this.count = count;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+			this.cacheHits = cacheHits;
+			this.cacheMisses = cacheMisses;
+		}
+
+		private Statistics add(Statistics statistics) {
+			return new Statistics(count + statistics.count, nanos + statistics.nanos, allocatedBytes + statistics.allocatedBytes, cacheHits + statistics.cacheHits, cacheMisses + statistics.cacheMisses);
+		}
+
+		/**
+		 * @return The number of calls of the stage
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return The total wall clock time of the calls in seconds
+		 */
+		public double getSeconds() {
+			return nanos / 1.0E9;
+		}
+
+		/**
+		 * @return The total bytes allocated by the calls (calls for which the allocation is not available are not included)
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getCacheHits() {
+			return cacheHits;
+		}
+
+		public long getCacheMisses() {
+			return cacheMisses;
+		}
+
+		/**
+		 * @return The fraction of cache accesses which were hits (NaN if there was no access)
+		 */
+		public double getCacheHitRatio() {
+			long accesses = cacheHits + cacheMisses;
+			return accesses == 0 ? Double.NaN : (double) cacheHits / accesses;
+		}
+
+		@Override
+		public String toString() {
+			return "calls=" + count + ", seconds=" + getSeconds() + ", allocatedBytes=" + allocatedBytes
+					+ ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses;
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void recordTime(Stage stage, String product, double time, long nanos, long allocatedBytes) {
+		Accumulator accumulator = getAccumulator(stage, product, time);
+		accumulator.count.increment();
+		accumulator.nanos.add(nanos);
+		if (allocatedBytes > 0) {
+			accumulator.allocatedBytes.add(allocatedBytes);
+		}
+	}
+
+	@Override
+	public void recordCacheAccess(Stage stage, String product, double time, boolean isHit) {
+		Accumulator accumulator = getAccumulator(stage, product, time);
+		if (isHit) {
+			accumulator.cacheHits.increment();
+		} else {
+			accumulator.cacheMisses.increment();
+		}
+	}
+
+	/**
+	 * Returns the statistics of a stage, aggregated over all products and times.
+	 *
+	 * @param stage The stage
+	 * @return The statistics of the stage
+	 */
+	public Statistics getStatistics(Stage stage) {
+		return getStatistics(stage, null, Double.NaN);
+	}
+
+	/**
+	 * Returns the statistics of a stage for a product, aggregated over all times.
+	 *
+	 * @param stage   The stage
+	 * @param product The name of the product
+	 * @return The statistics of the stage for the product
+	 */
+	public Statistics getStatistics(Stage stage, String product) {
+		return getStatistics(stage, product, Double.NaN);
+	}
+
+	/**
+	 * Returns the statistics of a stage for a product and an evaluation time.
+	 *
+	 * @param stage   The stage
+	 * @param product The name of the product (null aggregates over all products)
+	 * @param time    The evaluation time (NaN aggregates over all times)
+	 * @return The statistics
+	 */
+	public Statistics getStatistics(Stage stage, String product, double time) {
+		Statistics statistics = new Statistics(0, 0, 0, 0, 0);
+		for (Map.Entry<Key, Accumulator> entry : accumulators.entrySet()) {
+			Key key = entry.getKey();
+			if (key.stage == stage && (product == null || product.equals(key.product)) && (Double.isNaN(time) || Double.compare(time, key.time) == 0)) {
+				statistics = statistics.add(entry.getValue().getStatistics());
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Returns the names of the products which reported to a stage.
+	 *
+	 * @param stage The stage
+	 * @return The names of the products in ascending order
+	 */
+	public Set<String> getProducts(Stage stage) {
+		Set<String> products = new TreeSet<>();
+		for (Key key : accumulators.keySet()) {
+			if (key.stage == stage) {
+				products.add(key.product);
+			}
+		}
+		return products;
+	}
+
+	/**
+	 * Removes all metrics recorded so far.
+	 */
+	public void clear() {
+		accumulators.clear();
+	}
+
+	/**
+	 * Returns a report of the statistics per stage and product.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		for (Stage stage : Stage.values()) {
+			Statistics statistics = getStatistics(stage);
+			if (statistics.getCount() == 0 && statistics.getCacheHits() + statistics.getCacheMisses() == 0) {
+				continue;
+			}
+			report.append(stage).append(": ").append(statistics).append("\n");
+			for (String product : getProducts(stage)) {
+				if (!product.isEmpty()) {
+					report.append("\t").append(product).append(": ").append(getStatistics(stage, product)).append("\n");
+				}
+			}
+		}
+		return report.toString();
+	}
+
+	private Accumulator getAccumulator(Stage stage, String product, double time) {
+		return accumulators.computeIfAbsent(new Key(stage, product, time), key -> new Accumulator());
+	}
+
+	private static final class Accumulator {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder allocatedBytes = new LongAdder();
+		private final LongAdder cacheHits = new LongAdder();
+		private final LongAdder cacheMisses = new LongAdder();
+
+		private Statistics getStatistics() {
+			return new Statistics(count.sum(), nanos.sum(), allocatedBytes.sum(), cacheHits.sum(), cacheMisses.sum());
+		}
+	}
+
+	private static final class Key {
+		private final Stage stage;
+		private final String product;
+		private final double time;
+
+		private Key(Stage stage, String product, double time) {
+			this.stage = stage;
+			this.product = product;
+			this.time = time;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return stage == key.stage && Double.compare(time, key.time) == 0 && Objects.equals(product, key.product);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * stage.hashCode() + Objects.hashCode(product)) + Double.hashCode(time);
+		}
+	}
+}
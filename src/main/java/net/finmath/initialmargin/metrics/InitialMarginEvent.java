@@ -0,0 +1,34 @@
+package net.finmath.initialmargin.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of the forward initial margin of a product at one evaluation time. The duration of the event
+ * is the time of the SIMM calculation, such that GC pauses and allocation in a recording can be related to time steps and products.
+ */
+@Name("net.finmath.initialmargin.InitialMargin")
+@Label("Forward Initial Margin")
+@Description("SIMM forward initial margin of a product at an evaluation time")
+@Category({"finmath", "Initial Margin"})
+@StackTrace(false)
+public final class InitialMarginEvent extends jdk.jfr.Event {
+
+	@Label("Product")
+	public String product;
+
+	@Label("Product Class")
+	public String productClass;
+
+	@Label("Evaluation Time")
+	public double evaluationTime;
+
+	@Label("Sensitivity Mode")
+	public String sensitivityMode;
+
+	@Label("Number of Paths")
+	public int numberOfPaths;
+}
@@ -0,0 +1,138 @@
+package net.finmath.initialmargin.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Entry point of the stages of the initial margin calculation to the <code> MetricsReporter </code>. The reporter is the
+ * no-op reporter unless another one is set by <code> setReporter </code>. While the reporter is not enabled, the stages
+ * neither read the clock nor allocate, i.e. the overhead is one volatile read per call.
+ * <p>
+ * Usage within a stage:
+ * <pre>
+ * Metrics.Timer timer = Metrics.startTimer();
+ * ...
+ * Metrics.stopTimer(timer, Stage.GRADIENT, product, evaluationTime);
+ * </pre>
+ */
+public final class Metrics {
+
+	private static volatile MetricsReporter reporter = MetricsReporter.NO_OP;
+
+	private static final com.sun.management.ThreadMXBean allocationMXBean = getAllocationMXBean();
+
+	private Metrics() {
+	}
+
+	/**
+	 * A started measurement of the time and allocation of the calling thread.
+	 */
+	public static final class Timer {
+		private final long startNanos;
+		private final long startAllocatedBytes;
+
+		private Timer(long startNanos, long startAllocatedBytes) {
+			this.startNanos = startNanos;
+			this.startAllocatedBytes = startAllocatedBytes;
+		}
+	}
+
+	public static MetricsReporter getReporter() {
+		return reporter;
+	}
+
+	/**
+	 * Sets the reporter receiving the metrics of all subsequent calculations.
+	 *
+	 * @param reporter The reporter (null resets the no-op reporter)
+	 */
+	public static void setReporter(MetricsReporter reporter) {
+		Metrics.reporter = reporter != null ? reporter : MetricsReporter.NO_OP;
+	}
+
+	public static boolean isEnabled() {
+		return reporter.isEnabled();
+	}
+
+	/**
+	 * Starts a measurement in the calling thread.
+	 *
+	 * @return The timer or null if the reporter is not enabled
+	 */
+	public static Timer startTimer() {
+		if (!reporter.isEnabled()) {
+			return null;
+		}
+		return new Timer(System.nanoTime(), getAllocatedBytes());
+	}
+
+	/**
+	 * Stops a measurement started in the calling thread and reports it.
+	 *
+	 * @param timer   The timer returned by <code> startTimer </code> (may be null, then nothing is reported)
+	 * @param stage   The stage
+	 * @param product The product, see <code> getProductName </code>
+	 * @param time    The evaluation time
+	 */
+	public static void stopTimer(Timer timer, Stage stage, Object product, double time) {
+		if (timer == null) {
+			return;
+		}
+		long nanos = System.nanoTime() - timer.startNanos;
+		long allocatedBytes = timer.startAllocatedBytes < 0 ? -1 : getAllocatedBytes() - timer.startAllocatedBytes;
+		reporter.recordTime(stage, getProductName(product), time, nanos, allocatedBytes);
+	}
+
+	public static void recordCacheAccess(Stage stage, Object product, double time, boolean isHit) {
+		MetricsReporter currentReporter = reporter;
+		if (currentReporter.isEnabled()) {
+			currentReporter.recordCacheAccess(stage, getProductName(product), time, isHit);
+		}
+	}
+
+	public static void traceSensitivities(Stage stage, Object product, double time, String curveIndexName, RandomVariable[] sensitivities) {
+		MetricsReporter currentReporter = reporter;
+		if (currentReporter.isEnabled()) {
+			currentReporter.traceSensitivities(stage, getProductName(product), time, curveIndexName, sensitivities);
+		}
+	}
+
+	/**
+	 * Returns the name under which the metrics of a product are reported: the string itself for a string, the empty string for null
+	 * and the simple class name and identity hash code otherwise.
+	 *
+	 * @param product The product
+	 * @return The name of the product
+	 */
+	public static String getProductName(Object product) {
+		if (product == null) {
+			return "";
+		}
+		if (product instanceof String) {
+			return (String) product;
+		}
+		return product.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(product));
+	}
+
+	private static long getAllocatedBytes() {
+		return allocationMXBean != null ? allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	private static com.sun.management.ThreadMXBean getAllocationMXBean() {
+		try {
+			ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+			if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+				if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+					return allocationBean;
+				}
+			}
+		} catch (LinkageError | SecurityException e) {
+			// The allocation is not reported on this JVM
+		}
+		return null;
+	}
+}
@@ -0,0 +1,121 @@
+package net.finmath.initialmargin.metrics;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Interface of a receiver of the metrics of the initial margin calculation. The stages of the calculation report the time
+ * spent, the bytes allocated and the cache accesses, broken down by product and evaluation time, to the reporter set in
+ * <code> Metrics </code>. Implementations must be thread safe, since the stages report from the threads evaluating them.
+ */
+public interface MetricsReporter {
+
+	/**
+	 * The stages of the initial margin calculation which report metrics. The stages <code> CONDITIONAL_EXPECTATION </code>,
+	 * <code> JACOBIAN </code> and <code> PSEUDO_INVERSE </code> are shared by all products valued with the same model, they
+	 * are reported for the evaluation time only, with the empty product name.
+	 */
+	enum Stage {
+		/**
+		 * Calculation of the gradient of a product value by AAD
+		 */
+		GRADIENT,
+
+		/**
+		 * Set up of the conditional expectation regressions
+		 */
+		CONDITIONAL_EXPECTATION,
+
+		/**
+		 * Calculation of the Jacobians of the model-to-market-rate sensitivity transformation
+		 */
+		JACOBIAN,
+
+		/**
+		 * Calculation of the pseudo inverses of the Jacobians
+		 */
+		PSEUDO_INVERSE,
+
+		/**
+		 * Calculation of the delta sensitivities on the SIMM buckets of a product (in any sensitivity mode)
+		 */
+		DELTA_SENSITIVITIES,
+
+		/**
+		 * Melting of sensitivities
+		 */
+		MELTING,
+
+		/**
+		 * Interpolation of sensitivities
+		 */
+		INTERPOLATION,
+
+		/**
+		 * Aggregation of the net sensitivities of a currency bucket
+		 */
+		BUCKET_AGGREGATION,
+
+		/**
+		 * Accumulation of the MVA from the initial margin profile
+		 */
+		MVA
+	}
+
+	/**
+	 * The reporter ignoring all metrics.
+	 */
+	MetricsReporter NO_OP = new MetricsReporter() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public void recordTime(Stage stage, String product, double time, long nanos, long allocatedBytes) {
+		}
+
+		@Override
+		public void recordCacheAccess(Stage stage, String product, double time, boolean isHit) {
+		}
+	};
+
+	/**
+	 * Returns true if this reporter records metrics. If false, the stages do not measure at all.
+	 *
+	 * @return True if this reporter records metrics
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Records one call of a stage.
+	 *
+	 * @param stage          The stage
+	 * @param product        The name of the product (empty if the stage is shared by all products)
+	 * @param time           The evaluation time
+	 * @param nanos          The wall clock time of the call in nanoseconds
+	 * @param allocatedBytes The bytes allocated by the calling thread during the call (-1 if not supported by the JVM)
+	 */
+	void recordTime(Stage stage, String product, double time, long nanos, long allocatedBytes);
+
+	/**
+	 * Records the access of a cache of a stage.
+	 *
+	 * @param stage   The stage
+	 * @param product The name of the product (empty if the cache is shared by all products)
+	 * @param time    The evaluation time
+	 * @param isHit   True if the cached value was found
+	 */
+	void recordCacheAccess(Stage stage, String product, double time, boolean isHit);
+
+	/**
+	 * Traces the sensitivities calculated by a stage, e.g. to print them for debugging. The default implementation ignores them.
+	 *
+	 * @param stage          The stage
+	 * @param product        The name of the product
+	 * @param time           The evaluation time
+	 * @param curveIndexName The name of the curve
+	 * @param sensitivities  The sensitivities
+	 */
+	default void traceSensitivities(Stage stage, String product, double time, String curveIndexName, RandomVariable[] sensitivities) {
+	}
+}
@@ -1,10 +1,18 @@
 package net.finmath.initialmargin.regression;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.finmath.exception.CalculationException;
 import net.finmath.functions.NormalDistribution;
+import net.finmath.initialmargin.isdasimm.changedfinmath.BatchedConditionalExpectationRegression;
+import net.finmath.initialmargin.isdasimm.changedfinmath.RegressionBasisCache;
 import net.finmath.initialmargin.regression.products.Portfolio;
+import net.finmath.initialmargin.regression.products.ValueCube;
 import net.finmath.montecarlo.conditionalexpectation.MonteCarloConditionalExpectationRegression;
 import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
 import net.finmath.stochastic.ConditionalExpectationEstimator;
@@ -26,18 +34,56 @@ public class InitialMarginForwardRegression {
 
 	private Method method;
 	private int polynomialOrder;                 // The order of the regression polynomial
+	private QuantileEngine quantileEngine;       // The quantile of the SIMPLE method
+	private double explainedVarianceThreshold;   // The fraction of the variance of the LIBOR state kept by the regression of V(t) (1.0: all LIBORs)
 
 	private LIBORModelMonteCarloSimulationModel model;
 	private Portfolio portfolio;
+	private ValueCube valueCube;                 // The portfolio values at the initial margin times and the ends of their MPR (may be null)
 
 	public InitialMarginForwardRegression(Portfolio portfolio,
 			LIBORModelMonteCarloSimulationModel model,
 			int polynomialOrder,
 			String method) {
+		this(portfolio, model, polynomialOrder, method, new SelectionQuantileEngine());
+	}
+
+	/**
+	 * @param portfolio       The portfolio
+	 * @param model           The LIBOR market model
+	 * @param polynomialOrder The order of the regression polynomial (LSQREGRESSION)
+	 * @param method          The method to calculate initial margin (SIMPLE or LSQREGRESSION)
+	 * @param quantileEngine  The calculation of the quantile of the clean portfolio value change (SIMPLE)
+	 */
+	public InitialMarginForwardRegression(Portfolio portfolio,
+			LIBORModelMonteCarloSimulationModel model,
+			int polynomialOrder,
+			String method,
+			QuantileEngine quantileEngine) {
+		this(portfolio, model, polynomialOrder, method, quantileEngine, 1.0);
+	}
+
+	/**
+	 * @param portfolio       The portfolio
+	 * @param model           The LIBOR market model
+	 * @param polynomialOrder The order of the regression polynomial (LSQREGRESSION)
+	 * @param method          The method to calculate initial margin (SIMPLE or LSQREGRESSION)
+	 * @param quantileEngine  The calculation of the quantile of the clean portfolio value change (SIMPLE)
+	 * @param explainedVarianceThreshold The fraction of the variance of the LIBOR state explained by the state variables of the regression of the
+	 *                        portfolio value: if smaller than 1.0, the LIBORs are replaced by their leading principal components, see <code> LiborStatePrincipalComponents </code>
+	 */
+	public InitialMarginForwardRegression(Portfolio portfolio,
+			LIBORModelMonteCarloSimulationModel model,
+			int polynomialOrder,
+			String method,
+			QuantileEngine quantileEngine,
+			double explainedVarianceThreshold) {
 		this.model = model;
 		this.portfolio = portfolio;
 		this.polynomialOrder = polynomialOrder;
 		this.method = Method.valueOf(method.toUpperCase());
+		this.quantileEngine = quantileEngine;
+		this.explainedVarianceThreshold = explainedVarianceThreshold;
 	}
 
 	/**
@@ -48,7 +94,94 @@ public class InitialMarginForwardRegression {
 	 * @throws CalculationException
 	 */
 	public double getInitialMargin(double evaluationTime) throws CalculationException {
+		return getInitialMargin(evaluationTime, portfolio.getCF(evaluationTime, evaluationTime + MPR, model));
+	}
 
+	public double[] getInitialMargin(TimeDiscretizationFromArray initialMarginTimes) throws CalculationException {
+		return getInitialMarginProfile(initialMarginTimes, null).getInitialMargin();
+	}
+
+	/**
+	 * Calculate the initial margin for all times of a time discretization. The calculation is performed in stages:
+	 * <ol>
+	 * <li>the portfolio is valued at all times t and t+MPR at once, see <code> Portfolio.getValueCube </code>,</li>
+	 * <li>the cash flows over the MPR are calculated for all times,</li>
+	 * <li>the regressions and the initial margin are calculated for all times.</li>
+	 * </ol>
+	 * The portfolio is only called by the first two stages (in the calling thread). The times of the last stage are independent
+	 * and are evaluated concurrently if an executor is given.
+	 *
+	 * @param initialMarginTimes The times at which the initial margin is calculated
+	 * @param executor           The executor used to evaluate the times of the last stage (may be null, then the times are evaluated in the calling thread)
+	 * @return The initial margin profile together with the times spent in each stage
+	 * @throws CalculationException
+	 */
+	public InitialMarginProfile getInitialMarginProfile(TimeDiscretization initialMarginTimes, ExecutorService executor) throws CalculationException {
+		long timeStart = System.nanoTime();
+
+		setValueCube(initialMarginTimes);
+
+		long timeValuation = System.nanoTime();
+
+		int numberOfTimes = initialMarginTimes.getNumberOfTimes();
+		RandomVariable[] cashFlows = new RandomVariable[numberOfTimes];
+		for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+			double time = initialMarginTimes.getTime(timeIndex);
+			cashFlows[timeIndex] = portfolio.getCF(time, time + MPR, model);
+		}
+
+		long timeCashFlows = System.nanoTime();
+
+		double[] initialMargin = new double[numberOfTimes];
+		if (executor == null) {
+			for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+				initialMargin[timeIndex] = getInitialMargin(initialMarginTimes.getTime(timeIndex), cashFlows[timeIndex]);
+			}
+		} else {
+			List<Future<Double>> initialMarginFutures = new ArrayList<Future<Double>>(numberOfTimes);
+			for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+				final double time = initialMarginTimes.getTime(timeIndex);
+				final RandomVariable cashFlowsOverMPR = cashFlows[timeIndex];
+				initialMarginFutures.add(executor.submit(new Callable<Double>() {
+					@Override
+					public Double call() throws CalculationException {
+						return getInitialMargin(time, cashFlowsOverMPR);
+					}
+				}));
+			}
+			try {
+				for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+					initialMargin[timeIndex] = initialMarginFutures.get(timeIndex).get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CalculationException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof CalculationException) {
+					throw (CalculationException) e.getCause();
+				}
+				throw new CalculationException(e.getCause());
+			}
+		}
+
+		long timeEnd = System.nanoTime();
+
+		return new InitialMarginProfile(initialMarginTimes.getAsDoubleArray(), initialMargin,
+				(timeValuation - timeStart) / 1E9, (timeCashFlows - timeValuation) / 1E9, (timeEnd - timeCashFlows) / 1E9);
+	}
+
+	/**
+	 * Calculate initial margin at for a given time from the cash flows over the MPR. The portfolio values at the time are
+	 * calculated once and shared by both methods.
+	 *
+	 * @param evaluationTime The time at which the initial margin is calculaed.
+	 * @param cashFlows      The cash flows of the portfolio over the MPR
+	 * @return The initial margin of the portfolio.
+	 * @throws CalculationException
+	 */
+	private double getInitialMargin(double evaluationTime, RandomVariable cashFlows) throws CalculationException {
+
+		RandomVariable[] conditionalValues = getConditionalPortfolioValues(evaluationTime, cashFlows, model);
 		RandomVariable variance;
 		double initialMargin = 0;
 
@@ -56,7 +189,7 @@ public class InitialMarginForwardRegression {
 
 		case LSQREGRESSION: // Least Square Regression
 
-			variance = getVarianceForecast(evaluationTime, model);
+			variance = getVarianceForecast(conditionalValues[0], conditionalValues[1]);
 
 			double normalQuantile = NormalDistribution.inverseCumulativeDistribution(confidenceLevel);
 
@@ -68,7 +201,7 @@ public class InitialMarginForwardRegression {
 
 		case SIMPLE: // Simple Dynamic Initial Margin
 
-			initialMargin = -getCleanPortfolioValueChange(evaluationTime).getQuantile(confidenceLevel);
+			initialMargin = -quantileEngine.getQuantile(conditionalValues[1], confidenceLevel);
 
 			break;
 
@@ -79,14 +212,6 @@ public class InitialMarginForwardRegression {
 		return initialMargin;
 	}
 
-	public double[] getInitialMargin(TimeDiscretizationFromArray initialMarginTimes) throws CalculationException {
-		double[] initialMargin = new double[initialMarginTimes.getNumberOfTimes()];
-		for (int timeIndex = 0; timeIndex < initialMarginTimes.getNumberOfTimes(); timeIndex++) {
-			initialMargin[timeIndex] = getInitialMargin(initialMarginTimes.getTime(timeIndex));
-		}
-		return initialMargin;
-	}
-
 	/**
 	 * Calculates the forecast of the variance of the clean portfolio value change over the marginal period of risk for a given time point.
 	 *
@@ -96,9 +221,13 @@ public class InitialMarginForwardRegression {
 	 * @throws CalculationException
 	 */
 	public RandomVariable getVarianceForecast(double forwardVaRTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		RandomVariable cleanValueChange = getCleanPortfolioValueChange(forwardVaRTime);
+		RandomVariable[] conditionalValues = getConditionalPortfolioValues(forwardVaRTime, portfolio.getCF(forwardVaRTime, forwardVaRTime + MPR, model), model);
+
+		return getVarianceForecast(conditionalValues[0], conditionalValues[1]);
+	}
 
-		ConditionalExpectationEstimator condExpEstimator = getConditionalExpectationEstimator(forwardVaRTime, model);
+	private RandomVariable getVarianceForecast(RandomVariable NPV, RandomVariable cleanValueChange) throws CalculationException {
+		ConditionalExpectationEstimator condExpEstimator = new MonteCarloConditionalExpectationRegression(getRegressionBasisFunctions(NPV));
 
 		RandomVariable variance = cleanValueChange.squared().getConditionalExpectation(condExpEstimator).floor(0.0);
 
@@ -113,22 +242,39 @@ public class InitialMarginForwardRegression {
 	 * @throws CalculationException
 	 */
 	public RandomVariable getCleanPortfolioValueChange(double time) throws CalculationException {
+		return getConditionalPortfolioValues(time, portfolio.getCF(time, time + MPR, model), model)[1];
+	}
 
-		double lastFixingTime = model.getLiborPeriodDiscretization().getTime(model.getLiborPeriodDiscretization().getTimeIndex(portfolio.getInitialLifeTime()) - 1);
+	/**
+	 * Calculates the portfolio value V(t) conditional on the state at t (the state variable of the variance regression)
+	 * and the clean portfolio value change V(t+MPR)-V(t)+CF({t,t+MPR}). V(t) and V(t)-CF({t,t+MPR}) are projected on the
+	 * same regression basis at once.
+	 *
+	 * @param time      the time t at which the marginal period of risk (MPR) starts
+	 * @param cashFlows the cash flows of the portfolio over the MPR
+	 * @param model     The model
+	 * @return The conditional portfolio value at t and the clean portfolio value change over the MPR
+	 * @throws CalculationException
+	 */
+	private RandomVariable[] getConditionalPortfolioValues(double time, RandomVariable cashFlows, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
-		RandomVariable cashFlows = portfolio.getCF(time, time + MPR, model);
+		double lastFixingTime = model.getLiborPeriodDiscretization().getTime(model.getLiborPeriodDiscretization().getTimeIndex(portfolio.getInitialLifeTime()) - 1);
 
-		RandomVariable initialValue = portfolio.getValue(time, model);
-		initialValue = initialValue.sub(cashFlows);
+		RandomVariable NPV = getPortfolioValue(time, model);
+		RandomVariable initialValue = NPV.sub(cashFlows);
 
-		if (time > 0 && time < lastFixingTime) {
+		// If Libor for last CF is not yet fixed
+		if (time < lastFixingTime) {
 
-			ConditionalExpectationEstimator condExpOperatorInitial = getConditionalExpectationEstimatorLibor(time, model);
+			RandomVariable[] conditionalValues = getConditionalExpectationEstimatorLibor(time, model).getConditionalExpectations(new RandomVariable[] {NPV, initialValue});
 
-			initialValue = initialValue.getConditionalExpectation(condExpOperatorInitial);
+			NPV = conditionalValues[0];
+			if (time > 0) {
+				initialValue = conditionalValues[1];
+			}
 		}
 
-		RandomVariable finalValue = portfolio.getValue(time + MPR, model);
+		RandomVariable finalValue = getPortfolioValue(time + MPR, model);
 
 		if (time + MPR < lastFixingTime) {
 
@@ -137,7 +283,7 @@ public class InitialMarginForwardRegression {
 			finalValue = finalValue.getConditionalExpectation(condExpOperatorFinal);
 		}
 
-		return finalValue.sub(initialValue);
+		return new RandomVariable[] {NPV, finalValue.sub(initialValue)};
 	}
 
 	/**
@@ -149,6 +295,9 @@ public class InitialMarginForwardRegression {
 	 * @throws CalculationException
 	 */
 	public RandomVariable[] getVarianceForecast(TimeDiscretization forwardVaRTimes, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		if (model == this.model) {
+			setValueCube(forwardVaRTimes);
+		}
 
 		RandomVariable[] VaRForecast = new RandomVariable[forwardVaRTimes.getNumberOfTimes()];
 		for (int timeIndex = 0; timeIndex < forwardVaRTimes.getNumberOfTimes(); timeIndex++) {
@@ -159,18 +308,34 @@ public class InitialMarginForwardRegression {
 	}
 
 	/**
-	 * Return the conditional expectation estimator suitable for this product.
+	 * Values the portfolio at the given times and at the ends of their marginal periods of risk at once,
+	 * see <code> Portfolio.getValueCube </code>. The values are used by all following calculations on these times.
 	 *
-	 * @param forwardVaRTime The condition time.
-	 * @param model          The model
-	 * @return The conditional expectation estimator suitable for this product
-	 * @throws net.finmath.exception.CalculationException Thrown if the valuation fails, specific cause may be available via the <code>cause()</code> method.
+	 * @param forwardVaRTimes The times at which the marginal period of risk starts
+	 * @throws CalculationException
+	 */
+	private void setValueCube(TimeDiscretization forwardVaRTimes) throws CalculationException {
+		double[] observationTimes = new double[2 * forwardVaRTimes.getNumberOfTimes()];
+		for (int timeIndex = 0; timeIndex < forwardVaRTimes.getNumberOfTimes(); timeIndex++) {
+			observationTimes[2 * timeIndex] = forwardVaRTimes.getTime(timeIndex);
+			observationTimes[2 * timeIndex + 1] = forwardVaRTimes.getTime(timeIndex) + MPR;
+		}
+		valueCube = portfolio.getValueCube(observationTimes, model);
+	}
+
+	/**
+	 * Returns the portfolio value at the given time, from the value cube if it contains the time.
+	 *
+	 * @param time  The time at which the portfolio is valued
+	 * @param model The model
+	 * @return The portfolio value
+	 * @throws CalculationException
 	 */
-	private ConditionalExpectationEstimator getConditionalExpectationEstimator(double forwardVaRTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		MonteCarloConditionalExpectationRegression condExpEstimator = new MonteCarloConditionalExpectationRegression(
-				getRegressionBasisFunctions(forwardVaRTime, model)
-				);
-		return condExpEstimator;
+	private RandomVariable getPortfolioValue(double time, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		if (valueCube != null && model == this.model && valueCube.containsTime(time)) {
+			return valueCube.getValue(time);
+		}
+		return portfolio.getValue(time, model);
 	}
 
 	/**
@@ -178,25 +343,10 @@ public class InitialMarginForwardRegression {
 	 * conditional expectation of the squared portfolio value change over the marginal period of risk
 	 * conditional on the NPV
 	 *
-	 * @param forwardVaRTime the time when the value at risk regression is performed
-	 * @param model          The model
+	 * @param NPV The NPV of the portfolio conditional on the state at the time of the value at risk regression
 	 * @return The basis functions based on the NPV of the portfolio under consideration in this class
-	 * @throws CalculationException Thrown if the valuation fails, specific cause may be available via the <code>cause()</code> method.
 	 */
-	private RandomVariable[] getRegressionBasisFunctions(double forwardVaRTime,
-			LIBORModelMonteCarloSimulationModel model
-			) throws CalculationException {
-		// If Libor for last CF is not yet fixed
-		RandomVariable NPV = portfolio.getValue(forwardVaRTime, model);
-		double lastFixingTime = model.getLiborPeriodDiscretization().getTime(model.getLiborPeriodDiscretization().getTimeIndex(portfolio.getInitialLifeTime()) - 1);
-		if (forwardVaRTime < lastFixingTime) {
-			// to get NPV at time t
-			ConditionalExpectationEstimator condExpEstimatorLibor = getConditionalExpectationEstimatorLibor(forwardVaRTime, model);
-			// State Variables: NPV of portfolio
-			NPV = NPV.getConditionalExpectation(condExpEstimatorLibor);
-		}
-
-		//RandomVariable NPV = portfolio.getValue(forwardVaRTime, model);
+	private RandomVariable[] getRegressionBasisFunctions(RandomVariable NPV) {
 		ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
 
 		// Basis Functions
@@ -209,22 +359,40 @@ public class InitialMarginForwardRegression {
 	}
 
 	/**
-	 * Provides a conditional expectation estimator for the calculation of the future portfolio value V(t)
+	 * Provides a conditional expectation estimator for the calculation of the future portfolio value V(t).
+	 * The estimator is shared via the <code> RegressionBasisCache </code> of the model with all portfolios of the same life time.
 	 *
 	 * @param forwardVaRTime the time at which the value at risk regression is performed
 	 * @param model
 	 * @return
 	 * @throws CalculationException
 	 */
-	private ConditionalExpectationEstimator getConditionalExpectationEstimatorLibor(double forwardVaRTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
-		MonteCarloConditionalExpectationRegression condExpEstimator = new MonteCarloConditionalExpectationRegression(
-				getRegressionBasisFunctionsLibor(forwardVaRTime, model)
-				);
-		return condExpEstimator;
+	private BatchedConditionalExpectationRegression getConditionalExpectationEstimatorLibor(double forwardVaRTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		int lastLiborIndex = model.getLiborPeriodDiscretization().getTimeIndexNearestGreaterOrEqual(portfolio.getInitialLifeTime());
+		String basisSpecification = "LiborsAndNumeraire(lastLiborIndex=" + lastLiborIndex + ")";
+		if (explainedVarianceThreshold < 1.0) {
+			basisSpecification = "LiborPrincipalComponentsAndNumeraire(lastLiborIndex=" + lastLiborIndex + ", explainedVariance=" + explainedVarianceThreshold + ")";
+		}
+		return RegressionBasisCache.getInstance(model).getConditionalExpectationEstimator(forwardVaRTime, basisSpecification, null,
+				() -> getRegressionBasisFunctionsLibor(forwardVaRTime, model));
+	}
+
+	/**
+	 * Returns the principal components of the LIBOR state at a given time, i.e. of the LIBORs which are state variables of the
+	 * regression of the portfolio value V(t). The principal components report the variance of the LIBOR state captured by the
+	 * state variables if the regression uses <code> explainedVarianceThreshold &lt; 1.0 </code>.
+	 *
+	 * @param forwardVaRTime the time at which the value at risk regression is performed
+	 * @return The principal components of the LIBOR state keeping the explained variance threshold of this calculation
+	 * @throws CalculationException
+	 */
+	public LiborStatePrincipalComponents getLiborStatePrincipalComponents(double forwardVaRTime) throws CalculationException {
+		return LiborStatePrincipalComponents.of(forwardVaRTime, getLiborState(forwardVaRTime, model), explainedVarianceThreshold);
 	}
 
 	/**
-	 * Provides basis functions based on Libor rates for the calculation of the future portfolio value V(t)
+	 * Provides basis functions based on Libor rates for the calculation of the future portfolio value V(t). If the explained
+	 * variance threshold is smaller than 1.0, the basis functions are based on the leading principal components of the Libor rates.
 	 *
 	 * @param forwardVaRTime the time at which the value at risk regression is performed
 	 * @param model
@@ -236,19 +404,21 @@ public class InitialMarginForwardRegression {
 			) throws CalculationException {
 
 		ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
-		ArrayList<RandomVariable> libors = new ArrayList<RandomVariable>();
-		// State Variables: Libors
-		int timeIndex = model.getTimeDiscretization().getTimeIndexNearestLessOrEqual(forwardVaRTime);
-		int firstLiborIndex = model.getLiborPeriodDiscretization().getTimeIndexNearestGreaterOrEqual(forwardVaRTime);
-		int lastLiborIndex = model.getLiborPeriodDiscretization().getTimeIndexNearestGreaterOrEqual(portfolio.getInitialLifeTime());
-		for (int liborIndex = firstLiborIndex; liborIndex < lastLiborIndex; liborIndex++) {
-			libors.add(model.getLIBOR(timeIndex, liborIndex));
-		}
-		RandomVariable[] finalLibors = libors.toArray(new RandomVariable[libors.size()]);
-		// Basis Functions
-		for (int liborIndex = 0; liborIndex < finalLibors.length; liborIndex++) {
-			for (int orderIndex = 0; orderIndex <= 2; orderIndex++) {
-				basisFunctions.add(finalLibors[liborIndex].pow(orderIndex));
+		RandomVariable[] finalLibors = getLiborState(forwardVaRTime, model);
+		if (explainedVarianceThreshold < 1.0) {
+			// State Variables: principal components of the Libors
+			RandomVariable[] factors = LiborStatePrincipalComponents.of(forwardVaRTime, finalLibors, explainedVarianceThreshold).getFactors();
+			basisFunctions.add(model.getRandomVariableForConstant(1.0));
+			for (int factorIndex = 0; factorIndex < factors.length; factorIndex++) {
+				basisFunctions.add(factors[factorIndex]);
+				basisFunctions.add(factors[factorIndex].squared());
+			}
+		} else {
+			// Basis Functions
+			for (int liborIndex = 0; liborIndex < finalLibors.length; liborIndex++) {
+				for (int orderIndex = 0; orderIndex <= 2; orderIndex++) {
+					basisFunctions.add(finalLibors[liborIndex].pow(orderIndex));
+				}
 			}
 		}
 		RandomVariable numeraire = model.getNumeraire(forwardVaRTime);
@@ -258,4 +428,24 @@ public class InitialMarginForwardRegression {
 		RandomVariable[] finalBasisFunctions = basisFunctions.toArray(new RandomVariable[basisFunctions.size()]);
 		return finalBasisFunctions;
 	}
+
+	/**
+	 * Provides the Libor rates which are the state variables of the regression of the future portfolio value V(t)
+	 *
+	 * @param forwardVaRTime the time at which the value at risk regression is performed
+	 * @param model          The model
+	 * @return The Libor rates fixing after the time until the end of the life time of the portfolio
+	 * @throws CalculationException
+	 */
+	private RandomVariable[] getLiborState(double forwardVaRTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		ArrayList<RandomVariable> libors = new ArrayList<RandomVariable>();
+		// State Variables: Libors
+		int timeIndex = model.getTimeDiscretization().getTimeIndexNearestLessOrEqual(forwardVaRTime);
+		int firstLiborIndex = model.getLiborPeriodDiscretization().getTimeIndexNearestGreaterOrEqual(forwardVaRTime);
+		int lastLiborIndex = model.getLiborPeriodDiscretization().getTimeIndexNearestGreaterOrEqual(portfolio.getInitialLifeTime());
+		for (int liborIndex = firstLiborIndex; liborIndex < lastLiborIndex; liborIndex++) {
+			libors.add(model.getLIBOR(timeIndex, liborIndex));
+		}
+		return libors.toArray(new RandomVariable[libors.size()]);
+	}
 }
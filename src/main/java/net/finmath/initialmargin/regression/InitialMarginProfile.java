@@ -0,0 +1,68 @@
+package net.finmath.initialmargin.regression;
+
+import java.util.Arrays;
+
+/**
+ * The initial margin profile of a portfolio together with the times spent in the stages of its calculation,
+ * see <code> InitialMarginForwardRegression.getInitialMarginProfile </code>.
+ */
+public class InitialMarginProfile {
+
+	private final double[] times;
+	private final double[] initialMargin;
+
+	private final double secondsValuation;
+	private final double secondsCashFlows;
+	private final double secondsRegression;
+
+	/**
+	 * Construct an initial margin profile.
+	 *
+	 * @param times             The times of the initial margin profile
+	 * @param initialMargin     The initial margin at the times
+	 * @param secondsValuation  The time spent valuing the portfolio at all times (seconds)
+	 * @param secondsCashFlows  The time spent calculating the cash flows over the MPR (seconds)
+	 * @param secondsRegression The time spent in the regressions and the calculation of the initial margin (seconds, wall clock)
+	 */
+	public InitialMarginProfile(double[] times, double[] initialMargin, double secondsValuation, double secondsCashFlows, double secondsRegression) {
+		this.times = times;
+		this.initialMargin = initialMargin;
+		this.secondsValuation = secondsValuation;
+		this.secondsCashFlows = secondsCashFlows;
+		this.secondsRegression = secondsRegression;
+	}
+
+	public double[] getTimes() {
+		return times.clone();
+	}
+
+	public double[] getInitialMargin() {
+		return initialMargin.clone();
+	}
+
+	public double getInitialMargin(int timeIndex) {
+		return initialMargin[timeIndex];
+	}
+
+	public double getSecondsValuation() {
+		return secondsValuation;
+	}
+
+	public double getSecondsCashFlows() {
+		return secondsCashFlows;
+	}
+
+	public double getSecondsRegression() {
+		return secondsRegression;
+	}
+
+	public double getSecondsTotal() {
+		return secondsValuation + secondsCashFlows + secondsRegression;
+	}
+
+	@Override
+	public String toString() {
+		return "InitialMarginProfile [times=" + Arrays.toString(times) + ", initialMargin=" + Arrays.toString(initialMargin)
+		+ ", secondsValuation=" + secondsValuation + ", secondsCashFlows=" + secondsCashFlows + ", secondsRegression=" + secondsRegression + "]";
+	}
+}
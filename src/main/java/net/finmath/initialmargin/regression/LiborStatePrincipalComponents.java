@@ -0,0 +1,151 @@
+package net.finmath.initialmargin.regression;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * The principal components of the LIBOR state at a time, i.e. of the covariance matrix of the live LIBORs over the paths.
+ * The leading components explaining a given fraction of the total variance are kept. Their factors (the projections of the
+ * centred LIBORs on the components) replace the LIBORs as state variables of a regression, hence the number of basis
+ * functions is that of the factors and not that of the LIBORs.
+ */
+public class LiborStatePrincipalComponents {
+
+	private final int numberOfLibors;
+	private final double[] eigenvalues;        // sorted in descending order
+	private final RandomVariable[] factors;    // factors of the kept components
+
+	private LiborStatePrincipalComponents(int numberOfLibors, double[] eigenvalues, RandomVariable[] factors) {
+		this.numberOfLibors = numberOfLibors;
+		this.eigenvalues = eigenvalues;
+		this.factors = factors;
+	}
+
+	/**
+	 * Calculate the principal components of the given LIBORs.
+	 *
+	 * @param time                       The time of the LIBOR state
+	 * @param libors                     The live LIBORs at the time
+	 * @param explainedVarianceThreshold The fraction of the total variance which has to be explained by the kept components (e.g. 0.99)
+	 * @return The principal components of the LIBOR state
+	 */
+	public static LiborStatePrincipalComponents of(double time, RandomVariable[] libors, double explainedVarianceThreshold) {
+		int numberOfLibors = libors.length;
+		int numberOfPaths = 1;
+		for (RandomVariable libor : libors) {
+			numberOfPaths = Math.max(numberOfPaths, libor.size());
+		}
+
+		if (numberOfLibors == 0) {
+			return new LiborStatePrincipalComponents(0, new double[0], new RandomVariable[0]);
+		}
+
+		// Centred realizations of the LIBORs
+		double[][] centredLibors = new double[numberOfLibors][numberOfPaths];
+		for (int liborIndex = 0; liborIndex < numberOfLibors; liborIndex++) {
+			RandomVariable libor = libors[liborIndex];
+			if (!libor.isDeterministic()) {
+				double average = libor.getAverage();
+				for (int path = 0; path < numberOfPaths; path++) {
+					centredLibors[liborIndex][path] = libor.get(path) - average;
+				}
+			}
+		}
+
+		double[][] covariance = new double[numberOfLibors][numberOfLibors];
+		for (int i = 0; i < numberOfLibors; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = 0.0;
+				for (int path = 0; path < numberOfPaths; path++) {
+					sum += centredLibors[i][path] * centredLibors[j][path];
+				}
+				covariance[i][j] = sum / numberOfPaths;
+				covariance[j][i] = covariance[i][j];
+			}
+		}
+
+		EigenDecomposition eigenDecomposition = new EigenDecomposition(MatrixUtils.createRealMatrix(covariance));
+		RealMatrix eigenvectors = eigenDecomposition.getV();
+		double[] unsortedEigenvalues = eigenDecomposition.getRealEigenvalues();
+
+		Integer[] order = new Integer[numberOfLibors];
+		for (int i = 0; i < numberOfLibors; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> Double.compare(unsortedEigenvalues[j], unsortedEigenvalues[i]));
+
+		double[] eigenvalues = new double[numberOfLibors];
+		double totalVariance = 0.0;
+		for (int i = 0; i < numberOfLibors; i++) {
+			eigenvalues[i] = Math.max(unsortedEigenvalues[order[i]], 0.0);
+			totalVariance += eigenvalues[i];
+		}
+
+		// The number of components explaining the threshold (none if the LIBORs are deterministic)
+		int numberOfFactors = 0;
+		double explainedVariance = 0.0;
+		while (numberOfFactors < numberOfLibors && totalVariance > 0 && explainedVariance < explainedVarianceThreshold * totalVariance) {
+			explainedVariance += eigenvalues[numberOfFactors++];
+		}
+
+		RandomVariable[] factors = new RandomVariable[numberOfFactors];
+		for (int factorIndex = 0; factorIndex < numberOfFactors; factorIndex++) {
+			double[] eigenvector = eigenvectors.getColumn(order[factorIndex]);
+			double[] factor = new double[numberOfPaths];
+			for (int liborIndex = 0; liborIndex < numberOfLibors; liborIndex++) {
+				for (int path = 0; path < numberOfPaths; path++) {
+					factor[path] += eigenvector[liborIndex] * centredLibors[liborIndex][path];
+				}
+			}
+			factors[factorIndex] = new RandomVariableFromDoubleArray(time, factor);
+		}
+
+		return new LiborStatePrincipalComponents(numberOfLibors, eigenvalues, factors);
+	}
+
+	/**
+	 * @return The factors of the kept components, the state variables replacing the LIBORs.
+	 */
+	public RandomVariable[] getFactors() {
+		return factors.clone();
+	}
+
+	public int getNumberOfFactors() {
+		return factors.length;
+	}
+
+	public int getNumberOfLibors() {
+		return numberOfLibors;
+	}
+
+	/**
+	 * @return The fraction of the total variance of the LIBORs explained by the kept components (1.0 if the LIBORs are deterministic).
+	 */
+	public double getExplainedVariance() {
+		double totalVariance = 0.0;
+		double explainedVariance = 0.0;
+		for (int i = 0; i < eigenvalues.length; i++) {
+			totalVariance += eigenvalues[i];
+			explainedVariance += i < factors.length ? eigenvalues[i] : 0.0;
+		}
+		return totalVariance > 0 ? explainedVariance / totalVariance : 1.0;
+	}
+
+	/**
+	 * @return The eigenvalues of the covariance matrix of the LIBORs (the variances of the components) in descending order.
+	 */
+	public double[] getEigenvalues() {
+		return eigenvalues.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "LiborStatePrincipalComponents [numberOfLibors=" + numberOfLibors + ", numberOfFactors=" + factors.length + ", explainedVariance=" + getExplainedVariance() + "]";
+	}
+}
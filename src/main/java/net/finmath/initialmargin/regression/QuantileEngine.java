@@ -0,0 +1,36 @@
+package net.finmath.initialmargin.regression;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Calculates the quantile of the values of a random variable on its paths, e.g. of the clean portfolio value change
+ * in the SIMPLE method of <code> InitialMarginForwardRegression </code>.
+ */
+@FunctionalInterface
+public interface QuantileEngine {
+
+	/**
+	 * The quantile as calculated by <code> RandomVariable.getQuantile </code>, sorting all values.
+	 */
+	QuantileEngine SORTING = (values, quantileLevel) -> values.getQuantile(quantileLevel);
+
+	/**
+	 * Returns the quantile of the values on the paths.
+	 *
+	 * @param values        The values
+	 * @param quantileLevel The level of the quantile (e.g. 0.99)
+	 * @return The quantile of the values
+	 */
+	double getQuantile(RandomVariable values, double quantileLevel);
+
+	/**
+	 * Returns the index of the quantile in the sorted values, consistent with <code> RandomVariable.getQuantile </code>.
+	 *
+	 * @param numberOfValues The number of values
+	 * @param quantileLevel  The level of the quantile
+	 * @return The index of the quantile in the sorted values
+	 */
+	static long getIndexOfQuantile(long numberOfValues, double quantileLevel) {
+		return Math.min(Math.max(Math.round((numberOfValues + 1) * quantileLevel - 1), 0), numberOfValues - 1);
+	}
+}
@@ -0,0 +1,193 @@
+package net.finmath.initialmargin.regression;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * A mergeable streaming quantile sketch with bounded memory (a hierarchy of compactors). The values of level h have the
+ * weight 2^h. When a level holds <code> capacity </code> values, they are sorted and every other value (alternating
+ * between the odd and the even ones) is promoted to the next level, the others are dropped.
+ * <p>
+ * Each compaction on level h changes the rank of any value by at most 2^h. The sketch accumulates these errors, hence
+ * <code> getRankErrorBound </code> is a guaranteed bound of the error of the rank of the quantile. For n values the sketch
+ * retains at most <code> capacity * (log2(n / capacity) + 1) </code> values and the relative rank error is of the order
+ * <code> log2(n / capacity) / capacity </code>; the error observed in practice is much smaller, since the errors of the
+ * alternating compactions cancel.
+ * <p>
+ * Sketches of disjoint sets of values (e.g. of blocks of paths) are combined by <code> merge </code> without
+ * materialising the values.
+ */
+public class QuantileSketch implements Serializable {
+
+	private static final long serialVersionUID = 4977329181656436512L;
+
+	private final int capacity;
+	private final List<Compactor> compactors = new ArrayList<>();
+
+	private long numberOfValues = 0;
+	private long rankErrorBound = 0;
+
+	/**
+	 * Construct an empty sketch.
+	 *
+	 * @param capacity The number of values per level (a positive even number). Larger capacities give smaller errors.
+	 */
+	public QuantileSketch(int capacity) {
+		if (capacity < 2 || capacity % 2 != 0) {
+			throw new IllegalArgumentException("The capacity must be a positive even number.");
+		}
+		this.capacity = capacity;
+	}
+
+	public void add(double value) {
+		add(0, value);
+		numberOfValues++;
+	}
+
+	/**
+	 * Add the values of a random variable on all paths. A deterministic random variable is added as a single value.
+	 *
+	 * @param values The values
+	 */
+	public void add(RandomVariable values) {
+		if (values.isDeterministic()) {
+			add(values.get(0));
+			return;
+		}
+		for (double value : values.getRealizations()) {
+			add(value);
+		}
+	}
+
+	/**
+	 * Add the values of another sketch (of a disjoint set of values) to this sketch.
+	 *
+	 * @param other The other sketch (with the same capacity)
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.capacity != capacity) {
+			throw new IllegalArgumentException("Sketches with different capacities cannot be merged.");
+		}
+		// The compactions of the other sketch are part of the error, the values are added on their levels
+		rankErrorBound += other.rankErrorBound;
+		numberOfValues += other.numberOfValues;
+		for (int level = 0; level < other.compactors.size(); level++) {
+			Compactor compactor = other.compactors.get(level);
+			for (int i = 0; i < compactor.size; i++) {
+				add(level, compactor.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the approximate quantile, the value whose rank is the index of the quantile in the sorted values
+	 * (see <code> QuantileEngine.getIndexOfQuantile </code>) up to <code> getRankErrorBound </code>.
+	 *
+	 * @param quantileLevel The level of the quantile
+	 * @return The approximate quantile or NaN if the sketch is empty
+	 */
+	public double getQuantile(double quantileLevel) {
+		if (numberOfValues == 0) {
+			return Double.NaN;
+		}
+
+		int numberOfRetainedValues = getNumberOfRetainedValues();
+		double[] values = new double[numberOfRetainedValues];
+		int[] levels = new int[numberOfRetainedValues];
+		Integer[] order = new Integer[numberOfRetainedValues];
+		int index = 0;
+		for (int level = 0; level < compactors.size(); level++) {
+			Compactor compactor = compactors.get(level);
+			for (int i = 0; i < compactor.size; i++) {
+				values[index] = compactor.values[i];
+				levels[index] = level;
+				order[index] = index;
+				index++;
+			}
+		}
+		Arrays.sort(order, (i, j) -> Double.compare(values[i], values[j]));
+
+		long rank = QuantileEngine.getIndexOfQuantile(numberOfValues, quantileLevel) + 1;
+		long cumulativeWeight = 0;
+		for (int i : order) {
+			cumulativeWeight += 1L << levels[i];
+			if (cumulativeWeight >= rank) {
+				return values[i];
+			}
+		}
+		return values[order[numberOfRetainedValues - 1]];
+	}
+
+	public long getNumberOfValues() {
+		return numberOfValues;
+	}
+
+	public int getNumberOfRetainedValues() {
+		int numberOfRetainedValues = 0;
+		for (Compactor compactor : compactors) {
+			numberOfRetainedValues += compactor.size;
+		}
+		return numberOfRetainedValues;
+	}
+
+	/**
+	 * @return The bound of the error of the rank of the quantile (in number of values).
+	 */
+	public long getRankErrorBound() {
+		return rankErrorBound;
+	}
+
+	/**
+	 * @return The bound of the error of the level of the quantile, i.e. <code> getRankErrorBound() / getNumberOfValues() </code>.
+	 */
+	public double getQuantileLevelErrorBound() {
+		return numberOfValues == 0 ? 0.0 : (double) rankErrorBound / numberOfValues;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private void add(int level, double value) {
+		while (compactors.size() <= level) {
+			compactors.add(new Compactor(capacity));
+		}
+		Compactor compactor = compactors.get(level);
+		compactor.values[compactor.size++] = value;
+		if (compactor.size == capacity) {
+			double[] promotedValues = compactor.compact();
+			rankErrorBound += 1L << level;
+			for (double promotedValue : promotedValues) {
+				add(level + 1, promotedValue);
+			}
+		}
+	}
+
+	private static final class Compactor implements Serializable {
+		private static final long serialVersionUID = -1538395722178829174L;
+
+		private final double[] values;
+		private int size = 0;
+		private boolean isPromoteOdd = false;
+
+		private Compactor(int capacity) {
+			values = new double[capacity];
+		}
+
+		private double[] compact() {
+			Arrays.sort(values, 0, size);
+			double[] promotedValues = new double[size / 2];
+			int offset = isPromoteOdd ? 1 : 0;
+			for (int i = 0; i < promotedValues.length; i++) {
+				promotedValues[i] = values[2 * i + offset];
+			}
+			isPromoteOdd = !isPromoteOdd;
+			size = 0;
+			return promotedValues;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package net.finmath.initialmargin.regression;
+
+import java.util.Arrays;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Calculates the exact quantile by selection (quickselect) instead of sorting all values. The quantile is the same order
+ * statistic as returned by <code> RandomVariable.getQuantile </code>, the expected effort is linear in the number of paths.
+ * If the partitioning degenerates, the remaining range is sorted, hence the worst case is that of sorting.
+ */
+public class SelectionQuantileEngine implements QuantileEngine {
+
+	@Override
+	public double getQuantile(RandomVariable values, double quantileLevel) {
+		if (values.isDeterministic()) {
+			return values.get(0);
+		}
+		if (values.size() == 0) {
+			return Double.NaN;
+		}
+
+		// The realizations may be the internal array of the random variable
+		double[] realizations = values.getRealizations().clone();
+		return select(realizations, (int) QuantileEngine.getIndexOfQuantile(realizations.length, quantileLevel));
+	}
+
+	/**
+	 * Returns the value at the given index of the sorted values. The values are reordered.
+	 *
+	 * @param values The values
+	 * @param index  The index in the sorted values
+	 * @return The value at the index of the sorted values
+	 */
+	public static double select(double[] values, int index) {
+		int from = 0;
+		int to = values.length - 1;
+		int remainingPartitions = 2 * (32 - Integer.numberOfLeadingZeros(values.length));
+		while (from < to) {
+			if (remainingPartitions-- == 0) {
+				Arrays.sort(values, from, to + 1);
+				return values[index];
+			}
+
+			// Median of three as pivot, moved to the end of the range
+			int middle = (from + to) >>> 1;
+			if (Double.compare(values[middle], values[from]) < 0) {
+				swap(values, middle, from);
+			}
+			if (Double.compare(values[to], values[from]) < 0) {
+				swap(values, to, from);
+			}
+			if (Double.compare(values[middle], values[to]) < 0) {
+				swap(values, middle, to);
+			}
+			double pivot = values[to];
+
+			int pivotIndex = from;
+			for (int i = from; i < to; i++) {
+				if (Double.compare(values[i], pivot) < 0) {
+					swap(values, i, pivotIndex++);
+				}
+			}
+			swap(values, pivotIndex, to);
+
+			if (index == pivotIndex) {
+				return values[index];
+			} else if (index < pivotIndex) {
+				to = pivotIndex - 1;
+			} else {
+				from = pivotIndex + 1;
+			}
+		}
+		return values[index];
+	}
+
+	private static void swap(double[] values, int i, int j) {
+		double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+}
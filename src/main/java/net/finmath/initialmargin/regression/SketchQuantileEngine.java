@@ -0,0 +1,28 @@
+package net.finmath.initialmargin.regression;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Calculates an approximate quantile with a <code> QuantileSketch </code> of bounded memory, see there for the error bound.
+ */
+public class SketchQuantileEngine implements QuantileEngine {
+
+	private final int capacity;
+
+	/**
+	 * @param capacity The number of values per level of the sketch (a positive even number)
+	 */
+	public SketchQuantileEngine(int capacity) {
+		this.capacity = capacity;
+	}
+
+	@Override
+	public double getQuantile(RandomVariable values, double quantileLevel) {
+		if (values.isDeterministic()) {
+			return values.get(0);
+		}
+		QuantileSketch sketch = new QuantileSketch(capacity);
+		sketch.add(values);
+		return sketch.getQuantile(quantileLevel);
+	}
+}
@@ -37,4 +37,23 @@ public abstract class AbstractLIBORMonteCarloRegressionProduct extends AbstractL
 	public RandomVariable getCF(double initialTime, double finalTime, MonteCarloSimulationModel model) throws CalculationException {
 		return getCF(initialTime, finalTime, (LIBORModelMonteCarloSimulationModel) model);
 	}
+
+	/**
+	 * Returns the values of the product at all given observation times, i.e. <code> getValue(time, model) </code> for every time.
+	 * This implementation values the product once per time. Products valued by a backward induction override this method to
+	 * record all values within a single sweep.
+	 *
+	 * @param evaluationTimes The observation times (in any order, duplicates are ignored)
+	 * @param model           The model used to price the product.
+	 * @return The value cube of the product
+	 * @throws net.finmath.exception.CalculationException Thrown if the valuation fails, specific cause may be available via the <code>cause()</code> method.
+	 */
+	public ValueCube getValueCube(double[] evaluationTimes, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		double[] times = ValueCube.getObservationTimes(evaluationTimes);
+		RandomVariable[] values = new RandomVariable[times.length];
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			values[timeIndex] = getValue(times[timeIndex], model);
+		}
+		return new ValueCube(times, values);
+	}
 }
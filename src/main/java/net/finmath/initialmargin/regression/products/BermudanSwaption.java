@@ -61,6 +61,46 @@ public class BermudanSwaption extends AbstractLIBORMonteCarloRegressionProduct {
 	 */
 	@Override
 	public RandomVariable getValue(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		return getValue(evaluationTime, getValueRelativeToNumeraire(model), model);
+	}
+
+	/**
+	 * Returns the values of the product at all given observation times. The backward induction (including the regressions at the
+	 * exercise dates) does not depend on the observation time, hence it is performed once and its result is converted to each
+	 * observation time.
+	 *
+	 * @param evaluationTimes The observation times (in any order, duplicates are ignored)
+	 * @param model           The model used to price the product.
+	 * @return The value cube of the product
+	 * @throws net.finmath.exception.CalculationException Thrown if the valuation fails, specific cause may be available via the <code>cause()</code> method.
+	 */
+	@Override
+	public ValueCube getValueCube(double[] evaluationTimes, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		RandomVariable valueRelativeToNumeraire = getValueRelativeToNumeraire(model);
+
+		double[] times = ValueCube.getObservationTimes(evaluationTimes);
+		RandomVariable[] values = new RandomVariable[times.length];
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			values[timeIndex] = getValue(times[timeIndex], valueRelativeToNumeraire, model);
+		}
+		return new ValueCube(times, values);
+	}
+
+	private RandomVariable getValue(double evaluationTime, RandomVariable valueRelativeToNumeraire, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		// Note that values is a relative price - no numeraire division is required
+		RandomVariable numeraireAtZero = model.getNumeraire(evaluationTime);
+		RandomVariable monteCarloProbabilitiesAtZero = model.getMonteCarloWeights(evaluationTime);
+		return valueRelativeToNumeraire.mult(numeraireAtZero).div(monteCarloProbabilitiesAtZero);
+	}
+
+	/**
+	 * Performs the backward induction over all periods.
+	 *
+	 * @param model The model used to price the product.
+	 * @return The value of the product relative to the numeraire
+	 * @throws CalculationException
+	 */
+	private RandomVariable getValueRelativeToNumeraire(LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 
 		// After the last period the product has value zero: Initialize values to zero.
 		RandomVariable values = new RandomVariableFromDoubleArray(fixingDates[fixingDates.length - 1], 0.0);
@@ -103,13 +143,6 @@ public class BermudanSwaption extends AbstractLIBORMonteCarloRegressionProduct {
 			}
 		}
 
-		//		model.discount(evaluationTime, values);
-
-		// Note that values is a relative price - no numeraire division is required
-		RandomVariable numeraireAtZero = model.getNumeraire(evaluationTime);
-		RandomVariable monteCarloProbabilitiesAtZero = model.getMonteCarloWeights(evaluationTime);
-		values = values.mult(numeraireAtZero).div(monteCarloProbabilitiesAtZero);
-
 		return values;
 	}
 
@@ -5,6 +5,7 @@
  */
 package net.finmath.initialmargin.regression.products;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import net.finmath.exception.CalculationException;
@@ -142,6 +143,31 @@ public class Portfolio extends AbstractProductComponent {
 		return values;
 	}
 
+	/**
+	 * Returns the values of the portfolio at all given observation times. Each product provides its values at all times at once,
+	 * see <code> AbstractLIBORMonteCarloRegressionProduct.getValueCube </code>.
+	 *
+	 * @param evaluationTimes The observation times (in any order, duplicates are ignored)
+	 * @param model           The model used to price the product.
+	 * @return The value cube of the portfolio
+	 * @throws net.finmath.exception.CalculationException Thrown if the valuation fails, specific cause may be available via the <code>cause()</code> method.
+	 */
+	@Override
+	public ValueCube getValueCube(double[] evaluationTimes, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		double[] times = ValueCube.getObservationTimes(evaluationTimes);
+		RandomVariable[] values = new RandomVariable[times.length];
+		Arrays.fill(values, new RandomVariableFromDoubleArray(0.0));
+
+		for (int productIndex = 0; productIndex < products.length; productIndex++) {
+			ValueCube valuesOfProduct = products[productIndex].getValueCube(times, model);
+			double weightOfProduct = weights[productIndex];
+			for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+				values[timeIndex] = valuesOfProduct.getValue(times[timeIndex]).mult(weightOfProduct).add(values[timeIndex]);
+			}
+		}
+		return new ValueCube(times, values);
+	}
+
 	@Override
 	public RandomVariable getCF(double initialTime, double finalTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
 		RandomVariable cashFlows = new RandomVariableFromDoubleArray(0.0);
@@ -0,0 +1,72 @@
+package net.finmath.initialmargin.regression.products;
+
+import java.util.Arrays;
+
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * The values of a product on all paths at a set of observation times (a time x path cube), as returned by
+ * <code> AbstractLIBORMonteCarloRegressionProduct.getValueCube </code>. The value at an observation time is the
+ * value <code> getValue(time, model) </code> of the product.
+ */
+public class ValueCube {
+
+	private final double[] times;          // sorted
+	private final RandomVariable[] values; // value at times[i]
+
+	/**
+	 * Construct a value cube.
+	 *
+	 * @param times  The observation times (must be sorted and distinct)
+	 * @param values The values of the product at the observation times
+	 */
+	public ValueCube(double[] times, RandomVariable[] values) {
+		if (times.length != values.length) {
+			throw new IllegalArgumentException("The values must be given for every observation time.");
+		}
+		for (int timeIndex = 1; timeIndex < times.length; timeIndex++) {
+			if (times[timeIndex] <= times[timeIndex - 1]) {
+				throw new IllegalArgumentException("The observation times must be sorted and distinct.");
+			}
+		}
+		this.times = times.clone();
+		this.values = values.clone();
+	}
+
+	/**
+	 * Returns the sorted distinct observation times of the given times.
+	 *
+	 * @param evaluationTimes The observation times in any order, possibly with duplicates
+	 * @return The sorted distinct observation times
+	 */
+	public static double[] getObservationTimes(double[] evaluationTimes) {
+		return Arrays.stream(evaluationTimes).sorted().distinct().toArray();
+	}
+
+	/**
+	 * Returns the value at the given observation time.
+	 *
+	 * @param time The observation time
+	 * @return The value of the product at the observation time
+	 * @throws IllegalArgumentException If the time is not an observation time of this cube.
+	 */
+	public RandomVariable getValue(double time) {
+		int timeIndex = Arrays.binarySearch(times, time);
+		if (timeIndex < 0) {
+			throw new IllegalArgumentException("The time " + time + " is not an observation time of the value cube.");
+		}
+		return values[timeIndex];
+	}
+
+	public boolean containsTime(double time) {
+		return Arrays.binarySearch(times, time) >= 0;
+	}
+
+	public double[] getTimes() {
+		return times.clone();
+	}
+
+	public int getNumberOfTimes() {
+		return times.length;
+	}
+}
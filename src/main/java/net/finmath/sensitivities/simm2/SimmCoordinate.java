@@ -48,6 +48,14 @@ public final class SimmCoordinate {
 		return new SimmCoordinate(vertex, subCurve, qualifier, bucketKey, riskClass, newMarginType, productClass);
 	}
 
+	/**
+	 * @param newQualifier The qualifier of the new coordinate, e.g. a shared (interned) instance equal to the current one.
+	 * @return Returns the same coordinate with the given qualifier.
+	 */
+	public SimmCoordinate withQualifier(Qualifier newQualifier) {
+		return new SimmCoordinate(vertex, subCurve, newQualifier, bucketKey, riskClass, marginType, productClass);
+	}
+
 	/**
 	 * Gets the additional identifier needed to determine the risk factor. This shall correspond to the CRIF qualifier.
 	 * For interest rate/inflation risk factors this will be the currency.
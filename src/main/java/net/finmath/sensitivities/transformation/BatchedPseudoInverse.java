@@ -0,0 +1,366 @@
+package net.finmath.sensitivities.transformation;
+
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Calculates the pseudo-inverse of a random matrix on all Monte Carlo paths in one batch.
+ * <p>
+ * The matrix is copied once into a contiguous path-major array, i.e. the row-major matrix of path <code>p</code>
+ * starts at <code>p * rowCount * columnCount</code>. Paths are processed in parallel and every worker thread
+ * re-uses its own workspace, so no matrix objects are allocated per path.
+ * <p>
+ * On each path the pseudo-inverse is obtained from a Cholesky decomposition of the normal equations
+ * (<code>A<sup>T</sup>A</code> for tall and <code>AA<sup>T</sup></code> for wide matrices). Only if the decomposition
+ * indicates an ill-conditioned matrix, or the result violates <code>AXA = A</code>, the path falls back to
+ * Apache Commons Math's singular value decomposition, which also covers rank-deficient matrices.
+ */
+public class BatchedPseudoInverse {
+
+	private static final double DEFAULT_MAX_CONDITION_NUMBER = 1E10;
+	private static final double DEFAULT_TOLERANCE = 1E-8;
+
+	private final double maxConditionNumber;
+	private final double tolerance;
+
+	private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+	/**
+	 * Creates a batched pseudo-inverse using default thresholds for the solver selection.
+	 */
+	public BatchedPseudoInverse() {
+		this(DEFAULT_MAX_CONDITION_NUMBER, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Creates a batched pseudo-inverse.
+	 *
+	 * @param maxConditionNumber Largest (estimated) condition number of the normal equations for which the Cholesky solver is used.
+	 * @param tolerance          Maximum relative residual of <code>AXA - A</code> accepted from the Cholesky solver.
+	 */
+	public BatchedPseudoInverse(double maxConditionNumber, double tolerance) {
+		this.maxConditionNumber = maxConditionNumber;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Calculates the pseudo-inverse of a random matrix. The number of paths is the largest size of the entries,
+	 * the filtration time the latest filtration time of the entries.
+	 *
+	 * @param matrix A random matrix, represented by a jagged array (row-column) of {@link RandomVariable}s. Null entries are treated as zero.
+	 * @return The pseudo-inverse, using the same convention as the input matrix.
+	 */
+	public RandomVariable[][] getPseudoInverse(RandomVariable[][] matrix) {
+		int numberOfPaths = 1;
+		double filtrationTime = Double.NEGATIVE_INFINITY;
+		for (RandomVariable[] row : matrix) {
+			for (RandomVariable entry : row) {
+				if (entry != null) {
+					numberOfPaths = Math.max(numberOfPaths, entry.size());
+					filtrationTime = Math.max(filtrationTime, entry.getFiltrationTime());
+				}
+			}
+		}
+		return getPseudoInverse(matrix, numberOfPaths, filtrationTime);
+	}
+
+	/**
+	 * Calculates the pseudo-inverse of a random matrix.
+	 *
+	 * @param matrix         A random matrix, represented by a jagged array (row-column) of {@link RandomVariable}s. Null entries are treated as zero.
+	 * @param numberOfPaths  The number of paths of the stochastic entries.
+	 * @param filtrationTime The filtration time of the entries of the result.
+	 * @return The pseudo-inverse, using the same convention as the input matrix.
+	 */
+	public RandomVariable[][] getPseudoInverse(RandomVariable[][] matrix, int numberOfPaths, double filtrationTime) {
+		final int rowCount = matrix.length;
+		final int columnCount = matrix[0].length;
+
+		double[] values = getPathMajorValues(matrix, numberOfPaths);
+
+		// Row-column-path array of the inverse (row count = column count from input)
+		double[][][] resultByRowColPath = new double[columnCount][rowCount][numberOfPaths];
+
+		invert(values, rowCount, columnCount, numberOfPaths, (pathIndex, inverseOnPath) -> {
+			for (int i = 0; i < columnCount; i++) {
+				for (int j = 0; j < rowCount; j++) {
+					resultByRowColPath[i][j][pathIndex] = inverseOnPath[i * rowCount + j];
+				}
+			}
+		});
+
+		RandomVariable[][] pseudoInverse = new RandomVariable[columnCount][rowCount];
+		for (int i = 0; i < columnCount; i++) {
+			for (int j = 0; j < rowCount; j++) {
+				pseudoInverse[i][j] = new RandomVariableFromDoubleArray(filtrationTime, resultByRowColPath[i][j]);
+			}
+		}
+		return pseudoInverse;
+	}
+
+	/**
+	 * Calculates the pseudo-inverse of a matrix given on each path in path-major layout.
+	 *
+	 * @param values        The row-major matrices of all paths, one after another.
+	 * @param rowCount      The number of rows of the matrix.
+	 * @param columnCount   The number of columns of the matrix.
+	 * @param numberOfPaths The number of paths.
+	 * @return The row-major pseudo-inverses (columnCount x rowCount) of all paths, one after another.
+	 */
+	public double[] getPseudoInverse(double[] values, int rowCount, int columnCount, int numberOfPaths) {
+		final int blockSize = rowCount * columnCount;
+		if (values.length != blockSize * numberOfPaths) {
+			throw new IllegalArgumentException("Length of values does not match the dimension of the matrix and the number of paths.");
+		}
+
+		double[] pseudoInverse = new double[values.length];
+		invert(values, rowCount, columnCount, numberOfPaths,
+				(pathIndex, inverseOnPath) -> System.arraycopy(inverseOnPath, 0, pseudoInverse, pathIndex * blockSize, blockSize));
+		return pseudoInverse;
+	}
+
+	private static double[] getPathMajorValues(RandomVariable[][] matrix, int numberOfPaths) {
+		final int rowCount = matrix.length;
+		final int columnCount = matrix[0].length;
+		final int blockSize = rowCount * columnCount;
+
+		double[] values = new double[blockSize * numberOfPaths];
+		for (int i = 0; i < rowCount; i++) {
+			for (int j = 0; j < columnCount; j++) {
+				RandomVariable entry = matrix[i][j];
+				if (entry == null) {
+					continue;
+				}
+				int offset = i * columnCount + j;
+				if (entry.isDeterministic()) {
+					double value = entry.get(0);
+					for (int pathIndex = 0; pathIndex < numberOfPaths; pathIndex++) {
+						values[pathIndex * blockSize + offset] = value;
+					}
+				} else {
+					double[] realizations = entry.getRealizations();
+					for (int pathIndex = 0; pathIndex < numberOfPaths; pathIndex++) {
+						values[pathIndex * blockSize + offset] = realizations[pathIndex];
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	private void invert(double[] values, int rowCount, int columnCount, int numberOfPaths, PathResultConsumer consumer) {
+		//Warning: parallelism via stream.parallel; check for thread pool clash
+		IntStream.range(0, numberOfPaths).parallel().forEach(pathIndex -> {
+			Workspace workspace = workspaces.get();
+			workspace.ensureCapacity(rowCount, columnCount);
+
+			int offset = pathIndex * rowCount * columnCount;
+			if (!invertByCholesky(values, offset, rowCount, columnCount, workspace)) {
+				invertBySvd(values, offset, rowCount, columnCount, workspace.inverse);
+			}
+			consumer.accept(pathIndex, workspace.inverse);
+		});
+	}
+
+	/**
+	 * Calculates the pseudo-inverse of the matrix on one path from the normal equations.
+	 * The result is written to <code>workspace.inverse</code>.
+	 *
+	 * @return True if the result is accepted, false if the path requires the SVD fallback.
+	 */
+	private boolean invertByCholesky(double[] a, int offset, int m, int n, Workspace workspace) {
+		final boolean isTall = m >= n;
+		final int k = isTall ? n : m;
+		final double[] gram = workspace.gram;
+		final double[] x = workspace.inverse;
+		final double[] rhs = workspace.rhs;
+
+		// Lower triangle of A^T A (tall) or A A^T (wide)
+		for (int p = 0; p < k; p++) {
+			for (int q = 0; q <= p; q++) {
+				double sum = 0.0;
+				if (isTall) {
+					for (int r = 0; r < m; r++) {
+						sum += a[offset + r * n + p] * a[offset + r * n + q];
+					}
+				} else {
+					for (int c = 0; c < n; c++) {
+						sum += a[offset + p * n + c] * a[offset + q * n + c];
+					}
+				}
+				gram[p * k + q] = sum;
+			}
+		}
+
+		if (!decomposeCholesky(gram, k)) {
+			return false;
+		}
+
+		if (isTall) {
+			// X = (A^T A)^-1 A^T, column r of X solves the normal equations for row r of A
+			for (int r = 0; r < m; r++) {
+				for (int p = 0; p < n; p++) {
+					rhs[p] = a[offset + r * n + p];
+				}
+				solveCholesky(gram, k, rhs);
+				for (int p = 0; p < n; p++) {
+					x[p * m + r] = rhs[p];
+				}
+			}
+		} else {
+			// X = A^T (A A^T)^-1, row c of X solves the normal equations for column c of A
+			for (int c = 0; c < n; c++) {
+				for (int p = 0; p < m; p++) {
+					rhs[p] = a[offset + p * n + c];
+				}
+				solveCholesky(gram, k, rhs);
+				System.arraycopy(rhs, 0, x, c * m, m);
+			}
+		}
+
+		return isResidualAcceptable(a, offset, m, n, workspace);
+	}
+
+	/**
+	 * In-place Cholesky decomposition of the lower triangle of a symmetric k x k matrix.
+	 *
+	 * @return True if the matrix is numerically positive definite and the condition estimate is below the threshold.
+	 */
+	private boolean decomposeCholesky(double[] g, int k) {
+		double minDiagonal = Double.POSITIVE_INFINITY;
+		double maxDiagonal = 0.0;
+		for (int j = 0; j < k; j++) {
+			double diagonal = g[j * k + j];
+			for (int p = 0; p < j; p++) {
+				diagonal -= g[j * k + p] * g[j * k + p];
+			}
+			if (!(diagonal > 0.0)) {
+				return false;
+			}
+			double pivot = Math.sqrt(diagonal);
+			g[j * k + j] = pivot;
+			minDiagonal = Math.min(minDiagonal, pivot);
+			maxDiagonal = Math.max(maxDiagonal, pivot);
+
+			for (int i = j + 1; i < k; i++) {
+				double sum = g[i * k + j];
+				for (int p = 0; p < j; p++) {
+					sum -= g[i * k + p] * g[j * k + p];
+				}
+				g[i * k + j] = sum / pivot;
+			}
+		}
+
+		double ratio = maxDiagonal / minDiagonal;
+		return ratio * ratio <= maxConditionNumber;
+	}
+
+	private static void solveCholesky(double[] l, int k, double[] b) {
+		// Forward substitution L y = b
+		for (int i = 0; i < k; i++) {
+			double sum = b[i];
+			for (int p = 0; p < i; p++) {
+				sum -= l[i * k + p] * b[p];
+			}
+			b[i] = sum / l[i * k + i];
+		}
+		// Backward substitution L^T z = y
+		for (int i = k - 1; i >= 0; i--) {
+			double sum = b[i];
+			for (int p = i + 1; p < k; p++) {
+				sum -= l[p * k + i] * b[p];
+			}
+			b[i] = sum / l[i * k + i];
+		}
+	}
+
+	/**
+	 * Checks the Moore-Penrose condition <code>AXA = A</code> relative to the largest entry of <code>A</code>.
+	 */
+	private boolean isResidualAcceptable(double[] a, int offset, int m, int n, Workspace workspace) {
+		final double[] x = workspace.inverse;
+		final double[] ax = workspace.product;
+
+		double maxEntry = 0.0;
+		for (int i = 0; i < m * n; i++) {
+			maxEntry = Math.max(maxEntry, Math.abs(a[offset + i]));
+		}
+
+		// AX (m x m)
+		for (int i = 0; i < m; i++) {
+			for (int j = 0; j < m; j++) {
+				double sum = 0.0;
+				for (int p = 0; p < n; p++) {
+					sum += a[offset + i * n + p] * x[p * m + j];
+				}
+				ax[i * m + j] = sum;
+			}
+		}
+
+		// AXA - A (m x n)
+		final double maxResidual = tolerance * maxEntry;
+		for (int i = 0; i < m; i++) {
+			for (int j = 0; j < n; j++) {
+				double sum = 0.0;
+				for (int p = 0; p < m; p++) {
+					sum += ax[i * m + p] * a[offset + p * n + j];
+				}
+				if (!(Math.abs(sum - a[offset + i * n + j]) <= maxResidual)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static void invertBySvd(double[] a, int offset, int m, int n, double[] x) {
+		double[][] matrixOnPath = new double[m][n];
+		for (int i = 0; i < m; i++) {
+			System.arraycopy(a, offset + i * n, matrixOnPath[i], 0, n);
+		}
+
+		RealMatrix pseudoInverse = new SingularValueDecomposition(MatrixUtils.createRealMatrix(matrixOnPath)).getSolver().getInverse();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < m; j++) {
+				x[i * m + j] = pseudoInverse.getEntry(i, j);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface PathResultConsumer {
+		void accept(int pathIndex, double[] inverseOnPath);
+	}
+
+	/**
+	 * Per-thread scratch arrays, grown on demand.
+	 */
+	private static final class Workspace {
+		private double[] gram = new double[0];
+		private double[] rhs = new double[0];
+		private double[] inverse = new double[0];
+		private double[] product = new double[0];
+
+		private void ensureCapacity(int m, int n) {
+			int k = Math.min(m, n);
+			if (gram.length < k * k) {
+				gram = new double[k * k];
+			}
+			if (rhs.length < Math.max(m, n)) {
+				rhs = new double[Math.max(m, n)];
+			}
+			if (inverse.length != m * n) {
+				inverse = new double[m * n];
+			}
+			if (product.length < m * m) {
+				product = new double[m * m];
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package net.finmath.sensitivities.transformation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of the calculation of a path-wise pseudo-inverse in {@link TransformationAlgorithms}.
+ */
+@Name("net.finmath.sensitivities.PseudoInverse")
+@Label("Pseudo-Inverse")
+@Description("Path-wise pseudo-inverse of a random matrix")
+@Category({"finmath", "Sensitivities"})
+@StackTrace(false)
+final class PseudoInverseEvent extends jdk.jfr.Event {
+
+	@Label("Algorithm")
+	String algorithm;
+
+	@Label("Rows")
+	int rowCount;
+
+	@Label("Columns")
+	int columnCount;
+
+	@Label("Number of Paths")
+	int numberOfPaths;
+
+	@Label("Evaluation Time")
+	double evaluationTime;
+}
@@ -27,9 +27,20 @@ public class SvdTransformation<C> implements Transformation {
 	 * @param targetQuantities A set of target quantities in the form of {@link TargetQuantity}s.
 	 */
 	public SvdTransformation(Set<AadCoordinate> modelQuantities, List<TargetQuantity<C>> targetQuantities) {
+		this(modelQuantities, targetQuantities, TransformationAlgorithms::getPseudoInverseBatched);
+	}
+
+	/**
+	 * Creates a new SIMM transformation with the given model and market quantities, using the specified pseudo-inversion algorithm.
+	 *
+	 * @param modelQuantities  A set of model quantities, differentiable via {@link RandomVariableDifferentiable}.
+	 * @param targetQuantities A set of target quantities in the form of {@link TargetQuantity}s.
+	 * @param pseudoInverter   The algorithm calculating the pseudo-inverse of the random Jacobian, e.g. {@link TransformationAlgorithms#getPseudoInverseByParallelAcmSvd(RandomVariable[][])}.
+	 */
+	public SvdTransformation(Set<AadCoordinate> modelQuantities, List<TargetQuantity<C>> targetQuantities, Function<RandomVariable[][], RandomVariable[][]> pseudoInverter) {
 		this.targetQuantities = targetQuantities;
 		this.modelQuantities = modelQuantities;
-		this.pseudoInverter = TransformationAlgorithms::getPseudoInverseByParallelAcmSvd;
+		this.pseudoInverter = pseudoInverter;
 	}
 
 	static RandomVariableDifferentiable getValueAsDifferentiable(MonteCarloProduct product, double time, MonteCarloSimulationModel simulation) {
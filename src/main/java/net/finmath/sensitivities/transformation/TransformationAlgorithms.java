@@ -11,14 +11,47 @@ import net.finmath.stochastic.RandomVariable;
 import net.finmath.stochastic.Scalar;
 
 public final class TransformationAlgorithms {
+	private static final BatchedPseudoInverse batchedPseudoInverse = new BatchedPseudoInverse();
+
 	private TransformationAlgorithms() {}
 
+	/**
+	 * Calculates the pseudo-inverse of a matrix with the {@link BatchedPseudoInverse}, using the Cholesky decomposition
+	 * of the normal equations on well-conditioned paths and Apache Commons Math's SVD on the remaining ones.
+	 * @param matrix A random matrix, represented by a jagged array (row-column) of {@link RandomVariable}s.
+	 * @return The pseudo-inverse, using the same convention as the input matrix.
+	 */
+	public static RandomVariable[][] getPseudoInverseBatched(RandomVariable[][] matrix) {
+		PseudoInverseEvent event = new PseudoInverseEvent();
+		event.begin();
+		RandomVariable[][] pseudoInverse = batchedPseudoInverse.getPseudoInverse(matrix);
+		commitPseudoInverseEvent(event, "BATCHED", matrix, pseudoInverse);
+		return pseudoInverse;
+	}
+
+	/**
+	 * Calculates the pseudo-inverse of a matrix with the {@link BatchedPseudoInverse}.
+	 * @param matrix A random matrix, represented by a jagged array (row-column) of {@link RandomVariable}s.
+	 * @param numberOfPaths The number of paths of the stochastic entries.
+	 * @param filtrationTime The filtration time of the entries of the result.
+	 * @return The pseudo-inverse, using the same convention as the input matrix.
+	 */
+	public static RandomVariable[][] getPseudoInverseBatched(RandomVariable[][] matrix, int numberOfPaths, double filtrationTime) {
+		PseudoInverseEvent event = new PseudoInverseEvent();
+		event.begin();
+		RandomVariable[][] pseudoInverse = batchedPseudoInverse.getPseudoInverse(matrix, numberOfPaths, filtrationTime);
+		commitPseudoInverseEvent(event, "BATCHED", matrix, pseudoInverse);
+		return pseudoInverse;
+	}
+
 	/**
 	 * Calculates the pseudo-inverse of a matrix by calling Apache Commons Math's SVD algorithm parallel on each path.
 	 * @param matrix A random matrix, represented by a jagged array (row-column) of {@link RandomVariable}s.
 	 * @return The pseudo-inverse, using the same convention as the input matrix.
 	 */
 	public static RandomVariable[][] getPseudoInverseByParallelAcmSvd(RandomVariable[][] matrix) {
+		PseudoInverseEvent event = new PseudoInverseEvent();
+		event.begin();
 
 		//Assume that all random variable entries have the same path count and filtration time
 		//This might break if we have deterministic values mixed with sampled ones (or even worse different path counts)
@@ -58,9 +91,32 @@ public final class TransformationAlgorithms {
 			}
 		}
 
+		commitPseudoInverseEvent(event, "ACM_SVD", matrix, pseudoInverse);
 		return pseudoInverse;
 	}
 
+	private static void commitPseudoInverseEvent(PseudoInverseEvent event, String algorithm, RandomVariable[][] matrix, RandomVariable[][] pseudoInverse) {
+		if (event.shouldCommit()) {
+			event.algorithm = algorithm;
+			event.rowCount = matrix.length;
+			event.columnCount = matrix.length > 0 ? matrix[0].length : 0;
+			// Deterministic entries have size 1, the number of paths is the maximum size of the entries
+			int numberOfPaths = 1;
+			double evaluationTime = Double.NaN;
+			for (RandomVariable[] row : pseudoInverse) {
+				for (RandomVariable entry : row) {
+					if (entry != null) {
+						numberOfPaths = Math.max(numberOfPaths, entry.size());
+						evaluationTime = entry.getFiltrationTime();
+					}
+				}
+			}
+			event.numberOfPaths = numberOfPaths;
+			event.evaluationTime = evaluationTime;
+			event.commit();
+		}
+	}
+
 	public static RandomVariable[] multiplyVectorMatrix(RandomVariable[] vector, RandomVariable[][] matrix) {
 		final int columnCount = matrix[0].length;
 		RandomVariable[] product = new RandomVariable[columnCount];
@@ -0,0 +1,645 @@
+package net.finmath.xva.crif;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import net.finmath.sensitivities.GradientProduct;
+import net.finmath.sensitivities.GradientProductConstant;
+import net.finmath.sensitivities.simm2.Qualifier;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.beans.CrifSensitivityBean;
+
+/**
+ * Reads the sensitivities of a CRIF file as a stream and nets them per counterparty and {@link SimmCoordinate}.
+ * For every counterparty one {@link GradientProduct} is emitted, such that the memory used is bounded by the number of
+ * coordinates of the largest netting set instead of the number of rows of the file.
+ * <p>
+ * Two formats are supported: delimited text with a header row (the delimiter is a tab if the header contains one, a comma
+ * otherwise) and JSON lines, i. e. one JSON object per row with the property names of {@link CrifSensitivityBean}.
+ * Rows are parsed without creating beans: only the fields determining the counterparty, the coordinate and the amount are
+ * read (e. g. <tt>TradeID</tt> is ignored), equal field values share one string instance, the coordinate of a row is
+ * created (through {@link CrifSensitivityBean#getSensitivityKey()}) the first time its fields are seen in a netting set,
+ * and equal coordinates and qualifiers are shared across all netting sets.
+ * <p>
+ * The amount of a row is <tt>AmountUSD</tt> if present and <tt>Amount</tt> otherwise. Rows whose risk type does not
+ * map to a SIMM coordinate (e. g. notional or PV rows) or which have no amount are skipped.
+ * <p>
+ * If the input is grouped by counterparty, which is the case for CRIF files generated per netting set, each netting set
+ * is emitted as soon as the next counterparty starts and the pooled field values of the netting set are released.
+ * Otherwise all netting sets are kept until the end of the input.
+ */
+public class CrifStreamReader implements Closeable {
+
+	/**
+	 * The format of the CRIF input.
+	 */
+	public enum Format {
+		/**
+		 * Tab- or comma-separated text with a header row.
+		 */
+		CSV,
+
+		/**
+		 * One JSON object per row.
+		 */
+		JSON_LINES
+	}
+
+	/**
+	 * The counterparty of rows without counterparty.
+	 */
+	public static final String DEFAULT_COUNTERPARTY = "";
+
+	private static final String[] COLUMNS = {"Counterparty", "ProductClass", "RiskType", "Qualifier", "Bucket", "Label1", "Label2", "Amount", "AmountUSD"};
+	private static final int COUNTERPARTY = 0;
+	private static final int PRODUCT_CLASS = 1;
+	private static final int RISK_TYPE = 2;
+	private static final int QUALIFIER = 3;
+	private static final int BUCKET = 4;
+	private static final int LABEL1 = 5;
+	private static final int LABEL2 = 6;
+	private static final int AMOUNT = 7;
+	private static final int AMOUNT_USD = 8;
+
+	/**
+	 * Marks field combinations which do not map to a SIMM coordinate.
+	 */
+	private static final SimmCoordinate UNMAPPED = new SimmCoordinate(null, null, (Qualifier) null, null, null, null, null);
+
+	private static final double[] POWERS_OF_TEN = {1E0, 1E1, 1E2, 1E3, 1E4, 1E5, 1E6, 1E7, 1E8, 1E9, 1E10, 1E11, 1E12, 1E13, 1E14, 1E15, 1E16, 1E17, 1E18, 1E19, 1E20, 1E21, 1E22};
+	private static final int MAXIMUM_EXACT_DIGITS = 15;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader reader;
+	private final Format format;
+	private final boolean isGroupedByCounterparty;
+
+	// The pooled field values and the coordinates of their combinations, released with every completed netting set
+	private final CrifStringPool stringPool = new CrifStringPool();
+	private final Map<CoordinateKey, SimmCoordinate> coordinatesOfFields = new HashMap<>();
+	private final Map<SimmCoordinate, SimmCoordinate> coordinates = new HashMap<>();
+	private final Map<Qualifier, Qualifier> qualifiers = new HashMap<>();
+	private final CoordinateKey coordinateKey = new CoordinateKey();
+
+	// The fields of the current row
+	private final String[] fields = new String[COLUMNS.length];
+	private final double[] amounts = new double[COLUMNS.length];
+
+	// Netting sets
+	private String currentCounterparty;
+	private NettingSet currentNettingSet;
+	private final Set<String> completedCounterparties = new HashSet<>();
+	private final Map<String, NettingSet> nettingSets = new LinkedHashMap<>();
+
+	// Delimited text
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int bufferPosition = 0;
+	private int bufferLimit = 0;
+	private char delimiter;
+	private char[] record = new char[256];
+	private int recordLength;
+	private int[] fieldStarts = new int[COLUMNS.length];
+	private int[] fieldEnds = new int[COLUMNS.length];
+	private int numberOfFields;
+
+	private long numberOfRows = 0;
+	private long numberOfSkippedRows = 0;
+
+	/**
+	 * Create a reader of CRIF input which is grouped by counterparty.
+	 *
+	 * @param reader The CRIF input.
+	 * @param format The format of the input.
+	 */
+	public CrifStreamReader(Reader reader, Format format) {
+		this(reader, format, true);
+	}
+
+	/**
+	 * Create a reader of CRIF input.
+	 *
+	 * @param reader                  The CRIF input.
+	 * @param format                  The format of the input.
+	 * @param isGroupedByCounterparty If true, the rows of each counterparty are expected to be contiguous and each netting set is emitted as soon as it is complete.
+	 */
+	public CrifStreamReader(Reader reader, Format format, boolean isGroupedByCounterparty) {
+		this.reader = Objects.requireNonNull(reader);
+		this.format = Objects.requireNonNull(format);
+		this.isGroupedByCounterparty = isGroupedByCounterparty;
+	}
+
+	/**
+	 * Create a reader of a CRIF file. Files ending with <tt>.json</tt>, <tt>.jsonl</tt> or <tt>.ndjson</tt> are read as JSON lines,
+	 * all other files as delimited text.
+	 *
+	 * @param path                    The path of the CRIF file (UTF-8).
+	 * @param isGroupedByCounterparty If true, the rows of each counterparty are expected to be contiguous.
+	 * @return The reader.
+	 * @throws IOException Thrown if the file cannot be opened.
+	 */
+	public static CrifStreamReader fromFile(Path path, boolean isGroupedByCounterparty) throws IOException {
+		String fileName = path.getFileName().toString().toLowerCase();
+		Format format = fileName.endsWith(".json") || fileName.endsWith(".jsonl") || fileName.endsWith(".ndjson") ? Format.JSON_LINES : Format.CSV;
+		return new CrifStreamReader(Files.newBufferedReader(path, StandardCharsets.UTF_8), format, isGroupedByCounterparty);
+	}
+
+	/**
+	 * Reads the whole input and passes the netted sensitivities of each counterparty to the consumer.
+	 *
+	 * @param consumer Accepts the counterparty and the gradient of its netting set.
+	 * @throws IOException Thrown if the input cannot be read or is malformed.
+	 * @throws IllegalArgumentException Thrown if a row cannot be mapped to a coordinate or if the input is not grouped by counterparty although expected to be.
+	 */
+	public void forEachNettingSet(BiConsumer<String, GradientProduct<SimmCoordinate>> consumer) throws IOException {
+		switch (format) {
+		case CSV:
+			readDelimitedText(consumer);
+			break;
+		case JSON_LINES:
+			readJsonLines(consumer);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+
+		if (currentNettingSet != null) {
+			completeNettingSet(consumer);
+		}
+		for (Map.Entry<String, NettingSet> nettingSet : nettingSets.entrySet()) {
+			consumer.accept(nettingSet.getKey(), nettingSet.getValue().getGradientProduct());
+		}
+		nettingSets.clear();
+	}
+
+	/**
+	 * @return The number of rows read so far.
+	 */
+	public long getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	/**
+	 * @return The number of rows skipped so far, since they do not map to a SIMM coordinate or have no amount.
+	 */
+	public long getNumberOfSkippedRows() {
+		return numberOfSkippedRows;
+	}
+
+	/**
+	 * @return The number of distinct coordinates read so far.
+	 */
+	public int getNumberOfCoordinates() {
+		return coordinates.size();
+	}
+
+	/**
+	 * @return The number of distinct field values currently pooled.
+	 */
+	int getNumberOfPooledStrings() {
+		return stringPool.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void readJsonLines(BiConsumer<String, GradientProduct<SimmCoordinate>> consumer) throws IOException {
+		JsonReader jsonReader = new JsonReader(reader);
+		// Lenient parsing accepts multiple top-level values
+		jsonReader.setLenient(true);
+
+		while (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+			clearFields();
+			jsonReader.beginObject();
+			while (jsonReader.hasNext()) {
+				int column = getColumn(jsonReader.nextName());
+				if (column < 0 || jsonReader.peek() == JsonToken.NULL) {
+					jsonReader.skipValue();
+				} else if (column == AMOUNT || column == AMOUNT_USD) {
+					amounts[column] = jsonReader.nextDouble();
+				} else {
+					String value = jsonReader.nextString();
+					fields[column] = value.isEmpty() ? null : stringPool.intern(value);
+				}
+			}
+			jsonReader.endObject();
+			acceptRow(consumer);
+		}
+	}
+
+	private void readDelimitedText(BiConsumer<String, GradientProduct<SimmCoordinate>> consumer) throws IOException {
+		fillBuffer();
+		delimiter = detectDelimiter();
+
+		if (!readRecord()) {
+			return;
+		}
+		int[] columnOfField = new int[numberOfFields];
+		for (int field = 0; field < numberOfFields; field++) {
+			String name = new String(record, fieldStarts[field], fieldEnds[field] - fieldStarts[field]).replace("\uFEFF", "").trim();
+			columnOfField[field] = getColumn(name);
+		}
+
+		while (readRecord()) {
+			clearFields();
+			for (int field = 0; field < Math.min(numberOfFields, columnOfField.length); field++) {
+				int column = columnOfField[field];
+				if (column < 0) {
+					continue;
+				}
+
+				int start = fieldStarts[field];
+				int end = fieldEnds[field];
+				while (start < end && Character.isWhitespace(record[start])) {
+					start++;
+				}
+				while (end > start && Character.isWhitespace(record[end - 1])) {
+					end--;
+				}
+				if (start == end) {
+					continue;
+				}
+
+				if (column == AMOUNT || column == AMOUNT_USD) {
+					amounts[column] = parseDouble(record, start, end);
+				} else {
+					fields[column] = stringPool.intern(record, start, end - start);
+				}
+			}
+			acceptRow(consumer);
+		}
+	}
+
+	private void acceptRow(BiConsumer<String, GradientProduct<SimmCoordinate>> consumer) {
+		numberOfRows++;
+
+		double amount = Double.isNaN(amounts[AMOUNT_USD]) ? amounts[AMOUNT] : amounts[AMOUNT_USD];
+		SimmCoordinate coordinate = getCoordinate();
+		if (coordinate == UNMAPPED || Double.isNaN(amount)) {
+			numberOfSkippedRows++;
+			return;
+		}
+
+		String counterparty = fields[COUNTERPARTY] != null ? fields[COUNTERPARTY] : DEFAULT_COUNTERPARTY;
+		getNettingSet(counterparty, consumer).add(coordinate, amount);
+	}
+
+	private NettingSet getNettingSet(String counterparty, BiConsumer<String, GradientProduct<SimmCoordinate>> consumer) {
+		if (!isGroupedByCounterparty) {
+			return nettingSets.computeIfAbsent(counterparty, key -> new NettingSet());
+		}
+
+		// Counterparties are pooled strings, hence they can be compared by identity
+		if (counterparty != currentCounterparty) {
+			if (currentNettingSet != null) {
+				completeNettingSet(consumer);
+			}
+			if (completedCounterparties.contains(counterparty)) {
+				throw new IllegalArgumentException("The rows of counterparty " + counterparty + " are not contiguous (row " + numberOfRows + "). Read the CRIF with isGroupedByCounterparty = false.");
+			}
+			if (currentCounterparty != null) {
+				releaseFields();
+			}
+			currentCounterparty = fields[COUNTERPARTY] != null ? fields[COUNTERPARTY] : DEFAULT_COUNTERPARTY;
+			currentNettingSet = new NettingSet();
+		}
+		return currentNettingSet;
+	}
+
+	private void completeNettingSet(BiConsumer<String, GradientProduct<SimmCoordinate>> consumer) {
+		GradientProduct<SimmCoordinate> gradientProduct = currentNettingSet.getGradientProduct();
+		completedCounterparties.add(currentCounterparty);
+		currentNettingSet = null;
+		consumer.accept(currentCounterparty, gradientProduct);
+	}
+
+	/**
+	 * Releases the field values pooled for the completed netting set. The fields of the current row, which starts the next
+	 * netting set, are pooled again, such that the following rows of its counterparty share their instances.
+	 */
+	private void releaseFields() {
+		stringPool.clear();
+		coordinatesOfFields.clear();
+		for (int column = 0; column < fields.length; column++) {
+			fields[column] = stringPool.intern(fields[column]);
+		}
+	}
+
+	private SimmCoordinate getCoordinate() {
+		coordinateKey.set(fields);
+		SimmCoordinate coordinate = coordinatesOfFields.get(coordinateKey);
+		if (coordinate == null) {
+			coordinate = createCoordinate();
+			coordinatesOfFields.put(new CoordinateKey().set(fields), coordinate);
+		}
+		return coordinate;
+	}
+
+	private SimmCoordinate createCoordinate() {
+		if (fields[RISK_TYPE] == null || fields[PRODUCT_CLASS] == null) {
+			return UNMAPPED;
+		}
+
+		SimmCoordinate coordinate;
+		try {
+			coordinate = new CrifSensitivityBean(null, null, fields[PRODUCT_CLASS], fields[RISK_TYPE], fields[QUALIFIER], fields[BUCKET], fields[LABEL1], fields[LABEL2], null, null, null).getSensitivityKey();
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new IllegalArgumentException("Row " + numberOfRows + " with risk type " + fields[RISK_TYPE] + " and qualifier " + fields[QUALIFIER] + " cannot be mapped to a SIMM coordinate.", e);
+		}
+		if (coordinate == null) {
+			return UNMAPPED;
+		}
+
+		Qualifier qualifier = qualifiers.computeIfAbsent(coordinate.getQualifier(), key -> key);
+		if (qualifier != coordinate.getQualifier()) {
+			coordinate = coordinate.withQualifier(qualifier);
+		}
+		return coordinates.computeIfAbsent(coordinate, key -> key);
+	}
+
+	private void clearFields() {
+		Arrays.fill(fields, null);
+		Arrays.fill(amounts, Double.NaN);
+	}
+
+	private static int getColumn(String name) {
+		for (int column = 0; column < COLUMNS.length; column++) {
+			if (COLUMNS[column].equalsIgnoreCase(name)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Delimited text
+	 */
+
+	private void fillBuffer() throws IOException {
+		int numberOfCharsRead = reader.read(buffer, 0, buffer.length);
+		bufferPosition = 0;
+		bufferLimit = Math.max(numberOfCharsRead, 0);
+	}
+
+	private int read() throws IOException {
+		if (bufferPosition == bufferLimit) {
+			fillBuffer();
+			if (bufferLimit == 0) {
+				return -1;
+			}
+		}
+		return buffer[bufferPosition++];
+	}
+
+	/**
+	 * The delimiter is a tab if the first line (in the buffer) contains one, a comma otherwise.
+	 */
+	private char detectDelimiter() {
+		for (int i = bufferPosition; i < bufferLimit && buffer[i] != '\n'; i++) {
+			if (buffer[i] == '\t') {
+				return '\t';
+			}
+		}
+		return ',';
+	}
+
+	/**
+	 * Reads the next non-empty record into <code>record</code>, removing the quotes of quoted fields.
+	 *
+	 * @return False if the end of the input is reached.
+	 */
+	private boolean readRecord() throws IOException {
+		recordLength = 0;
+		numberOfFields = 0;
+
+		int c = read();
+		while (c == '\r' || c == '\n') {
+			c = read();
+		}
+		if (c == -1) {
+			return false;
+		}
+
+		int fieldStart = 0;
+		boolean isQuoted = false;
+		while (true) {
+			if (isQuoted) {
+				if (c == -1) {
+					throw new IOException("Unterminated quoted field in CRIF row " + (numberOfRows + 1) + ".");
+				}
+				if (c == '"') {
+					c = read();
+					if (c == '"') {
+						// Escaped quote
+						append('"');
+						c = read();
+					} else {
+						isQuoted = false;
+					}
+				} else {
+					append((char) c);
+					c = read();
+				}
+			} else if (c == '"') {
+				isQuoted = true;
+				c = read();
+			} else if (c == delimiter || c == '\n' || c == '\r' || c == -1) {
+				addField(fieldStart, recordLength);
+				fieldStart = recordLength;
+				if (c != delimiter) {
+					return true;
+				}
+				c = read();
+			} else {
+				append((char) c);
+				c = read();
+			}
+		}
+	}
+
+	private void append(char c) {
+		if (recordLength == record.length) {
+			record = Arrays.copyOf(record, 2 * record.length);
+		}
+		record[recordLength++] = c;
+	}
+
+	private void addField(int start, int end) {
+		if (numberOfFields == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, 2 * fieldStarts.length);
+			fieldEnds = Arrays.copyOf(fieldEnds, 2 * fieldEnds.length);
+		}
+		fieldStarts[numberOfFields] = start;
+		fieldEnds[numberOfFields] = end;
+		numberOfFields++;
+	}
+
+	/**
+	 * Parses a decimal number without creating a string. Numbers with at most 15 significant digits and a decimal exponent
+	 * of at most 22 are exact integers multiplied or divided by an exact power of ten, hence a single (correctly rounded)
+	 * floating point operation gives the same result as {@link Double#parseDouble(String)}. All other numbers are passed
+	 * to {@link Double#parseDouble(String)}.
+	 *
+	 * @param chars The character buffer.
+	 * @param start The index of the first character.
+	 * @param end   The index after the last character.
+	 * @return The number.
+	 */
+	static double parseDouble(char[] chars, int start, int end) {
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			isNegative = chars[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int numberOfSignificantDigits = 0;
+		int numberOfDigits = 0;
+		int exponent = 0;
+		boolean isFraction = false;
+		for (; i < end; i++) {
+			char c = chars[i];
+			if (c >= '0' && c <= '9') {
+				numberOfDigits++;
+				if (mantissa != 0 || c != '0') {
+					numberOfSignificantDigits++;
+				}
+				mantissa = 10 * mantissa + (c - '0');
+				if (isFraction) {
+					exponent--;
+				}
+			} else if (c == '.' && !isFraction) {
+				isFraction = true;
+			} else {
+				break;
+			}
+		}
+
+		if (i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+			i++;
+			boolean isNegativeExponent = false;
+			if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+				isNegativeExponent = chars[i] == '-';
+				i++;
+			}
+			int exponentOfPowerOfTen = 0;
+			int numberOfExponentDigits = 0;
+			for (; i < end && chars[i] >= '0' && chars[i] <= '9' && numberOfExponentDigits < 4; i++, numberOfExponentDigits++) {
+				exponentOfPowerOfTen = 10 * exponentOfPowerOfTen + (chars[i] - '0');
+			}
+			if (numberOfExponentDigits == 0) {
+				i = -1;
+			}
+			exponent += isNegativeExponent ? -exponentOfPowerOfTen : exponentOfPowerOfTen;
+		}
+
+		if (i != end || numberOfDigits == 0 || numberOfSignificantDigits > MAXIMUM_EXACT_DIGITS || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(new String(chars, start, end - start));
+		}
+
+		double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+		return isNegative ? -value : value;
+	}
+
+	/**
+	 * The sums of the amounts per coordinate of one counterparty. Coordinates are shared instances, hence compared by identity.
+	 */
+	private static final class NettingSet {
+		private final Map<SimmCoordinate, double[]> sums = new IdentityHashMap<>();
+
+		private void add(SimmCoordinate coordinate, double amount) {
+			double[] sum = sums.get(coordinate);
+			if (sum == null) {
+				sums.put(coordinate, new double[]{amount});
+			} else {
+				sum[0] += amount;
+			}
+		}
+
+		private GradientProduct<SimmCoordinate> getGradientProduct() {
+			Map<SimmCoordinate, RandomVariable> gradient = new HashMap<>(2 * sums.size());
+			for (Map.Entry<SimmCoordinate, double[]> sum : sums.entrySet()) {
+				gradient.put(sum.getKey(), new Scalar(sum.getValue()[0]));
+			}
+			return GradientProductConstant.fromRandom(gradient);
+		}
+	}
+
+	/**
+	 * The fields of a row determining its coordinate. The fields are pooled strings, hence compared by identity.
+	 */
+	private static final class CoordinateKey {
+		private String productClass;
+		private String riskType;
+		private String qualifier;
+		private String bucket;
+		private String label1;
+		private String label2;
+		private int hash;
+
+		private CoordinateKey set(String[] fields) {
+			productClass = fields[PRODUCT_CLASS];
+			riskType = fields[RISK_TYPE];
+			qualifier = fields[QUALIFIER];
+			bucket = fields[BUCKET];
+			label1 = fields[LABEL1];
+			label2 = fields[LABEL2];
+
+			int h = hashCode(productClass);
+			h = 31 * h + hashCode(riskType);
+			h = 31 * h + hashCode(qualifier);
+			h = 31 * h + hashCode(bucket);
+			h = 31 * h + hashCode(label1);
+			h = 31 * h + hashCode(label2);
+			hash = h;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof CoordinateKey)) {
+				return false;
+			}
+			CoordinateKey that = (CoordinateKey) o;
+			return productClass == that.productClass
+					&& riskType == that.riskType
+					&& qualifier == that.qualifier
+					&& bucket == that.bucket
+					&& label1 == that.label1
+					&& label2 == that.label2;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		private static int hashCode(String string) {
+			return string == null ? 0 : string.hashCode();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package net.finmath.xva.crif;
+
+/**
+ * An open addressing pool of strings, such that equal CRIF fields share one <code>String</code> instance.
+ * Fields may be looked up directly from a character buffer, in which case a new string is only allocated
+ * the first time a field value is seen.
+ */
+class CrifStringPool {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private String[] table = new String[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * Returns the pooled string with the characters <code>chars[offset], ..., chars[offset + length - 1]</code>.
+	 *
+	 * @param chars  The character buffer.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return The pooled string.
+	 */
+	String intern(char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+
+		int mask = table.length - 1;
+		int index = spread(hash) & mask;
+		String candidate;
+		while ((candidate = table[index]) != null) {
+			if (candidate.hashCode() == hash && contentEquals(candidate, chars, offset, length)) {
+				return candidate;
+			}
+			index = (index + 1) & mask;
+		}
+
+		String string = new String(chars, offset, length);
+		insert(index, string);
+		return string;
+	}
+
+	/**
+	 * Returns the pooled string equal to the given one.
+	 *
+	 * @param string The string.
+	 * @return The pooled string, <code>null</code> if <code>string</code> is <code>null</code>.
+	 */
+	String intern(String string) {
+		if (string == null) {
+			return null;
+		}
+
+		int hash = string.hashCode();
+		int mask = table.length - 1;
+		int index = spread(hash) & mask;
+		String candidate;
+		while ((candidate = table[index]) != null) {
+			if (candidate.hashCode() == hash && candidate.equals(string)) {
+				return candidate;
+			}
+			index = (index + 1) & mask;
+		}
+
+		insert(index, string);
+		return string;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all strings from the pool and shrinks it to its initial capacity.
+	 */
+	void clear() {
+		table = new String[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	private void insert(int index, String string) {
+		table[index] = string;
+		size++;
+		if (2 * size > table.length) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		String[] oldTable = table;
+		table = new String[2 * oldTable.length];
+		int mask = table.length - 1;
+		for (String string : oldTable) {
+			if (string != null) {
+				int index = spread(string.hashCode()) & mask;
+				while (table[index] != null) {
+					index = (index + 1) & mask;
+				}
+				table[index] = string;
+			}
+		}
+	}
+
+	private static boolean contentEquals(String string, char[] chars, int offset, int length) {
+		if (string.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (string.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,146 @@
+package net.finmath.xva.initialmargin.simm2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.sensitivities.GradientProduct;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.calculation.SimmScheme;
+
+/**
+ * Calculates the SIMM of many netting sets on a work-stealing (fork-join) pool.
+ * <p>
+ * The gradients of all netting sets are calculated first. The aggregations are then submitted in the order of decreasing
+ * number of sensitivities, such that the largest netting sets are started first and the small ones fill the remaining gaps.
+ * All netting sets share the {@link SimmScheme} of the modality, hence its (immutable) parameter set and the parameter sets it compiled.
+ */
+public class SimmBatchEngine {
+	private final SimmModality modality;
+	private final SimmScheme scheme;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Create a batch engine running on the common fork-join pool.
+	 *
+	 * @param modality The modality, providing the parameter set and the posting threshold.
+	 */
+	public SimmBatchEngine(SimmModality modality) {
+		this(modality, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a batch engine.
+	 *
+	 * @param modality The modality, providing the parameter set and the posting threshold.
+	 * @param pool The pool running the calculations.
+	 */
+	public SimmBatchEngine(SimmModality modality, ForkJoinPool pool) {
+		this.modality = modality;
+		this.scheme = modality.getScheme();
+		this.pool = pool;
+	}
+
+	/**
+	 * Calculates the SIMM of netting sets with constant gradients (e. g. read from a CRIF).
+	 *
+	 * @param nettingSets The gradients of the netting sets per counterparty.
+	 * @return The margins per counterparty, product class and risk class.
+	 * @throws CalculationException Thrown if the calculation of a netting set fails.
+	 */
+	public SimmBatchResult getMargins(Map<String, GradientProduct<SimmCoordinate>> nettingSets) throws CalculationException {
+		return getMargins(nettingSets, 0.0, null);
+	}
+
+	/**
+	 * Calculates the SIMM of netting sets.
+	 *
+	 * @param nettingSets The gradients of the netting sets per counterparty.
+	 * @param evaluationTime The time at which the gradients are evaluated.
+	 * @param model The model used to calculate the gradients (may be null for constant gradients).
+	 * @return The margins per counterparty, product class and risk class.
+	 * @throws CalculationException Thrown if the calculation of a netting set fails.
+	 */
+	public SimmBatchResult getMargins(Map<String, GradientProduct<SimmCoordinate>> nettingSets, double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+		final String[] counterparties = nettingSets.keySet().toArray(new String[0]);
+		final SimmBatchResult result = new SimmBatchResult(counterparties);
+
+		// Gradients of all netting sets
+		final List<Map<SimmCoordinate, RandomVariable>> gradients = new ArrayList<>(counterparties.length);
+		final long[] gradientTimes = new long[counterparties.length];
+		for (int counterpartyIndex = 0; counterpartyIndex < counterparties.length; counterpartyIndex++) {
+			gradients.add(null);
+		}
+		join(pool.submit(() -> IntStream.range(0, counterparties.length).parallel().forEach(counterpartyIndex -> {
+			final long start = System.nanoTime();
+			gradients.set(counterpartyIndex, nettingSets.get(counterparties[counterpartyIndex]).getGradient(evaluationTime, model));
+			gradientTimes[counterpartyIndex] = System.nanoTime() - start;
+		})));
+
+		// Aggregations, largest netting sets first
+		final int[] counterpartiesBySize = IntStream.range(0, counterparties.length).boxed().
+				sorted(Comparator.comparingInt((Integer counterpartyIndex) -> gradients.get(counterpartyIndex).size()).reversed()).
+				mapToInt(Integer::intValue).toArray();
+
+		final List<ForkJoinTask<?>> aggregations = new ArrayList<>(counterparties.length);
+		for (int counterpartyIndex : counterpartiesBySize) {
+			aggregations.add(pool.submit(() -> {
+				final long start = System.nanoTime();
+				setMargins(result, counterpartyIndex, gradients.get(counterpartyIndex));
+				result.setCalculationTime(counterpartyIndex, gradientTimes[counterpartyIndex] + System.nanoTime() - start);
+			}));
+		}
+		for (ForkJoinTask<?> aggregation : aggregations) {
+			join(aggregation);
+		}
+
+		return result;
+	}
+
+	private void setMargins(SimmBatchResult result, int counterpartyIndex, Map<SimmCoordinate, RandomVariable> gradient) {
+		RandomVariable margin = new Scalar(0.0);
+		for (Map.Entry<ProductClass, Map<RiskClass, RandomVariable>> marginsOfProductClass : scheme.getMarginsByProductClassAndRiskClass(gradient).entrySet()) {
+			final ProductClass productClass = marginsOfProductClass.getKey();
+			for (Map.Entry<RiskClass, RandomVariable> marginOfRiskClass : marginsOfProductClass.getValue().entrySet()) {
+				result.setRiskClassMargin(counterpartyIndex, productClass, marginOfRiskClass.getKey(), marginOfRiskClass.getValue().getAverage());
+			}
+
+			final RandomVariable marginOfProductClass = scheme.getMarginForProductClass(marginsOfProductClass.getValue());
+			result.setProductClassMargin(counterpartyIndex, productClass, marginOfProductClass.getAverage());
+			margin = margin.add(marginOfProductClass);
+		}
+		result.setMargin(counterpartyIndex, margin.getAverage());
+		// The threshold applies per path, as in SimmProduct.getValue
+		result.setInitialMargin(counterpartyIndex, margin.sub(modality.getPostingThreshold()).floor(0.0).getAverage());
+		result.setNumberOfSensitivities(counterpartyIndex, gradient.size());
+	}
+
+	private static void join(ForkJoinTask<?> task) throws CalculationException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CalculationException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CalculationException(e.getCause());
+		}
+	}
+
+	public SimmModality getModality() {
+		return modality;
+	}
+}
@@ -0,0 +1,146 @@
+package net.finmath.xva.initialmargin.simm2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+
+/**
+ * Holds the SIMM of many netting sets in columns of primitive arrays, indexed by counterparty, product class and risk class.
+ * Margins of stochastic gradients are stored as their expectations; margins of constant gradients (e. g. read from a CRIF) are exact.
+ * The initial margin is the expectation of the margin in excess of the posting threshold, the threshold being applied per path.
+ */
+public class SimmBatchResult {
+	private static final int NUMBER_OF_PRODUCT_CLASSES = ProductClass.values().length;
+	private static final int NUMBER_OF_RISK_CLASSES = RiskClass.values().length;
+
+	private final String[] counterparties;
+	private final Map<String, Integer> counterpartyIndices;
+
+	// margins[(counterparty * NUMBER_OF_PRODUCT_CLASSES + productClass) * NUMBER_OF_RISK_CLASSES + riskClass]
+	private final double[] riskClassMargins;
+	// margins[counterparty * NUMBER_OF_PRODUCT_CLASSES + productClass]
+	private final double[] productClassMargins;
+	private final double[] margins;
+	private final double[] initialMargins;
+	private final int[] numberOfSensitivities;
+	private final long[] calculationTimes;
+
+	SimmBatchResult(String[] counterparties) {
+		this.counterparties = counterparties.clone();
+		this.counterpartyIndices = new HashMap<>(2 * counterparties.length);
+		for (int counterpartyIndex = 0; counterpartyIndex < counterparties.length; counterpartyIndex++) {
+			counterpartyIndices.put(counterparties[counterpartyIndex], counterpartyIndex);
+		}
+		this.riskClassMargins = new double[counterparties.length * NUMBER_OF_PRODUCT_CLASSES * NUMBER_OF_RISK_CLASSES];
+		this.productClassMargins = new double[counterparties.length * NUMBER_OF_PRODUCT_CLASSES];
+		this.margins = new double[counterparties.length];
+		this.initialMargins = new double[counterparties.length];
+		this.numberOfSensitivities = new int[counterparties.length];
+		this.calculationTimes = new long[counterparties.length];
+	}
+
+	void setRiskClassMargin(int counterpartyIndex, ProductClass productClass, RiskClass riskClass, double margin) {
+		riskClassMargins[getIndex(counterpartyIndex, productClass, riskClass)] = margin;
+	}
+
+	void setProductClassMargin(int counterpartyIndex, ProductClass productClass, double margin) {
+		productClassMargins[counterpartyIndex * NUMBER_OF_PRODUCT_CLASSES + productClass.ordinal()] = margin;
+	}
+
+	void setMargin(int counterpartyIndex, double margin) {
+		margins[counterpartyIndex] = margin;
+	}
+
+	void setInitialMargin(int counterpartyIndex, double initialMargin) {
+		initialMargins[counterpartyIndex] = initialMargin;
+	}
+
+	void setNumberOfSensitivities(int counterpartyIndex, int numberOfSensitivities) {
+		this.numberOfSensitivities[counterpartyIndex] = numberOfSensitivities;
+	}
+
+	void setCalculationTime(int counterpartyIndex, long nanoseconds) {
+		calculationTimes[counterpartyIndex] = nanoseconds;
+	}
+
+	public int getNumberOfCounterparties() {
+		return counterparties.length;
+	}
+
+	public String getCounterparty(int counterpartyIndex) {
+		return counterparties[counterpartyIndex];
+	}
+
+	/**
+	 * @param counterparty The counterparty.
+	 * @return The index of the counterparty in this result, -1 if the counterparty is unknown.
+	 */
+	public int getCounterpartyIndex(String counterparty) {
+		return counterpartyIndices.getOrDefault(counterparty, -1);
+	}
+
+	/**
+	 * @param counterpartyIndex The index of the counterparty.
+	 * @param productClass The product class.
+	 * @param riskClass The risk class.
+	 * @return The margin of the risk class within the product class, zero if there are no sensitivities to the risk class.
+	 */
+	public double getMargin(int counterpartyIndex, ProductClass productClass, RiskClass riskClass) {
+		return riskClassMargins[getIndex(counterpartyIndex, productClass, riskClass)];
+	}
+
+	/**
+	 * @param counterpartyIndex The index of the counterparty.
+	 * @param productClass The product class.
+	 * @return The margin of the product class.
+	 */
+	public double getMargin(int counterpartyIndex, ProductClass productClass) {
+		return productClassMargins[counterpartyIndex * NUMBER_OF_PRODUCT_CLASSES + productClass.ordinal()];
+	}
+
+	/**
+	 * @param counterpartyIndex The index of the counterparty.
+	 * @return The expected total SIMM of the netting set, i. e. the sum of the margins of the product classes.
+	 */
+	public double getMargin(int counterpartyIndex) {
+		return margins[counterpartyIndex];
+	}
+
+	/**
+	 * @param counterpartyIndex The index of the counterparty.
+	 * @return The expected initial margin to be posted, i. e. the expectation of the total SIMM in excess of the posting threshold.
+	 */
+	public double getInitialMargin(int counterpartyIndex) {
+		return initialMargins[counterpartyIndex];
+	}
+
+	/**
+	 * @param counterpartyIndex The index of the counterparty.
+	 * @return The number of net sensitivities of the netting set.
+	 */
+	public int getNumberOfSensitivities(int counterpartyIndex) {
+		return numberOfSensitivities[counterpartyIndex];
+	}
+
+	/**
+	 * @param counterpartyIndex The index of the counterparty.
+	 * @return The time spent on the netting set (calculation of its gradient and the aggregation) in nanoseconds.
+	 */
+	public long getCalculationTimeNanos(int counterpartyIndex) {
+		return calculationTimes[counterpartyIndex];
+	}
+
+	/**
+	 * @return The time spent on all netting sets in nanoseconds, i. e. the sum over all threads.
+	 */
+	public long getTotalCalculationTimeNanos() {
+		return Arrays.stream(calculationTimes).sum();
+	}
+
+	private static int getIndex(int counterpartyIndex, ProductClass productClass, RiskClass riskClass) {
+		return (counterpartyIndex * NUMBER_OF_PRODUCT_CLASSES + productClass.ordinal()) * NUMBER_OF_RISK_CLASSES + riskClass.ordinal();
+	}
+}
@@ -1,5 +1,6 @@
 package net.finmath.xva.initialmargin.simm2;
 
+import net.finmath.xva.initialmargin.simm2.calculation.SimmScheme;
 import net.finmath.xva.initialmargin.simm2.specs.ParameterSet;
 import net.finmath.xva.initialmargin.simm2.specs.Simm2_0;
 
@@ -9,16 +10,26 @@ import net.finmath.xva.initialmargin.simm2.specs.Simm2_0;
 public class SimmModality {
 	private final String calculationCurrency;
 	private final double postingThreshold;
+	private final SimmScheme scheme;
 
 	public SimmModality(String calculationCurrency, double postingThreshold) {
 		this.calculationCurrency = calculationCurrency;
 		this.postingThreshold = postingThreshold;
+		this.scheme = new SimmScheme(getParams());
 	}
 
 	public ParameterSet getParams() {
 		return new Simm2_0();
 	}
 
+	/**
+	 * @return Returns the calculation scheme of this modality. It is shared by all products and engines using the modality,
+	 * such that the parameter sets it compiles are reused across netting sets and time steps.
+	 */
+	public SimmScheme getScheme() {
+		return scheme;
+	}
+
 	public String getCalculationCurrency() {
 		return calculationCurrency;
 	}
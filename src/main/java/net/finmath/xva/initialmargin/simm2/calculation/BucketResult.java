@@ -43,7 +43,7 @@ public class BucketResult {
 				cap(aggregatedResult).floor(aggregatedResult.mult(-1.0));
 	}
 
-	private RandomVariable getConcentrationRiskFactor() {
+	RandomVariable getConcentrationRiskFactor() {
 		return singleSensitivities.stream().
 				findFirst().map(WeightedSensitivity::getConcentrationRiskFactor).orElse(new Scalar(1.0));
 	}
@@ -0,0 +1,166 @@
+package net.finmath.xva.initialmargin.simm2.calculation;
+
+import java.util.List;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+
+/**
+ * Evaluates the quadratic forms of the SIMM aggregation, i. e. <i>s<sup>T</sup> × ρ × s</i> with the (weighted) sensitivities <i>s</i>, on all paths.
+ * The sensitivities are copied once into a path-major <code>double[][]</code>, then every path is aggregated in a single pass
+ * over primitive arrays. Unlike the cross terms of {@link WeightedSensitivity}, which allocate a new random variable for every
+ * pair of sensitivities, the number of allocations does not grow with the square of the number of sensitivities.
+ */
+public final class SimmAggregationKernel {
+
+	private SimmAggregationKernel() {
+	}
+
+	/**
+	 * Calculates <i>Σ<sub>k,l</sub> ρ<sub>k,l</sub> × s<sub>k</sub> × s<sub>l</sub></i> on all paths.
+	 *
+	 * @param sensitivities The sensitivities <i>s<sub>k</sub></i>.
+	 * @param correlation The correlation matrix <i>ρ</i>, whose rows and columns are in the order of <code>sensitivities</code>.
+	 * @return The quadratic form as a random variable.
+	 */
+	public static RandomVariable getQuadraticForm(List<RandomVariable> sensitivities, double[][] correlation) {
+		final int numberOfPaths = getNumberOfPaths(sensitivities);
+
+		return toRandomVariable(getFiltrationTime(sensitivities), getQuadraticForm(getPathMajorRealizations(sensitivities, numberOfPaths), correlation));
+	}
+
+	/**
+	 * Calculates <i>Σ<sub>k,l</sub> ρ<sub>k,l</sub> × f<sub>k,l</sub> × s<sub>k</sub> × s<sub>l</sub></i> on all paths, where the concentration scaling is
+	 * <i>f<sub>k,l</sub> = min(CR<sub>k</sub>, CR<sub>l</sub>) / max(CR<sub>k</sub>, CR<sub>l</sub>)</i> (cf. ISDA SIMM v2.0, B.8 (c) and (d)).
+	 *
+	 * @param sensitivities The sensitivities <i>s<sub>k</sub></i>.
+	 * @param concentrationRiskFactors The concentration risk factors <i>CR<sub>k</sub></i>.
+	 * @param correlation The correlation matrix <i>ρ</i>, whose rows and columns are in the order of <code>sensitivities</code>.
+	 * @return The quadratic form as a random variable.
+	 */
+	public static RandomVariable getQuadraticForm(List<RandomVariable> sensitivities, List<RandomVariable> concentrationRiskFactors, double[][] correlation) {
+		final int numberOfPaths = Math.max(getNumberOfPaths(sensitivities), getNumberOfPaths(concentrationRiskFactors));
+		final double filtrationTime = Math.max(getFiltrationTime(sensitivities), getFiltrationTime(concentrationRiskFactors));
+
+		return toRandomVariable(filtrationTime, getQuadraticForm(
+				getPathMajorRealizations(sensitivities, numberOfPaths),
+				getPathMajorRealizations(concentrationRiskFactors, numberOfPaths),
+				correlation));
+	}
+
+	/**
+	 * Calculates <i>s<sup>T</sup> × ρ × s</i> for every path.
+	 *
+	 * @param sensitivities The path-major sensitivities <code>sensitivities[path][k]</code>.
+	 * @param correlation The correlation matrix <i>ρ</i>.
+	 * @return The quadratic form for each path.
+	 */
+	public static double[] getQuadraticForm(double[][] sensitivities, double[][] correlation) {
+		final double[][] symmetricCorrelation = getSymmetricUpperTriangle(correlation);
+		final double[] result = new double[sensitivities.length];
+
+		for (int path = 0; path < sensitivities.length; path++) {
+			final double[] s = sensitivities[path];
+			double sum = 0.0;
+			for (int k = 0; k < s.length; k++) {
+				final double[] rho = symmetricCorrelation[k];
+				for (int l = k; l < s.length; l++) {
+					sum += s[k] * s[l] * rho[l];
+				}
+			}
+			result[path] = sum;
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates <i>Σ<sub>k,l</sub> ρ<sub>k,l</sub> × f<sub>k,l</sub> × s<sub>k</sub> × s<sub>l</sub></i> for every path, where
+	 * <i>f<sub>k,l</sub> = min(CR<sub>k</sub>, CR<sub>l</sub>) / max(CR<sub>k</sub>, CR<sub>l</sub>)</i>.
+	 *
+	 * @param sensitivities The path-major sensitivities <code>sensitivities[path][k]</code>.
+	 * @param concentrationRiskFactors The path-major concentration risk factors <code>concentrationRiskFactors[path][k]</code>.
+	 * @param correlation The correlation matrix <i>ρ</i>.
+	 * @return The quadratic form for each path.
+	 */
+	public static double[] getQuadraticForm(double[][] sensitivities, double[][] concentrationRiskFactors, double[][] correlation) {
+		final double[][] symmetricCorrelation = getSymmetricUpperTriangle(correlation);
+		final double[] result = new double[sensitivities.length];
+
+		for (int path = 0; path < sensitivities.length; path++) {
+			final double[] s = sensitivities[path];
+			final double[] cr = concentrationRiskFactors[path];
+			double sum = 0.0;
+			for (int k = 0; k < s.length; k++) {
+				final double[] rho = symmetricCorrelation[k];
+				sum += s[k] * s[k] * (cr[k] / cr[k]) * rho[k];
+				for (int l = k + 1; l < s.length; l++) {
+					sum += s[k] * s[l] * (Math.min(cr[k], cr[l]) / Math.max(cr[k], cr[l])) * rho[l];
+				}
+			}
+			result[path] = sum;
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the realizations of the given random variables into a path-major array. Deterministic random variables are expanded to all paths.
+	 *
+	 * @param randomVariables The random variables.
+	 * @param numberOfPaths The number of paths.
+	 * @return The array <code>realizations[path][k]</code>.
+	 */
+	public static double[][] getPathMajorRealizations(List<RandomVariable> randomVariables, int numberOfPaths) {
+		final double[][] realizations = new double[numberOfPaths][randomVariables.size()];
+
+		for (int k = 0; k < randomVariables.size(); k++) {
+			final RandomVariable randomVariable = randomVariables.get(k);
+			if (randomVariable.isDeterministic()) {
+				final double value = randomVariable.get(0);
+				for (int path = 0; path < numberOfPaths; path++) {
+					realizations[path][k] = value;
+				}
+			} else {
+				final double[] values = randomVariable.getRealizations();
+				for (int path = 0; path < numberOfPaths; path++) {
+					realizations[path][k] = values[path];
+				}
+			}
+		}
+		return realizations;
+	}
+
+	/**
+	 * Returns the number of paths of a list of random variables, i. e. one if all of them are deterministic.
+	 *
+	 * @param randomVariables The random variables.
+	 * @return The number of paths.
+	 */
+	public static int getNumberOfPaths(List<RandomVariable> randomVariables) {
+		return randomVariables.stream().mapToInt(RandomVariable::size).max().orElse(1);
+	}
+
+	private static double getFiltrationTime(List<RandomVariable> randomVariables) {
+		return randomVariables.stream().mapToDouble(RandomVariable::getFiltrationTime).max().orElse(Double.NEGATIVE_INFINITY);
+	}
+
+	private static RandomVariable toRandomVariable(double filtrationTime, double[] values) {
+		return values.length == 1 ? new Scalar(values[0]) : new RandomVariableFromDoubleArray(filtrationTime, values);
+	}
+
+	/**
+	 * Returns the matrix <i>ρ<sub>k,l</sub> + ρ<sub>l,k</sub></i> for <i>k &lt; l</i>, such that each pair is visited once per path.
+	 * The diagonal is kept.
+	 */
+	private static double[][] getSymmetricUpperTriangle(double[][] correlation) {
+		final double[][] symmetricCorrelation = new double[correlation.length][];
+		for (int k = 0; k < correlation.length; k++) {
+			symmetricCorrelation[k] = new double[correlation.length];
+			symmetricCorrelation[k][k] = correlation[k][k];
+			for (int l = k + 1; l < correlation.length; l++) {
+				symmetricCorrelation[k][l] = correlation[k][l] + correlation[l][k];
+			}
+		}
+		return symmetricCorrelation;
+	}
+}
@@ -1,6 +1,8 @@
 package net.finmath.xva.initialmargin.simm2.calculation;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -10,6 +12,7 @@ import net.finmath.sensitivities.simm2.RiskClass;
 import net.finmath.sensitivities.simm2.SimmCoordinate;
 import net.finmath.stochastic.RandomVariable;
 import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.specs.CompiledParameterSet;
 import net.finmath.xva.initialmargin.simm2.specs.ParameterSet;
 
 public abstract class SimmBaseScheme {
@@ -29,6 +32,27 @@ public abstract class SimmBaseScheme {
 		return gradient.entrySet().stream();
 	}
 
+	/**
+	 * Override this method along with {@link SimmBaseScheme#streamGradient(Map)} if the gradient is adjusted.
+	 *
+	 * @param gradient The input gradient from a {@link SimmBaseScheme#getMargin(RiskClass, Map)} call.
+	 * @return Returns a stream of the distinct coordinates of the gradient components used to calculate buckets.
+	 */
+	protected Stream<SimmCoordinate> streamCoordinates(Map<SimmCoordinate, RandomVariable> gradient) {
+		return gradient.keySet().stream();
+	}
+
+	/**
+	 * Compiles the parameter set of this scheme for the coordinates it will aggregate from the given gradient.
+	 *
+	 * @param riskClass The risk class of the gradient.
+	 * @param gradient The input gradient of a subsequent {@link SimmBaseScheme#getMargin(RiskClass, Map)} call.
+	 * @return The compiled parameter set.
+	 */
+	public CompiledParameterSet getCompiledParameterSet(RiskClass riskClass, Map<SimmCoordinate, RandomVariable> gradient) {
+		return new CompiledParameterSet(parameter, riskClass, streamCoordinates(gradient).collect(Collectors.toList()));
+	}
+
 	/**
 	 * Calculates the result of a bucket aggregation, i. e. the figures K including the constituents' weighted sensitivities.
 	 *
@@ -43,6 +67,39 @@ public abstract class SimmBaseScheme {
 	 * @return The delta margin.
 	 */
 	RandomVariable getMargin(Collection<BucketResult> results, RiskClass riskClass) {
+		final List<BucketResult> buckets = new ArrayList<>(results);
+		final double[][] correlation = parameter.getCrossBucketCorrelationMatrix(riskClass,
+				buckets.stream().map(BucketResult::getBucketName).collect(Collectors.toList()));
+
+		//The terms of a bucket with itself are K squared, they are not part of the quadratic form
+		for (int b = 0; b < buckets.size(); b++) {
+			for (int c = 0; c < buckets.size(); c++) {
+				if (buckets.get(b).getBucketName().equalsIgnoreCase(buckets.get(c).getBucketName())) {
+					correlation[b][c] = 0.0;
+				}
+			}
+		}
+
+		final RandomVariable sumOfSquaredK = buckets.stream().
+				map(b -> b.getK().squared()).
+				reduce(new Scalar(0.0), RandomVariable::add);
+
+		return SimmAggregationKernel.getQuadraticForm(
+				buckets.stream().map(BucketResult::getS).collect(Collectors.toList()),
+				buckets.stream().map(BucketResult::getConcentrationRiskFactor).collect(Collectors.toList()),
+				correlation).
+				add(sumOfSquaredK).
+				sqrt();
+	}
+
+	/**
+	 * Calculates the resulting delta margin according to ISDA SIMM v2.0 B.8 (d) by summing up the cross terms of all pairs of buckets.
+	 * This is the reference implementation of {@link SimmBaseScheme#getMargin(Collection, RiskClass)}.
+	 *
+	 * @param results A collection of per-bucket results.
+	 * @return The delta margin.
+	 */
+	RandomVariable getMarginByCrossTerms(Collection<BucketResult> results, RiskClass riskClass) {
 		return results.stream().
 				flatMap(bK1 -> results.stream().
 						map(bK2 -> {
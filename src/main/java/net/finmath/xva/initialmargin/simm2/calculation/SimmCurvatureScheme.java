@@ -2,6 +2,7 @@ package net.finmath.xva.initialmargin.simm2.calculation;
 
 import static net.finmath.functions.NormalDistribution.inverseCumulativeDistribution;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -52,9 +53,13 @@ public class SimmCurvatureScheme extends SimmBaseScheme {
 	public BucketResult getBucketAggregation(String bucketName, Map<SimmCoordinate, RandomVariable> gradient) {
 		final Set<WeightedSensitivity> weightedSensitivities = gradient.entrySet().stream().map(e -> getWeightedSensitivity(e.getKey(), e.getValue())).collect(Collectors.toSet());
 
-		RandomVariable k = gradient.entrySet().stream().map(e -> getWeightedSensitivity(e.getKey(), e.getValue())).
-				flatMap(w -> weightedSensitivities.stream().map(v -> w.getCrossTermWithoutConcentration(v, parameter))).
-				reduce(new Scalar(0.0), RandomVariable::add).sqrt();
+		final List<WeightedSensitivity> orderedSensitivities = new ArrayList<>(weightedSensitivities);
+		final double[][] correlation = parameter.getIntraBucketCorrelationMatrix(
+				orderedSensitivities.stream().map(WeightedSensitivity::getCoordinate).collect(Collectors.toList()));
+
+		RandomVariable k = SimmAggregationKernel.getQuadraticForm(
+				orderedSensitivities.stream().map(WeightedSensitivity::getWeightedSensitivity).collect(Collectors.toList()),
+				correlation).sqrt();
 
 		return new BucketResult(bucketName, weightedSensitivities, k);
 	}
@@ -1,5 +1,7 @@
 package net.finmath.xva.initialmargin.simm2.calculation;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -32,6 +34,35 @@ public class SimmIRScheme extends SimmBaseScheme {
 		RandomVariable concentrationRiskFactor = gradient.values().stream().
 				reduce(new Scalar(0.0), RandomVariable::add).abs().div(threshold).sqrt().cap(1.0);
 
+		List<WeightedSensitivity> weightedSensitivities = gradient.entrySet().stream().
+				map(z-> new WeightedSensitivity(z.getKey(), concentrationRiskFactor, z.getValue().mult(concentrationRiskFactor).mult(parameter.getRiskWeight(z.getKey())))).
+				collect(Collectors.toList());
+
+		final double[][] correlation = parameter.getIntraBucketCorrelationMatrix(
+				weightedSensitivities.stream().map(WeightedSensitivity::getCoordinate).collect(Collectors.toList()));
+
+		RandomVariable k = SimmAggregationKernel.getQuadraticForm(
+				weightedSensitivities.stream().map(WeightedSensitivity::getWeightedSensitivity).collect(Collectors.toList()),
+				correlation).sqrt();
+
+		return new BucketResult(bucketName, new HashSet<>(weightedSensitivities), k);
+	}
+
+	/**
+	 * Calculates the bucket aggregation by summing up the cross terms of all pairs of weighted sensitivities.
+	 * This is the reference implementation of {@link SimmIRScheme#getBucketAggregation(String, Map)}.
+	 *
+	 * @param bucketName A string containing the bucket name (i. e. currency).
+	 * @param gradient The gradient of all sensitivities.
+	 * @return Returns the {@link BucketResult} for this bucket (i. e. currency).
+	 */
+	BucketResult getBucketAggregationByCrossTerms(String bucketName, Map<SimmCoordinate, RandomVariable> gradient) {
+		double threshold = parameter.getConcentrationThreshold(gradient.keySet().stream().
+				findFirst().orElseThrow(() -> new IllegalArgumentException("Gradient is empty")));
+
+		RandomVariable concentrationRiskFactor = gradient.values().stream().
+				reduce(new Scalar(0.0), RandomVariable::add).abs().div(threshold).sqrt().cap(1.0);
+
 		Set<WeightedSensitivity> weightedSensitivities = gradient.entrySet().stream().
 				map(z-> new WeightedSensitivity(z.getKey(), concentrationRiskFactor, z.getValue().mult(concentrationRiskFactor).mult(parameter.getRiskWeight(z.getKey())))).
 				collect(Collectors.toSet());
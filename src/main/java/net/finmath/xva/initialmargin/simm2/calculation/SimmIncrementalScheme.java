@@ -0,0 +1,295 @@
+package net.finmath.xva.initialmargin.simm2.calculation;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.specs.ParameterSet;
+
+/**
+ * Calculates the SIMM of a netting set incrementally, i. e. while the gradients of trades are added to or removed from the netting set,
+ * and answers what-if questions about the margin impact of a trade.
+ * <p>
+ * The net sensitivities and the {@link BucketResult} (i. e. the figures <i>K<sub>b</sub></i> and <i>S<sub>b</sub></i>) of every bucket are kept as state.
+ * The gradient of a trade only re-aggregates the buckets it touches. The cross-bucket aggregation of the touched risk classes and the aggregation
+ * of the touched product classes are then repeated on the stored bucket results, all other margins are reused.
+ * Hence the effort depends on the trade and the buckets it touches, but not on the remaining buckets of the netting set.
+ * <p>
+ * The margins agree with {@link SimmScheme#getMargin(Map)} applied to the net gradient of the netting set. Instances are not thread-safe.
+ */
+public class SimmIncrementalScheme {
+	private final SimmScheme scheme;
+	private final SimmIRScheme irScheme;
+	private final SimmNonIRScheme nonIRScheme;
+	private final SimmCurvatureScheme curvatureScheme;
+
+	private final Map<ProductClass, Map<RiskClass, RiskClassState>> riskClassStates = new EnumMap<>(ProductClass.class);
+	private final Map<ProductClass, RandomVariable> productClassMargins = new EnumMap<>(ProductClass.class);
+
+	public SimmIncrementalScheme(ParameterSet parameter) {
+		this.scheme = new SimmScheme(parameter);
+		this.irScheme = new SimmIRScheme(parameter);
+		this.nonIRScheme = new SimmNonIRScheme(parameter);
+		this.curvatureScheme = new SimmCurvatureScheme(parameter);
+	}
+
+	/**
+	 * Adds the sensitivities of a trade to the netting set.
+	 *
+	 * @param gradient The sensitivities of the trade.
+	 */
+	public void add(Map<SimmCoordinate, RandomVariable> gradient) {
+		apply(getUpdatedRiskClassStates(gradient, 1));
+	}
+
+	/**
+	 * Removes the sensitivities of a trade from the netting set. The gradient has to be one which has been added before.
+	 *
+	 * @param gradient The sensitivities of the trade, as they have been added.
+	 */
+	public void remove(Map<SimmCoordinate, RandomVariable> gradient) {
+		apply(getUpdatedRiskClassStates(gradient, -1));
+	}
+
+	/**
+	 * @return The total SIMM of the netting set.
+	 */
+	public RandomVariable getMargin() {
+		return getMargin(Collections.emptyMap());
+	}
+
+	/**
+	 * Calculates the total SIMM of the netting set if a trade was added. The netting set is not changed.
+	 *
+	 * @param gradient The sensitivities of the trade.
+	 * @return The total SIMM including the trade.
+	 */
+	public RandomVariable getMarginWith(Map<SimmCoordinate, RandomVariable> gradient) {
+		return getMargin(getUpdatedRiskClassStates(gradient, 1));
+	}
+
+	/**
+	 * Calculates the total SIMM of the netting set if a trade was removed. The netting set is not changed.
+	 *
+	 * @param gradient The sensitivities of the trade, as they have been added.
+	 * @return The total SIMM excluding the trade.
+	 */
+	public RandomVariable getMarginWithout(Map<SimmCoordinate, RandomVariable> gradient) {
+		return getMargin(getUpdatedRiskClassStates(gradient, -1));
+	}
+
+	/**
+	 * Calculates the change of the total SIMM if a trade was added. The netting set is not changed.
+	 *
+	 * @param gradient The sensitivities of the trade.
+	 * @return The total SIMM including the trade minus the current total SIMM.
+	 */
+	public RandomVariable getMarginImpact(Map<SimmCoordinate, RandomVariable> gradient) {
+		return getMarginWith(gradient).sub(getMargin());
+	}
+
+	/**
+	 * @return The margins of the risk classes of all product classes present in the netting set.
+	 */
+	public Map<ProductClass, Map<RiskClass, RandomVariable>> getMarginsByProductClassAndRiskClass() {
+		final Map<ProductClass, Map<RiskClass, RandomVariable>> margins = new EnumMap<>(ProductClass.class);
+		riskClassStates.forEach((productClass, states) -> margins.put(productClass, getMarginsByRiskClass(states)));
+		return margins;
+	}
+
+	private Map<ProductClass, Map<RiskClass, RiskClassState>> getUpdatedRiskClassStates(Map<SimmCoordinate, RandomVariable> gradient, int sign) {
+		final Map<ProductClass, Map<RiskClass, Map<String, Map<SimmCoordinate, RandomVariable>>>> gradientByBucket = gradient.entrySet().stream().
+				collect(Collectors.groupingBy(e -> e.getKey().getProductClass(), () -> new EnumMap<>(ProductClass.class),
+						Collectors.groupingBy(e -> e.getKey().getRiskClass(), () -> new EnumMap<>(RiskClass.class),
+								Collectors.groupingBy(e -> e.getKey().getSimmBucket(), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))));
+
+		final Map<ProductClass, Map<RiskClass, RiskClassState>> updatedStates = new EnumMap<>(ProductClass.class);
+		gradientByBucket.forEach((productClass, gradientOfProductClass) -> {
+			final Map<RiskClass, RiskClassState> states = new EnumMap<>(RiskClass.class);
+			states.putAll(riskClassStates.getOrDefault(productClass, Collections.emptyMap()));
+
+			gradientOfProductClass.forEach((riskClass, gradientOfRiskClass) -> {
+				final RiskClassState state = states.getOrDefault(riskClass, new RiskClassState(riskClass, Collections.emptyMap())).getUpdatedState(gradientOfRiskClass, sign);
+				if (state.buckets.isEmpty()) {
+					states.remove(riskClass);
+				} else {
+					states.put(riskClass, state);
+				}
+			});
+			updatedStates.put(productClass, states);
+		});
+		return updatedStates;
+	}
+
+	private void apply(Map<ProductClass, Map<RiskClass, RiskClassState>> updatedStates) {
+		updatedStates.forEach((productClass, states) -> {
+			if (states.isEmpty()) {
+				riskClassStates.remove(productClass);
+				productClassMargins.remove(productClass);
+			} else {
+				riskClassStates.put(productClass, states);
+				productClassMargins.put(productClass, scheme.getMarginForProductClass(getMarginsByRiskClass(states)));
+			}
+		});
+	}
+
+	private RandomVariable getMargin(Map<ProductClass, Map<RiskClass, RiskClassState>> updatedStates) {
+		RandomVariable margin = new Scalar(0.0);
+		for (ProductClass productClass : ProductClass.values()) {
+			if (updatedStates.containsKey(productClass)) {
+				margin = margin.add(scheme.getMarginForProductClass(getMarginsByRiskClass(updatedStates.get(productClass))));
+			} else if (productClassMargins.containsKey(productClass)) {
+				margin = margin.add(productClassMargins.get(productClass));
+			}
+		}
+		return margin;
+	}
+
+	private static Map<RiskClass, RandomVariable> getMarginsByRiskClass(Map<RiskClass, RiskClassState> states) {
+		final Map<RiskClass, RandomVariable> margins = new EnumMap<>(RiskClass.class);
+		states.forEach((riskClass, state) -> margins.put(riskClass, state.margin));
+		return margins;
+	}
+
+	/**
+	 * The buckets of one risk class within a product class together with the margin of the risk class. Updates create a new state
+	 * sharing the untouched buckets, such that what-if calculations leave the current state unchanged.
+	 */
+	private final class RiskClassState {
+		private final RiskClass riskClass;
+		private final Map<String, BucketState> buckets;
+		private final RandomVariable margin;
+
+		RiskClassState(RiskClass riskClass, Map<String, BucketState> buckets) {
+			this.riskClass = riskClass;
+			this.buckets = buckets;
+			this.margin = buckets.isEmpty() ? new Scalar(0.0) : calculateMargin();
+		}
+
+		RiskClassState getUpdatedState(Map<String, Map<SimmCoordinate, RandomVariable>> gradientByBucket, int sign) {
+			final Map<String, BucketState> updatedBuckets = new HashMap<>(buckets);
+			gradientByBucket.forEach((bucketName, gradient) -> {
+				final BucketState bucket = updatedBuckets.getOrDefault(bucketName, new BucketState(riskClass, bucketName, Collections.emptyMap(), Collections.emptyMap())).
+						getUpdatedState(gradient, sign);
+				if (bucket.netSensitivities.isEmpty()) {
+					updatedBuckets.remove(bucketName);
+				} else {
+					updatedBuckets.put(bucketName, bucket);
+				}
+			});
+			return new RiskClassState(riskClass, updatedBuckets);
+		}
+
+		/*
+		 * As in SimmScheme#getMarginForRiskClass the scheme of the risk class is applied once per margin type present.
+		 */
+		private RandomVariable calculateMargin() {
+			final boolean[] isMarginTypePresent = new boolean[MarginType.values().length];
+			for (BucketState bucket : buckets.values()) {
+				for (int marginType = 0; marginType < isMarginTypePresent.length; marginType++) {
+					isMarginTypePresent[marginType] |= bucket.numberOfCoordinatesByMarginType[marginType] > 0;
+				}
+			}
+
+			RandomVariable marginOfScheme = null;
+			RandomVariable margin = new Scalar(0.0);
+			for (MarginType marginType : MarginType.values()) {
+				if (!isMarginTypePresent[marginType.ordinal()]) {
+					continue;
+				}
+
+				if (marginType == MarginType.CURVATURE) {
+					margin = margin.add(curvatureScheme.getMargin(
+							buckets.values().stream().map(BucketState::getCurvatureResult).collect(Collectors.toList()), riskClass));
+				} else {
+					if (marginOfScheme == null) {
+						marginOfScheme = getScheme(riskClass).getMargin(
+								buckets.values().stream().map(BucketState::getResult).collect(Collectors.toList()), riskClass);
+					}
+					margin = margin.add(marginOfScheme);
+				}
+			}
+			return margin;
+		}
+	}
+
+	/**
+	 * The net sensitivities of one bucket. The bucket results are aggregated on first use and then kept.
+	 */
+	private final class BucketState {
+		private final RiskClass riskClass;
+		private final String bucketName;
+		private final Map<SimmCoordinate, RandomVariable> netSensitivities;
+		private final Map<SimmCoordinate, Integer> numberOfTrades;
+		private final int[] numberOfCoordinatesByMarginType = new int[MarginType.values().length];
+
+		private BucketResult result;
+		private BucketResult curvatureResult;
+
+		BucketState(RiskClass riskClass, String bucketName, Map<SimmCoordinate, RandomVariable> netSensitivities, Map<SimmCoordinate, Integer> numberOfTrades) {
+			this.riskClass = riskClass;
+			this.bucketName = bucketName;
+			this.netSensitivities = netSensitivities;
+			this.numberOfTrades = numberOfTrades;
+			for (SimmCoordinate coordinate : netSensitivities.keySet()) {
+				numberOfCoordinatesByMarginType[coordinate.getMarginType().ordinal()]++;
+			}
+		}
+
+		/*
+		 * A coordinate is removed from the bucket when the last trade contributing to it has been removed.
+		 */
+		BucketState getUpdatedState(Map<SimmCoordinate, RandomVariable> gradient, int sign) {
+			final Map<SimmCoordinate, RandomVariable> updatedSensitivities = new HashMap<>(netSensitivities);
+			final Map<SimmCoordinate, Integer> updatedNumberOfTrades = new HashMap<>(numberOfTrades);
+
+			gradient.forEach((coordinate, sensitivity) -> {
+				final int numberOfTradesOfCoordinate = updatedNumberOfTrades.getOrDefault(coordinate, 0) + sign;
+				if (numberOfTradesOfCoordinate < 0) {
+					throw new IllegalArgumentException("No sensitivity to " + coordinate + " has been added.");
+				}
+
+				if (numberOfTradesOfCoordinate == 0) {
+					updatedSensitivities.remove(coordinate);
+					updatedNumberOfTrades.remove(coordinate);
+				} else {
+					updatedSensitivities.merge(coordinate, sign > 0 ? sensitivity : sensitivity.mult(-1.0), RandomVariable::add);
+					updatedNumberOfTrades.put(coordinate, numberOfTradesOfCoordinate);
+				}
+			});
+
+			return new BucketState(riskClass, bucketName, updatedSensitivities, updatedNumberOfTrades);
+		}
+
+		BucketResult getResult() {
+			if (result == null) {
+				result = getBucketAggregation(getScheme(riskClass));
+			}
+			return result;
+		}
+
+		BucketResult getCurvatureResult() {
+			if (curvatureResult == null) {
+				curvatureResult = getBucketAggregation(curvatureScheme);
+			}
+			return curvatureResult;
+		}
+
+		private BucketResult getBucketAggregation(SimmBaseScheme scheme) {
+			return scheme.getBucketAggregation(bucketName, scheme.streamGradient(netSensitivities).
+					collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+		}
+	}
+
+	private SimmBaseScheme getScheme(RiskClass riskClass) {
+		return riskClass == RiskClass.INTEREST_RATE ? irScheme : nonIRScheme;
+	}
+}
@@ -1,5 +1,7 @@
 package net.finmath.xva.initialmargin.simm2.calculation;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -44,6 +46,28 @@ public class SimmNonIRScheme extends SimmBaseScheme {
 	}
 
 	public BucketResult getBucketAggregation(String bucketName, Map<SimmCoordinate, RandomVariable> gradient) {
+		final List<WeightedSensitivity> weightedSensitivities = gradient.entrySet().stream().map(e -> getWeightedSensitivity(e.getKey(), e.getValue())).collect(Collectors.toList());
+
+		final double[][] correlation = parameter.getIntraBucketCorrelationMatrix(
+				weightedSensitivities.stream().map(WeightedSensitivity::getCoordinate).collect(Collectors.toList()));
+
+		RandomVariable k = SimmAggregationKernel.getQuadraticForm(
+				weightedSensitivities.stream().map(WeightedSensitivity::getWeightedSensitivity).collect(Collectors.toList()),
+				weightedSensitivities.stream().map(WeightedSensitivity::getConcentrationRiskFactor).collect(Collectors.toList()),
+				correlation).sqrt();
+
+		return new BucketResult(bucketName, new HashSet<>(weightedSensitivities), k);
+	}
+
+	/**
+	 * Calculates the bucket aggregation by summing up the cross terms of all pairs of weighted sensitivities.
+	 * This is the reference implementation of {@link SimmNonIRScheme#getBucketAggregation(String, Map)}.
+	 *
+	 * @param bucketName The bucket name.
+	 * @param gradient The gradient of all sensitivities of the bucket.
+	 * @return Returns the {@link BucketResult} for this bucket.
+	 */
+	BucketResult getBucketAggregationByCrossTerms(String bucketName, Map<SimmCoordinate, RandomVariable> gradient) {
 		final Set<WeightedSensitivity> weightedSensitivities = gradient.entrySet().stream().map(e -> getWeightedSensitivity(e.getKey(), e.getValue())).collect(Collectors.toSet());
 
 		RandomVariable k = gradient.entrySet().stream().map(e -> getWeightedSensitivity(e.getKey(), e.getValue())).
@@ -70,4 +94,9 @@ public class SimmNonIRScheme extends SimmBaseScheme {
 						group.getValue().stream().map(Pair::getValue).reduce(new Scalar(0.0), RandomVariable::add)
 						));
 	}
+
+	@Override
+	protected Stream<SimmCoordinate> streamCoordinates(Map<SimmCoordinate, RandomVariable> gradient) {
+		return gradient.keySet().stream().map(SimmCoordinate::stripVertex).distinct();
+	}
 }
@@ -0,0 +1,201 @@
+package net.finmath.xva.initialmargin.simm2.calculation;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.specs.CompiledParameterSet;
+import net.finmath.xva.initialmargin.simm2.specs.ParameterSet;
+
+/**
+ * This calculation scheme aggregates a whole gradient to the total SIMM, i. e. the margins of the risk classes (by the IR, non-IR and curvature schemes)
+ * to the margins of the product classes, which are summed up (cf. ISDA SIMM v2.0, B.2 and B.3).
+ * <p>
+ * The schemes of the risk classes run on parameter sets compiled for the coordinates of the gradient. These are cached per risk class and
+ * set of coordinates, such that netting sets and time steps with the same coordinates compile the parameters only once. The cache holds
+ * at most <code>MAXIMUM_NUMBER_OF_COMPILED_SCHEMES</code> entries, the least recently used are evicted first.
+ * The scheme may be shared by calculations of several netting sets running concurrently.
+ */
+public class SimmScheme {
+	public static final int MAXIMUM_NUMBER_OF_COMPILED_SCHEMES = 256;
+
+	private final ParameterSet parameter;
+	private final SimmIRScheme irScheme;
+	private final SimmNonIRScheme nonIRScheme;
+	private final SimmCurvatureScheme curvatureScheme;
+
+	private final Map<CompiledSchemeKey, SimmBaseScheme> compiledSchemes = new LinkedHashMap<CompiledSchemeKey, SimmBaseScheme>(16, 0.75f, true /* access order */) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CompiledSchemeKey, SimmBaseScheme> eldest) {
+			return size() > MAXIMUM_NUMBER_OF_COMPILED_SCHEMES;
+		}
+	};
+
+	public SimmScheme(ParameterSet parameter) {
+		this.parameter = parameter;
+		this.irScheme = new SimmIRScheme(parameter);
+		this.nonIRScheme = new SimmNonIRScheme(parameter);
+		this.curvatureScheme = new SimmCurvatureScheme(parameter);
+	}
+
+	/**
+	 * Calculates the total SIMM of a netting set, i. e. the sum of the margins of all product classes.
+	 *
+	 * @param gradient The net sensitivities of the netting set.
+	 * @return The total SIMM.
+	 */
+	public RandomVariable getMargin(Map<SimmCoordinate, RandomVariable> gradient) {
+		return gradient.entrySet().stream().
+				collect(Collectors.groupingBy(e -> e.getKey().getProductClass())).entrySet().stream().
+				map(group -> getMarginForProductClass(group.getValue())).
+				reduce(new Scalar(0.0), RandomVariable::add);
+	}
+
+	/**
+	 * Calculates the margins of all risk classes of all product classes present in a netting set.
+	 *
+	 * @param gradient The net sensitivities of the netting set.
+	 * @return The margins per product class and risk class.
+	 */
+	public Map<ProductClass, Map<RiskClass, RandomVariable>> getMarginsByProductClassAndRiskClass(Map<SimmCoordinate, RandomVariable> gradient) {
+		final Map<ProductClass, Map<RiskClass, RandomVariable>> margins = new EnumMap<>(ProductClass.class);
+		gradient.entrySet().stream().
+		collect(Collectors.groupingBy(e -> e.getKey().getProductClass())).
+		forEach((productClass, sensitivities) -> margins.put(productClass, getMarginsByRiskClass(sensitivities)));
+		return margins;
+	}
+
+	/**
+	 * Aggregates the margins of the risk classes of one product class with the risk class correlations.
+	 *
+	 * @param marginByRiskClass The margins of the risk classes.
+	 * @return The margin of the product class.
+	 */
+	public RandomVariable getMarginForProductClass(Map<RiskClass, RandomVariable> marginByRiskClass) {
+		return marginByRiskClass.entrySet().stream().
+				flatMap(im1 -> marginByRiskClass.entrySet().stream().
+						map(im2 -> im1.getValue().mult(im2.getValue()).mult(parameter.getRiskClassCorrelation(im1.getKey(), im2.getKey())))
+						).reduce(new Scalar(0.0), RandomVariable::add).sqrt();
+	}
+
+	/**
+	 * Calculates the margin of one risk class, i. e. the sum of its delta, vega and curvature margins.
+	 * The parameter set is compiled for the coordinates of the risk class first (or taken from the cache if the coordinates were seen before),
+	 * such that the bucket aggregations only read primitive arrays.
+	 *
+	 * @param riskClass The risk class.
+	 * @param gradient The net sensitivities of the risk class.
+	 * @return The margin of the risk class.
+	 */
+	public RandomVariable getMarginForRiskClass(RiskClass riskClass, Map<SimmCoordinate, RandomVariable> gradient) {
+		final Map<MarginType, Map<SimmCoordinate, RandomVariable>> gradientsByMarginType = gradient.entrySet().stream().
+				collect(Collectors.groupingBy(e -> e.getKey().getMarginType(), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+
+		return gradientsByMarginType.entrySet().stream().reduce((RandomVariable)new Scalar(0.0),
+				(accum, e) -> {
+					if (e.getKey() == MarginType.CURVATURE) {
+						return accum.add(getCompiledScheme(curvatureScheme, riskClass, gradient, SimmCurvatureScheme::new).getMargin(riskClass, gradient));
+					}
+					if (riskClass == RiskClass.INTEREST_RATE) {
+						return accum.add(getCompiledScheme(irScheme, riskClass, gradient, SimmIRScheme::new).getMargin(riskClass, gradient));
+					}
+
+					return accum.add(getCompiledScheme(nonIRScheme, riskClass, gradient, SimmNonIRScheme::new).getMargin(riskClass, gradient));
+				}, RandomVariable::add);
+	}
+
+	/**
+	 * Returns the scheme running on the parameter set compiled for the coordinates of the gradient, compiling it if it is not in the cache.
+	 * The parameter set is compiled outside of the lock, concurrent requests for new coordinates may hence compile it twice.
+	 */
+	private SimmBaseScheme getCompiledScheme(SimmBaseScheme scheme, RiskClass riskClass, Map<SimmCoordinate, RandomVariable> gradient, Function<CompiledParameterSet, SimmBaseScheme> schemeFactory) {
+		final CompiledSchemeKey key = new CompiledSchemeKey(scheme, riskClass, new HashSet<>(gradient.keySet()));
+
+		synchronized (compiledSchemes) {
+			final SimmBaseScheme compiledScheme = compiledSchemes.get(key);
+			if (compiledScheme != null) {
+				return compiledScheme;
+			}
+		}
+
+		final SimmBaseScheme compiledScheme = schemeFactory.apply(scheme.getCompiledParameterSet(riskClass, gradient));
+		synchronized (compiledSchemes) {
+			compiledSchemes.putIfAbsent(key, compiledScheme);
+		}
+		return compiledScheme;
+	}
+
+	int getNumberOfCompiledSchemes() {
+		synchronized (compiledSchemes) {
+			return compiledSchemes.size();
+		}
+	}
+
+	private RandomVariable getMarginForProductClass(List<Map.Entry<SimmCoordinate, RandomVariable>> sensitivities) {
+		return getMarginForProductClass(getMarginsByRiskClass(sensitivities));
+	}
+
+	private Map<RiskClass, RandomVariable> getMarginsByRiskClass(List<Map.Entry<SimmCoordinate, RandomVariable>> sensitivities) {
+		return sensitivities.stream().
+				collect(Collectors.groupingBy(e -> e.getKey().getRiskClass())).entrySet().stream().
+				map(group -> Pair.of(group.getKey(), getMarginForRiskClass(
+						group.getKey(),
+						group.getValue().stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))
+						))).
+				collect(Collectors.toMap(Pair::getKey, Pair::getValue));
+	}
+
+	public ParameterSet getParameterSet() {
+		return parameter;
+	}
+
+	/**
+	 * Cache key of a compiled scheme: the scheme of the risk class, the risk class and the coordinates of the gradient.
+	 */
+	private static final class CompiledSchemeKey {
+		private final SimmBaseScheme scheme;
+		private final RiskClass riskClass;
+		private final Set<SimmCoordinate> coordinates;
+		private final int hashCode;
+
+		private CompiledSchemeKey(SimmBaseScheme scheme, RiskClass riskClass, Set<SimmCoordinate> coordinates) {
+			this.scheme = scheme;
+			this.riskClass = riskClass;
+			this.coordinates = coordinates;
+			this.hashCode = Objects.hash(System.identityHashCode(scheme), riskClass, coordinates);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			CompiledSchemeKey key = (CompiledSchemeKey) o;
+			return scheme == key.scheme && riskClass == key.riskClass && coordinates.equals(key.coordinates);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package net.finmath.xva.initialmargin.simm2.specs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+
+/**
+ * A parameter set compiled for the coordinates of one risk class of a gradient.
+ * <p>
+ * Upon construction every coordinate is assigned a dense integer index and its risk weight, additional weight and concentration threshold
+ * as well as the intra-bucket correlations of all pairs of coordinates in the same bucket and the cross-bucket correlations are
+ * materialized as primitive arrays. The matrices requested by the aggregation are then gathered from these arrays by index,
+ * i. e. the underlying parameter set (with its string parsing and set lookups) is not called in the pairwise loops.
+ * <p>
+ * Requests for coordinates or buckets which were not compiled are passed to the underlying parameter set.
+ */
+public final class CompiledParameterSet implements ParameterSet {
+	private final ParameterSet parameter;
+	private final RiskClass riskClass;
+
+	private final List<SimmCoordinate> coordinates;
+	private final Map<SimmCoordinate, Integer> indices;
+	private final double[] riskWeights;
+	private final double[] additionalWeights;
+	private final double[] concentrationThresholds;
+
+	// The coordinate k is at position positionsInBucket[k] of the bucket buckets[k]
+	private final int[] buckets;
+	private final int[] positionsInBucket;
+	private final double[][][] intraBucketCorrelations;
+
+	private final Map<String, Integer> bucketIndices;
+	private final double[][] crossBucketCorrelations;
+
+	/**
+	 * Compiles a parameter set for the given coordinates.
+	 *
+	 * @param parameter The underlying parameter set.
+	 * @param riskClass The risk class of the coordinates.
+	 * @param coordinates The coordinates of the sensitivities to be aggregated, duplicates are ignored.
+	 */
+	public CompiledParameterSet(ParameterSet parameter, RiskClass riskClass, Collection<SimmCoordinate> coordinates) {
+		this.parameter = parameter;
+		this.riskClass = riskClass;
+
+		this.indices = new HashMap<>(2 * coordinates.size());
+		this.coordinates = new ArrayList<>(coordinates.size());
+		for (SimmCoordinate coordinate : coordinates) {
+			if (indices.putIfAbsent(coordinate, this.coordinates.size()) == null) {
+				this.coordinates.add(coordinate);
+			}
+		}
+
+		final int numberOfCoordinates = this.coordinates.size();
+		this.riskWeights = new double[numberOfCoordinates];
+		this.additionalWeights = new double[numberOfCoordinates];
+		this.concentrationThresholds = new double[numberOfCoordinates];
+		this.buckets = new int[numberOfCoordinates];
+		this.positionsInBucket = new int[numberOfCoordinates];
+		this.bucketIndices = new HashMap<>();
+
+		final List<String> bucketNames = new ArrayList<>();
+		final List<List<SimmCoordinate>> coordinatesByBucket = new ArrayList<>();
+		for (int k = 0; k < numberOfCoordinates; k++) {
+			final SimmCoordinate coordinate = this.coordinates.get(k);
+			final MarginType marginType = coordinate.getMarginType();
+
+			//Parameters which are not defined for a margin type are left to the underlying parameter set
+			riskWeights[k] = marginType == MarginType.BASE_CORR ? Double.NaN : parameter.getRiskWeight(coordinate);
+			additionalWeights[k] = parameter.getAdditionalWeight(coordinate);
+			concentrationThresholds[k] = marginType == MarginType.DELTA || marginType == MarginType.VEGA ? parameter.getConcentrationThreshold(coordinate) : Double.NaN;
+
+			final int bucket = bucketIndices.computeIfAbsent(coordinate.getSimmBucket(), bucketName -> {
+				bucketNames.add(bucketName);
+				coordinatesByBucket.add(new ArrayList<>());
+				return bucketNames.size() - 1;
+			});
+			buckets[k] = bucket;
+			positionsInBucket[k] = coordinatesByBucket.get(bucket).size();
+			coordinatesByBucket.get(bucket).add(coordinate);
+		}
+
+		this.intraBucketCorrelations = new double[bucketNames.size()][][];
+		for (int bucket = 0; bucket < bucketNames.size(); bucket++) {
+			intraBucketCorrelations[bucket] = parameter.getIntraBucketCorrelationMatrix(coordinatesByBucket.get(bucket));
+		}
+		this.crossBucketCorrelations = parameter.getCrossBucketCorrelationMatrix(riskClass, bucketNames);
+	}
+
+	/**
+	 * @param coordinate The coordinate.
+	 * @return The dense index of the coordinate, -1 if the coordinate has not been compiled.
+	 */
+	public int getIndex(SimmCoordinate coordinate) {
+		final Integer index = indices.get(coordinate);
+		return index != null ? index : -1;
+	}
+
+	public int getNumberOfCoordinates() {
+		return coordinates.size();
+	}
+
+	public SimmCoordinate getCoordinate(int index) {
+		return coordinates.get(index);
+	}
+
+	/**
+	 * @param index The index of a compiled coordinate.
+	 * @return The risk weight of the coordinate.
+	 */
+	public double getRiskWeight(int index) {
+		final double riskWeight = riskWeights[index];
+		return Double.isNaN(riskWeight) ? parameter.getRiskWeight(coordinates.get(index)) : riskWeight;
+	}
+
+	/**
+	 * @param index The index of a compiled coordinate.
+	 * @return The concentration threshold of the coordinate.
+	 */
+	public double getConcentrationThreshold(int index) {
+		final double threshold = concentrationThresholds[index];
+		return Double.isNaN(threshold) ? parameter.getConcentrationThreshold(coordinates.get(index)) : threshold;
+	}
+
+	/**
+	 * @param left The index of a compiled coordinate.
+	 * @param right The index of another compiled coordinate.
+	 * @return The intra-bucket correlation of the coordinates.
+	 */
+	public double getIntraBucketCorrelation(int left, int right) {
+		if (buckets[left] != buckets[right]) {
+			return parameter.getIntraBucketCorrelation(coordinates.get(left), coordinates.get(right));
+		}
+
+		return intraBucketCorrelations[buckets[left]][positionsInBucket[left]][positionsInBucket[right]];
+	}
+
+	@Override
+	public double getCrossBucketCorrelation(RiskClass rc, String left, String right) {
+		final Integer leftBucket = bucketIndices.get(left);
+		final Integer rightBucket = bucketIndices.get(right);
+
+		if (rc != riskClass || leftBucket == null || rightBucket == null || leftBucket.equals(rightBucket)) {
+			return parameter.getCrossBucketCorrelation(rc, left, right);
+		}
+
+		return crossBucketCorrelations[leftBucket][rightBucket];
+	}
+
+	@Override
+	public double[][] getCrossBucketCorrelationMatrix(RiskClass rc, List<String> bucketNames) {
+		if (rc != riskClass) {
+			return parameter.getCrossBucketCorrelationMatrix(rc, bucketNames);
+		}
+
+		final int[] bucketIndicesOfNames = new int[bucketNames.size()];
+		for (int b = 0; b < bucketNames.size(); b++) {
+			final Integer bucket = bucketIndices.get(bucketNames.get(b));
+			if (bucket == null) {
+				return parameter.getCrossBucketCorrelationMatrix(rc, bucketNames);
+			}
+			bucketIndicesOfNames[b] = bucket;
+		}
+
+		final double[][] correlation = new double[bucketNames.size()][bucketNames.size()];
+		for (int b = 0; b < bucketNames.size(); b++) {
+			final double[] compiledCorrelation = crossBucketCorrelations[bucketIndicesOfNames[b]];
+			for (int c = 0; c < bucketNames.size(); c++) {
+				correlation[b][c] = compiledCorrelation[bucketIndicesOfNames[c]];
+			}
+		}
+		return correlation;
+	}
+
+	@Override
+	public double getConcentrationThreshold(SimmCoordinate sensitivity) {
+		final int index = getIndex(sensitivity);
+		return index < 0 ? parameter.getConcentrationThreshold(sensitivity) : getConcentrationThreshold(index);
+	}
+
+	@Override
+	public double getIntraBucketCorrelation(SimmCoordinate left, SimmCoordinate right) {
+		final int leftIndex = getIndex(left);
+		final int rightIndex = getIndex(right);
+		return leftIndex < 0 || rightIndex < 0 ? parameter.getIntraBucketCorrelation(left, right) : getIntraBucketCorrelation(leftIndex, rightIndex);
+	}
+
+	@Override
+	public double[][] getIntraBucketCorrelationMatrix(List<SimmCoordinate> coordinatesOfBucket) {
+		final int[] positions = new int[coordinatesOfBucket.size()];
+		int bucket = -1;
+		for (int k = 0; k < coordinatesOfBucket.size(); k++) {
+			final int index = getIndex(coordinatesOfBucket.get(k));
+			if (index < 0 || (bucket >= 0 && buckets[index] != bucket)) {
+				return parameter.getIntraBucketCorrelationMatrix(coordinatesOfBucket);
+			}
+			bucket = buckets[index];
+			positions[k] = positionsInBucket[index];
+		}
+
+		final double[][] correlation = new double[positions.length][positions.length];
+		for (int k = 0; k < positions.length; k++) {
+			final double[] compiledCorrelation = intraBucketCorrelations[bucket][positions[k]];
+			for (int l = 0; l < positions.length; l++) {
+				correlation[k][l] = compiledCorrelation[positions[l]];
+			}
+		}
+		return correlation;
+	}
+
+	@Override
+	public double getRiskWeight(SimmCoordinate sensitivity) {
+		final int index = getIndex(sensitivity);
+		return index < 0 ? parameter.getRiskWeight(sensitivity) : getRiskWeight(index);
+	}
+
+	@Override
+	public double getAdditionalWeight(SimmCoordinate coordinate) {
+		final int index = getIndex(coordinate);
+		return index < 0 ? parameter.getAdditionalWeight(coordinate) : additionalWeights[index];
+	}
+
+	@Override
+	public double getRiskClassCorrelation(RiskClass left, RiskClass right) {
+		return parameter.getRiskClassCorrelation(left, right);
+	}
+
+	public ParameterSet getParameterSet() {
+		return parameter;
+	}
+
+	public RiskClass getRiskClass() {
+		return riskClass;
+	}
+}
@@ -1,5 +1,7 @@
 package net.finmath.xva.initialmargin.simm2.specs;
 
+import java.util.List;
+
 import net.finmath.sensitivities.simm2.RiskClass;
 import net.finmath.sensitivities.simm2.SimmCoordinate;
 
@@ -16,6 +18,37 @@ public interface ParameterSet {
 	 */
 	double getIntraBucketCorrelation(SimmCoordinate left, SimmCoordinate right);
 
+	/**
+	 * Returns the matrix of the intra-bucket correlations of the given sensitivities.
+	 * @param coordinates The coordinates of the sensitivities of one bucket.
+	 * @return The matrix whose element (k, l) is the correlation between the coordinates k and l.
+	 */
+	default double[][] getIntraBucketCorrelationMatrix(List<SimmCoordinate> coordinates) {
+		final double[][] correlation = new double[coordinates.size()][coordinates.size()];
+		for (int k = 0; k < coordinates.size(); k++) {
+			for (int l = 0; l < coordinates.size(); l++) {
+				correlation[k][l] = getIntraBucketCorrelation(coordinates.get(k), coordinates.get(l));
+			}
+		}
+		return correlation;
+	}
+
+	/**
+	 * Returns the matrix of the cross-bucket correlations of the given buckets.
+	 * @param rc The risk class of the buckets.
+	 * @param buckets The bucket names.
+	 * @return The matrix whose element (b, c) is the correlation between the buckets b and c. The diagonal is one.
+	 */
+	default double[][] getCrossBucketCorrelationMatrix(RiskClass rc, List<String> buckets) {
+		final double[][] correlation = new double[buckets.size()][buckets.size()];
+		for (int b = 0; b < buckets.size(); b++) {
+			for (int c = 0; c < buckets.size(); c++) {
+				correlation[b][c] = b == c ? 1.0 : getCrossBucketCorrelation(rc, buckets.get(b), buckets.get(c));
+			}
+		}
+		return correlation;
+	}
+
 	/**
 	 * Returns the risk weight for a given net sensitivity.
 	 * @param sensitivity The coordinate of the net sensitivity.
@@ -0,0 +1,76 @@
+package net.finmath.initialmargin.isdasimm.aggregationscheme;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+public class VarianceCovarianceAggregationTest {
+
+	@Test
+	public void testParallelAggregationIsDeterministic() {
+		int numberOfBuckets = 150;
+		int numberOfPaths = 500;
+
+		Random random = new Random(3141);
+		RandomVariable[] contributions = new RandomVariable[numberOfBuckets];
+		Double[][] correlation = new Double[numberOfBuckets][numberOfBuckets];
+		for (int i = 0; i < numberOfBuckets; i++) {
+			double[] values = new double[numberOfPaths];
+			for (int path = 0; path < numberOfPaths; path++) {
+				values[path] = 1.0E6 * random.nextGaussian();
+			}
+			// Structural zeros are null
+			contributions[i] = i % 5 == 2 ? null : new RandomVariableFromDoubleArray(0.0, values);
+			for (int j = 0; j < numberOfBuckets; j++) {
+				correlation[i][j] = i == j ? null : 0.27;
+			}
+		}
+
+		RandomVariable expected = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(contributions, correlation);
+		RandomVariable sequential = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(contributions, correlation, null);
+
+		ExecutorService twoThreads = Executors.newFixedThreadPool(2);
+		ExecutorService eightThreads = Executors.newFixedThreadPool(8);
+		try {
+			RandomVariable parallelTwo = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(contributions, correlation, twoThreads);
+			RandomVariable parallelEight = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(contributions, correlation, eightThreads);
+
+			for (int path = 0; path < numberOfPaths; path++) {
+				assertThat(sequential.get(path), closeTo(expected.get(path), 1.0E-10 * expected.get(path)));
+				assertThat(parallelTwo.get(path), is(sequential.get(path)));
+				assertThat(parallelEight.get(path), is(sequential.get(path)));
+			}
+		} finally {
+			twoThreads.shutdown();
+			eightThreads.shutdown();
+		}
+	}
+
+	@Test
+	public void testAggregationWithoutContributions() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (ExecutorService aggregationExecutor : new ExecutorService[]{null, executor}) {
+				RandomVariable empty = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(new RandomVariable[0], new Double[0][0], aggregationExecutor);
+				assertThat(empty.getAverage(), is(0.0));
+
+				// Contributions which are all structural zeros
+				RandomVariable[] contributions = new RandomVariable[3];
+				Double[][] correlation = {{null, 0.27, 0.27}, {0.27, null, 0.27}, {0.27, 0.27, null}};
+				RandomVariable allNull = CalculationSchemeInitialMarginISDA.getVarianceCovarianceAggregation(contributions, correlation, aggregationExecutor);
+				assertThat(allNull.getAverage(), is(0.0));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
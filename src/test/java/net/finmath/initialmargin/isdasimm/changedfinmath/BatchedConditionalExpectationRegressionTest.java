@@ -0,0 +1,117 @@
+package net.finmath.initialmargin.isdasimm.changedfinmath;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.montecarlo.conditionalexpectation.MonteCarloConditionalExpectationRegression;
+import net.finmath.stochastic.RandomVariable;
+
+public class BatchedConditionalExpectationRegressionTest {
+
+	private static final int NUMBER_OF_PATHS = 2000;
+
+	@Test
+	public void testProjectionsMatchPerDependentRegression() {
+		Random random = new Random(3141);
+		double[] x = new double[NUMBER_OF_PATHS];
+		double[] y = new double[NUMBER_OF_PATHS];
+		double[] z = new double[NUMBER_OF_PATHS];
+		for (int path = 0; path < NUMBER_OF_PATHS; path++) {
+			x[path] = 0.01 + 0.005 * random.nextGaussian();
+			y[path] = 1.0 - 20.0 * x[path] + 300.0 * x[path] * x[path] + 0.01 * random.nextGaussian();
+			z[path] = Math.exp(10.0 * x[path]) + 0.1 * random.nextGaussian();
+		}
+
+		// The basis contains a function which is zero on all paths, as the basis of a product exercised on all paths
+		double[] ones = new double[NUMBER_OF_PATHS];
+		Arrays.fill(ones, 1.0);
+		RandomVariable regressor = new RandomVariableFromDoubleArray(1.0, x);
+		RandomVariable[] basisFunctions = new RandomVariable[] {
+				new RandomVariableFromDoubleArray(1.0, ones),
+				regressor,
+				regressor.squared(),
+				new RandomVariableFromDoubleArray(1.0, new double[NUMBER_OF_PATHS])
+		};
+
+		RandomVariable[] dependents = new RandomVariable[] {
+				new RandomVariableFromDoubleArray(2.0, y),
+				new RandomVariableFromDoubleArray(2.0, z),
+				new RandomVariableFromDoubleArray(-2.5) // deterministic
+		};
+
+		BatchedConditionalExpectationRegression batched = new BatchedConditionalExpectationRegression(basisFunctions);
+		MonteCarloConditionalExpectationRegression perDependent = new MonteCarloConditionalExpectationRegression(basisFunctions);
+
+		assertThat(batched.getNumberOfBasisFunctions(), is(3));
+
+		RandomVariable[] conditionalExpectations = batched.getConditionalExpectations(dependents);
+		for (int j = 0; j < dependents.length; j++) {
+			RandomVariable expected = perDependent.getConditionalExpectation(dependents[j]);
+			assertEquals(expected, conditionalExpectations[j]);
+			assertEquals(expected, batched.getConditionalExpectation(dependents[j]));
+		}
+
+		// The constant is in the span of the basis
+		for (int path = 0; path < NUMBER_OF_PATHS; path++) {
+			assertThat(conditionalExpectations[2].get(path), is(closeTo(-2.5, 1E-10)));
+		}
+	}
+
+	@Test
+	public void testDeterministicBasisGivesExpectation() {
+		Random random = new Random(2718);
+		double[] y = new double[NUMBER_OF_PATHS];
+		for (int path = 0; path < NUMBER_OF_PATHS; path++) {
+			y[path] = 1.0 + 0.5 * random.nextGaussian();
+		}
+
+		// At time 0 the short and long LIBOR (and hence all basis functions) are deterministic
+		double libor = 0.02;
+		RandomVariable[] basisFunctions = new RandomVariable[] {
+				new RandomVariableFromDoubleArray(1.0),
+				new RandomVariableFromDoubleArray(0.0, libor),
+				new RandomVariableFromDoubleArray(0.0, libor * libor),
+				new RandomVariableFromDoubleArray(0.0, 0.0)
+		};
+		RandomVariable[] dependents = new RandomVariable[] {
+				new RandomVariableFromDoubleArray(2.0, y),
+				new RandomVariableFromDoubleArray(-2.5) // deterministic
+		};
+
+		BatchedConditionalExpectationRegression batched = new BatchedConditionalExpectationRegression(basisFunctions);
+		MonteCarloConditionalExpectationRegression perDependent = new MonteCarloConditionalExpectationRegression(basisFunctions);
+
+		RandomVariable[] conditionalExpectations = batched.getConditionalExpectations(dependents);
+		for (int j = 0; j < dependents.length; j++) {
+			RandomVariable expected = perDependent.getConditionalExpectation(dependents[j]);
+			assertEquals(expected, conditionalExpectations[j]);
+			for (int path = 0; path < NUMBER_OF_PATHS; path++) {
+				assertThat(conditionalExpectations[j].get(path), is(closeTo(dependents[j].getAverage(), 1E-10)));
+			}
+		}
+	}
+
+	@Test
+	public void testNullDependentIsZero() {
+		RandomVariable[] basisFunctions = new RandomVariable[] { new RandomVariableFromDoubleArray(0.0, new double[] { 1.0, 1.0, 1.0 }) };
+
+		RandomVariable[] conditionalExpectations = new BatchedConditionalExpectationRegression(basisFunctions).getConditionalExpectations(new RandomVariable[] { null });
+
+		assertThat(conditionalExpectations[0].getMin(), is(0.0));
+		assertThat(conditionalExpectations[0].getMax(), is(0.0));
+	}
+
+	private static void assertEquals(RandomVariable expected, RandomVariable actual) {
+		for (int path = 0; path < NUMBER_OF_PATHS; path++) {
+			double expectedValue = expected.get(path);
+			assertThat(actual.get(path), is(closeTo(expectedValue, 1E-8 * Math.max(1.0, Math.abs(expectedValue)))));
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package net.finmath.initialmargin.isdasimm.changedfinmath;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.SIMMTestModels;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+public class RegressionBasisCacheTest {
+
+	private static final String BASIS = "TestBasis";
+
+	private static LIBORModelMonteCarloSimulationModel model;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+	}
+
+	@Test
+	public void testEstimatorsAreIdentifiedByTimeBasisAndIndicatorIdentity() throws CalculationException {
+		RegressionBasisCache cache = RegressionBasisCache.getInstance(model);
+		cache.clear();
+		AtomicInteger numberOfCalculations = new AtomicInteger();
+		RegressionBasisCache.BasisFunctionsProvider basisFunctions = () -> {
+			numberOfCalculations.incrementAndGet();
+			return new RandomVariable[] { new RandomVariableFromDoubleArray(0.0, new double[] { 1.0, 1.0, 1.0 }), new RandomVariableFromDoubleArray(0.0, new double[] { 1.0, 2.0, 3.0 }) };
+		};
+
+		RandomVariable indicator = new RandomVariableFromDoubleArray(0.0, new double[] { 1.0, 0.0, 1.0 });
+		RandomVariable equalIndicator = new RandomVariableFromDoubleArray(0.0, new double[] { 1.0, 0.0, 1.0 });
+
+		BatchedConditionalExpectationRegression estimator = cache.getConditionalExpectationEstimator(1.0, BASIS, null, basisFunctions);
+		BatchedConditionalExpectationRegression estimatorWithIndicator = cache.getConditionalExpectationEstimator(1.0, BASIS, indicator, basisFunctions);
+		assertThat(numberOfCalculations.get(), is(2));
+		assertThat(estimatorWithIndicator, is(not(sameInstance(estimator))));
+
+		// Hits: same time, equal basis specification, same indicator instance
+		assertThat(cache.getConditionalExpectationEstimator(1.0, new String(BASIS), null, basisFunctions), is(sameInstance(estimator)));
+		assertThat(cache.getConditionalExpectationEstimator(1.0, BASIS, indicator, basisFunctions), is(sameInstance(estimatorWithIndicator)));
+		assertThat(numberOfCalculations.get(), is(2));
+
+		// Misses: an equal but different indicator instance, another time, another basis
+		assertThat(cache.getConditionalExpectationEstimator(1.0, BASIS, equalIndicator, basisFunctions), is(not(sameInstance(estimatorWithIndicator))));
+		assertThat(cache.getConditionalExpectationEstimator(1.5, BASIS, null, basisFunctions), is(not(sameInstance(estimator))));
+		assertThat(cache.getConditionalExpectationEstimator(1.0, BASIS + "2", null, basisFunctions), is(not(sameInstance(estimator))));
+		assertThat(numberOfCalculations.get(), is(5));
+		assertThat(cache.size(), is(5));
+
+		assertThat(RegressionBasisCache.getInstance(model), is(sameInstance(cache)));
+	}
+
+	@Test
+	public void testRetainedEstimatorsAreBounded() throws CalculationException {
+		RegressionBasisCache cache = RegressionBasisCache.getInstance(model);
+		cache.clear();
+		RegressionBasisCache.BasisFunctionsProvider basisFunctions = () -> new RandomVariable[] { new RandomVariableFromDoubleArray(0.0, new double[] { 1.0, 2.0, 3.0, 4.0 }) };
+
+		// Each estimator holds one basis function on four paths
+		long sizeOfEstimator = cache.getConditionalExpectationEstimator(0.0, BASIS, null, basisFunctions).getSizeInBytes();
+		assertThat(sizeOfEstimator, is(32L));
+		cache.setMaximumSizeInBytes(2 * sizeOfEstimator);
+
+		BatchedConditionalExpectationRegression estimatorAtOne = cache.getConditionalExpectationEstimator(1.0, BASIS, null, basisFunctions);
+		cache.getConditionalExpectationEstimator(0.0, BASIS, null, basisFunctions); // 0.0 is now more recently used than 1.0
+		cache.getConditionalExpectationEstimator(2.0, BASIS, null, basisFunctions);
+
+		assertThat(cache.size(), is(2));
+		assertThat(cache.getSizeInBytes(), is(2 * sizeOfEstimator));
+		assertThat(cache.getConditionalExpectationEstimator(1.0, BASIS, null, basisFunctions), is(not(sameInstance(estimatorAtOne))));
+
+		cache.setMaximumSizeInBytes(RegressionBasisCache.DEFAULT_MAXIMUM_SIZE_IN_BYTES);
+		cache.clear();
+	}
+}
@@ -0,0 +1,125 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.initialmargin.isdasimm.test.SIMMTest;
+import net.finmath.montecarlo.conditionalexpectation.MonteCarloConditionalExpectationRegression;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Compares the SIMM sensitivities and initial margins of a swap calculated with the shared, batched regression of the
+ * <code>RegressionBasisCache</code> with those calculated by finmath-lib's per-dependent regression on the same basis functions.
+ * At time 0 the basis functions are deterministic, hence both regressions give the expectation.
+ */
+public class SIMMConditionalExpectationTest {
+
+	private static final int NUMBER_OF_PERIODS = 10;
+
+	private static LIBORModelMonteCarloSimulationModel model;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		model = SIMMTestModels.createLIBORMarketModel(200 /* numberOfPaths */);
+	}
+
+	@Test
+	public void testSensitivitiesMatchPerDependentRegression() throws CalculationException {
+		AbstractSIMMProduct batched = createSwap(false);
+		AbstractSIMMProduct perDependent = createSwap(true);
+
+		for (double evaluationTime : new double[]{0.0, 0.5, 1.0, 2.5}) {
+			RandomVariable[] expected = perDependent.getLiborModelSensitivities(evaluationTime, model);
+			RandomVariable[] actual = batched.getLiborModelSensitivities(evaluationTime, model);
+
+			assertThat(actual.length, is(expected.length));
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], actual[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testInitialMarginMatchesPerDependentRegression() throws CalculationException {
+		AbstractSIMMProduct batched = createSwap(false);
+		AbstractSIMMProduct perDependent = createSwap(true);
+
+		for (double evaluationTime : new double[]{0.0, 0.5, 1.0, 2.5}) {
+			for (SensitivityMode sensitivityMode : new SensitivityMode[]{SensitivityMode.EXACT, SensitivityMode.INTERPOLATION}) {
+				RandomVariable expected = perDependent.getInitialMargin(evaluationTime, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true);
+				RandomVariable actual = batched.getInitialMargin(evaluationTime, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true);
+
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testProductsShareEstimator() throws CalculationException {
+		AbstractSIMMProduct swap = SIMMTestModels.createSwap(10);
+		AbstractSIMMProduct longSwap = SIMMTestModels.createSwap(20);
+
+		swap.setConditionalExpectationOperator(1.0, model);
+		longSwap.setConditionalExpectationOperator(1.0, model);
+
+		assertThat(longSwap.getConditionalExpectationEstimator(), is(sameInstance(swap.getConditionalExpectationEstimator())));
+	}
+
+	/**
+	 * Create a payer swap at par. The swap either uses the estimator of the <code>RegressionBasisCache</code> or, as before its
+	 * introduction, a <code>MonteCarloConditionalExpectationRegression</code> projecting every sensitivity separately.
+	 */
+	private static AbstractSIMMProduct createSwap(boolean isPerDependentRegression) {
+		double periodLength = SIMMTestModels.PERIOD_LENGTH;
+		double[] fixingDates = IntStream.range(0, NUMBER_OF_PERIODS).mapToDouble(n -> n * periodLength).toArray();
+		double[] paymentDates = IntStream.range(0, NUMBER_OF_PERIODS).mapToDouble(n -> (n + 1) * periodLength).toArray();
+		double[] swapTenor = IntStream.range(0, NUMBER_OF_PERIODS + 1).mapToDouble(n -> n * periodLength).toArray();
+		double[] swapRates = new double[NUMBER_OF_PERIODS];
+		Arrays.fill(swapRates, SIMMTest.getParSwaprate(SIMMTestModels.createForwardCurve(), SIMMTestModels.createDiscountCurve(), swapTenor));
+
+		if (!isPerDependentRegression) {
+			return new SIMMSimpleSwap(fixingDates, paymentDates, swapRates, true /*isPayFix*/, 100 /*notional*/, new String[]{"OIS", "Libor6m"}, "EUR");
+		}
+
+		return new SIMMSimpleSwap(fixingDates, paymentDates, swapRates, true /*isPayFix*/, 100 /*notional*/, new String[]{"OIS", "Libor6m"}, "EUR") {
+			@Override
+			public void setConditionalExpectationOperator(double evaluationTime, LIBORModelMonteCarloSimulationModel model) throws CalculationException {
+				// The basis functions of AbstractSIMMProduct.getLiborRegressionEstimator: 1, L, L^2 of the short and the long LIBOR
+				RandomVariable[] regressor = new RandomVariable[2];
+				regressor[0] = model.getLIBOR(evaluationTime, evaluationTime, evaluationTime + model.getLiborPeriodDiscretization().getTimeStep(0));
+				regressor[1] = model.getLIBOR(evaluationTime, evaluationTime, model.getLiborPeriodDiscretization().getTime(model.getNumberOfLibors() - 1));
+
+				ArrayList<RandomVariable> basisFunctions = new ArrayList<RandomVariable>();
+				for (RandomVariable libor : regressor) {
+					for (int powerOfRegressionMonomial = 0; powerOfRegressionMonomial <= 2; powerOfRegressionMonomial++) {
+						basisFunctions.add(libor.pow(powerOfRegressionMonomial));
+					}
+				}
+				setConditionalExpectationEstimator(new MonteCarloConditionalExpectationRegression(basisFunctions.toArray(new RandomVariable[0])));
+			}
+		};
+	}
+
+	/*
+	 * Both regressions solve the (ill-conditioned) normal equations by a singular value decomposition, the projections agree up to rounding.
+	 */
+	private static void assertEquals(RandomVariable expected, RandomVariable actual) {
+		for (int path = 0; path < model.getNumberOfPaths(); path++) {
+			double expectedValue = expected.get(path);
+			assertThat(actual.get(path), is(closeTo(expectedValue, 1E-6 * Math.max(1.0, Math.abs(expectedValue)))));
+		}
+	}
+}
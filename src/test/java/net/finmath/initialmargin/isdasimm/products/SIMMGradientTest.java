@@ -0,0 +1,87 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.automaticdifferentiation.RandomVariableDifferentiable;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * Compares the derivatives of the compact <code>SIMMGradient</code> with the full AAD gradient of the product value.
+ */
+public class SIMMGradientTest {
+
+	private static LIBORModelMonteCarloSimulationModel model;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+	}
+
+	@Test
+	public void testGradientOfSwapMatchesFullGradient() throws CalculationException {
+		assertGradientMatchesFullGradient(SIMMTestModels.createSwap(10));
+	}
+
+	@Test
+	public void testGradientOfSwaptionMatchesFullGradient() throws CalculationException {
+		assertGradientMatchesFullGradient(SIMMTestModels.createSwaption(2.0, 8));
+	}
+
+	private static void assertGradientMatchesFullGradient(AbstractSIMMProduct product) throws CalculationException {
+		product.setGradient(model);
+		SIMMGradient gradient = product.getGradient(model);
+
+		RandomVariableDifferentiable value = (RandomVariableDifferentiable) product.getLIBORMonteCarloProduct(0.0).getValue(0.0, model);
+		Map<Long, RandomVariable> fullGradient = value.getGradient();
+
+		// The LIBORs on the simulation time grid, read densely and by ID
+		Set<Long> ids = new HashSet<>();
+		for (int timeIndex = 0; timeIndex < model.getTimeDiscretization().getNumberOfTimes(); timeIndex++) {
+			for (int liborIndex = 0; liborIndex < model.getNumberOfLibors(); liborIndex++) {
+				long id = ((RandomVariableDifferentiable) model.getLIBOR(timeIndex, liborIndex)).getID();
+				assertEquals(fullGradient.get(id), gradient.getLiborDerivative(timeIndex, liborIndex));
+				assertEquals(fullGradient.get(id), gradient.getDerivative(id));
+				ids.add(id);
+			}
+		}
+
+		// The numeraires at the LIBOR period times and the numeraire adjustments, read by ID
+		for (int liborIndex = 0; liborIndex < model.getNumberOfLibors(); liborIndex++) {
+			long id = ((RandomVariableDifferentiable) model.getNumeraire(model.getLiborPeriod(liborIndex))).getID();
+			assertEquals(fullGradient.get(id), gradient.getDerivative(id));
+			ids.add(id);
+		}
+		for (RandomVariable adjustment : product.getNumeraireAdjustmentMap().values()) {
+			long id = ((RandomVariableDifferentiable) adjustment).getID();
+			assertEquals(fullGradient.get(id), gradient.getDerivative(id));
+			ids.add(id);
+		}
+
+		// No other derivatives are retained
+		ids.retainAll(fullGradient.keySet());
+		assertThat(gradient.getNumberOfDerivatives(), is(ids.size()));
+	}
+
+	private static void assertEquals(RandomVariable expected, RandomVariable actual) {
+		if (expected == null) {
+			assertThat(actual, is(nullValue()));
+			return;
+		}
+		for (int path = 0; path < model.getNumberOfPaths(); path++) {
+			double expectedValue = expected.get(path);
+			assertThat(actual.get(path), is(closeTo(expectedValue, 1E-10 * Math.max(1.0, Math.abs(expectedValue)))));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+public class SIMMInitialMarginProfileTest {
+
+	private static final TimeDiscretization times = new TimeDiscretizationFromArray(0.0, 8, 0.5);
+
+	private static LIBORModelMonteCarloSimulationModel model;
+	private static ExecutorService executor;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testConcurrentProfileOfSwap() throws CalculationException {
+		for (SensitivityMode sensitivityMode : new SensitivityMode[]{SensitivityMode.EXACT, SensitivityMode.INTERPOLATION}) {
+			RandomVariable[] sequential = SIMMTestModels.createSwap(10).getInitialMarginProfile(times, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true, null);
+			RandomVariable[] concurrent = SIMMTestModels.createSwap(10).getInitialMarginProfile(times, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true, executor);
+
+			assertEquals(sequential, concurrent);
+		}
+	}
+
+	@Test
+	public void testConcurrentProfileOfBermudan() throws CalculationException {
+		for (SensitivityMode sensitivityMode : new SensitivityMode[]{SensitivityMode.EXACT, SensitivityMode.INTERPOLATION}) {
+			RandomVariable[] sequential = SIMMTestModels.createBermudan(2.0, 16).getInitialMarginProfile(times, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true, null);
+			RandomVariable[] concurrent = SIMMTestModels.createBermudan(2.0, 16).getInitialMarginProfile(times, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true, executor);
+
+			assertEquals(sequential, concurrent);
+		}
+	}
+
+	@Test
+	public void testConcurrentProfileOfPortfolio() throws CalculationException {
+		SIMMPortfolio sequentialPortfolio = new SIMMPortfolio(new AbstractSIMMProduct[]{SIMMTestModels.createSwap(10), SIMMTestModels.createBermudan(2.0, 16)}, "EUR");
+		SIMMPortfolio concurrentPortfolio = new SIMMPortfolio(new AbstractSIMMProduct[]{SIMMTestModels.createSwap(10), SIMMTestModels.createBermudan(2.0, 16)}, "EUR");
+
+		RandomVariable[] sequential = sequentialPortfolio.getInitialMarginProfile(times, model, "EUR", SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0, false, true, null);
+		RandomVariable[] concurrent = concurrentPortfolio.getInitialMarginProfile(times, model, "EUR", SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0, false, true, executor);
+
+		assertEquals(sequential, concurrent);
+
+		// The profile equals the initial margin calculated time by time
+		for (int timeIndex = 0; timeIndex < times.getNumberOfTimes(); timeIndex++) {
+			RandomVariable initialMargin = sequentialPortfolio.getInitialMargin(times.getTime(timeIndex), model, "EUR", SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0, false, true);
+			assertEquals(new RandomVariable[]{initialMargin}, new RandomVariable[]{sequential[timeIndex]});
+		}
+	}
+
+	private static void assertEquals(RandomVariable[] expected, RandomVariable[] actual) {
+		assertThat(actual.length, is(expected.length));
+		for (int timeIndex = 0; timeIndex < expected.length; timeIndex++) {
+			for (int path = 0; path < model.getNumberOfPaths(); path++) {
+				double expectedValue = expected[timeIndex].get(path);
+				assertThat(actual[timeIndex].get(path), is(closeTo(expectedValue, 1E-10 * Math.max(1.0, Math.abs(expectedValue)))));
+			}
+		}
+	}
+}
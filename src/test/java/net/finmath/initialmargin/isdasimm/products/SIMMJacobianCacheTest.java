@@ -0,0 +1,34 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.aggregationscheme.CalculationSchemeInitialMarginISDA;
+import net.finmath.initialmargin.isdasimm.sensitivity.SIMMJacobianCache;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+
+public class SIMMJacobianCacheTest {
+
+	@Test
+	public void testCalibrationUsesSharedCache() throws CalculationException {
+		LIBORModelMonteCarloSimulationModel model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+		SIMMJacobianCache jacobianCache = new SIMMJacobianCache();
+
+		AbstractSIMMProduct swaption = SIMMTestModels.createSwaption(2.0, 8);
+		swaption.setJacobianCache(jacobianCache);
+		swaption.getInitialMargin(1.0, model, new CalculationSchemeInitialMarginISDA(swaption, "EUR"));
+
+		int numberOfJacobians = jacobianCache.size();
+		assertThat(numberOfJacobians > 0, is(true));
+
+		// The Jacobians only depend on the model and the time, the second product calculates none
+		AbstractSIMMProduct otherSwaption = SIMMTestModels.createSwaption(2.0, 8);
+		otherSwaption.setJacobianCache(jacobianCache);
+		otherSwaption.getInitialMargin(1.0, model, new CalculationSchemeInitialMarginISDA(otherSwaption, "EUR"));
+
+		assertThat(jacobianCache.size(), is(numberOfJacobians));
+	}
+}
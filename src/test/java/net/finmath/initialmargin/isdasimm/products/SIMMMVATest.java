@@ -0,0 +1,71 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct.MVAMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+public class SIMMMVATest {
+
+	@Test
+	public void testNumberOfTimeStepsOfOriginalGrid() {
+		// The times i * timeStep < (int) finalMaturity / timeStep
+		assertThat(AbstractSIMMProduct.getNumberOfMVATimeSteps(10.0, 0.5), is(20));
+		assertThat(AbstractSIMMProduct.getNumberOfMVATimeSteps(10.0, 0.3), is(34));
+		assertThat(AbstractSIMMProduct.getNumberOfMVATimeSteps(2.5, 0.3), is(7));
+		assertThat(AbstractSIMMProduct.getNumberOfMVATimeSteps(5.5, 0.5), is(10));
+		assertThat(AbstractSIMMProduct.getNumberOfMVATimeSteps(0.5, 0.1), is(0));
+	}
+
+	@Test
+	public void testMVAEqualsOriginalTimeLoop() throws CalculationException {
+		LIBORModelMonteCarloSimulationModel model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+		double timeStep = 0.3;
+		double fundingSpread = 0.005;
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (MVAMode mvaMode : MVAMode.values()) {
+				// Maturity 2.5 is not a multiple of the time step
+				double expected = getMVAOfOriginalTimeLoop(SIMMTestModels.createSwap(5), model, timeStep, fundingSpread, mvaMode);
+				double actual = SIMMTestModels.createSwap(5).getMVA(model, SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, timeStep, fundingSpread, mvaMode, executor);
+
+				assertThat(actual, is(closeTo(expected, 1E-10 * Math.max(1.0, Math.abs(expected)))));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The MVA as calculated time by time before the initial margin profile was introduced.
+	 */
+	private static double getMVAOfOriginalTimeLoop(AbstractSIMMProduct product, LIBORModelMonteCarloSimulationModel model, double timeStep, double fundingSpread, MVAMode mvaMode) throws CalculationException {
+		double finalMaturity = product.getFinalMaturity();
+		RandomVariable forwardBond;
+		RandomVariable initialMargin;
+		RandomVariable MVA = new RandomVariableFromDoubleArray(0.0);
+		for (int i = 0; i < ((int) finalMaturity / timeStep); i++) {
+			forwardBond = model.getNumeraire((i + 1) * timeStep).mult(Math.exp((i + 1) * timeStep * fundingSpread)).invert();
+			forwardBond = forwardBond.sub(model.getNumeraire(i * timeStep).mult(Math.exp(i * timeStep * fundingSpread)).invert());
+			initialMargin = product.getInitialMargin(i * timeStep, model, "EUR", SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0, false, true);
+			if (mvaMode == MVAMode.APPROXIMATION) {
+				initialMargin = initialMargin.average();
+			}
+			MVA = MVA.add(forwardBond.mult(initialMargin));
+		}
+		return -MVA.getAverage();
+	}
+}
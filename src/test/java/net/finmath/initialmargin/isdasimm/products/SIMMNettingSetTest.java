@@ -0,0 +1,60 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+public class SIMMNettingSetTest {
+
+	private static final TimeDiscretization times = new TimeDiscretizationFromArray(0.0, 8, 0.5);
+
+	private static LIBORModelMonteCarloSimulationModel model;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+	}
+
+	@Test
+	public void testSwapsAreNetted() throws CalculationException {
+		AbstractSIMMProduct[] nettedProducts = SIMMNettingSet.of(createSwaps());
+
+		assertThat(nettedProducts.length, is(1));
+		assertThat(nettedProducts[0] instanceof SIMMNettingSet, is(true));
+		assertThat(((SIMMNettingSet) nettedProducts[0]).getProducts().length, is(3));
+	}
+
+	@Test
+	public void testNettedInitialMarginEqualsInitialMarginPerTrade() throws CalculationException {
+		for (SensitivityMode sensitivityMode : new SensitivityMode[]{SensitivityMode.EXACT, SensitivityMode.INTERPOLATION}) {
+			SIMMPortfolio nettedPortfolio = new SIMMPortfolio(createSwaps(), "EUR", true /* isNettingSetSweep */);
+			SIMMPortfolio portfolio = new SIMMPortfolio(createSwaps(), "EUR", false /* isNettingSetSweep */);
+
+			RandomVariable[] netted = nettedPortfolio.getInitialMarginProfile(times, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true, null);
+			RandomVariable[] perTrade = portfolio.getInitialMarginProfile(times, model, "EUR", sensitivityMode, WeightMode.TIMEDEPENDENT, 1.0, false, true, null);
+
+			assertThat(netted.length, is(perTrade.length));
+			for (int timeIndex = 0; timeIndex < perTrade.length; timeIndex++) {
+				for (int path = 0; path < model.getNumberOfPaths(); path++) {
+					double expectedValue = perTrade[timeIndex].get(path);
+					assertThat(netted[timeIndex].get(path), is(closeTo(expectedValue, 1E-8 * Math.max(1.0, Math.abs(expectedValue)))));
+				}
+			}
+		}
+	}
+
+	private static AbstractSIMMProduct[] createSwaps() throws CalculationException {
+		return new AbstractSIMMProduct[]{SIMMTestModels.createSwap(6), SIMMTestModels.createSwap(10), SIMMTestModels.createSwap(16)};
+	}
+}
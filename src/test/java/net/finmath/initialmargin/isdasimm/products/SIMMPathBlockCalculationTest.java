@@ -0,0 +1,83 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct.MVAMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+public class SIMMPathBlockCalculationTest {
+
+	private static final int NUMBER_OF_BLOCKS = 3;
+	private static final double TIME_STEP = 0.5;
+	private static final double FUNDING_SPREAD = 0.005;
+
+	private static LIBORModelMonteCarloSimulationModel[] models;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		LIBORModelMonteCarloSimulationModel model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+		models = new LIBORModelMonteCarloSimulationModel[NUMBER_OF_BLOCKS];
+		for (int blockIndex = 0; blockIndex < NUMBER_OF_BLOCKS; blockIndex++) {
+			models[blockIndex] = (LIBORModelMonteCarloSimulationModel) model.getCloneWithModifiedSeed(3141 + blockIndex);
+		}
+	}
+
+	@Test
+	public void testSingleBlockEqualsMVA() throws CalculationException {
+		SIMMPathBlockCalculation calculation = new SIMMPathBlockCalculation(blockIndex -> models[0], 1);
+
+		SIMMPathBlockCalculation.Estimate mva = calculation.getMVA(SIMMTestModels.createSwap(10), SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, TIME_STEP, FUNDING_SPREAD, MVAMode.EXACT, null);
+		double expected = SIMMTestModels.createSwap(10).getMVA(models[0], SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, TIME_STEP, FUNDING_SPREAD, MVAMode.EXACT);
+
+		assertThat(mva.getValue(), is(closeTo(expected, 1E-10 * Math.abs(expected))));
+		assertThat(mva.getNumberOfPaths(), is((long) models[0].getNumberOfPaths()));
+		assertThat(mva.getNumberOfBlocks(), is(1));
+	}
+
+	@Test
+	public void testMergedEstimateEqualsEstimateOnConcatenatedPaths() throws CalculationException {
+		SIMMPathBlockCalculation calculation = new SIMMPathBlockCalculation(blockIndex -> models[blockIndex], NUMBER_OF_BLOCKS);
+
+		SIMMPathBlockCalculation.Estimate mva = calculation.getMVA(SIMMTestModels.createBermudan(2.0, 16), SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, TIME_STEP, FUNDING_SPREAD, MVAMode.EXACT, null);
+
+		// The MVA on the paths of all blocks, each block valued by a new product
+		int numberOfPaths = 0;
+		for (LIBORModelMonteCarloSimulationModel model : models) {
+			numberOfPaths += model.getNumberOfPaths();
+		}
+		double[] mvaOnPaths = new double[numberOfPaths];
+		int offset = 0;
+		for (LIBORModelMonteCarloSimulationModel model : models) {
+			RandomVariable mvaOfBlock = SIMMTestModels.createBermudan(2.0, 16).getMVAOnPaths(model, SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, TIME_STEP, FUNDING_SPREAD, MVAMode.EXACT, null);
+			for (int path = 0; path < model.getNumberOfPaths(); path++) {
+				mvaOnPaths[offset + path] = mvaOfBlock.get(path);
+			}
+			offset += model.getNumberOfPaths();
+		}
+
+		double mean = 0.0;
+		for (double value : mvaOnPaths) {
+			mean += value;
+		}
+		mean /= numberOfPaths;
+		double sumOfSquaredDeviations = 0.0;
+		for (double value : mvaOnPaths) {
+			sumOfSquaredDeviations += (value - mean) * (value - mean);
+		}
+		double standardError = Math.sqrt(sumOfSquaredDeviations / (numberOfPaths - 1) / numberOfPaths);
+
+		assertThat(mva.getValue(), is(closeTo(mean, 1E-10 * Math.abs(mean))));
+		assertThat(mva.getStandardError(), is(closeTo(standardError, 1E-8 * standardError)));
+		assertThat(mva.getNumberOfPaths(), is((long) numberOfPaths));
+		assertThat(mva.getNumberOfBlocks(), is(NUMBER_OF_BLOCKS));
+	}
+}
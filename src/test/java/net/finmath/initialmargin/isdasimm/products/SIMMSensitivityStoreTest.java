@@ -0,0 +1,84 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+public class SIMMSensitivityStoreTest {
+
+	private static final String[] riskClasses = {"INTEREST_RATE"};
+	private static final String[] curveIndexNames = {"OIS", "Libor6m"};
+
+	@Test
+	public void testPutAndGetWithUnorderedTimes() {
+		SIMMSensitivityStore store = new SIMMSensitivityStore(riskClasses, curveIndexNames);
+		int riskClassIndex = store.getRiskClassIndex("INTEREST_RATE");
+		int curveIndex = store.getCurveIndex("Libor6m");
+
+		double[] times = {2.0, 0.0, 1.5, 0.5, 10.0, 3.0, 2.5, 1.0, 7.0, 0.25};
+		RandomVariable[][] sensitivities = new RandomVariable[times.length][];
+		for (int i = 0; i < times.length; i++) {
+			sensitivities[i] = getBuckets(times[i]);
+			store.put(times[i], riskClassIndex, curveIndex, sensitivities[i]);
+		}
+
+		assertThat(store.getNumberOfTimes(), is(times.length));
+		for (int i = 0; i < times.length; i++) {
+			assertThat(store.get(times[i], riskClassIndex, curveIndex), sameInstance(sensitivities[i]));
+			assertThat(store.get(times[i], riskClassIndex, curveIndex, SIMMSensitivityStore.getMaturityBucketIndex("10y")), sameInstance(sensitivities[i][8]));
+			assertThat(store.contains(times[i], riskClassIndex, store.getCurveIndex("OIS")), is(false));
+		}
+		assertThat(store.get(0.75, riskClassIndex, curveIndex), nullValue());
+
+		store.clear();
+		assertThat(store.getNumberOfTimes(), is(0));
+		assertThat(store.get(2.0, riskClassIndex, curveIndex), nullValue());
+	}
+
+	@Test
+	public void testUnknownKeys() {
+		SIMMSensitivityStore store = new SIMMSensitivityStore(riskClasses, curveIndexNames);
+
+		assertThat(store.getRiskClassIndex("EQUITY"), is(-1));
+		assertThat(store.getCurveIndex("Libor3m"), is(-1));
+		assertThat(SIMMSensitivityStore.getMaturityBucketIndex("2w"), is(0));
+		assertThat(SIMMSensitivityStore.getMaturityBucketIndex("40y"), is(-1));
+	}
+
+	@Test
+	public void testMemoryFootprintMatchesEstimate() {
+		int numberOfPaths = 1000;
+		int numberOfTimes = 3;
+
+		SIMMSensitivityStore store = new SIMMSensitivityStore(riskClasses, curveIndexNames);
+		for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+			for (int curveIndex = 0; curveIndex < curveIndexNames.length; curveIndex++) {
+				RandomVariable[] buckets = new RandomVariable[AbstractSIMMProduct.IRMaturityBuckets.length];
+				for (int i = 0; i < buckets.length; i++) {
+					buckets[i] = new RandomVariableFromDoubleArray(timeIndex, new double[numberOfPaths]);
+				}
+				store.put(timeIndex, 0, curveIndex, buckets);
+			}
+		}
+
+		long estimate = SIMMSensitivityStore.estimateMemoryFootprint(numberOfPaths, numberOfTimes, curveIndexNames.length, AbstractSIMMProduct.IRMaturityBuckets.length);
+		long footprint = store.getMemoryFootprint();
+
+		// The store additionally holds its (over-allocated) time array and slab
+		assertThat(footprint >= estimate && footprint < estimate + 1024, is(true));
+	}
+
+	private static RandomVariable[] getBuckets(double time) {
+		RandomVariable[] buckets = new RandomVariable[AbstractSIMMProduct.IRMaturityBuckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new RandomVariableFromDoubleArray(time, new double[] { time + i, time - i });
+		}
+		return buckets;
+	}
+}
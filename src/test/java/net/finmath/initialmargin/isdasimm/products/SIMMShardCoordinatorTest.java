@@ -0,0 +1,57 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct.MVAMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+
+public class SIMMShardCoordinatorTest {
+
+	/**
+	 * A small swap portfolio on a LIBOR market model with few paths. The task is on the test class path, which is the class path of the workers.
+	 */
+	private static final class SwapTask implements SIMMShardTask {
+		private static final long serialVersionUID = -4038211395581630529L;
+
+		@Override
+		public LIBORModelMonteCarloSimulationModel createModel(int seed) throws CalculationException {
+			return (LIBORModelMonteCarloSimulationModel) SIMMTestModels.createLIBORMarketModel(50 /* numberOfPaths */).getCloneWithModifiedSeed(seed);
+		}
+
+		@Override
+		public AbstractSIMMProduct[] createProducts() throws CalculationException {
+			return new AbstractSIMMProduct[]{SIMMTestModels.createSwap(6)};
+		}
+	}
+
+	@Test
+	public void testWorkerProcessesEqualInProcessShards() throws CalculationException {
+		SIMMShardTask task = new SwapTask();
+		SIMMShardSpecification specification = new SIMMShardSpecification("EUR", SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0,
+				false /* isUseAnalyticSwapSensis */, true /* isConsiderOISSensis */, 0.5 /* timeStep */, 0.005 /* fundingSpread */);
+
+		SIMMShardResult coordinated = new SIMMShardCoordinator(2).calculate(task, specification, 3141, 2);
+		SIMMShardResult inProcess = SIMMShardWorker.calculate(task, specification, 3141).merge(SIMMShardWorker.calculate(task, specification, 3142));
+
+		assertThat(coordinated.getNumberOfPaths(), is(inProcess.getNumberOfPaths()));
+		assertThat(coordinated.getTimes().length, is(inProcess.getTimes().length));
+		for (int timeIndex = 0; timeIndex < inProcess.getTimes().length; timeIndex++) {
+			assertClose(coordinated.getExpectedInitialMargin(timeIndex), inProcess.getExpectedInitialMargin(timeIndex));
+			assertClose(coordinated.getStandardErrorOfExpectedInitialMargin(timeIndex), inProcess.getStandardErrorOfExpectedInitialMargin(timeIndex));
+		}
+		assertClose(coordinated.getMVA(MVAMode.EXACT), inProcess.getMVA(MVAMode.EXACT));
+		assertClose(coordinated.getMVA(MVAMode.APPROXIMATION), inProcess.getMVA(MVAMode.APPROXIMATION));
+		assertClose(coordinated.getStandardErrorOfMVA(), inProcess.getStandardErrorOfMVA());
+	}
+
+	private static void assertClose(double actual, double expected) {
+		assertThat(actual, is(closeTo(expected, 1E-10 * Math.max(1.0, Math.abs(expected)))));
+	}
+}
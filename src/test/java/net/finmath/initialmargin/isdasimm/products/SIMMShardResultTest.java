@@ -0,0 +1,69 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct.MVAMode;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+public class SIMMShardResultTest {
+
+	private static final double[] times = {0.0, 0.5, 1.0};
+
+	@Test
+	public void testMergedShardsEqualAllPaths() {
+		int numberOfPaths = 1000;
+		int[] shardBoundaries = {0, 137, 500, 501, 1000};
+
+		Random random = new Random(3141);
+		double[][] initialMargin = new double[times.length][numberOfPaths];
+		double[][] fundingIncrements = new double[times.length][numberOfPaths];
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			for (int path = 0; path < numberOfPaths; path++) {
+				initialMargin[timeIndex][path] = 1000.0 + 100.0 * random.nextGaussian();
+				fundingIncrements[timeIndex][path] = -0.005 + 0.001 * random.nextGaussian();
+			}
+		}
+
+		SIMMShardResult allPaths = getShard(initialMargin, fundingIncrements, 0, numberOfPaths);
+		SIMMShardResult merged = null;
+		for (int shardIndex = 0; shardIndex < shardBoundaries.length - 1; shardIndex++) {
+			SIMMShardResult shard = getShard(initialMargin, fundingIncrements, shardBoundaries[shardIndex], shardBoundaries[shardIndex + 1]);
+			merged = merged == null ? shard : merged.merge(shard);
+		}
+
+		assertThat(merged.getNumberOfPaths(), is((long) numberOfPaths));
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			assertThat(merged.getExpectedInitialMargin(timeIndex), closeTo(allPaths.getExpectedInitialMargin(timeIndex), 1E-9));
+			assertThat(merged.getStandardErrorOfExpectedInitialMargin(timeIndex), closeTo(allPaths.getStandardErrorOfExpectedInitialMargin(timeIndex), 1E-9));
+		}
+		assertThat(merged.getMVA(MVAMode.EXACT), closeTo(allPaths.getMVA(MVAMode.EXACT), 1E-9));
+		assertThat(merged.getMVA(MVAMode.APPROXIMATION), closeTo(allPaths.getMVA(MVAMode.APPROXIMATION), 1E-9));
+		assertThat(merged.getStandardErrorOfMVA(), closeTo(allPaths.getStandardErrorOfMVA(), 1E-9));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeWithDifferentTimes() {
+		RandomVariable[] initialMargin = {new RandomVariableFromDoubleArray(1.0)};
+		RandomVariable[] fundingIncrements = {new RandomVariableFromDoubleArray(-0.01)};
+
+		SIMMShardResult.of(new double[] {0.0}, initialMargin, fundingIncrements, 1).merge(SIMMShardResult.of(new double[] {0.5}, initialMargin, fundingIncrements, 1));
+	}
+
+	private static SIMMShardResult getShard(double[][] initialMargin, double[][] fundingIncrements, int fromPath, int toPath) {
+		RandomVariable[] initialMarginOfShard = new RandomVariable[times.length];
+		RandomVariable[] fundingIncrementsOfShard = new RandomVariable[times.length];
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++) {
+			initialMarginOfShard[timeIndex] = new RandomVariableFromDoubleArray(times[timeIndex], Arrays.copyOfRange(initialMargin[timeIndex], fromPath, toPath));
+			fundingIncrementsOfShard[timeIndex] = new RandomVariableFromDoubleArray(times[timeIndex], Arrays.copyOfRange(fundingIncrements[timeIndex], fromPath, toPath));
+		}
+		return SIMMShardResult.of(times, initialMarginOfShard, fundingIncrementsOfShard, toPath - fromPath);
+	}
+}
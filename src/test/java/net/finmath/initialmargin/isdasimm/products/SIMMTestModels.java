@@ -0,0 +1,93 @@
+package net.finmath.initialmargin.isdasimm.products;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.SensitivityApproximationTest;
+import net.finmath.initialmargin.isdasimm.SensitivityApproximationTest.TestProductType;
+import net.finmath.initialmargin.isdasimm.test.SIMMTest;
+import net.finmath.marketdata.model.curves.DiscountCurveInterpolation;
+import net.finmath.marketdata.model.curves.ForwardCurveInterpolation;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+
+/**
+ * Small LIBOR market models and SIMM products shared by the unit tests of the SIMM products. The curves are those of
+ * <code>SensitivityApproximationTest</code>, the simulation time step is coarse such that the tests run quickly.
+ */
+public final class SIMMTestModels {
+
+	public static final double SIMULATION_TIME_STEP = 0.5;
+
+	public static final double PERIOD_LENGTH = 0.5;
+
+	private SIMMTestModels() {
+	}
+
+	/**
+	 * Create a one factor LIBOR market model with AAD random variables.
+	 *
+	 * @param numberOfPaths The number of Monte-Carlo paths
+	 * @return The LIBOR market model.
+	 * @throws CalculationException Thrown if the model cannot be created.
+	 */
+	public static LIBORModelMonteCarloSimulationModel createLIBORMarketModel(int numberOfPaths) throws CalculationException {
+		return SIMMTest.createLIBORMarketModel(false, SIMMTest.createRandomVariableFactoryAAD(), numberOfPaths, 1 /* numberOfFactors */,
+				createDiscountCurve(), createForwardCurve(), SIMULATION_TIME_STEP);
+	}
+
+	/**
+	 * Create a payer swap at par starting today.
+	 *
+	 * @param numberOfPeriods The number of semi-annual periods
+	 * @return The swap.
+	 * @throws CalculationException Thrown if the product cannot be created.
+	 */
+	public static AbstractSIMMProduct createSwap(int numberOfPeriods) throws CalculationException {
+		return createProducts(TestProductType.SWAPS, 0.0, numberOfPeriods)[0];
+	}
+
+	/**
+	 * Create a physically settled European swaption at par.
+	 *
+	 * @param exerciseDate    The exercise date
+	 * @param numberOfPeriods The number of semi-annual periods of the underlying swap
+	 * @return The swaption.
+	 * @throws CalculationException Thrown if the product cannot be created.
+	 */
+	public static AbstractSIMMProduct createSwaption(double exerciseDate, int numberOfPeriods) throws CalculationException {
+		return createProducts(TestProductType.SWAPTIONS, exerciseDate, numberOfPeriods)[0];
+	}
+
+	/**
+	 * Create a callable Bermudan swaption at par, exercisable every two years after the first exercise date.
+	 *
+	 * @param exerciseDate    The first exercise date
+	 * @param numberOfPeriods The number of semi-annual periods of the underlying (at least 13)
+	 * @return The Bermudan swaption.
+	 * @throws CalculationException Thrown if the product cannot be created.
+	 */
+	public static AbstractSIMMProduct createBermudan(double exerciseDate, int numberOfPeriods) throws CalculationException {
+		return createProducts(TestProductType.BERMUDANCALLABLE, exerciseDate, numberOfPeriods)[0];
+	}
+
+	private static AbstractSIMMProduct[] createProducts(TestProductType type, double exerciseDate, int numberOfPeriods) throws CalculationException {
+		return SensitivityApproximationTest.createProducts(type, new double[]{exerciseDate}, PERIOD_LENGTH, new int[]{numberOfPeriods}, createForwardCurve(), createDiscountCurve());
+	}
+
+	public static DiscountCurveInterpolation createDiscountCurve() {
+		// CurveFromInterpolationPoints Data as of December 8, 2017
+		return DiscountCurveInterpolation.createDiscountCurveFromDiscountFactors("OIS",
+				// Times
+				new double[]{0, 0.02739726, 0.065753425, 0.095890411, 0.178082192, 0.254794521, 0.345205479, 0.421917808, 0.506849315, 0.594520548, 0.673972603, 0.764383562, 0.843835616, 0.926027397, 1.01369863, 1.254794521, 1.512328767, 2.01369863, 3.010958904, 4.010958904, 5.010958904, 6.010958904, 7.019178082, 8.016438356, 9.01369863, 10.01369863, 11.01643836, 12.02191781, 15.01917808, 18.02465753, 20.02191781, 25.02739726, 30.03287671, 40.04109589, 50.04109589},
+				// Discount Factors
+				new double[]{1, 0.942220253, 1.14628676, 0.973644156, 0.989291916, 0.988947387, 0.989030365, 0.989540089, 0.989760412, 0.990003764, 0.990397338, 0.990628687, 0.990878391, 0.991165682, 0.991574886, 0.992229531, 0.993347703, 0.993022409, 0.992927371, 0.990353891, 0.98534136, 0.977964157, 0.968209156, 0.956438149, 0.942562961, 0.927724566, 0.911915214, 0.895097576, 0.84499878, 0.798562566, 0.769568088, 0.707863301, 0.654037617, 0.562380546, 0.496026132}
+				);
+	}
+
+	public static ForwardCurveInterpolation createForwardCurve() {
+		return ForwardCurveInterpolation.createForwardCurveFromForwards("Libor6m",
+				// Fixings of the forward
+				new double[]{0.504109589, 1.504109589, 2.509589041, 3.506849315, 4.506849315, 5.506849315, 6.509589041, 7.515068493, 8.512328767, 9.509589041, 10.51232877, 11.51232877, 12.51232877, 13.51780822, 14.51506849, 15.51506849, 16.51506849, 17.51506849, 18.52328767, 19.52054795, 20.51780822, 21.51780822, 22.52054795, 23.52054795, 24.5260274, 25.52328767, 26.52328767, 27.52328767, 28.52328767, 29.52328767, 34.52876712, 39.53150685, 44.53424658, 49.5369863, 54.54246575, 59.54520548},
+				// Forward Rates
+				new double[]{-0.002630852, -6.82E-04, 0.002757708, 0.005260602, 0.007848164, 0.010749576, 0.012628982, 0.014583704, 0.017103188, 0.017791957, 0.01917447, 0.019788258, 0.020269155, 0.02327218, 0.01577317, 0.026503375, 0.017980753, 0.016047889, 0.024898978, 0.010798547, 0.027070148, 0.014816786, 0.018220786, 0.016549747, 0.008028913, 0.020022068, 0.015134412, 0.016604122, 0.014386016, 0.026732673, 0.003643934, 0.024595029, 0.002432369, 0.02233176, 0.003397059, 0.020576206},
+				PERIOD_LENGTH /* tenor / period length */);
+	}
+}
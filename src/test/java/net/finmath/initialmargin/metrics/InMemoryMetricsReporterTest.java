@@ -0,0 +1,51 @@
+package net.finmath.initialmargin.metrics;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.finmath.initialmargin.metrics.InMemoryMetricsReporter.Statistics;
+import net.finmath.initialmargin.metrics.MetricsReporter.Stage;
+
+public class InMemoryMetricsReporterTest {
+
+	@Test
+	public void testStatisticsPerStageProductAndTime() {
+		InMemoryMetricsReporter reporter = new InMemoryMetricsReporter();
+		Metrics.setReporter(reporter);
+		try {
+			for (int timeIndex = 0; timeIndex < 3; timeIndex++) {
+				Metrics.Timer timer = Metrics.startTimer();
+				Metrics.stopTimer(timer, Stage.MELTING, "swap", timeIndex * 0.5);
+				Metrics.stopTimer(Metrics.startTimer(), Stage.MELTING, "swaption", timeIndex * 0.5);
+			}
+			Metrics.recordCacheAccess(Stage.JACOBIAN, null, 0.5, false);
+			Metrics.recordCacheAccess(Stage.JACOBIAN, null, 0.5, true);
+			Metrics.recordCacheAccess(Stage.JACOBIAN, null, 0.5, true);
+			Metrics.recordCacheAccess(Stage.JACOBIAN, null, 1.0, true);
+		} finally {
+			Metrics.setReporter(null);
+		}
+
+		assertThat(reporter.getStatistics(Stage.MELTING).getCount(), is(6L));
+		assertThat(reporter.getStatistics(Stage.MELTING, "swap").getCount(), is(3L));
+		assertThat(reporter.getStatistics(Stage.MELTING, "swaption", 0.5).getCount(), is(1L));
+		assertThat(reporter.getStatistics(Stage.GRADIENT).getCount(), is(0L));
+
+		Statistics jacobian = reporter.getStatistics(Stage.JACOBIAN);
+		assertThat(jacobian.getCacheHits(), is(3L));
+		assertThat(jacobian.getCacheMisses(), is(1L));
+		assertThat(jacobian.getCacheHitRatio(), is(0.75));
+		assertThat(reporter.getStatistics(Stage.JACOBIAN, "", 0.5).getCacheHitRatio(), is(2.0 / 3.0));
+	}
+
+	@Test
+	public void testNoOpReporterDoesNotMeasure() {
+		Metrics.setReporter(null);
+		assertThat(Metrics.isEnabled(), is(false));
+		assertThat(Metrics.startTimer() == null, is(true));
+		// Stopping a timer which was not started is ignored
+		Metrics.stopTimer(null, Stage.MVA, "swap", 0.0);
+	}
+}
@@ -0,0 +1,93 @@
+package net.finmath.initialmargin.metrics;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.aggregationscheme.CalculationSchemeInitialMarginISDA;
+import net.finmath.initialmargin.isdasimm.products.AbstractSIMMProduct;
+import net.finmath.initialmargin.isdasimm.products.SIMMTestModels;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.SensitivityMode;
+import net.finmath.initialmargin.isdasimm.sensitivity.AbstractSIMMSensitivityCalculation.WeightMode;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+
+public class InitialMarginEventTest {
+
+	@Test
+	public void testEventsOfInitialMarginCalculations() throws CalculationException, IOException {
+		LIBORModelMonteCarloSimulationModel model = SIMMTestModels.createLIBORMarketModel(100 /* numberOfPaths */);
+		AbstractSIMMProduct swap = SIMMTestModels.createSwap(10);
+		AbstractSIMMProduct swapOfScheme = SIMMTestModels.createSwap(10);
+
+		List<RecordedEvent> events;
+		Path file = Files.createTempFile("initialmargin", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(InitialMarginEvent.class).withoutThreshold();
+			recording.enable(DeltaSensitivityEvent.class).withoutThreshold();
+			recording.enable(ExactDeltaCacheEvent.class).withoutThreshold();
+			recording.start();
+
+			swap.getInitialMargin(1.0, model, "EUR", SensitivityMode.EXACT, WeightMode.TIMEDEPENDENT, 1.0, false, true);
+			swapOfScheme.getInitialMargin(1.5, model, new CalculationSchemeInitialMarginISDA(swapOfScheme, "EUR"));
+
+			recording.stop();
+			recording.dump(file);
+			events = RecordingFile.readAllEvents(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+
+		assertInitialMarginEvent(events, swap, 1.0, "EXACT", model.getNumberOfPaths());
+		assertInitialMarginEvent(events, swapOfScheme, 1.5, "MELTINGSIMMBUCKETS", model.getNumberOfPaths());
+
+		List<RecordedEvent> deltaEvents = getEvents(events, "net.finmath.initialmargin.DeltaSensitivity", swap, 1.0);
+		assertThat(deltaEvents.isEmpty(), is(false));
+		for (RecordedEvent event : deltaEvents) {
+			assertThat(event.getString("productClass"), is(swap.getProductClass()));
+			assertThat(event.getString("sensitivityMode"), is("EXACT"));
+			assertThat(event.getInt("numberOfPaths"), is(model.getNumberOfPaths()));
+		}
+
+		// Melting requests the exact sensitivities at time 0 from the cache
+		List<RecordedEvent> cacheEvents = getEvents(events, "net.finmath.initialmargin.ExactDeltaCache", swapOfScheme, 0.0);
+		assertThat(cacheEvents.isEmpty(), is(false));
+		for (RecordedEvent event : cacheEvents) {
+			assertThat(event.getString("productClass"), is(swapOfScheme.getProductClass()));
+			assertThat(event.getString("sensitivityMode"), is("MELTINGSIMMBUCKETS"));
+			assertThat(event.getInt("numberOfPaths"), is(model.getNumberOfPaths()));
+		}
+	}
+
+	private static void assertInitialMarginEvent(List<RecordedEvent> events, AbstractSIMMProduct product, double evaluationTime, String sensitivityMode, int numberOfPaths) {
+		List<RecordedEvent> initialMarginEvents = getEvents(events, "net.finmath.initialmargin.InitialMargin", product, evaluationTime);
+		assertThat(initialMarginEvents.size(), is(1));
+
+		RecordedEvent event = initialMarginEvents.get(0);
+		assertThat(event.getString("productClass"), is(product.getProductClass()));
+		assertThat(event.getString("sensitivityMode"), is(sensitivityMode));
+		assertThat(event.getInt("numberOfPaths"), is(numberOfPaths));
+		assertThat(event.getDuration().isNegative(), is(false));
+	}
+
+	private static List<RecordedEvent> getEvents(List<RecordedEvent> events, String name, AbstractSIMMProduct product, double evaluationTime) {
+		List<RecordedEvent> eventsOfProduct = new ArrayList<>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name) && event.getString("product").equals(Metrics.getProductName(product))
+					&& event.getDouble("evaluationTime") == evaluationTime) {
+				eventsOfProduct.add(event);
+			}
+		}
+		return eventsOfProduct;
+	}
+}
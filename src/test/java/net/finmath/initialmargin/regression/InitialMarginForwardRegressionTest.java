@@ -0,0 +1,83 @@
+package net.finmath.initialmargin.regression;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.regression.products.Portfolio;
+import net.finmath.marketdata.model.curves.DiscountCurveInterpolation;
+import net.finmath.marketdata.model.curves.ForwardCurveInterpolation;
+import net.finmath.montecarlo.RandomVariableFromArrayFactory;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.time.TimeDiscretization;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+public class InitialMarginForwardRegressionTest {
+
+	private static final TimeDiscretization times = new TimeDiscretizationFromArray(0.5, 8, 0.5);
+
+	private static LIBORModelMonteCarloSimulationModel model;
+	private static ExecutorService executor;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		DiscountCurveInterpolation discountCurve = DiscountCurveInterpolation.createDiscountCurveFromDiscountFactors("discountCurve",
+				new double[]{0.5, 1.0, 2.0, 5.0, 30.0} /*times*/,
+				new double[]{0.996, 0.995, 0.994, 0.993, 0.98} /*discountFactors*/);
+		ForwardCurveInterpolation forwardCurve = ForwardCurveInterpolation.createForwardCurveFromForwards("forwardCurve",
+				new double[]{0.5, 1.0, 2.0, 5.0, 30.0}    /* fixings of the forward */,
+				new double[]{0.02, 0.02, 0.02, 0.02, 0.02},
+				0.5/* tenor / period length */);
+
+		model = InitialMarginRegressionTest.createLIBORMarketModel(new RandomVariableFromArrayFactory(), 500 /* numberOfPaths */, 1 /* numberOfFactors */,
+				discountCurve, forwardCurve, 0.0 /* Correlation */, 0.2 /* volatilityParameter */);
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testProfileOfSimpleMethod() throws CalculationException {
+		assertProfilesEqualInitialMargin("SIMPLE");
+	}
+
+	@Test
+	public void testProfileOfRegressionMethod() throws CalculationException {
+		assertProfilesEqualInitialMargin("LSQREGRESSION");
+	}
+
+	/**
+	 * The concurrent and the sequential profile equal the initial margin calculated time by time (without value cube).
+	 */
+	private static void assertProfilesEqualInitialMargin(String method) throws CalculationException {
+		InitialMarginProfile sequential = createInitialMarginModel(method).getInitialMarginProfile(times, null);
+		InitialMarginProfile concurrent = createInitialMarginModel(method).getInitialMarginProfile(times, executor);
+		InitialMarginForwardRegression timeByTime = createInitialMarginModel(method);
+
+		assertThat(sequential.getTimes().length, is(times.getNumberOfTimes()));
+		assertThat(concurrent.getTimes().length, is(times.getNumberOfTimes()));
+		for (int timeIndex = 0; timeIndex < times.getNumberOfTimes(); timeIndex++) {
+			double expected = timeByTime.getInitialMargin(times.getTime(timeIndex));
+			double tolerance = 1E-10 * Math.max(1.0, Math.abs(expected));
+			assertThat(sequential.getInitialMargin(timeIndex), is(closeTo(expected, tolerance)));
+			assertThat(concurrent.getInitialMargin(timeIndex), is(closeTo(expected, tolerance)));
+		}
+	}
+
+	private static InitialMarginForwardRegression createInitialMarginModel(String method) {
+		Portfolio portfolio = new Portfolio(InitialMarginRegressionTest.createSwaps(new String[]{"3Y", "5Y"}), new double[]{1.0, -0.5});
+		portfolio.setInitialLifeTime(5.0);
+		return new InitialMarginForwardRegression(portfolio, model, 2 /* polynomialOrder */, method);
+	}
+}
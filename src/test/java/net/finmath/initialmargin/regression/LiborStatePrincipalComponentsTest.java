@@ -0,0 +1,61 @@
+package net.finmath.initialmargin.regression;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+public class LiborStatePrincipalComponentsTest {
+
+	@Test
+	public void testTwoFactorLiborState() {
+		int numberOfPaths = 5000;
+		int numberOfLibors = 40;
+
+		// LIBORs driven by a level and a slope factor plus a small idiosyncratic noise
+		Random random = new Random(3141);
+		double[][] realizations = new double[numberOfLibors][numberOfPaths];
+		for (int path = 0; path < numberOfPaths; path++) {
+			double level = random.nextGaussian();
+			double slope = random.nextGaussian();
+			for (int liborIndex = 0; liborIndex < numberOfLibors; liborIndex++) {
+				double maturity = (double) liborIndex / numberOfLibors;
+				realizations[liborIndex][path] = 0.02 + 0.01 * level + 0.005 * (maturity - 0.5) * slope + 0.00001 * random.nextGaussian();
+			}
+		}
+		RandomVariable[] libors = new RandomVariable[numberOfLibors];
+		for (int liborIndex = 0; liborIndex < numberOfLibors; liborIndex++) {
+			libors[liborIndex] = new RandomVariableFromDoubleArray(1.0, realizations[liborIndex]);
+		}
+
+		LiborStatePrincipalComponents principalComponents = LiborStatePrincipalComponents.of(1.0, libors, 0.999);
+
+		assertThat(principalComponents.getNumberOfLibors(), is(numberOfLibors));
+		assertThat(principalComponents.getNumberOfFactors(), is(2));
+		assertThat(principalComponents.getExplainedVariance() >= 0.999, is(true));
+
+		// The factors are centred and their variances are the eigenvalues
+		RandomVariable[] factors = principalComponents.getFactors();
+		double[] eigenvalues = principalComponents.getEigenvalues();
+		for (int factorIndex = 0; factorIndex < factors.length; factorIndex++) {
+			assertThat(factors[factorIndex].getAverage(), closeTo(0.0, 1E-12));
+			assertThat(factors[factorIndex].mult(factors[factorIndex]).getAverage(), closeTo(eigenvalues[factorIndex], 1E-12));
+		}
+	}
+
+	@Test
+	public void testDeterministicLiborState() {
+		RandomVariable[] libors = {new RandomVariableFromDoubleArray(0.0, 0.02), new RandomVariableFromDoubleArray(0.0, 0.03)};
+
+		LiborStatePrincipalComponents principalComponents = LiborStatePrincipalComponents.of(0.0, libors, 0.99);
+
+		assertThat(principalComponents.getNumberOfFactors(), is(0));
+		assertThat(principalComponents.getExplainedVariance(), closeTo(1.0, 0.0));
+	}
+}
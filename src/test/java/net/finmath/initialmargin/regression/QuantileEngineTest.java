@@ -0,0 +1,104 @@
+package net.finmath.initialmargin.regression;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+
+public class QuantileEngineTest {
+
+	private static final double[] quantileLevels = {0.0, 0.01, 0.5, 0.99, 0.999, 1.0};
+
+	@Test
+	public void testSelectionEqualsSorting() {
+		Random random = new Random(3141);
+		for (int numberOfPaths : new int[] {1, 2, 3, 1000, 10001}) {
+			double[] values = new double[numberOfPaths];
+			for (int path = 0; path < numberOfPaths; path++) {
+				// Ties as in a value change which is zero on many paths
+				values[path] = path % 3 == 0 ? 0.0 : random.nextGaussian();
+			}
+			RandomVariable randomVariable = new RandomVariableFromDoubleArray(0.0, values);
+
+			for (double quantileLevel : quantileLevels) {
+				assertThat(new SelectionQuantileEngine().getQuantile(randomVariable, quantileLevel), is(QuantileEngine.SORTING.getQuantile(randomVariable, quantileLevel)));
+			}
+		}
+	}
+
+	@Test
+	public void testSketchWithinErrorBound() {
+		double[] values = getValues(200000, 2718);
+		QuantileSketch sketch = new QuantileSketch(256);
+		sketch.add(new RandomVariableFromDoubleArray(0.0, values));
+
+		assertSketchWithinErrorBound(sketch, values);
+	}
+
+	@Test
+	public void testMergedSketchesWithinErrorBound() {
+		double[] values = getValues(200000, 1618);
+		int numberOfBlocks = 7;
+
+		QuantileSketch sketch = new QuantileSketch(256);
+		for (int blockIndex = 0; blockIndex < numberOfBlocks; blockIndex++) {
+			QuantileSketch sketchOfBlock = new QuantileSketch(256);
+			sketchOfBlock.add(new RandomVariableFromDoubleArray(0.0,
+					Arrays.copyOfRange(values, blockIndex * values.length / numberOfBlocks, (blockIndex + 1) * values.length / numberOfBlocks)));
+			sketch.merge(sketchOfBlock);
+		}
+
+		assertThat(sketch.getNumberOfValues(), is((long) values.length));
+		assertSketchWithinErrorBound(sketch, values);
+	}
+
+	@Test
+	public void testSketchEngineWithinErrorBound() {
+		double[] values = getValues(200000, 42);
+		RandomVariable randomVariable = new RandomVariableFromDoubleArray(0.0, values);
+
+		// The engine uses a sketch of the given capacity on all values, the sketch provides the error bound
+		QuantileSketch sketch = new QuantileSketch(1024);
+		sketch.add(randomVariable);
+		for (double quantileLevel : quantileLevels) {
+			assertThat(new SketchQuantileEngine(1024).getQuantile(randomVariable, quantileLevel), is(sketch.getQuantile(quantileLevel)));
+		}
+		assertSketchWithinErrorBound(sketch, values);
+	}
+
+	private static void assertSketchWithinErrorBound(QuantileSketch sketch, double[] values) {
+		double[] valuesSorted = values.clone();
+		Arrays.sort(valuesSorted);
+
+		assertThat(sketch.getNumberOfRetainedValues() < values.length / 10, is(true));
+		for (double quantileLevel : quantileLevels) {
+			double quantile = sketch.getQuantile(quantileLevel);
+			long rank = QuantileEngine.getIndexOfQuantile(values.length, quantileLevel) + 1;
+
+			// The rank of the quantile in the values is the rank of the exact quantile up to the error bound
+			long numberOfValuesLess = 0;
+			long numberOfValuesLessOrEqual = 0;
+			for (double value : valuesSorted) {
+				numberOfValuesLess += value < quantile ? 1 : 0;
+				numberOfValuesLessOrEqual += value <= quantile ? 1 : 0;
+			}
+			assertThat(numberOfValuesLess <= rank - 1 + sketch.getRankErrorBound(), is(true));
+			assertThat(numberOfValuesLessOrEqual >= rank - sketch.getRankErrorBound(), is(true));
+		}
+	}
+
+	private static double[] getValues(int numberOfValues, long seed) {
+		Random random = new Random(seed);
+		double[] values = new double[numberOfValues];
+		for (int i = 0; i < numberOfValues; i++) {
+			values[i] = Math.exp(random.nextGaussian()) - 1.0;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,93 @@
+package net.finmath.initialmargin.regression.products;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.regression.InitialMarginRegressionTest;
+import net.finmath.marketdata.model.curves.DiscountCurveInterpolation;
+import net.finmath.marketdata.model.curves.ForwardCurveInterpolation;
+import net.finmath.montecarlo.RandomVariableFromArrayFactory;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+public class ValueCubeTest {
+
+	// Unsorted and with a duplicate, including times between and after the exercise dates
+	private static final double[] times = {2.5, 0.0, 1.0, 0.5, 1.25, 2.0, 1.0, 3.0, 4.5};
+
+	private static LIBORModelMonteCarloSimulationModel model;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		DiscountCurveInterpolation discountCurve = DiscountCurveInterpolation.createDiscountCurveFromDiscountFactors("discountCurve",
+				new double[]{0.5, 1.0, 2.0, 5.0, 30.0} /*times*/,
+				new double[]{0.996, 0.995, 0.994, 0.993, 0.98} /*discountFactors*/);
+		ForwardCurveInterpolation forwardCurve = ForwardCurveInterpolation.createForwardCurveFromForwards("forwardCurve",
+				new double[]{0.5, 1.0, 2.0, 5.0, 30.0}    /* fixings of the forward */,
+				new double[]{0.02, 0.02, 0.02, 0.02, 0.02},
+				0.5/* tenor / period length */);
+
+		model = InitialMarginRegressionTest.createLIBORMarketModel(new RandomVariableFromArrayFactory(), 200 /* numberOfPaths */, 1 /* numberOfFactors */,
+				discountCurve, forwardCurve, 0.0 /* Correlation */, 0.2 /* volatilityParameter */);
+	}
+
+	@Test
+	public void testBermudanSwaption() throws CalculationException {
+		assertValueCubeEqualsValues(createBermudan());
+	}
+
+	@Test
+	public void testPortfolio() throws CalculationException {
+		AbstractLIBORMonteCarloRegressionProduct[] products = {
+				InitialMarginRegressionTest.createSwaps(new String[]{"5Y"})[0],
+				createBermudan()
+		};
+		assertValueCubeEqualsValues(new Portfolio(products, new double[]{1.0, -0.5}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTimeNotInCube() throws CalculationException {
+		createBermudan().getValueCube(times, model).getValue(0.75);
+	}
+
+	private static void assertValueCubeEqualsValues(AbstractLIBORMonteCarloRegressionProduct product) throws CalculationException {
+		ValueCube valueCube = product.getValueCube(times, model);
+
+		assertThat(valueCube.getNumberOfTimes(), is(times.length - 1));
+		for (double time : times) {
+			RandomVariable expected = product.getValue(time, model);
+			RandomVariable actual = valueCube.getValue(time);
+			for (int path = 0; path < model.getNumberOfPaths(); path++) {
+				double expectedValue = expected.get(path);
+				assertThat(actual.get(path), is(closeTo(expectedValue, 1E-10 * Math.max(1.0, Math.abs(expectedValue)))));
+			}
+		}
+	}
+
+	/**
+	 * A Bermudan swaption on a 4 year semi-annual swap starting in 1 year, exercisable every year.
+	 */
+	private static BermudanSwaption createBermudan() {
+		int numberOfPeriods = 8;
+		boolean[] isPeriodStartDateExerciseDate = new boolean[numberOfPeriods];
+		double[] fixingDates = new double[numberOfPeriods];
+		double[] periodLengths = new double[numberOfPeriods];
+		double[] paymentDates = new double[numberOfPeriods];
+		double[] periodNotionals = new double[numberOfPeriods];
+		double[] swaprates = new double[numberOfPeriods];
+		for (int period = 0; period < numberOfPeriods; period++) {
+			isPeriodStartDateExerciseDate[period] = period % 2 == 0 && period < 6;
+			fixingDates[period] = 1.0 + 0.5 * period;
+			periodLengths[period] = 0.5;
+			paymentDates[period] = fixingDates[period] + periodLengths[period];
+			periodNotionals[period] = 100.0;
+			swaprates[period] = 0.02;
+		}
+		return new BermudanSwaption(isPeriodStartDateExerciseDate, fixingDates, periodLengths, paymentDates, periodNotionals, swaprates);
+	}
+}
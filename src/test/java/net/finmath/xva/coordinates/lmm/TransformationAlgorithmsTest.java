@@ -5,9 +5,11 @@ import static org.hamcrest.core.Every.everyItem;
 import static org.hamcrest.number.IsCloseTo.closeTo;
 import static org.junit.Assert.assertThat;
 
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import org.junit.Test;
 import org.junit.experimental.theories.DataPoint;
 import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
@@ -92,4 +94,72 @@ public class TransformationAlgorithmsTest {
 				everyItem(is(closeTo(0.0, 1E-3)))
 				);
 	}
-}
\ No newline at end of file
+
+	@Theory
+	public void testGetPseudoInverseBatchedWithDeterministicDiagonalMatrix(double[] diagonal) {
+
+		RandomVariable[][] randomMatrix = new RandomVariable[diagonal.length][diagonal.length];
+
+		for (int i = 0; i < diagonal.length; i++) {
+			for (int j = 0; j < diagonal.length; j++) {
+				randomMatrix[i][j] = new Scalar(i == j ? diagonal[i] : 0.0);
+			}
+		}
+
+		final RandomVariable[][] pseudoInverse = TransformationAlgorithms.getPseudoInverseBatched(randomMatrix);
+
+		assertThat(
+				IntStream.range(0, diagonal.length).
+				mapToObj(i -> pseudoInverse[i][i].get(0) * diagonal[i] - 1.0).
+				collect(Collectors.toList()),
+				everyItem(is(closeTo(0.0, 1E-8)))
+				);
+	}
+
+	@Test
+	public void testGetPseudoInverseBatchedAgreesWithAcmSvdOnRectangularMatrices() {
+		assertBatchedAgreesWithAcmSvd(getRandomMatrix(6, 4, 200, 3141));
+		assertBatchedAgreesWithAcmSvd(getRandomMatrix(3, 5, 200, 2718));
+	}
+
+	@Test
+	public void testGetPseudoInverseBatchedWithRankDeficientPaths() {
+		RandomVariable[][] randomMatrix = getRandomMatrix(4, 4, 50, 1618);
+
+		// Make the last row a multiple of the first row on every path, the normal equations are then singular
+		for (int j = 0; j < 4; j++) {
+			randomMatrix[3][j] = randomMatrix[0][j].mult(2.0);
+		}
+
+		assertBatchedAgreesWithAcmSvd(randomMatrix);
+	}
+
+	private static void assertBatchedAgreesWithAcmSvd(RandomVariable[][] randomMatrix) {
+		final RandomVariable[][] expected = TransformationAlgorithms.getPseudoInverseByParallelAcmSvd(randomMatrix);
+		final RandomVariable[][] actual = TransformationAlgorithms.getPseudoInverseBatched(randomMatrix);
+
+		assertThat(actual.length, is(expected.length));
+		assertThat(
+				IntStream.range(0, expected.length).boxed().
+				flatMap(i -> IntStream.range(0, expected[i].length).mapToObj(j -> actual[i][j].sub(expected[i][j]).abs().getMax())).
+				collect(Collectors.toList()),
+				everyItem(is(closeTo(0.0, 1E-6)))
+				);
+	}
+
+	private static RandomVariable[][] getRandomMatrix(int rowCount, int columnCount, int numberOfPaths, long seed) {
+		Random random = new Random(seed);
+		RandomVariable[][] randomMatrix = new RandomVariable[rowCount][columnCount];
+
+		for (int i = 0; i < rowCount; i++) {
+			for (int j = 0; j < columnCount; j++) {
+				double[] realizations = new double[numberOfPaths];
+				for (int pathIndex = 0; pathIndex < numberOfPaths; pathIndex++) {
+					realizations[pathIndex] = (i == j ? 2.0 : 0.0) + random.nextGaussian();
+				}
+				randomMatrix[i][j] = new RandomVariableFromDoubleArray(0.0, realizations);
+			}
+		}
+		return randomMatrix;
+	}
+}
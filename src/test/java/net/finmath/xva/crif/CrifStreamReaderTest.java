@@ -0,0 +1,124 @@
+package net.finmath.xva.crif;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.sensitivities.simm2.SubCurve;
+import net.finmath.sensitivities.simm2.Vertex;
+import net.finmath.stochastic.RandomVariable;
+
+public class CrifStreamReaderTest {
+
+	private static final SimmCoordinate EUR_LIBOR6M_5Y = new SimmCoordinate(Vertex.Y5, SubCurve.Libor6m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate USD_FX = new SimmCoordinate(null, "USD", "0", RiskClass.FX, MarginType.DELTA, ProductClass.RATES_FX);
+
+	@Test
+	public void testDelimitedTextIsNettedPerCounterparty() throws IOException {
+		String crif = "Counterparty\tTradeID\tProductClass\tRiskType\tQualifier\tBucket\tLabel1\tLabel2\tAmount\tAmountCCY\tAmountUSD\n"
+				+ "A\tT1\tRatesFX\tRisk_IRCurve\tEUR\t1\t5y\tLibor6m\t100.5\tEUR\t\n"
+				+ "A\tT2\tRatesFX\tRisk_IRCurve\tEUR\t1\t5y\tLibor6m\t-20.25\tEUR\t\n"
+				+ "A\tT2\tRatesFX\tRisk_Notional\tEUR\t\t\t\t1E6\tEUR\t\n"
+				+ "B\tT3\tRatesFX\tRisk_FX\t\"USD\"\t\t\t\t7\tUSD\t7.5\r\n"
+				+ "B\tT4\tRatesFX\tRisk_IRCurve\tEUR\t1\t5y\tLibor6m\t1.0E2\tEUR\t\n";
+
+		CrifStreamReader reader = new CrifStreamReader(new StringReader(crif), CrifStreamReader.Format.CSV);
+		Map<String, Map<SimmCoordinate, RandomVariable>> gradients = read(reader);
+
+		assertThat(gradients.size(), is(2));
+		assertThat(gradients.get("A").size(), is(1));
+		assertThat(gradients.get("A").get(EUR_LIBOR6M_5Y).get(0), closeTo(80.25, 1E-12));
+		assertThat(gradients.get("B").get(USD_FX).get(0), closeTo(7.5, 1E-12));
+		assertThat(gradients.get("B").get(EUR_LIBOR6M_5Y).get(0), closeTo(100.0, 1E-12));
+		assertThat(reader.getNumberOfRows(), is(5L));
+		assertThat(reader.getNumberOfSkippedRows(), is(1L));
+
+		// Coordinates (and their qualifiers) are shared across netting sets
+		SimmCoordinate coordinateOfA = gradients.get("A").keySet().iterator().next();
+		SimmCoordinate coordinateOfB = gradients.get("B").keySet().stream().filter(EUR_LIBOR6M_5Y::equals).findFirst().get();
+		assertThat(coordinateOfA, sameInstance(coordinateOfB));
+		assertThat(reader.getNumberOfCoordinates(), is(2));
+	}
+
+	@Test
+	public void testJsonLinesWithoutGroupingByCounterparty() throws IOException {
+		String crif = "{\"Counterparty\":\"A\",\"ProductClass\":\"RatesFX\",\"RiskType\":\"Risk_IRCurve\",\"Qualifier\":\"EUR\",\"Label1\":\"5y\",\"Label2\":\"Libor6m\",\"Amount\":1.5}\n"
+				+ "{\"Counterparty\":\"B\",\"ProductClass\":\"RatesFX\",\"RiskType\":\"Risk_IRCurve\",\"Qualifier\":\"EUR\",\"Label1\":\"5y\",\"Label2\":\"Libor6m\",\"Amount\":2.0}\n"
+				+ "{\"Counterparty\":\"A\",\"ProductClass\":\"RatesFX\",\"RiskType\":\"Risk_IRCurve\",\"Qualifier\":\"EUR\",\"Label1\":\"5y\",\"Label2\":\"Libor6m\",\"Amount\":\"2.5\",\"AmountUSD\":null}\n";
+
+		Map<String, Map<SimmCoordinate, RandomVariable>> gradients = read(new CrifStreamReader(new StringReader(crif), CrifStreamReader.Format.JSON_LINES, false));
+
+		assertThat(gradients.get("A").get(EUR_LIBOR6M_5Y).get(0), closeTo(4.0, 1E-12));
+		assertThat(gradients.get("B").get(EUR_LIBOR6M_5Y).get(0), closeTo(2.0, 1E-12));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInputNotGroupedByCounterpartyIsRejected() throws IOException {
+		String crif = "Counterparty,ProductClass,RiskType,Qualifier,Label1,Label2,Amount\n"
+				+ "A,RatesFX,Risk_IRCurve,EUR,5y,Libor6m,1\n"
+				+ "B,RatesFX,Risk_IRCurve,EUR,5y,Libor6m,1\n"
+				+ "A,RatesFX,Risk_IRCurve,EUR,5y,Libor6m,1\n";
+
+		read(new CrifStreamReader(new StringReader(crif), CrifStreamReader.Format.CSV));
+	}
+
+	@Test
+	public void testPooledStringsAreReleasedPerNettingSet() throws IOException {
+		String[] tenors = {"2y", "5y", "10y", "30y"};
+		int numberOfCounterparties = 5;
+		int numberOfRowsPerCounterparty = 100;
+
+		StringBuilder crif = new StringBuilder("Counterparty,TradeID,ProductClass,RiskType,Qualifier,Bucket,Label1,Label2,Amount,AmountCCY\n");
+		for (int counterparty = 0; counterparty < numberOfCounterparties; counterparty++) {
+			for (int row = 0; row < numberOfRowsPerCounterparty; row++) {
+				// Trade IDs are unique per row
+				crif.append("CP").append(counterparty).append(",T").append(counterparty).append('_').append(row)
+				.append(",RatesFX,Risk_IRCurve,EUR,1,").append(tenors[row % tenors.length]).append(",Libor6m,").append(row).append(",EUR\n");
+			}
+		}
+
+		CrifStreamReader reader = new CrifStreamReader(new StringReader(crif.toString()), CrifStreamReader.Format.CSV);
+		List<Integer> numberOfPooledStrings = new ArrayList<>();
+		reader.forEachNettingSet((counterparty, gradient) -> numberOfPooledStrings.add(reader.getNumberOfPooledStrings()));
+
+		assertThat(numberOfPooledStrings.size(), is(numberOfCounterparties));
+		// The values of one netting set (counterparty, tenors and the common fields) and the counterparty of the next row
+		int numberOfValuesOfNettingSet = 1 + tenors.length + 5;
+		for (int numberOfStrings : numberOfPooledStrings) {
+			assertThat(numberOfStrings <= numberOfValuesOfNettingSet + 1, is(true));
+		}
+		assertThat(reader.getNumberOfPooledStrings(), is(numberOfValuesOfNettingSet));
+		assertThat(reader.getNumberOfCoordinates(), is(tenors.length));
+	}
+
+	@Test
+	public void testParseDoubleAgreesWithDoubleParseDouble() {
+		String[] numbers = {"0", "-0", "1", "+17", "123.456", "-0.000123", "1E6", "1.5e-7", "2.5E+3", "0.1", "3.14159265358979", "123456789012345678", "9.87654321E-30", "1e400", ".5", "5."};
+		for (String number : numbers) {
+			char[] chars = (" " + number + " ").toCharArray();
+			assertThat(number, CrifStreamReader.parseDouble(chars, 1, chars.length - 1), is(Double.parseDouble(number)));
+		}
+	}
+
+	private static Map<String, Map<SimmCoordinate, RandomVariable>> read(CrifStreamReader reader) throws IOException {
+		Map<String, Map<SimmCoordinate, RandomVariable>> gradients = new LinkedHashMap<>();
+		try (CrifStreamReader crifReader = reader) {
+			crifReader.forEachNettingSet((counterparty, gradientProduct) -> gradients.put(counterparty, gradientProduct.getGradient(0.0, null)));
+		}
+		return gradients;
+	}
+}
@@ -0,0 +1,104 @@
+package net.finmath.xva.initialmargin.simm2;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.initialmargin.isdasimm.products.SIMMTestModels;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.montecarlo.interestrate.LIBORModelMonteCarloSimulationModel;
+import net.finmath.sensitivities.GradientProduct;
+import net.finmath.sensitivities.GradientProductConstant;
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.sensitivities.simm2.SubCurve;
+import net.finmath.sensitivities.simm2.Vertex;
+import net.finmath.stochastic.RandomVariable;
+
+public class SimmBatchEngineTest {
+
+	private static final SimmCoordinate IR_EUR_1M = new SimmCoordinate(Vertex.M1, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate IR_EUR_3M = new SimmCoordinate(Vertex.M3, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate IR_USD_1M = new SimmCoordinate(Vertex.M1, SubCurve.Libor3m, "USD", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate EQ_DAX = new SimmCoordinate(null, "DAX", "11", RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+
+	private static LIBORModelMonteCarloSimulationModel model;
+
+	@BeforeClass
+	public static void setUp() throws CalculationException {
+		// The model only provides the numeraire of SimmProduct.getValue, the gradients do not depend on it
+		model = SIMMTestModels.createLIBORMarketModel(1 /* numberOfPaths */);
+	}
+
+	@Test
+	public void getMarginsMatchesSimmProduct() throws CalculationException {
+		final SimmModality modality = new SimmModality("EUR", 0.0);
+
+		final Map<String, GradientProduct<SimmCoordinate>> nettingSets = new HashMap<>();
+		nettingSets.put("A", GradientProductConstant.fromRandom(ImmutableMap.of(IR_EUR_1M, paths(1.0E6, 2.0E6, -5.0E5, 0.0))));
+		nettingSets.put("B", GradientProductConstant.fromRandom(ImmutableMap.of(IR_EUR_1M, paths(2.0E6, 1.0E6, 0.0, -1.0E6), IR_EUR_3M, paths(-1.5E6, 1.5E6, 2.0E5, 0.0), IR_USD_1M, paths(5.0E5, 5.0E5, 5.0E5, 5.0E5))));
+		nettingSets.put("C", GradientProductConstant.fromRandom(ImmutableMap.of(IR_EUR_3M, paths(3.0E6, -3.0E6, 1.0E6, 0.0), EQ_DAX, paths(4.0E6, 0.0, -2.0E6, 1.0E6))));
+
+		final SimmBatchResult result = new SimmBatchEngine(modality).getMargins(nettingSets, 0.0, model);
+
+		assertThat(result.getNumberOfCounterparties(), is(3));
+		for (Map.Entry<String, GradientProduct<SimmCoordinate>> nettingSet : nettingSets.entrySet()) {
+			final int counterpartyIndex = result.getCounterpartyIndex(nettingSet.getKey());
+			final double expected = getExpectedInitialMargin(nettingSet.getValue(), modality);
+
+			assertThat(result.getCounterparty(counterpartyIndex), is(nettingSet.getKey()));
+			assertThat(result.getMargin(counterpartyIndex), is(closeTo(expected, 1E-6)));
+			assertThat(result.getInitialMargin(counterpartyIndex), is(closeTo(expected, 1E-6)));
+			assertThat(result.getNumberOfSensitivities(counterpartyIndex), is(nettingSet.getValue().getGradient(0.0, model).size()));
+		}
+
+		final int indexC = result.getCounterpartyIndex("C");
+		assertThat(result.getMargin(indexC),
+				is(closeTo(result.getMargin(indexC, ProductClass.RATES_FX) + result.getMargin(indexC, ProductClass.EQUITY), 1E-6)));
+		assertThat(result.getMargin(indexC, ProductClass.EQUITY, RiskClass.EQUITY), is(closeTo(result.getMargin(indexC, ProductClass.EQUITY), 1E-6)));
+		assertThat(result.getMargin(indexC, ProductClass.CREDIT), is(0.0));
+		assertThat(result.getCounterpartyIndex("D"), is(-1));
+	}
+
+	@Test
+	public void getInitialMarginAppliesThresholdPerPath() throws CalculationException {
+		final Map<String, GradientProduct<SimmCoordinate>> nettingSets = ImmutableMap.of(
+				"A", GradientProductConstant.fromRandom(ImmutableMap.of(IR_EUR_1M, paths(1.0E6, 1.0E3, -1.0E6, 1.0E3))),
+				"B", GradientProductConstant.fromDouble(ImmutableMap.of(IR_EUR_1M, 1.0E3)));
+
+		final SimmBatchResult withoutThreshold = new SimmBatchEngine(new SimmModality("EUR", 0.0)).getMargins(nettingSets, 0.0, model);
+		final double threshold = withoutThreshold.getMargin(withoutThreshold.getCounterpartyIndex("A"));
+		final SimmModality modality = new SimmModality("EUR", threshold);
+		final SimmBatchResult result = new SimmBatchEngine(modality).getMargins(nettingSets, 0.0, model);
+
+		final int indexA = result.getCounterpartyIndex("A");
+		final int indexB = result.getCounterpartyIndex("B");
+		assertThat(result.getInitialMargin(indexA), is(closeTo(getExpectedInitialMargin(nettingSets.get("A"), modality), 1E-6)));
+		assertThat(result.getInitialMargin(indexB), is(closeTo(getExpectedInitialMargin(nettingSets.get("B"), modality), 1E-6)));
+
+		// The expected margin equals the threshold, the margin in excess of it is positive on the paths with large sensitivities
+		assertThat(result.getInitialMargin(indexA), is(greaterThan(0.0)));
+		assertThat(result.getInitialMargin(indexB), is(0.0));
+	}
+
+	private static double getExpectedInitialMargin(GradientProduct<SimmCoordinate> nettingSet, SimmModality modality) throws CalculationException {
+		final SimmProduct product = new SimmProduct(0.0, nettingSet, modality);
+		return product.getValue(0.0, model).div(model.getNumeraire(0.0)).getAverage();
+	}
+
+	private static RandomVariable paths(double... values) {
+		return new RandomVariableFromDoubleArray(0.0, values);
+	}
+}
@@ -4,12 +4,17 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.number.IsCloseTo.closeTo;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableMap;
 
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.sensitivities.simm2.MarginType;
 import net.finmath.sensitivities.simm2.ProductClass;
 import net.finmath.sensitivities.simm2.RiskClass;
@@ -143,4 +148,40 @@ public class SimmIRSchemeTest {
 		assertThat(new SimmIRScheme(PARAMETERS).getMargin(gradient).getAverage(),
 				is(closeTo(Math.sqrt(vrEur*vrEur + vrUsd*vrUsd + 2.0*correlation*vrEur*vrUsd), 1E-8)));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testGetMarginDeltaForStochasticSensitivitiesMatchesCrossTerms() {
+
+		final Random random = new Random(3141);
+		final int numberOfPaths = 1000;
+
+		final Map<SimmCoordinate, RandomVariable> gradient = new HashMap<>();
+		for (String currency : new String[] { "EUR", "USD" }) {
+			for (SubCurve subCurve : new SubCurve[] { SubCurve.Ois, SubCurve.Libor3m, SubCurve.Libor6m }) {
+				for (Vertex vertex : new Vertex[] { Vertex.M1, Vertex.M3, Vertex.Y5, Vertex.Y10 }) {
+					final double[] sensitivity = new double[numberOfPaths];
+					for (int path = 0; path < numberOfPaths; path++) {
+						sensitivity[path] = 1E8 * random.nextGaussian();
+					}
+					gradient.put(new SimmCoordinate(vertex, subCurve, currency, RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX),
+							new RandomVariableFromDoubleArray(0.0, sensitivity));
+				}
+			}
+		}
+
+		final SimmIRScheme scheme = new SimmIRScheme(PARAMETERS);
+
+		final Set<BucketResult> bucketResults = gradient.entrySet().stream().
+				collect(Collectors.groupingBy(e -> e.getKey().getSimmBucket(), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))).
+				entrySet().stream().
+				map(bucket -> scheme.getBucketAggregationByCrossTerms(bucket.getKey(), bucket.getValue())).
+				collect(Collectors.toSet());
+
+		final RandomVariable margin = scheme.getMargin(gradient);
+		final RandomVariable expectedMargin = scheme.getMarginByCrossTerms(bucketResults, RiskClass.INTEREST_RATE);
+
+		for (int path = 0; path < numberOfPaths; path++) {
+			assertThat(margin.get(path), is(closeTo(expectedMargin.get(path), 1E-10 * expectedMargin.get(path))));
+		}
+	}
+}
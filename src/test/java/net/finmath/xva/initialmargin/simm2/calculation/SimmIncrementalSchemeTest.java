@@ -0,0 +1,98 @@
+package net.finmath.xva.initialmargin.simm2.calculation;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.sensitivities.simm2.SubCurve;
+import net.finmath.sensitivities.simm2.Vertex;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.specs.ParameterSet;
+import net.finmath.xva.initialmargin.simm2.specs.Simm2_0;
+
+public class SimmIncrementalSchemeTest {
+
+	private static final ParameterSet PARAMETERS = new Simm2_0();
+
+	private static final SimmCoordinate EUR_1M = new SimmCoordinate(Vertex.M1, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate EUR_5Y = new SimmCoordinate(Vertex.Y5, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate USD_10Y = new SimmCoordinate(Vertex.Y10, SubCurve.Libor6m, "USD", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate DAX = new SimmCoordinate(null, "DAX", "11", RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+	private static final SimmCoordinate SX5E = new SimmCoordinate(null, "SX5E", "11", RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+
+	private static final Map<SimmCoordinate, RandomVariable> SWAP_EUR = ImmutableMap.of(EUR_1M, new Scalar(2.0E8), EUR_5Y, new Scalar(-1.5E8));
+	private static final Map<SimmCoordinate, RandomVariable> SWAP_USD = ImmutableMap.of(USD_10Y, new Scalar(3.0E8), EUR_5Y, new Scalar(5.0E7));
+	private static final Map<SimmCoordinate, RandomVariable> EQUITY_SWAP = ImmutableMap.of(DAX, new Scalar(4.0E6), SX5E, new Scalar(-1.0E6));
+
+	@Test
+	public void marginMatchesMarginOfNetGradient() {
+		final SimmIncrementalScheme incrementalScheme = new SimmIncrementalScheme(PARAMETERS);
+		incrementalScheme.add(SWAP_EUR);
+		incrementalScheme.add(SWAP_USD);
+		incrementalScheme.add(EQUITY_SWAP);
+
+		assertThat(incrementalScheme.getMargin().getAverage(), is(closeTo(getMargin(SWAP_EUR, SWAP_USD, EQUITY_SWAP), 1E-4)));
+		assertThat(incrementalScheme.getMarginsByProductClassAndRiskClass().get(ProductClass.EQUITY).get(RiskClass.EQUITY).getAverage(),
+				is(closeTo(new SimmScheme(PARAMETERS).getMarginForRiskClass(RiskClass.EQUITY, EQUITY_SWAP).getAverage(), 1E-4)));
+	}
+
+	@Test
+	public void whatIfLeavesNettingSetUnchanged() {
+		final SimmIncrementalScheme incrementalScheme = new SimmIncrementalScheme(PARAMETERS);
+		incrementalScheme.add(SWAP_EUR);
+		incrementalScheme.add(EQUITY_SWAP);
+
+		final double margin = incrementalScheme.getMargin().getAverage();
+		final double marginWithSwap = getMargin(SWAP_EUR, SWAP_USD, EQUITY_SWAP);
+
+		assertThat(incrementalScheme.getMarginWith(SWAP_USD).getAverage(), is(closeTo(marginWithSwap, 1E-4)));
+		assertThat(incrementalScheme.getMarginImpact(SWAP_USD).getAverage(), is(closeTo(marginWithSwap - margin, 1E-4)));
+		assertThat(incrementalScheme.getMarginWithout(EQUITY_SWAP).getAverage(), is(closeTo(getMargin(SWAP_EUR), 1E-4)));
+		assertThat(incrementalScheme.getMargin().getAverage(), is(margin));
+	}
+
+	@Test
+	public void removingTradesRestoresMargin() {
+		final SimmIncrementalScheme incrementalScheme = new SimmIncrementalScheme(PARAMETERS);
+		incrementalScheme.add(SWAP_EUR);
+		incrementalScheme.add(SWAP_USD);
+		incrementalScheme.add(EQUITY_SWAP);
+
+		incrementalScheme.remove(SWAP_USD);
+		assertThat(incrementalScheme.getMargin().getAverage(), is(closeTo(getMargin(SWAP_EUR, EQUITY_SWAP), 1E-4)));
+
+		incrementalScheme.remove(EQUITY_SWAP);
+		assertThat(incrementalScheme.getMarginsByProductClassAndRiskClass().containsKey(ProductClass.EQUITY), is(false));
+
+		incrementalScheme.remove(SWAP_EUR);
+		assertThat(incrementalScheme.getMargin().getAverage(), is(0.0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void removingTradeNotAddedFails() {
+		final SimmIncrementalScheme incrementalScheme = new SimmIncrementalScheme(PARAMETERS);
+		incrementalScheme.add(SWAP_EUR);
+		incrementalScheme.remove(EQUITY_SWAP);
+	}
+
+	@SafeVarargs
+	private static double getMargin(Map<SimmCoordinate, RandomVariable>... trades) {
+		final Map<SimmCoordinate, RandomVariable> gradient = new HashMap<>();
+		for (Map<SimmCoordinate, RandomVariable> trade : trades) {
+			trade.forEach((coordinate, sensitivity) -> gradient.merge(coordinate, sensitivity, RandomVariable::add));
+		}
+		return new SimmScheme(PARAMETERS).getMargin(gradient).getAverage();
+	}
+}
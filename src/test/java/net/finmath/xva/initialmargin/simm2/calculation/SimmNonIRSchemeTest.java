@@ -4,12 +4,17 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.number.IsCloseTo.closeTo;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableMap;
 
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
 import net.finmath.sensitivities.simm2.MarginType;
 import net.finmath.sensitivities.simm2.ProductClass;
 import net.finmath.sensitivities.simm2.RiskClass;
@@ -71,4 +76,49 @@ public class SimmNonIRSchemeTest {
 		assertThat(result.getAverage(), is(closeTo(marketSensitivity*vegaRiskWeight * additionalWeight, 1E-8)));
 
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void getMarginForStochasticStockDeltasMatchesCrossTerms() {
+
+		final ParameterSet parameters = new Simm2_0();
+		final SimmNonIRScheme scheme = new SimmNonIRScheme(parameters);
+		final Random random = new Random(2718);
+		final int numberOfPaths = 1000;
+
+		final Map<SimmCoordinate, RandomVariable> gradient = new HashMap<>();
+		for (String bucket : new String[] { "1", "11" }) {
+			for (String qualifier : new String[] { "A", "B", "C", "D" }) {
+				final SimmCoordinate coordinate = new SimmCoordinate(null, qualifier + bucket, bucket, RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+
+				//Sensitivities around the threshold such that the concentration risk factors differ between paths
+				final double threshold = parameters.getConcentrationThreshold(coordinate);
+				final double[] sensitivity = new double[numberOfPaths];
+				for (int path = 0; path < numberOfPaths; path++) {
+					sensitivity[path] = threshold * 2.0 * random.nextGaussian();
+				}
+				gradient.put(coordinate, new RandomVariableFromDoubleArray(0.0, sensitivity));
+			}
+		}
+
+		//The concentration risk factor of a bucket is taken from one of its sensitivities, hence both aggregations have to use the same bucket results
+		final Set<BucketResult> bucketResults = gradient.entrySet().stream().
+				collect(Collectors.groupingBy(e -> e.getKey().getSimmBucket(), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))).
+				entrySet().stream().
+				map(bucket -> {
+					final BucketResult bucketResult = scheme.getBucketAggregation(bucket.getKey(), bucket.getValue());
+					final RandomVariable expectedK = scheme.getBucketAggregationByCrossTerms(bucket.getKey(), bucket.getValue()).getK();
+					for (int path = 0; path < numberOfPaths; path++) {
+						assertThat(bucketResult.getK().get(path), is(closeTo(expectedK.get(path), 1E-10 * expectedK.get(path))));
+					}
+					return bucketResult;
+				}).
+				collect(Collectors.toSet());
+
+		final RandomVariable margin = scheme.getMargin(bucketResults, RiskClass.EQUITY);
+		final RandomVariable expectedMargin = scheme.getMarginByCrossTerms(bucketResults, RiskClass.EQUITY);
+
+		for (int path = 0; path < numberOfPaths; path++) {
+			assertThat(margin.get(path), is(closeTo(expectedMargin.get(path), 1E-10 * expectedMargin.get(path))));
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package net.finmath.xva.initialmargin.simm2.calculation;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.sensitivities.simm2.SubCurve;
+import net.finmath.sensitivities.simm2.Vertex;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.specs.ParameterSet;
+import net.finmath.xva.initialmargin.simm2.specs.Simm2_0;
+
+public class SimmSchemeTest {
+
+	private static final ParameterSet PARAMETERS = new Simm2_0();
+
+	private static final SimmCoordinate EUR_1M = new SimmCoordinate(Vertex.M1, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate EUR_5Y = new SimmCoordinate(Vertex.Y5, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate USD_10Y = new SimmCoordinate(Vertex.Y10, SubCurve.Libor6m, "USD", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX);
+	private static final SimmCoordinate DAX = new SimmCoordinate(null, "DAX", "11", RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+
+	@Test
+	public void compiledSchemeIsReusedForSameCoordinates() {
+		final SimmScheme scheme = new SimmScheme(PARAMETERS);
+
+		// Two time steps (or netting sets) with the same coordinates but different sensitivities
+		final Map<SimmCoordinate, RandomVariable> first = ImmutableMap.of(EUR_1M, new Scalar(2.0E8), EUR_5Y, new Scalar(-1.5E8), DAX, new Scalar(4.0E6));
+		final Map<SimmCoordinate, RandomVariable> second = ImmutableMap.of(EUR_1M, new Scalar(-1.0E8), EUR_5Y, new Scalar(3.0E8), DAX, new Scalar(1.0E6));
+
+		assertThat(scheme.getMargin(first).getAverage(), is(closeTo(new SimmScheme(PARAMETERS).getMargin(first).getAverage(), 1E-6)));
+		assertThat(scheme.getNumberOfCompiledSchemes(), is(2));
+
+		assertThat(scheme.getMargin(second).getAverage(), is(closeTo(new SimmScheme(PARAMETERS).getMargin(second).getAverage(), 1E-6)));
+		assertThat(scheme.getMargin(first).getAverage(), is(closeTo(new SimmScheme(PARAMETERS).getMargin(first).getAverage(), 1E-6)));
+		assertThat(scheme.getNumberOfCompiledSchemes(), is(2));
+
+		// Other coordinates are compiled separately
+		final Map<SimmCoordinate, RandomVariable> third = ImmutableMap.of(EUR_1M, new Scalar(2.0E8), USD_10Y, new Scalar(5.0E7));
+		assertThat(scheme.getMargin(third).getAverage(), is(closeTo(new SimmScheme(PARAMETERS).getMargin(third).getAverage(), 1E-6)));
+		assertThat(scheme.getNumberOfCompiledSchemes(), is(3));
+	}
+
+	@Test
+	public void numberOfCompiledSchemesIsBounded() {
+		final SimmScheme scheme = new SimmScheme(PARAMETERS);
+		final Vertex[] vertices = Vertex.values();
+
+		for (int i = 0; i < vertices.length; i++) {
+			for (int j = i + 1; j < vertices.length; j++) {
+				for (String currency : new String[]{"EUR", "USD", "GBP", "JPY"}) {
+					scheme.getMargin(ImmutableMap.of(
+							new SimmCoordinate(vertices[i], SubCurve.Libor3m, currency, RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX), new Scalar(1.0E6),
+							new SimmCoordinate(vertices[j], SubCurve.Libor3m, currency, RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX), new Scalar(-2.0E6)));
+				}
+			}
+		}
+
+		assertThat(scheme.getNumberOfCompiledSchemes(), is(SimmScheme.MAXIMUM_NUMBER_OF_COMPILED_SCHEMES));
+	}
+}
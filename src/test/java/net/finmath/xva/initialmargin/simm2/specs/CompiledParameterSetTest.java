@@ -0,0 +1,103 @@
+package net.finmath.xva.initialmargin.simm2.specs;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import net.finmath.sensitivities.simm2.MarginType;
+import net.finmath.sensitivities.simm2.ProductClass;
+import net.finmath.sensitivities.simm2.RiskClass;
+import net.finmath.sensitivities.simm2.SimmCoordinate;
+import net.finmath.sensitivities.simm2.SubCurve;
+import net.finmath.sensitivities.simm2.Vertex;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.stochastic.Scalar;
+import net.finmath.xva.initialmargin.simm2.calculation.SimmIRScheme;
+import net.finmath.xva.initialmargin.simm2.calculation.SimmScheme;
+
+public class CompiledParameterSetTest {
+
+	@Test
+	public void compiledParametersMatchUnderlyingParameters() {
+		final ParameterSet parameters = new Simm2_0();
+		final List<SimmCoordinate> coordinates = Arrays.asList(
+				new SimmCoordinate(Vertex.M1, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX),
+				new SimmCoordinate(Vertex.Y5, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX),
+				new SimmCoordinate(Vertex.Y5, SubCurve.Libor6m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX),
+				new SimmCoordinate(Vertex.Y10, SubCurve.Libor3m, "USD", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX),
+				new SimmCoordinate(Vertex.Y10, SubCurve.Libor3m, "JPY", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX),
+				new SimmCoordinate(Vertex.Y10, "EUR", RiskClass.INTEREST_RATE, MarginType.VEGA, ProductClass.RATES_FX));
+
+		final CompiledParameterSet compiled = new CompiledParameterSet(parameters, RiskClass.INTEREST_RATE, coordinates);
+
+		assertThat(compiled.getNumberOfCoordinates(), is(coordinates.size()));
+		for (int k = 0; k < coordinates.size(); k++) {
+			final SimmCoordinate coordinate = coordinates.get(k);
+			final int index = compiled.getIndex(coordinate);
+
+			assertThat(compiled.getCoordinate(index), is(coordinate));
+			assertThat(compiled.getRiskWeight(index), is(parameters.getRiskWeight(coordinate)));
+			assertThat(compiled.getConcentrationThreshold(index), is(parameters.getConcentrationThreshold(coordinate)));
+			assertThat(compiled.getAdditionalWeight(coordinate), is(parameters.getAdditionalWeight(coordinate)));
+
+			for (SimmCoordinate other : coordinates) {
+				if (coordinate.getSimmBucket().equals(other.getSimmBucket())) {
+					assertThat(compiled.getIntraBucketCorrelation(coordinate, other), is(parameters.getIntraBucketCorrelation(coordinate, other)));
+				}
+			}
+		}
+
+		final List<String> buckets = Arrays.asList("USD", "EUR", "JPY");
+		final double[][] expected = parameters.getCrossBucketCorrelationMatrix(RiskClass.INTEREST_RATE, buckets);
+		final double[][] actual = compiled.getCrossBucketCorrelationMatrix(RiskClass.INTEREST_RATE, buckets);
+		for (int b = 0; b < buckets.size(); b++) {
+			for (int c = 0; c < buckets.size(); c++) {
+				assertThat(actual[b][c], is(expected[b][c]));
+			}
+		}
+
+		final List<SimmCoordinate> euroCoordinates = Arrays.asList(coordinates.get(2), coordinates.get(0), coordinates.get(1));
+		final double[][] expectedIntraBucket = parameters.getIntraBucketCorrelationMatrix(euroCoordinates);
+		final double[][] actualIntraBucket = compiled.getIntraBucketCorrelationMatrix(euroCoordinates);
+		for (int k = 0; k < euroCoordinates.size(); k++) {
+			for (int l = 0; l < euroCoordinates.size(); l++) {
+				assertThat(actualIntraBucket[k][l], is(expectedIntraBucket[k][l]));
+			}
+		}
+	}
+
+	@Test
+	public void unknownCoordinatesArePassedToUnderlyingParameters() {
+		final ParameterSet parameters = new Simm2_0();
+		final SimmCoordinate compiledCoordinate = new SimmCoordinate(null, "DAX", "11", RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+		final SimmCoordinate unknownCoordinate = new SimmCoordinate(null, "SX5E", "3", RiskClass.EQUITY, MarginType.DELTA, ProductClass.EQUITY);
+
+		final CompiledParameterSet compiled = new CompiledParameterSet(parameters, RiskClass.EQUITY, Arrays.asList(compiledCoordinate, compiledCoordinate));
+
+		assertThat(compiled.getNumberOfCoordinates(), is(1));
+		assertThat(compiled.getIndex(unknownCoordinate), is(-1));
+		assertThat(compiled.getRiskWeight(unknownCoordinate), is(parameters.getRiskWeight(unknownCoordinate)));
+		assertThat(compiled.getCrossBucketCorrelation(RiskClass.EQUITY, "11", "3"), is(parameters.getCrossBucketCorrelation(RiskClass.EQUITY, "11", "3")));
+	}
+
+	@Test
+	public void compiledMarginMatchesMarginWithUnderlyingParameters() {
+		final ParameterSet parameters = new Simm2_0();
+		final ImmutableMap<SimmCoordinate, RandomVariable> gradient = ImmutableMap.of(
+				new SimmCoordinate(Vertex.M1, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX), new Scalar(1.0E6),
+				new SimmCoordinate(Vertex.Y5, SubCurve.Libor3m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX), new Scalar(-2.5E6),
+				new SimmCoordinate(Vertex.Y10, SubCurve.Libor6m, "EUR", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX), new Scalar(3.0E6),
+				new SimmCoordinate(Vertex.Y10, SubCurve.Libor3m, "USD", RiskClass.INTEREST_RATE, MarginType.DELTA, ProductClass.RATES_FX), new Scalar(4.0E6));
+
+		final double expected = new SimmIRScheme(parameters).getMargin(gradient).getAverage();
+
+		assertThat(new SimmScheme(parameters).getMarginForRiskClass(RiskClass.INTEREST_RATE, gradient).getAverage(), is(closeTo(expected, 1E-6)));
+	}
+}